@@ -6,6 +6,8 @@
 package easymaster.transfer.file;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,31 +27,43 @@ public class TransferServerAgent
     
     private ServerBootstrap bootstrap;
     
-    private Channel serverChannel;
+    // SO_REUSEPORT로 같은 port에 bind한 acceptor channel 수
+    private final int acceptors;
+
+    private final List<Channel> serverChannels= new ArrayList<Channel>();
     
     public TransferServerAgent( ServerBootstrap bootstrap, InetSocketAddress port)
+    {
+        this( bootstrap, port, 1);
+    }
+
+    public TransferServerAgent( ServerBootstrap bootstrap, InetSocketAddress port, int acceptors)
     {
         this.port= port;
         this.bootstrap= bootstrap;
+        this.acceptors= Math.max( 1, acceptors);
     }
     
     public void start() throws Exception
     {
-        serverChannel= bootstrap.bind( port).sync().channel();
-        logger.info( "File Transfer Server is started ....................................................");
+        for( int i= 0; i< acceptors; i++)
+            serverChannels.add( bootstrap.bind( port).sync().channel());
+        logger.info( "File Transfer Server is started with {} acceptor(s) .....................................", acceptors);
     }
     
     public void block() throws Exception
     {
-        serverChannel.closeFuture().sync();
+        for( Channel serverChannel: serverChannels)
+            serverChannel.closeFuture().sync();
     }
     
     public void destory() throws Exception
     {
-        if( serverChannel!= null)
+        for( Channel serverChannel: serverChannels)
         {
             serverChannel.close();
-            serverChannel.parent().close();
+            if( serverChannel.parent()!= null)
+                serverChannel.parent().close();
         }
         logger.info( "File Transfer Server is stopped ....................................................");
     }
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 분할 전송(parallel PUT)의 동시 전송 수를 AIMD(additive increase, multiplicative decrease) 방식으로 조정
+ * 분할 전송이 완료될 때마다 전송 크기, 전송 시간과 마지막 chunk 이후 응답까지의 지연(ACK latency)을 기록하고
+ * 동시 전송 수만큼 완료된 구간(round)마다 다음 구간의 동시 전송 수를 결정한다.
+ * <ul>
+ * <li>실패한 분할 전송이 있으면 절반으로 줄인다.</li>
+ * <li>응답 지연이 측정된 최소 지연보다 크게 증가하면(수신 서버의 disk, network queue 적체) DECREASE_FACTOR 비율로 줄인다.</li>
+ * <li>처리량이 이전 구간보다 INCREASE_THRESHOLD 이상 증가하면 하나 늘리고 DECREASE_THRESHOLD 미만으로 감소하면 DECREASE_FACTOR 비율로 줄인다.</li>
+ * </ul>
+ * 최소, 최대 값이 같은 경우 고정된 동시 전송 수를 사용하며, 조정된 값은 같은 TransferClient의 다음 분할 전송에서 시작 값으로 사용된다.
+ * 전송 중의 상태(동시 전송 수, 구간 별 측정 값)는 분할 전송 마다 begin()으로 생성한 Permits에 유지되므로
+ * 같은 TransferClient에서 동시에 실행되는 분할 전송은 서로의 상태를 변경하지 않고 종료될 때 조정된 값만 공유한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class AdaptiveConcurrency
+{
+    private Logger logger= LoggerFactory.getLogger( AdaptiveConcurrency.class);
+
+    static final double INCREASE_THRESHOLD= 1.05;
+
+    static final double DECREASE_THRESHOLD= 0.85;
+
+    static final double DECREASE_FACTOR= 0.75;
+
+    // 최소 지연의 배수와 여유 시간을 모두 넘는 경우에만 지연이 증가한 것으로 판단한다.
+    static final double LATENCY_TOLERANCE= 2.0;
+
+    static final long LATENCY_SLACK_NANOS= TimeUnit.MILLISECONDS.toNanos( 10);
+
+    private final int min;
+
+    private final int max;
+
+    private final LongSupplier clock;
+
+    // 마지막으로 종료된 분할 전송에서 결정된 동시 전송 수
+    private int limit;
+
+    private volatile double throughput;
+
+    private volatile double streamThroughput;
+
+    private volatile long ackLatency;
+
+    /**
+     * @param min 최소 동시 전송 수
+     * @param max 최대 동시 전송 수
+     * @param initial 시작 동시 전송 수, 최소, 최대 값 사이로 조정된다.
+     */
+    public AdaptiveConcurrency( int min, int max, int initial)
+    {
+        this( min, max, initial, System::nanoTime);
+    }
+
+    AdaptiveConcurrency( int min, int max, int initial, LongSupplier clock)
+    {
+        if( min<= 0 || max< min)
+            throw new IllegalArgumentException( "min: "+ min+ ", max: "+ max);
+        this.min= min;
+        this.max= max;
+        this.clock= clock;
+        this.limit= Math.max( min, Math.min( max, initial));
+    }
+
+    /**
+     * @return 동시 전송 수를 조정하는 경우 true, 고정된 경우 false
+     */
+    public boolean isAdaptive()
+    {
+        return max> min;
+    }
+
+    public int minConcurrency()
+    {
+        return min;
+    }
+
+    public int maxConcurrency()
+    {
+        return max;
+    }
+
+    /**
+     * @return 마지막 분할 전송에서 결정된 동시 전송 수
+     */
+    public synchronized int concurrency()
+    {
+        return limit;
+    }
+
+    /**
+     * @return 마지막 분할 전송 전체의 처리량(bytes/s)
+     */
+    public double throughput()
+    {
+        return throughput;
+    }
+
+    /**
+     * @return 마지막 분할 전송의 마지막 구간에서 분할 전송 하나의 평균 처리량(bytes/s)
+     */
+    public double streamThroughput()
+    {
+        return streamThroughput;
+    }
+
+    /**
+     * @return 마지막 분할 전송의 마지막 구간의 평균 응답 지연(microseconds)
+     */
+    public long ackLatencyMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros( ackLatency);
+    }
+
+    /**
+     * 분할 전송을 시작한다. 마지막으로 결정된 동시 전송 수에서 시작하며 처리량과 지연은 새로 측정한다.
+     * @param cap 이번 전송에서 사용할 수 있는 최대 동시 전송 수
+     * @return 이번 전송의 동시 전송 수를 관리하는 Permits
+     */
+    Permits begin( int cap)
+    {
+        return new Permits( Math.max( min, Math.min( max, cap)), concurrency());
+    }
+
+    private synchronized void learned( int limit, double throughput, double streamThroughput, long ackLatency)
+    {
+        this.limit= limit;
+        this.throughput= throughput;
+        this.streamThroughput= streamThroughput;
+        this.ackLatency= ackLatency;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AdaptiveConcurrency [min="+ min+ ", max="+ max+ ", concurrency="+ concurrency()+ ", throughput="+ (long)throughput
+                + ", streamThroughput="+ (long)streamThroughput+ ", ackLatency="+ ackLatencyMicros()+ "us]";
+    }
+
+    /**
+     * 분할 전송 하나의 동시 전송 수와 구간 별 측정 값
+     */
+    class Permits
+    {
+        // 이번 전송에서 사용할 수 있는 최대 값(연결 Pool 크기 등으로 제한)
+        private final int cap;
+
+        private int limit;
+
+        private int inFlight;
+
+        private final long startNanos;
+
+        private long totalBytes;
+
+        private long roundStart;
+
+        private long roundBytes;
+
+        private long roundElapsed;
+
+        private long roundLatency;
+
+        private int roundSamples;
+
+        private boolean roundFailed;
+
+        private double lastRoundThroughput;
+
+        private long minLatency= Long.MAX_VALUE;
+
+        private double streamRate;
+
+        private long latency;
+
+        private Permits( int cap, int initial)
+        {
+            this.cap= cap;
+            this.limit= Math.min( initial, cap);
+            this.startNanos= clock.getAsLong();
+            resetRound( startNanos);
+        }
+
+        /**
+         * @return 이번 전송에서 사용할 수 있는 최대 동시 전송 수
+         */
+        int cap()
+        {
+            return cap;
+        }
+
+        /**
+         * @return 현재 구간의 동시 전송 수
+         */
+        synchronized int concurrency()
+        {
+            return limit;
+        }
+
+        /**
+         * @return 전송중인 분할 전송 수
+         */
+        synchronized int inFlight()
+        {
+            return inFlight;
+        }
+
+        /**
+         * 동시 전송 수가 허용될 때까지 대기한다.
+         */
+        synchronized void acquire() throws InterruptedException
+        {
+            while( inFlight>= limit)
+                wait();
+            inFlight++;
+        }
+
+        /**
+         * 분할 전송 결과를 기록한다. 동시 전송 수만큼 완료되면 다음 구간의 동시 전송 수를 결정한다.
+         * @param bytes 전송한 크기
+         * @param elapsedNanos 전송 요청부터 응답까지의 시간
+         * @param ackNanos 마지막 chunk 전달부터 응답까지의 시간
+         * @param success 성공 여부
+         */
+        synchronized void release( long bytes, long elapsedNanos, long ackNanos, boolean success)
+        {
+            inFlight--;
+            if( success)
+            {
+                totalBytes+= bytes;
+                roundBytes+= bytes;
+                roundElapsed+= elapsedNanos;
+                roundLatency+= ackNanos;
+            }
+            else
+                roundFailed= true;
+            roundSamples++;
+
+            if( roundSamples>= limit)
+                adjust( clock.getAsLong());
+            notifyAll();
+        }
+
+        /**
+         * 분할 전송을 종료하고 결정된 동시 전송 수와 전체 처리량을 다음 분할 전송을 위해 기록한다.
+         */
+        synchronized void end()
+        {
+            long elapsed= clock.getAsLong()- startNanos;
+            double rate= elapsed> 0 ? totalBytes* 1e9/ elapsed : 0;
+            learned( limit, rate, streamRate, latency);
+            logger.debug( "parallel transfer concurrency: {} ({}~{}), throughput: {} bytes/s, ack latency: {}us",
+                    new Object[] { limit, min, cap, (long)rate, TimeUnit.NANOSECONDS.toMicros( latency)});
+        }
+
+        private void adjust( long now)
+        {
+            int succeeded= roundFailed ? 0 : roundSamples;
+            double rate= roundBytes* 1e9/ Math.max( 1, now- roundStart);
+            if( succeeded> 0)
+            {
+                streamRate= roundElapsed> 0 ? roundBytes* 1e9/ roundElapsed : 0;
+                latency= roundLatency/ succeeded;
+                minLatency= Math.min( minLatency, latency);
+            }
+
+            int next= limit;
+            if( roundFailed)
+                next= limit/ 2;
+            else if( latency> minLatency* LATENCY_TOLERANCE && latency> minLatency+ LATENCY_SLACK_NANOS)
+                next= (int)( limit* DECREASE_FACTOR);
+            else if( lastRoundThroughput== 0 || rate>= lastRoundThroughput* INCREASE_THRESHOLD)
+                next= limit+ 1;
+            else if( rate< lastRoundThroughput* DECREASE_THRESHOLD)
+                next= (int)( limit* DECREASE_FACTOR);
+            next= Math.max( min, Math.min( cap, next));
+
+            if( next!= limit)
+                logger.debug( "concurrency {} -> {}, throughput: {} bytes/s, ack latency: {}us",
+                        new Object[] { limit, next, (long)rate, TimeUnit.NANOSECONDS.toMicros( latency)});
+            limit= next;
+            lastRoundThroughput= rate;
+            resetRound( now);
+        }
+
+        private void resetRound( long now)
+        {
+            roundStart= now;
+            roundBytes= 0;
+            roundElapsed= 0;
+            roundLatency= 0;
+            roundSamples= 0;
+            roundFailed= false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.client;
+
+import static easymaster.transfer.file.util.FileUtil.PARALLEL_SPLIT_SUFFIX_FORMAT;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 분할 전송할 파일의 범위를 순서대로 할당
+ * 파일을 읽지 않고 (offset, length) 범위만 할당하므로 분할 전송 작업은 각자의 범위를 동시에 읽어서 전송한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class FileSplitter
+{
+    private final long length;
+
+    private final long splitSize;
+
+    private final AtomicInteger split= new AtomicInteger();
+
+    FileSplitter( long length, long splitSize)
+    {
+        this.length= length;
+        this.splitSize= splitSize;
+    }
+
+    /**
+     * @return 분할된 파일 수
+     */
+    int splits()
+    {
+        return (int)( ( length+ splitSize- 1)/ splitSize);
+    }
+
+    /**
+     * @return 다음 분할 범위, 모두 할당된 경우 null
+     */
+    Split nextSplit()
+    {
+        int index= split.getAndIncrement();
+        long offset= index* splitSize;
+        if( offset>= length)
+            return null;
+
+        Split next= new Split();
+        next.offset= offset;
+        next.length= Math.min( splitSize, length- offset);
+        next.suffix= String.format( PARALLEL_SPLIT_SUFFIX_FORMAT, index);
+        return next;
+    }
+
+    /**
+     * 다시 전송할 구간을 splitSize 이하의 범위로 나누어 추가한다.
+     * @param splits 범위를 추가할 목록
+     * @param from 구간의 시작 위치
+     * @param to 구간의 끝 위치(포함하지 않음)
+     * @param splitSize 범위의 최대 크기
+     */
+    static void split( List<Split> splits, long from, long to, long splitSize)
+    {
+        for( long offset= from; offset< to; offset+= splitSize)
+        {
+            Split next= new Split();
+            next.offset= offset;
+            next.length= Math.min( splitSize, to- offset);
+            splits.add( next);
+        }
+    }
+
+    static class Split
+    {
+        String suffix;
+        // 원본 파일에서 분할된 위치와 크기
+        long offset;
+        long length;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.client;
+
+import static easymaster.transfer.file.protocol.TransferResponseCode.TIMEOUT_OCCURRED;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.springframework.boot.actuate.health.Status.DOWN;
+
+import java.io.Closeable;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import easymaster.transfer.file.handler.RequestHandlerException;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * 원격 Agent Server 연결 Pool
+ * THROWAWAY 요청마다 연결(SSL handshake, binary framing 협상)을 새로 생성하지 않고 반환된 연결을 재사용한다.
+ * 최대 maxSize개의 연결을 동시에 대여하며 idleTimeout 동안 사용되지 않은 연결은 minSize개를 남기고 종료한다.
+ * minSize개의 연결은 prewarm으로 미리 생성하며, 생성하지 않은 경우 처음 요청될 때 생성된다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class TransferChannelPool implements Closeable
+{
+    private Logger logger= LoggerFactory.getLogger( TransferChannelPool.class);
+
+    public static final int DEFAULT_MIN_SIZE= 1;
+
+    public static final int DEFAULT_MAX_SIZE= TransferClient.MAX_WORKERS;
+
+    public static final long DEFAULT_IDLE_TIMEOUT= 60* 1000;
+
+    // 연결을 대여하기 위해 대기하는 최대 시간
+    public static final long DEFAULT_ACQUIRE_TIMEOUT= 30* 1000;
+
+    // 이 시간 이상 사용되지 않은 연결은 대여 전에 health 요청으로 확인한다.
+    public static final long DEFAULT_VALIDATE_AFTER_IDLE= 2* 1000;
+
+    private final TransferClient client;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final long idleTimeout;
+
+    private final Semaphore permits;
+
+    // 최근에 반환된 연결을 먼저 대여한다.
+    private final Deque<PooledChannel> idles= new ConcurrentLinkedDeque<PooledChannel>();
+
+    private final ScheduledFuture<?> evictor;
+
+    private volatile boolean closed;
+
+    TransferChannelPool( TransferClient client, EventLoopGroup group, int minSize, int maxSize, long idleTimeout)
+    {
+        if( minSize< 0 || maxSize<= 0 || minSize> maxSize)
+            throw new IllegalArgumentException( "minSize: "+ minSize+ ", maxSize: "+ maxSize);
+        if( idleTimeout<= 0)
+            throw new IllegalArgumentException( "idleTimeout: "+ idleTimeout);
+        this.client= client;
+        this.minSize= minSize;
+        this.maxSize= maxSize;
+        this.idleTimeout= idleTimeout;
+        this.permits= new Semaphore( maxSize);
+        long period= Math.max( 1000, idleTimeout/ 2);
+        this.evictor= group.next().scheduleWithFixedDelay( this::evict, period, period, MILLISECONDS);
+    }
+
+    /**
+     * 연결을 대여한다. 사용 후 반드시 release로 반환해야 한다.
+     * @return Channel
+     * @throws RequestHandlerException 연결 생성에 실패하거나 대여 가능한 연결이 없는 경우
+     */
+    public Channel acquire() throws RequestHandlerException
+    {
+        return acquire( DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    /**
+     * 연결을 대여한다. 사용 후 반드시 release로 반환해야 한다.
+     * @param timeout 대여 가능한 연결을 대기할 시간, 0보다 작은 경우 무한 대기
+     * @return Channel
+     * @throws RequestHandlerException 연결 생성에 실패하거나 대여 가능한 연결이 없는 경우
+     */
+    public Channel acquire( long timeout) throws RequestHandlerException
+    {
+        if( closed)
+            throw new IllegalStateException( "channel pool is closed");
+
+        try
+        {
+            if( timeout< 0)
+                permits.acquire();
+            else if( !permits.tryAcquire( timeout, MILLISECONDS))
+                throw new RequestHandlerException( TIMEOUT_OCCURRED, "no channel is available in pool. maxSize: "+ maxSize);
+        }
+        catch( InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RequestHandlerException( TIMEOUT_OCCURRED, "interrupted while acquiring channel", e);
+        }
+
+        try
+        {
+            PooledChannel pooled= null;
+            while( ( pooled= idles.pollFirst())!= null)
+            {
+                if( validate( pooled))
+                {
+                    logger.debug( "pooled channel acquired: {}", pooled.channel);
+                    return pooled.channel;
+                }
+                pooled.channel.close();
+            }
+            return client.connect();
+        }
+        catch( RequestHandlerException | RuntimeException e)
+        {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 첫 요청이 연결 생성(SSL handshake, binary framing 협상)을 기다리지 않도록 minSize개의 연결을 미리 생성한다.
+     * 대기중이거나 대여중인 연결이 minSize개 이상인 경우 생성하지 않으며, 연결에 실패한 경우 생성된 연결까지만 유지한다.
+     * @return 생성된 연결 수
+     */
+    public synchronized int prewarm()
+    {
+        int created= 0;
+        while( !closed && idles.size()+ leasedCount()< minSize && permits.tryAcquire())
+        {
+            try
+            {
+                idles.addLast( new PooledChannel( client.connect()));
+                created++;
+            }
+            catch( RequestHandlerException | RuntimeException e)
+            {
+                logger.warn( "channel pool is not prewarmed. created: {}, minSize: {}", created, minSize, e);
+                break;
+            }
+            finally
+            {
+                permits.release();
+            }
+        }
+        if( closed)
+            closeIdles();
+        logger.debug( "channel pool is prewarmed. created: {}, idle: {}", created, idles.size());
+        return created;
+    }
+
+    /**
+     * 대여한 연결을 반환한다.
+     * 응답을 대기중인 요청이 남아있거나 종료된 연결은 재사용하지 않고 종료한다.
+     * @param channel acquire로 대여한 연결
+     */
+    public void release( Channel channel)
+    {
+        try
+        {
+            channel.eventLoop().execute( ()->{
+                try
+                {
+                    TransferClientHandler handler= channel.pipeline().get( TransferClientHandler.class);
+                    if( !closed && channel.isActive() && handler!= null && handler.reset())
+                    {
+                        idles.addFirst( new PooledChannel( channel));
+                        if( closed)
+                            closeIdles();
+                    }
+                    else
+                        channel.close();
+                }
+                finally
+                {
+                    permits.release();
+                }
+            });
+        }
+        catch( RejectedExecutionException e)
+        {
+            channel.close();
+            permits.release();
+        }
+    }
+
+    /**
+     * @return 재사용을 위해 대기중인 연결 수
+     */
+    public int idleCount()
+    {
+        return idles.size();
+    }
+
+    /**
+     * @return 동시에 대여할 수 있는 최대 연결 수
+     */
+    public int maxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * @return 대여중인 연결 수
+     */
+    public int leasedCount()
+    {
+        return maxSize- permits.availablePermits();
+    }
+
+    @Override
+    public void close()
+    {
+        closed= true;
+        evictor.cancel( false);
+        closeIdles();
+    }
+
+    private boolean validate( PooledChannel pooled)
+    {
+        if( !pooled.channel.isActive())
+            return false;
+        if( System.currentTimeMillis()- pooled.released< DEFAULT_VALIDATE_AFTER_IDLE)
+            return true;
+
+        try
+        {
+            return !DOWN.equals( client.requestHealth( pooled.channel, client.getResponseTimeout()).getStatus());
+        }
+        catch( Exception e)
+        {
+            logger.debug( "health probe failed. channel: {}", pooled.channel, e);
+            return false;
+        }
+    }
+
+    /**
+     * idleTimeout 동안 사용되지 않은 연결을 minSize개를 남기고 종료한다.
+     */
+    private void evict()
+    {
+        long now= System.currentTimeMillis();
+        Iterator<PooledChannel> iter= idles.descendingIterator();
+        while( iter.hasNext())
+        {
+            PooledChannel pooled= iter.next();
+            boolean expired= now- pooled.released>= idleTimeout && idles.size()> minSize;
+            if( ( expired || !pooled.channel.isActive()) && idles.remove( pooled))
+            {
+                logger.debug( "idle channel evicted: {}", pooled.channel);
+                pooled.channel.close();
+            }
+        }
+    }
+
+    private void closeIdles()
+    {
+        PooledChannel pooled= null;
+        while( ( pooled= idles.pollFirst())!= null)
+            pooled.channel.close();
+    }
+
+    private static final class PooledChannel
+    {
+        final Channel channel;
+
+        final long released= System.currentTimeMillis();
+
+        PooledChannel( Channel channel)
+        {
+            this.channel= channel;
+        }
+    }
+}
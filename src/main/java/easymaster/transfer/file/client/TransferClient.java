@@ -7,10 +7,12 @@ package easymaster.transfer.file.client;
 
 import static easymaster.transfer.file.handler.TransferAction.MERGE_;
 import static easymaster.transfer.file.handler.TransferAction.SESSION_;
+import static easymaster.transfer.file.handler.TransferAction.SESSION_STATUS_;
 import static easymaster.transfer.file.handler.TransferAction.SHUTDOWN_;
 import static easymaster.transfer.file.handler.TransferInfo.EXIST_;
 import static easymaster.transfer.file.handler.TransferInfo.HEALTH_;
 import static easymaster.transfer.file.handler.TransferInfo.INFO_;
+import static easymaster.transfer.file.handler.TransferInfo.UPGRADE_;
 import static easymaster.transfer.file.protocol.ResponseCode.SUCCESS;
 import static easymaster.transfer.file.protocol.TransferCommand.ACTION;
 import static easymaster.transfer.file.protocol.TransferCommand.DELETE;
@@ -19,10 +21,18 @@ import static easymaster.transfer.file.protocol.TransferCommand.INFO;
 import static easymaster.transfer.file.protocol.TransferCommand.LIST;
 import static easymaster.transfer.file.protocol.TransferCommand.PUT;
 import static easymaster.transfer.file.protocol.TransferCommand.TRANSFER;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.ACCEPT_ENCODING;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_LENGTH;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.DESTINATION_AGENT;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.IF_MATCH;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.MERGE_RESOURCE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.OFFSET;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RANGE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.REASON;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RECEIVED_RANGE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_LENGTH;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_MODIFIED;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.SESSION_ID;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFERRED_RESOURCE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_DESTINATION_URI;
@@ -30,11 +40,17 @@ import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_ENC
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_SOURCE_URI;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_TIMEOUT_SECONDS;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_VALIDATION;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.UPGRADE;
+import static easymaster.transfer.file.protocol.TransferHeaderValues.BINARY_FRAMING;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.CHUNKED;
+import static easymaster.transfer.file.protocol.TransferHeaderValues.MESSAGE_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.VALIDATION_OFF;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.VALIDATION_ON;
 import static easymaster.transfer.file.protocol.TransferResponseCode.ALREADY_EXIST;
+import static easymaster.transfer.file.protocol.TransferResponseCode.BAD_REQUEST;
 import static easymaster.transfer.file.protocol.TransferResponseCode.BAD_RESPONSE;
+import static easymaster.transfer.file.protocol.TransferResponseCode.FILE_PERMISSION_ERROR;
+import static easymaster.transfer.file.protocol.TransferResponseCode.PRECONDITION_FAILED;
 import static easymaster.transfer.file.protocol.TransferResponseCode.SOURCE_FILE_NOT_FOUND;
 import static easymaster.transfer.file.protocol.TransferResponseCode.TIMEOUT_OCCURRED;
 import static easymaster.transfer.file.protocol.TransferResponseCode.TRANSFER_FAILED;
@@ -44,25 +60,36 @@ import static easymaster.transfer.file.util.OptionParameter.SITE;
 import static easymaster.transfer.file.util.OptionParameterValues.FAIL_ONEXIST;
 import static easymaster.transfer.file.util.OptionParameterValues.TRUE;
 import static easymaster.transfer.file.util.TransferMessageUtil.PATH_SEPARATOR;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.springframework.boot.actuate.health.Status.DOWN;
 
 import java.io.File;
+import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
@@ -71,34 +98,39 @@ import org.springframework.boot.actuate.health.Health;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
-import easymaster.transfer.file.client.ChunkedNioFileBuf.SplittedBuf;
+import easymaster.transfer.file.client.FileSplitter.Split;
 import easymaster.transfer.file.handler.RequestHandlerException;
+import easymaster.transfer.file.protocol.ContentEncoding;
 import easymaster.transfer.file.protocol.FileData;
+import easymaster.transfer.file.protocol.FileSync;
 import easymaster.transfer.file.protocol.ResponseCode;
 import easymaster.transfer.file.protocol.TransferChunkedContentEncoder;
+import easymaster.transfer.file.protocol.TransferContentCompressor;
+import easymaster.transfer.file.protocol.TransferContentDecompressor;
+import easymaster.transfer.file.protocol.TransferFileRegionEncoder;
 import easymaster.transfer.file.protocol.TransferHeaderNames;
+import easymaster.transfer.file.protocol.TransferHeaders;
 import easymaster.transfer.file.protocol.TransferMessage;
 import easymaster.transfer.file.protocol.TransferMessageClientCodec;
+import easymaster.transfer.file.protocol.TransferObject;
 import easymaster.transfer.file.protocol.TransferParallelContentEncoder;
 import easymaster.transfer.file.protocol.TransferResponseCode;
+import easymaster.transfer.file.util.CompressionUtil;
+import easymaster.transfer.file.util.DirectoryCache;
 import easymaster.transfer.file.util.FileUtil;
 import easymaster.transfer.file.util.OptionParameter;
+import easymaster.transfer.file.util.TempFileManager;
 import easymaster.transfer.file.util.TransferMessageUtil;
+import easymaster.transfer.file.util.TransferTransport;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.compression.ZlibCodecFactory;
-import io.netty.handler.codec.compression.ZlibWrapper;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
-import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.stream.ChunkedInput;
 import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.util.concurrent.Future;
 import io.netty.util.internal.ObjectUtil;
 
 /**
@@ -111,17 +143,53 @@ public class TransferClient
 {
     private Logger logger= LoggerFactory.getLogger( TransferClient.class);
 
-    // 사용자 작업 요청시 매번 Channel을 생성하는 옵션을 위해 사용
+    // 사용자 작업 요청시 Channel을 Pool에서 대여(Pool을 사용하지 않는 경우 생성)하는 옵션을 위해 사용
     public static Channel THROWAWAY= null;
 
     public static final int MAX_WORKERS= 10;
+
+    // 분할 전송에 사용할 수 있는 최대 동시 전송 수
+    public static final int MAX_PARALLEL_STREAMS= 64;
+
+    // 동시 전송 수를 조정하는 경우 최대 동시 전송 수 기준으로 구간(round)을 나눌 수 있도록 분할한다.
+    static final int PARALLEL_ROUNDS= 4;
+    
+    // 분할 전송에 실패한 구간을 session에 기록된 구간을 확인하여 다시 전송할 최대 횟수와 대기 시간(횟수 만큼 증가)
+    public static final int PARALLEL_RETRIES= 3;
+
+    static final long PARALLEL_RETRY_DELAY_MILLIS= 200;
+
+    // 이어받기가 가능하도록 수신중인 파일을 보관할 baseDir의 하위 directory와 파일 이름 postfix
+    public static final String PARTIAL_DIR= "partial";
+
+    // 연결 협상(upgrade), Pool 연결의 health 확인 등 연결 관리 요청의 응답 대기 시간
+    public static final long DEFAULT_RESPONSE_TIMEOUT= 30* 1000;
+
+    static final String PARTIAL_POSTFIX= ".part";
     
     // putParallelRequest를 사용할 지 여부를 판단하는 기준으로 사용
     public static final int MIN_PARALLEL_CHUNK= 1* 1024* 1024;
     
     public static final int MAX_PARALLEL_CHUNK= 256* 1024* 1024;
 
-    private NioEventLoopGroup workerGroup;
+    // binary framing 연결에서 분할 전송이 함께 사용하는 연결 수
+    public static final int MAX_SHARED_CHANNELS= 2;
+
+    // Linux에서 native epoll을 사용할 수 있으면 epoll, 그 외에는 nio를 사용한다.
+    static final TransferTransport TRANSPORT= TransferTransport.AUTO.resolve();
+
+    private final EventLoopGroup workerGroup;
+
+    // 공유 자원을 사용하는 경우 shutdown시 참조를 해제할 factory
+    private final TransferClientFactory factory;
+
+    private final AtomicBoolean shutdown= new AtomicBoolean();
+
+    // 분할 전송에 사용할 동시 처리 수
+    private final int workers;
+
+    // 분할 전송의 동시 전송 수, 최소, 최대 값이 다른 경우 처리량과 응답 지연에 따라 조정된다.
+    private volatile AdaptiveConcurrency concurrency;
 
     private final File baseDir;
 
@@ -131,10 +199,27 @@ public class TransferClient
 
     private final int chunkSize;
 
+    // 파일 전송에 사용할 본문 압축 방식, 압축 효과가 없는 파일은 IDENTITY로 전송
+    private volatile ContentEncoding contentEncoding= ContentEncoding.GZIP;
+
+    private volatile int compressionLevel= ContentEncoding.DEFAULT_COMPRESSION_LEVEL;
+
+    // 연결 시 binary framing(v2) 협상 여부, 지원하지 않는 Agent Server와는 텍스트 프로토콜을 유지한다.
+    private volatile boolean binaryFraming;
+
+    // 연결 시 메시지 단위 본문 압축(Content-Encoding) 협상 여부, 협상되지 않은 연결은 연결 전체를 GZIP으로 압축한다.
+    private volatile boolean messageEncoding= true;
+
+    // 연결 관리 요청의 응답 대기 시간(milliseconds), TCP 연결 제한 시간(connectTimeout)과 별도로 적용된다.
+    private volatile long responseTimeout= DEFAULT_RESPONSE_TIMEOUT;
+
     InetSocketAddress remote;
 
     private Bootstrap bootstrap;
 
+    // THROWAWAY 요청이 사용하는 연결 Pool, null인 경우 요청마다 연결을 생성한다.
+    private volatile TransferChannelPool pool;
+
     /**
      * Transfer Agent Server에 연결
      * @param host 연결할 원격 Agent Server hostname
@@ -195,6 +280,15 @@ public class TransferClient
     }
 
     private TransferClient( String basedir, int workers, int connectTimeout, boolean ssl, String host, int port, int chunkSize)
+    {
+        this( basedir, workers, connectTimeout, ssl, host, port, chunkSize, null, null);
+    }
+
+    /**
+     * TransferClientFactory에서 공유 EventLoopGroup을 사용하여 생성한다.
+     */
+    TransferClient( String basedir, int workers, int connectTimeout, boolean ssl, String host, int port, int chunkSize,
+            EventLoopGroup group, TransferClientFactory factory)
     {
         ObjectUtil.checkNotNull( basedir, "basedir");
         this.baseDir= new File( basedir);
@@ -202,35 +296,41 @@ public class TransferClient
             throw new IllegalArgumentException( "only directory is allowed");
         if( !baseDir.mkdirs() && !baseDir.exists())
             throw new IllegalArgumentException( "cannot create basedir");
-        this.workerGroup= new NioEventLoopGroup( Math.min( MAX_WORKERS, workers));
+        this.workers= Math.min( MAX_WORKERS, workers);
+        this.workerGroup= group!= null ? group : TRANSPORT.newEventLoopGroup( this.workers);
+        this.factory= factory;
         this.connectTimeout= connectTimeout;
         this.ssl= ssl;
         this.remote= new InetSocketAddress( host, port);
         this.chunkSize= chunkSize;
+        int concurrent= Math.max( 2, this.workers);
+        this.concurrency= new AdaptiveConcurrency( concurrent, concurrent, concurrent);
         bootstrap();
+        this.pool= new TransferChannelPool( this, workerGroup, TransferChannelPool.DEFAULT_MIN_SIZE, 
+                TransferChannelPool.DEFAULT_MAX_SIZE, TransferChannelPool.DEFAULT_IDLE_TIMEOUT);
     }
 
     private boolean bootstrap()
     {
         bootstrap= new Bootstrap();
-        bootstrap.group( workerGroup).channel( NioSocketChannel.class)
+        bootstrap.group( workerGroup).channel( TRANSPORT.socketChannelClass())
             .option( ChannelOption.SO_KEEPALIVE, true)
+            .option( ChannelOption.TCP_NODELAY, true)
+            .option( ChannelOption.ALLOCATOR, factory!= null ? factory.allocator() : ByteBufAllocator.DEFAULT)
             .option( ChannelOption.CONNECT_TIMEOUT_MILLIS, this.connectTimeout)
             .handler( new ChannelInitializer<Channel>(){
                 @Override
                 protected void initChannel( Channel ch) throws Exception
                 {
                     ChannelPipeline pipeline= ch.pipeline();
-                    // self-signed certificates를 위한 InsecureTrustManager
-                    // ROOT CA signed certificates를 사용하는 경우 설정과 
-                    // easymaster.transfer.file.handler.TransferServerInitializer 부분을 함께 수정
+                    // SslContext는 channel마다 생성하지 않고 공유한다.
                     if( ssl)
-                        pipeline.addLast( SslContextBuilder.forClient().trustManager( 
-                                InsecureTrustManagerFactory.INSTANCE).build().newHandler( ch.alloc()));
-                    pipeline
-                        .addLast( ZlibCodecFactory.newZlibEncoder( ZlibWrapper.GZIP))
-                        .addLast( ZlibCodecFactory.newZlibDecoder( ZlibWrapper.GZIP))
+                        pipeline.addLast( TransferClientFactory.clientSslContext().newHandler( ch.alloc()));
+                    // 연결 전체 GZIP 압축은 INFO /upgrade 요청으로 메시지 단위 압축이 협상되면 제거된다.
+                    TransferMessageUtil.addConnectionCompression( pipeline)
                         .addLast( new TransferMessageClientCodec())
+                        .addLast( new TransferContentDecompressor())
+                        .addLast( new TransferContentCompressor( compressionLevel))
                         .addLast( new ChunkedWriteHandler())
                         .addLast( new TransferClientHandler( baseDir));
                 }
@@ -239,6 +339,122 @@ public class TransferClient
         return true;
     }
 
+    /**
+     * 파일 송수신에 사용할 본문 압축 방식을 지정한다.
+     * 확장자 또는 표본 데이터로 판단하여 압축 효과가 없는 파일은 지정된 방식과 관계없이 IDENTITY로 전송된다.
+     * @param contentEncoding 압축 방식
+     */
+    public void setContentEncoding( ContentEncoding contentEncoding)
+    {
+        ObjectUtil.checkNotNull( contentEncoding, "contentEncoding");
+        this.contentEncoding= contentEncoding;
+    }
+
+    public ContentEncoding getContentEncoding()
+    {
+        return contentEncoding;
+    }
+
+    /**
+     * gzip 압축 레벨을 지정한다. 이후 생성되는 Channel부터 적용된다.
+     * @param compressionLevel 0~9
+     */
+    public void setCompressionLevel( int compressionLevel)
+    {
+        if( compressionLevel< 0 || compressionLevel> 9)
+            throw new IllegalArgumentException( "compressionLevel: "+ compressionLevel+ " (expected: 0-9)");
+        this.compressionLevel= compressionLevel;
+    }
+
+    /**
+     * 연결 시 binary framing(v2) 협상 여부를 지정한다. 이후 생성되는 Channel부터 적용된다.
+     * @param binaryFraming binary framing 사용 여부
+     */
+    public void setBinaryFraming( boolean binaryFraming)
+    {
+        this.binaryFraming= binaryFraming;
+    }
+
+    public boolean isBinaryFraming()
+    {
+        return binaryFraming;
+    }
+
+    /**
+     * 연결 시 메시지 단위 본문 압축(Content-Encoding) 협상 여부를 지정한다. 이후 생성되는 Channel부터 적용된다.
+     * 협상하지 않거나 지원하지 않는 Agent Server와는 연결 전체 GZIP 압축을 사용하며 setContentEncoding으로 지정된 방식은 사용되지 않는다.
+     * @param messageEncoding 메시지 단위 본문 압축 사용 여부
+     */
+    public void setMessageEncoding( boolean messageEncoding)
+    {
+        this.messageEncoding= messageEncoding;
+    }
+
+    public boolean isMessageEncoding()
+    {
+        return messageEncoding;
+    }
+
+    /**
+     * 연결 협상(upgrade)과 Pool 연결의 health 확인 응답을 대기할 시간을 지정한다.
+     * TLS handshake가 포함될 수 있으므로 TCP 연결 제한 시간과 별도로 지정한다.
+     * @param responseTimeout 응답 대기 시간(milliseconds), 0보다 작은 경우 무한 대기
+     */
+    public void setResponseTimeout( long responseTimeout)
+    {
+        this.responseTimeout= responseTimeout;
+    }
+
+    public long getResponseTimeout()
+    {
+        return responseTimeout;
+    }
+
+    /**
+     * 분할 전송의 동시 전송 수 범위를 지정한다. 최소, 최대 값이 다른 경우 처리량과 응답 지연에 따라 범위 내에서 조정된다.
+     * binary framing을 사용하지 않는 경우 동시 전송 수는 연결 Pool의 최대 연결 수로 제한된다.
+     * @param min 최소 동시 전송 수
+     * @param max 최대 동시 전송 수, MAX_PARALLEL_STREAMS를 넘을 수 없다.
+     */
+    public void setParallelConcurrency( int min, int max)
+    {
+        max= Math.min( MAX_PARALLEL_STREAMS, max);
+        if( min<= 0 || max< min)
+            throw new IllegalArgumentException( "min: "+ min+ ", max: "+ max+ " (expected: 0 < min <= max <= "+ MAX_PARALLEL_STREAMS+ ")");
+        concurrency= new AdaptiveConcurrency( min, max, concurrency.concurrency());
+    }
+
+    /**
+     * @return 분할 전송의 동시 전송 수와 마지막 분할 전송의 처리량, 응답 지연
+     */
+    public AdaptiveConcurrency getParallelConcurrency()
+    {
+        return concurrency;
+    }
+
+    /**
+     * THROWAWAY 요청이 사용하는 연결 Pool을 설정한다. 기존 Pool의 연결은 종료된다.
+     * 새로운 Pool은 minSize개의 연결을 미리 생성하며, Agent Server에 연결할 수 없는 경우 처음 요청될 때 생성된다.
+     * @param minSize 미리 생성하고 idleTimeout이 지나도 유지할 연결 수
+     * @param maxSize 동시에 대여할 수 있는 최대 연결 수, 0인 경우 Pool을 사용하지 않고 요청마다 연결을 생성한다.
+     * @param idleTimeout 사용되지 않은 연결을 종료할 때까지의 시간(milliseconds)
+     */
+    public void setChannelPool( int minSize, int maxSize, long idleTimeout)
+    {
+        TransferChannelPool old= pool;
+        TransferChannelPool created= maxSize> 0 ? new TransferChannelPool( this, workerGroup, minSize, maxSize, idleTimeout) : null;
+        pool= created;
+        if( old!= null)
+            old.close();
+        if( created!= null)
+            created.prewarm();
+    }
+
+    public TransferChannelPool getChannelPool()
+    {
+        return pool;
+    }
+
     /**
      * 클라이언트에서 Channel 생성을 요청하여 재사용하기 위해 사용된다.
      * @return Channel
@@ -246,11 +462,83 @@ public class TransferClient
      */
     public Channel connect() throws RequestHandlerException
     {
-        try{ return bootstrap.connect( remote).sync().channel();}
+        Channel channel= null;
+        try{ channel= bootstrap.connect( remote).sync().channel();}
         catch( Exception e)
         {
             throw new RequestHandlerException( TIMEOUT_OCCURRED, e.getMessage(), e);
         }
+
+        if( binaryFraming || messageEncoding)
+            upgrade( channel);
+        return channel;
+    }
+
+    /**
+     * Agent Server 연결을 확인한다. Pool을 사용하는 경우 확인에 사용한 연결은 Pool에 반환되어 이후 요청에 재사용된다.
+     * @throws RequestHandlerException 연결할 수 없는 경우
+     */
+    public void probe() throws RequestHandlerException
+    {
+        giveBack( THROWAWAY, lease( THROWAWAY));
+    }
+
+    /**
+     * THROWAWAY 요청이면 Pool에서 연결을 대여한다.
+     */
+    private Channel lease( Channel channel) throws RequestHandlerException
+    {
+        if( channel!= THROWAWAY)
+            return channel;
+        TransferChannelPool pooled= pool;
+        return pooled!= null ? pooled.acquire() : connect();
+    }
+
+    /**
+     * THROWAWAY 요청이면 대여한 연결을 Pool로 반환한다.
+     */
+    private void giveBack( Channel channel, Channel leased)
+    {
+        if( THROWAWAY!= channel || leased== null)
+            return;
+        TransferChannelPool pooled= pool;
+        if( pooled!= null)
+            pooled.release( leased);
+        else
+            leased.close();
+    }
+
+    /**
+     * INFO /upgrade 요청으로 binary framing과 메시지 단위 본문 압축(Content-Encoding)을 협상한다.
+     * 허용되지 않거나 upgrade를 지원하지 않는 Agent Server의 경우 텍스트 프로토콜과 연결 전체 GZIP 압축을 그대로 사용한다.
+     */
+    private void upgrade( Channel channel) throws RequestHandlerException
+    {
+        TransferMessage request= new TransferMessage( INFO);
+        request.setUri( UPGRADE_);
+        if( binaryFraming)
+            request.headers().add( UPGRADE, BINARY_FRAMING);
+        if( messageEncoding)
+            request.headers().add( UPGRADE, MESSAGE_ENCODING);
+        try
+        {
+            boolean encoding= request( channel, request, response-> response.headers().contains( UPGRADE, MESSAGE_ENCODING, true),
+                    responseTimeout);
+            // 응답 이후에는 Agent Server가 먼저 전송하는 데이터가 없으므로 연결 전체 GZIP 압축 handler를 바로 제거한다.
+            if( encoding)
+                channel.eventLoop().submit( ()-> TransferMessageUtil.removeConnectionCompression( channel.pipeline())).syncUninterruptibly();
+            logger.debug( "upgraded binary framing: {}, message encoding: {}, channel: {}", 
+                    new Object[] { handler( channel).isMultiplexed(), encoding, channel});
+        }
+        catch( ResponseHandlerException e)
+        {
+            logger.debug( "upgrade is not supported. channel: {}", channel);
+        }
+        catch( RequestHandlerException e)
+        {
+            channel.close();
+            throw e;
+        }
     }
 
     /**
@@ -283,15 +571,84 @@ public class TransferClient
     public <R> R request( final Channel channel, TransferMessage request, ResponseConsumer<TransferMessage, R> consumer, long timeout) 
             throws RequestHandlerException, ResponseHandlerException
     {
-        Channel writtable= channel!= THROWAWAY ? channel : connect();
-        writtable.writeAndFlush( request);
-        TransferClientHandler handler= (TransferClientHandler)writtable.pipeline().last();
-        Future<TransferMessage> future= null;
+        Channel writtable= lease( channel);
+        try
+        {
+            TransferMessage response= await( handler( writtable).send( request, null), timeout);
+            return accept( response, consumer);
+        }
+        finally
+        {
+            giveBack( channel, writtable);
+        }
+    }
+
+    /**
+     * Transfer File Agent Server로 메시지를 전달하고 응답을 기다리지 않고 Future를 리턴한다.
+     * 같은 channel로 전달한 요청은 전송 순서대로 응답되므로 응답을 기다리지 않고 연속하여 요청할 수 있다.
+     * Consumer는 event loop가 아닌 별도의 thread에서 실행된다.
+     * @param <R> Agent Server 응답을 처리하여 변환할 타입
+     * @param channel channel로 생성하여 전달하거나 TransferClient.THROWAWAY를 전달하여 생성하도록 요청할 수 있다.
+     * @param request 요청 메시지로 TransferMessage 타입으로 작성된다. COMMAND, URI, HEADER, CONTENT 부분으로 구성된다.
+     * @param consumer Agent Server 응답을 처리할 Consumer
+     * @return Agent Server응답을 Consumer에서 처리할 결과 Future, 실패한 경우 RequestHandlerException 또는 ResponseHandlerException으로 완료된다.
+     */
+    public <R> CompletableFuture<R> requestAsync( Channel channel, TransferMessage request, ResponseConsumer<TransferMessage, R> consumer)
+    {
+        Channel writtable;
+        try{ writtable= lease( channel);}
+        catch( RequestHandlerException e)
+        {
+            CompletableFuture<R> failed= new CompletableFuture<R>();
+            failed.completeExceptionally( e);
+            return failed;
+        }
+        return requestAsync( channel, writtable, request, null, consumer);
+    }
+
+    private <R> CompletableFuture<R> requestAsync( Channel channel, Channel writtable, TransferMessage request,
+            ChunkedInput<? extends TransferObject> content, ResponseConsumer<TransferMessage, R> consumer)
+    {
+        CompletableFuture<R> future= handler( writtable).send( request, content).thenApplyAsync( response->{
+            try{ return accept( response, consumer);}
+            catch( ResponseHandlerException e)
+            {
+                throw new CompletionException( e);
+            }
+        });
+        if( THROWAWAY== channel)
+            future.whenComplete( ( result, cause)-> giveBack( channel, writtable));
+        return future;
+    }
+
+    private TransferClientHandler handler( Channel channel)
+    {
+        return (TransferClientHandler)channel.pipeline().last();
+    }
+
+    /**
+     * 응답을 대기한다. timeout, 취소, 연결 종료 등으로 응답을 수신하지 못한 경우 대기를 취소한다.
+     */
+    private TransferMessage await( CompletableFuture<TransferMessage> future, long timeout) throws RequestHandlerException
+    {
+        try
+        {
+            return timeout< 0 ? future.get() : future.get( timeout, MILLISECONDS);
+        }
+        catch( TimeoutException | CancellationException | InterruptedException | ExecutionException te)
+        {
+            future.cancel( true);
+            throw new RequestHandlerException( TIMEOUT_OCCURRED, "timed out while transfer", te);
+        }
+    }
 
+    /**
+     * 응답 코드를 확인하고 Consumer로 응답을 처리한다.
+     */
+    private <R> R accept( TransferMessage response, ResponseConsumer<TransferMessage, R> consumer) throws ResponseHandlerException
+    {
         try
         {
-            future= handler.sync();
-            TransferMessage response= timeout< 0 ? future.get() : future.get( timeout, TimeUnit.MILLISECONDS);
             TransferResponseCode rsCode= response.headers().getResponseCode();
 
             if( SUCCESS!= ResponseCode.valueOf( rsCode.code()))
@@ -309,12 +666,6 @@ public class TransferClient
 
             return consumer.accept( response);
         }
-        catch( TimeoutException | CancellationException | InterruptedException | ExecutionException te)
-        {
-            if( future!= null)
-                future.cancel( true);
-            throw new RequestHandlerException( TIMEOUT_OCCURRED, "timed out while transfer", te);
-        }
         catch( ResponseHandlerException re)
         {
             logger.error( "response handler failed", re);
@@ -325,11 +676,6 @@ public class TransferClient
             logger.error( "response handler failed", e);
             throw new ResponseHandlerException( BAD_RESPONSE, e.getMessage(), e);
         }
-        finally
-        {
-            if( THROWAWAY== channel)
-                writtable.close();
-        }
     }
 
     /**
@@ -377,17 +723,21 @@ public class TransferClient
      */
     public Health requestHealth( Channel channel, long timeout) throws Exception
     {
-        Channel writtable= channel!= THROWAWAY ? channel : connect();
+        Channel writtable= lease( channel);
         TransferMessage request= new TransferMessage( INFO);
         request.setUri( HEALTH_);
-        writtable.writeAndFlush( request);
+        TransferMessage response;
+        try
+        {
+            response= await( handler( writtable).send( request, null), timeout);
+        }
+        finally
+        {
+            giveBack( channel, writtable);
+        }
 
-        TransferClientHandler handler= (TransferClientHandler)writtable.pipeline().last();
-        Future<TransferMessage> future= null;
         try
         {
-            future= handler.sync();
-            TransferMessage response= timeout< 0 ? future.get() : future.get( timeout, TimeUnit.MILLISECONDS);
             TransferResponseCode rsCode= response.headers().getResponseCode();
             if( SUCCESS== ResponseCode.valueOf( rsCode.code()))
             {
@@ -396,12 +746,6 @@ public class TransferClient
             }
             return Health.status( DOWN).build();
         }
-        catch( TimeoutException | CancellationException | InterruptedException | ExecutionException te)
-        {
-            if( future!= null)
-                future.cancel( true);
-            throw new RequestHandlerException( TIMEOUT_OCCURRED, "timed out while transfer", te);
-        }
         catch( Exception e)
         {
             return Health.status( DOWN).build();
@@ -484,6 +828,8 @@ public class TransferClient
         String uri= TransferMessageUtil.encodedUri( remote.getAddress().getHostAddress(), remote.getPort(), path,
                 opts.toArray( new OptionParameter[opts.size()]));
         request.headers().add( TRANSFER_SOURCE_URI, uri);
+        if( contentEncoding!= ContentEncoding.IDENTITY)
+            request.headers().add( ACCEPT_ENCODING, contentEncoding.value());
 
         return request( channel, request, response->{
             R result= operator.apply( response.content());
@@ -611,7 +957,59 @@ public class TransferClient
         if( !resource.exists() || resource.isDirectory())
             throw new RequestHandlerException( SOURCE_FILE_NOT_FOUND, resource.getAbsolutePath());
 
-        TransferMessage request= new TransferMessage( PUT);
+        Channel writtable= lease( channel);
+        try
+        {
+            TransferMessage request= new TransferMessage( PUT);
+            ChunkedInput<? extends TransferObject> content= preparePut( writtable, request, resource, path, site, options);
+            TransferMessage response= await( handler( writtable).send( request, content), timeout);
+            return accept( response, r-> true);
+        }
+        finally
+        {
+            giveBack( channel, writtable);
+        }
+    }
+
+    /**
+     * Agent Server에 파일을 전송하고 응답을 기다리지 않고 Future를 리턴한다.
+     * 같은 channel로 여러 파일을 연속하여 전송할 수 있으며 각 파일은 전송 순서대로 처리된다.
+     * @param channel channel로 생성하여 전달하거나 TransferClient.THROWAWAY를 전달하여 생성하도록 요청할 수 있다.
+     * @param resource 전송할 파일
+     * @param path Agent Server의 저장 위치
+     * @param site 업무 그룹으로 Root Repository의 경우 null
+     * @param options Agent Server에 파라미터로 전달할 Options
+     * @return 처리 결과 Future, 실패한 경우 RequestHandlerException 또는 ResponseHandlerException으로 완료된다.
+     */
+    public CompletableFuture<Boolean> putAsync( Channel channel, File resource, String path, String site, OptionParameter... options)
+    {
+        Channel writtable= null;
+        try
+        {
+            if( !resource.exists() || resource.isDirectory())
+                throw new RequestHandlerException( SOURCE_FILE_NOT_FOUND, resource.getAbsolutePath());
+
+            writtable= lease( channel);
+            TransferMessage request= new TransferMessage( PUT);
+            ChunkedInput<? extends TransferObject> content= preparePut( writtable, request, resource, path, site, options);
+            return requestAsync( channel, writtable, request, content, r-> true);
+        }
+        catch( Exception e)
+        {
+            giveBack( channel, writtable);
+            CompletableFuture<Boolean> failed= new CompletableFuture<Boolean>();
+            failed.completeExceptionally( e);
+            return failed;
+        }
+    }
+
+    /**
+     * PUT 요청 헤더를 작성하고 Chunk 단위로 전송할 본문을 리턴한다.
+     * @return Chunk 단위로 전송할 본문, 본문이 요청에 포함된 경우 null
+     */
+    private ChunkedInput<? extends TransferObject> preparePut( Channel writtable, TransferMessage request, File resource, 
+            String path, String site, OptionParameter[] options) throws Exception
+    {
         List<OptionParameter> opts= new ArrayList<OptionParameter>();
         if( StringUtils.hasText( site))
             opts.add( OptionParameter.param( OptionParameter.SITE, site));
@@ -620,7 +1018,6 @@ public class TransferClient
         FileData fdata= new FileData( resource.length());
         fdata.setContent( resource);
 
-        Channel writtable= channel!= THROWAWAY ? channel : connect();
         InetSocketAddress local= (InetSocketAddress)writtable.localAddress();
         String srcUri= TransferMessageUtil.encodedUri( local.getAddress().getHostAddress(), local.getPort(), 
                 FileUtil.stripPath( resource.getAbsolutePath()), new OptionParameter[] {});
@@ -633,66 +1030,29 @@ public class TransferClient
             .add( TRANSFER_SOURCE_URI, srcUri)
             .add( TRANSFER_DESTINATION_URI, destUri);
 
+        // 메시지 단위 압축이 협상되지 않은 연결은 연결 전체가 압축되므로 본문을 압축하지 않는다.
+        ContentEncoding encoding= TransferMessageUtil.isConnectionCompressed( writtable) ? ContentEncoding.IDENTITY : 
+                CompressionUtil.select( contentEncoding, resource);
+        if( encoding!= ContentEncoding.IDENTITY)
+            request.headers().add( CONTENT_ENCODING, encoding.value());
+
         if( resource.length()< chunkSize)
         {
             request.setContent( fdata);
-            writtable.writeAndFlush( request);
-        }
-        else
-        {
-            request.headers().add( TRANSFER_ENCODING, CHUNKED);
-            writtable.writeAndFlush( request);
-            TransferChunkedContentEncoder chunk= new TransferChunkedContentEncoder( fdata, chunkSize);
-            writtable.writeAndFlush( chunk);
+            return null;
         }
 
-        TransferClientHandler handler= (TransferClientHandler)writtable.pipeline().last();
-        Future<TransferMessage> future= null;
-        try
-        {
-            future= handler.sync();
-            TransferMessage response= timeout< 0 ? future.get() : future.get( timeout, MILLISECONDS);
-            TransferResponseCode rsCode= response.headers().getResponseCode();
-
-            if( SUCCESS!= ResponseCode.valueOf( rsCode.code()))
-            {
-                StringBuilder sb= new StringBuilder();
-                List<String> reasons= response.headers().getAll( REASON);
-                if( !CollectionUtils.isEmpty( reasons))
-                {
-                    for( String reason: reasons)
-                        sb.append( reason).append( "\n");
-                }
-                throw new ResponseHandlerException( rsCode, sb.toString());
-            }
-            return true;
-        }
-        catch( TimeoutException | CancellationException | InterruptedException | ExecutionException te)
-        {
-            if( future!= null)
-                future.cancel( true);
-            throw new RequestHandlerException( TIMEOUT_OCCURRED, "timed out while transfer", te);
-        }
-        catch( ResponseHandlerException re)
-        {
-            logger.error( "response handler failed", re);
-            throw re;
-        }
-        catch( Exception e)
-        {
-            logger.error( "response handler failed", e);
-            throw new ResponseHandlerException( BAD_RESPONSE, e.getMessage(), e);
-        }
-        finally
-        {
-            if( THROWAWAY== channel)
-                writtable.close();
-        }
+        request.headers().add( TRANSFER_ENCODING, CHUNKED);
+        return TransferMessageUtil.isZeroCopyAvailable( writtable, request) ?
+                new TransferFileRegionEncoder( fdata, chunkSize) : new TransferChunkedContentEncoder( fdata, chunkSize);
     }
 
     /**
      * 수신 Agent Server에 파일을 분한하여 전송
      * 분할 전송이 완료된 뒤에는 Merge Command를 송신하여 수신 Agent Server에서 분할 수신된 파일을 Merge되도록 한다.
+     * 수신 Agent Server가 staging 파일을 할당한 경우 분할된 본문은 위치(Offset) 별로 하나의 파일에 기록되고 Merge는 rename으로 처리된다.
+     * 위치 별로 전송하는 중에 실패한 분할 전송이 있으면 session에 기록된 구간을 조회하여 기록되지 않은 구간만 
+     * PARALLEL_RETRIES 까지 다시 전송한다.
      * @param resource 전송할 파일
      * @param path Agent Server의 저장 위치
      * @param site 업무 그룹으로 Root Repository의 경우 null
@@ -715,165 +1075,515 @@ public class TransferClient
             opts.add( OptionParameter.param( SITE, site));
         CollectionUtils.mergeArrayIntoCollection( options, opts);
 
-        // 파일 사이즈와 동시 처리에 사용할 수 있는 worker thread count를 이용하여 분할 전송할 적절한 사이즈와 동시 처리  thread 수를 계산
-        int concurrent= Math.max( 2, workerGroup.executorCount());
-        int parallelChunk= Math.min( MAX_PARALLEL_CHUNK, (int)( resource.length() / concurrent));
-        
+        // binary framing이 협상된 경우 분할 전송은 연결을 새로 생성하지 않고 stream으로 구분하여 공유한다.
+        final Channel[] shared= binaryFraming ? connectMultiplexed( MAX_SHARED_CHANNELS) : null;
+
+        // 동시 전송 수의 범위와 파일 사이즈를 이용하여 분할 전송할 적절한 사이즈와 동시 처리 thread 수를 계산
+        // 동시 전송 수를 조정하는 경우 최대 동시 전송 수로 여러 구간을 측정할 수 있도록 더 작게 분할한다.
+        final AdaptiveConcurrency adaptive= this.concurrency;
+        TransferChannelPool pooled= pool;
+        final AdaptiveConcurrency.Permits controller= adaptive.begin( shared== null && pooled!= null ? pooled.maxSize() : adaptive.maxConcurrency());
+        int concurrent= controller.cap();
+        long splitSize= adaptive.isAdaptive() ? Math.max( chunkSize, resource.length()/ ( concurrent* PARALLEL_ROUNDS))
+                : resource.length() / concurrent;
+        int parallelChunk= (int)Math.min( MAX_PARALLEL_CHUNK, splitSize);
+
         ExecutorService service= Executors.newFixedThreadPool( concurrent);
-        CountDownLatch latch= new CountDownLatch( (int)Math.ceil( (float)resource.length()/ parallelChunk));
-        // 파일에서 분할하여 읽을 수 있도록 처리
-        ChunkedNioFile chunked= new ChunkedNioFile( resource, parallelChunk);
-        ChunkedNioFileBuf reader= new ChunkedNioFileBuf( chunked);
+        // 분할 범위만 할당하고 각 분할 전송 작업이 자신의 범위를 chunk 단위로 읽어서 전송
+        FileSplitter splitter= new FileSplitter( resource.length(), parallelChunk);
+        List<Split> pending= new ArrayList<Split>();
+        for( Split next; ( next= splitter.nextSplit())!= null; )
+            pending.add( next);
 
-        int tasks= (int)latch.getCount();
-        logger.debug( "content:{}, concurrent: {}, chunkSize: {}, tasks: {}", 
-                new Object[] { resource.length(), concurrent, parallelChunk, tasks});
+        logger.debug( "content:{}, concurrent: {}~{}, chunkSize: {}, tasks: {}", 
+                new Object[] { resource.length(), controller.concurrency(), concurrent, parallelChunk, pending.size()});
 
+        final ContentEncoding encoding= CompressionUtil.select( contentEncoding, resource);
         final List<String> splits= Collections.synchronizedList( new LinkedList<String>());
         final List<Exception> causes= Collections.synchronizedList( new LinkedList<Exception>());
         try
         {
+            Channel control= shared!= null ? shared[0] : THROWAWAY;
             if( opts.stream().filter( opt->{ return opt.name().equals( ON_EXIST) 
                     && opt.value().equalsIgnoreCase( FAIL_ONEXIST);}).count()!= 0
-                    && requestResourceExist( THROWAWAY, path, site))
+                    && requestResourceExist( control, path, site))
                 throw new RequestHandlerException( ALREADY_EXIST, "target file["+ path+ "] is already exist");
             
             // 전체 과정에 실패한 경우 분할 전송된 파일을 수신 서버에서 정리할 수 있도록 timeout을 관리하는 session 생성 요청 
-            TransferMessage session= new TransferMessage( ACTION);
-            session.setUri( SESSION_);
-            String sessionId= request( THROWAWAY, session, response->{
-                return response.headers().get( SESSION_ID);
-            });
-
-            logger.debug( "sessionId: {}, for tasks: {}", sessionId, tasks);
-            for( int i= tasks; i> 0 ; i--)
+            // 전체 크기와 저장 위치를 함께 전달하여 수신 서버가 staging 파일을 할당하면 분할된 본문을 위치(Offset) 별로 하나의 파일에 기록한다.
+            final String targetUri= TransferMessageUtil.encodedUri( remote.getAddress().getHostAddress(), remote.getPort(),
+                    path, opts.toArray( new OptionParameter[opts.size()]));
+            TransferHeaders sessionHeaders= requestStagingSession( control, resource.length(), targetUri);
+            final String sessionId= sessionHeaders.get( SESSION_ID);
+            final boolean positional= sessionHeaders.contains( RESOURCE_LENGTH);
+
+            logger.debug( "sessionId: {}, for tasks: {}, shared channels: {}", sessionId, pending.size(), shared!= null ? shared.length : 0);
+            for( int attempt= 0; ; attempt++)
             {
-                service.execute( new Runnable(){
-                    @Override
-                    public void run()
-                    {
-                        String suffix= null;
-                        String splitname= null;
-                        ByteBuf buf= null;
-                        Channel channel= null;
-                        try
+                final Queue<Split> queue= new ConcurrentLinkedQueue<Split>( pending);
+                int tasks= pending.size();
+                CountDownLatch latch= new CountDownLatch( tasks);
+                for( int i= tasks; i> 0 ; i--)
+                {
+                    final int index= i;
+                    service.execute( new Runnable(){
+                        @Override
+                        public void run()
                         {
-                            channel= connect();
-                            InetSocketAddress local= (InetSocketAddress)channel.localAddress();
-                            SplittedBuf splitted= reader.nextBuf( channel.alloc());
-                            suffix= splitted.suffix;
-                            // 분할된 파일 이름을 고유한 이름으로 생성
-                            // .split%d로 지정된 suffix는 파일이 분할 순서대로 순차적으로 증가
-                            // @see easymaster.transfer.file.client.ChunkedNioFileBuf.SplittedBuf 
-                            // @see easymaster.transfer.file.util.FileUtil
-                            splitname= FileUtil.onlyPath( path)
-                                    + PATH_SEPARATOR+ UUID.randomUUID().toString().replace( '-', '_')+ suffix;
-                            buf= splitted.buf;
-
-                            logger.debug( "parallel chunk- readable: {}, progress: {}", buf.readableBytes(), chunked.progress());
-                            
-                            // PUT 전송 명령 생성
-                            TransferMessage request= new TransferMessage( PUT);
-                            String srcUri= TransferMessageUtil.encodedUri( local.getAddress().getHostAddress(), local.getPort(),
-                                    FileUtil.stripPath( resource.getAbsolutePath()), new OptionParameter[] {});
-
-                            String destUri= TransferMessageUtil.encodedUri(
-                                    remote.getAddress().getHostAddress(), remote.getPort(), splitname,
-                                    StringUtils.hasText( site) ? new OptionParameter[]
-                                            {
-                                                OptionParameter.param( SITE, site),
-                                                OptionParameter.param( DELET_ON_EXIT, TRUE)
-                                            }
-                                            : new OptionParameter[] {OptionParameter.param( DELET_ON_EXIT, TRUE)});
-
-                            request.headers()
-                                .add( SESSION_ID, sessionId)
-                                .add( CONTENT_LENGTH, buf.readableBytes())
-                                .add( TRANSFER_SOURCE_URI, srcUri)
-                                .add( TRANSFER_DESTINATION_URI, destUri)
-                                .add( TRANSFER_ENCODING, CHUNKED);
-
-                            // 전송 명령 write
-                            // 분할된 파일을 Chunk단위로 read, write
-                            channel.writeAndFlush( request);
-                            TransferParallelContentEncoder chunk= new TransferParallelContentEncoder( buf, chunkSize);
-                            channel.writeAndFlush( chunk);
-
-                            // 전송 요청의 완료 응답을 대기
-                            TransferClientHandler handler= (TransferClientHandler)channel.pipeline().last();
-                            logger.debug( "sync for future response");
-                            Future<TransferMessage> future= handler.sync();
-                            TransferMessage response= future.get();
-                            logger.debug( "awaked for future response");
-                            TransferResponseCode rsCode= response.headers().getResponseCode();
-
-                            // 분할된 파일 전송의 응답을 처리
-                            if( SUCCESS!= ResponseCode.valueOf( rsCode.code()))
+                            Split splitted= null;
+                            String splitname= null;
+                            Channel channel= null;
+                            boolean acquired= false;
+                            boolean succeeded= false;
+                            long sent= 0;
+                            long started= 0;
+                            long ackNanos= 0;
+                            try
                             {
-                                StringBuilder sb= new StringBuilder();
-                                List<String> reasons= response.headers().getAll( REASON);
-                                if( !CollectionUtils.isEmpty( reasons))
-                                {
-                                    for( String reason: reasons)
-                                        sb.append( reason).append( "\n");
-                                }
-                                throw new ResponseHandlerException( rsCode, sb.toString());
+                                // 조정된 동시 전송 수를 넘지 않도록 대기
+                                controller.acquire();
+                                acquired= true;
+                                started= System.nanoTime();
+                                splitted= queue.poll();
+                                channel= shared!= null ? shared[index% shared.length] : lease( THROWAWAY);
+                                // 분할된 파일 이름을 고유한 이름으로 생성
+                                // .split%d로 지정된 suffix는 파일이 분할 순서대로 순차적으로 증가
+                                // @see easymaster.transfer.file.client.FileSplitter.Split 
+                                // @see easymaster.transfer.file.util.FileUtil
+                                if( !positional)
+                                    splitname= FileUtil.onlyPath( path)
+                                        + PATH_SEPARATOR+ UUID.randomUUID().toString().replace( '-', '_')+ splitted.suffix;
+
+                                logger.debug( "parallel chunk- offset: {}, length: {}", splitted.offset, splitted.length);
+                                
+                                String destUri= positional ? targetUri : TransferMessageUtil.encodedUri(
+                                        remote.getAddress().getHostAddress(), remote.getPort(), splitname,
+                                        StringUtils.hasText( site) ? new OptionParameter[]
+                                                {
+                                                    OptionParameter.param( SITE, site),
+                                                    OptionParameter.param( DELET_ON_EXIT, TRUE)
+                                                }
+                                                : new OptionParameter[] {OptionParameter.param( DELET_ON_EXIT, TRUE)});
+
+                                ackNanos= putRange( channel, resource, sessionId, destUri, encoding, splitted, positional);
+                                if( !positional)
+                                    splits.add( splitname);
+                                sent= splitted.length;
+                                succeeded= true;
+                                logger.debug( "resource: {} [{}] transfer succeeded.", path, splitted.offset);
+                            }
+                            catch( Exception e)
+                            {
+                                logger.error( "parall put reqeust[{}] range[{}] processing is failed", path, 
+                                        splitted!= null ? splitted.offset : -1, e);
+                                causes.add( e);
+                            }
+                            finally
+                            {
+                                if( shared== null) giveBack( THROWAWAY, channel);
+                                if( acquired)
+                                    controller.release( sent, System.nanoTime()- started, ackNanos, succeeded);
+                                latch.countDown();
+                                logger.debug( "latch countdown: {}", splitted!= null ? splitted.offset : -1);
                             }
-
-                            splits.add( splitname);
-                            logger.debug( "resource: {} transfer succeeded.", splitname);
-                        }
-                        catch( Exception e)
-                        {
-                            logger.error( "parall put reqeust[{}} processing is failed", splitname, e);
-                            causes.add( e);
-                        }
-                        finally
-                        {
-                            if( channel!= null) channel.close();
-                            latch.countDown();
-                            logger.debug( "latch countdown: {}", suffix);
                         }
-                    }
-                });
+                    });
+                }
+
+                // 모든 Executor Thread에서 분할 전송 처리(응답 수신)가 완료될 때까지 대기
+                latch.await();
+                if( causes.isEmpty())
+                    break;
+                // 분할 파일로 전송하는 경우 어떤 분할 파일이 병합되었는지 알 수 없으므로 다시 전송하지 않는다.
+                if( !positional || attempt>= PARALLEL_RETRIES)
+                    throw causes.get( 0);
+
+                // 수신 서버의 session에 기록된 구간을 조회하여 기록되지 않은 구간만 다시 전송한다.
+                logger.info( "parallel put [{}] is failed {} of {} ranges. retry: {}", new Object[] { path, causes.size(), tasks, attempt+ 1});
+                Thread.sleep( PARALLEL_RETRY_DELAY_MILLIS* ( attempt+ 1));
+                if( shared!= null)
+                    reconnect( shared);
+                pending= requestMissingRanges( shared!= null ? shared[0] : THROWAWAY, sessionId, parallelChunk);
+                causes.clear();
+                if( pending.isEmpty())
+                    break;
             }
-
-            // 모든 Executor Thread에서 분할 전송 처리(응답 수신)가 완료될 때까지 대기
-            latch.await();
+            controller.end();
 
             logger.debug( "--------------------------------------------");
             logger.debug( "awaked for merge request");
             logger.debug( "--------------------------------------------");
 
-            if( !causes.isEmpty())
-                throw causes.get( 0);
-
             // Tasks가 모두 실행(응답 수신) 완료 되었으므로 수신 Agent Server Merge Command Request를 전송 
-            Channel channel= connect();
-            InetSocketAddress local= (InetSocketAddress)channel.localAddress();
+            return requestMerge( shared!= null ? shared[0] : THROWAWAY, resource, path, opts, sessionId, positional ? null : splits);
+        }
+        catch( ResponseHandlerException re)
+        {
+            logger.error( "response handler failed", re);
+            throw re;
+        }
+        catch( Exception e)
+        {
+            logger.error( "response handler failed", e);
+            throw new ResponseHandlerException( BAD_RESPONSE, e.getMessage(), e);
+        }
+        catch( Throwable th)
+        {
+            logger.error( "response handler failed", th);
+            throw new ResponseHandlerException( BAD_RESPONSE, th.getMessage(), th);
+        }
+        finally
+        {
+            logger.debug( "service shutdown now");
+            if( service!= null) service.shutdownNow();
+            if( shared!= null)
+            {
+                for( Channel channel: shared)
+                    channel.close();
+            }
+        }
+    }
+
+    /**
+     * 수신 Agent Server에 파일을 하나의 연결로 이어받기가 가능하도록 전송한다.
+     * 수신 Agent Server가 할당한 staging 파일의 위치(Offset)에 전송하므로 연결이 끊긴 경우 disk에 반영된 구간은 session에 기록되고,
+     * 새로운 연결로 session에 기록되지 않은 구간부터 PARALLEL_RETRIES 까지 이어서 전송한 후 Merge Command로 저장 위치에 반영한다.
+     * 수신 Agent Server가 staging 파일을 할당하지 않는 경우 기본 Put Request로 처리한다.
+     * @param resource 전송할 파일
+     * @param path Agent Server의 저장 위치
+     * @param site 업무 그룹으로 Root Repository의 경우 null
+     * @param options Agent Server에 파라미터로 전달할 Options
+     * @return boolean 처리 결과
+     * @throws Exception
+     */
+    public boolean requestPutResumableResource( File resource, String path, String site, OptionParameter... options)
+            throws Exception
+    {
+        if( !resource.exists() || resource.isDirectory())
+            throw new RequestHandlerException( SOURCE_FILE_NOT_FOUND, resource.getAbsolutePath());
+
+        List<OptionParameter> opts= new ArrayList<OptionParameter>();
+        if( StringUtils.hasText( site))
+            opts.add( OptionParameter.param( SITE, site));
+        CollectionUtils.mergeArrayIntoCollection( options, opts);
+
+        if( opts.stream().filter( opt->{ return opt.name().equals( ON_EXIST) 
+                && opt.value().equalsIgnoreCase( FAIL_ONEXIST);}).count()!= 0
+                && requestResourceExist( THROWAWAY, path, site))
+            throw new RequestHandlerException( ALREADY_EXIST, "target file["+ path+ "] is already exist");
+
+        String targetUri= TransferMessageUtil.encodedUri( remote.getAddress().getHostAddress(), remote.getPort(),
+                path, opts.toArray( new OptionParameter[opts.size()]));
+        TransferHeaders sessionHeaders= requestStagingSession( THROWAWAY, resource.length(), targetUri);
+        String sessionId= sessionHeaders.get( SESSION_ID);
+        if( !sessionHeaders.contains( RESOURCE_LENGTH))
+            return requestPutResource( THROWAWAY, resource, path, site, options);
+
+        ContentEncoding encoding= CompressionUtil.select( contentEncoding, resource);
+        List<Split> pending= new ArrayList<Split>();
+        FileSplitter.split( pending, 0, resource.length(), resource.length());
+        for( int attempt= 0; !pending.isEmpty(); attempt++)
+        {
             try
             {
-                TransferMessage request= new TransferMessage( ACTION);
-                request.setUri( MERGE_);
-                String srcUri= TransferMessageUtil.encodedUri( local.getAddress().getHostAddress(), local.getPort(),
-                        FileUtil.stripPath( resource.getAbsolutePath()), new OptionParameter[] {});
-
-                String destUri= TransferMessageUtil.encodedUri( remote.getAddress().getHostAddress(), remote.getPort(),
-                        path, opts.toArray( new OptionParameter[opts.size()]));
-
-                request.headers()
-                    .add( SESSION_ID, sessionId)
-                    .add( TRANSFER_SOURCE_URI, srcUri)
-                    .add( TRANSFER_DESTINATION_URI, destUri);
+                for( Split range: pending)
+                {
+                    Channel channel= lease( THROWAWAY);
+                    try
+                    {
+                        putRange( channel, resource, sessionId, targetUri, encoding, range, true);
+                    }
+                    finally
+                    {
+                        giveBack( THROWAWAY, channel);
+                    }
+                }
+                break;
+            }
+            catch( Exception e)
+            {
+                if( attempt>= PARALLEL_RETRIES)
+                    throw e;
+                logger.info( "put [{}] is interrupted. resume: {}", path, attempt+ 1, e);
+            }
+
+            // 수신 서버의 session에 기록된 구간을 조회하여 기록되지 않은 구간부터 이어서 전송한다.
+            Thread.sleep( PARALLEL_RETRY_DELAY_MILLIS* ( attempt+ 1));
+            pending= requestMissingRanges( THROWAWAY, sessionId, resource.length());
+        }
+        return requestMerge( THROWAWAY, resource, path, opts, sessionId, null);
+    }
+
+    /**
+     * 분할 전송된 파일을 정리하고 병합할 session을 생성한다.
+     * 전체 크기와 저장 위치를 함께 전달하며 수신 서버가 staging 파일을 할당한 경우 응답에 RESOURCE_LENGTH가 포함된다.
+     */
+    private TransferHeaders requestStagingSession( Channel channel, long length, String targetUri) throws Exception
+    {
+        TransferMessage session= new TransferMessage( ACTION);
+        session.setUri( SESSION_);
+        session.headers()
+            .add( RESOURCE_LENGTH, length)
+            .add( TRANSFER_DESTINATION_URI, targetUri);
+        return request( channel, session, response->{
+            return response.headers();
+        });
+    }
+
+    /**
+     * 파일의 범위를 전송하고 응답을 대기한다.
+     * @param destUri 저장 위치, 위치(Offset) 별로 전송하는 경우 session의 저장 위치, 그 외에는 분할 파일의 위치
+     * @param positional session의 staging 파일에 위치 별로 전송하는 경우 true
+     * @return 마지막 chunk 전달부터 응답까지의 시간(nanoseconds)
+     */
+    private long putRange( Channel channel, File resource, String sessionId, String destUri, ContentEncoding encoding, 
+            Split range, boolean positional) throws Exception
+    {
+        long started= System.nanoTime();
+        InetSocketAddress local= (InetSocketAddress)channel.localAddress();
+        // PUT 전송 명령 생성
+        TransferMessage request= new TransferMessage( PUT);
+        String srcUri= TransferMessageUtil.encodedUri( local.getAddress().getHostAddress(), local.getPort(),
+                FileUtil.stripPath( resource.getAbsolutePath()), new OptionParameter[] {});
+
+        request.headers()
+            .add( SESSION_ID, sessionId)
+            .add( CONTENT_LENGTH, range.length)
+            .add( TRANSFER_SOURCE_URI, srcUri)
+            .add( TRANSFER_DESTINATION_URI, destUri)
+            .add( TRANSFER_ENCODING, CHUNKED);
+        if( encoding!= ContentEncoding.IDENTITY && !TransferMessageUtil.isConnectionCompressed( channel))
+            request.headers().add( CONTENT_ENCODING, encoding.value());
+        if( positional)
+            request.headers().add( OFFSET, range.offset);
+
+        // 전송 명령 write
+        // 분할된 파일을 Chunk단위로 read, write
+        TransferParallelContentEncoder chunk= new TransferParallelContentEncoder( resource, range.offset, range.length, chunkSize);
+        CompletableFuture<TransferMessage> future= handler( channel).send( request, chunk);
+
+        // 전송 요청의 완료 응답을 대기
+        logger.debug( "sync for future response. stream: {}", request.streamId());
+        TransferMessage response= future.get();
+        long responded= System.nanoTime();
+        logger.debug( "awaked for future response");
+        TransferResponseCode rsCode= response.headers().getResponseCode();
+
+        // 분할된 파일 전송의 응답을 처리
+        if( SUCCESS!= ResponseCode.valueOf( rsCode.code()))
+        {
+            StringBuilder sb= new StringBuilder();
+            List<String> reasons= response.headers().getAll( REASON);
+            if( !CollectionUtils.isEmpty( reasons))
+            {
+                for( String reason: reasons)
+                    sb.append( reason).append( "\n");
+            }
+            throw new ResponseHandlerException( rsCode, sb.toString());
+        }
+        return chunk.completedNanos()> 0 ? responded- chunk.completedNanos() : responded- started;
+    }
+
+    /**
+     * 수신 서버의 session에서 staging 파일에 기록되지 않은 구간을 조회한다.
+     * @param splitSize 다시 전송할 범위의 최대 크기
+     * @return 다시 전송할 범위, 모든 구간이 기록된 경우 빈 목록
+     */
+    private List<Split> requestMissingRanges( Channel channel, String sessionId, long splitSize) throws Exception
+    {
+        TransferMessage request= new TransferMessage( ACTION);
+        request.setUri( SESSION_STATUS_);
+        request.headers().add( SESSION_ID, sessionId);
+        return request( channel, request, response->{
+            List<Split> missing= missingRanges( response.headers(), splitSize);
+            logger.debug( "session [{}] received: {}, missing ranges: {}", new Object[] { sessionId, 
+                    response.headers().getAll( RECEIVED_RANGE), missing.size()});
+            return missing;
+        });
+    }
+
+    /**
+     * session 조회 응답의 기록된 구간(Received-Range)과 전체 크기로 기록되지 않은 구간을 계산한다.
+     * @param headers session 조회 응답 헤더, 기록된 구간은 시작 위치 순서로 전달된다.
+     * @param splitSize 다시 전송할 범위의 최대 크기
+     * @return 다시 전송할 범위, 모든 구간이 기록된 경우 빈 목록
+     */
+    static List<Split> missingRanges( TransferHeaders headers, long splitSize)
+    {
+        List<Split> missing= new ArrayList<Split>();
+        long covered= 0;
+        for( String received: headers.getAll( RECEIVED_RANGE))
+        {
+            int separator= received.indexOf( '-');
+            long offset= Long.parseLong( received.substring( 0, separator).trim());
+            FileSplitter.split( missing, covered, offset, splitSize);
+            covered= Math.max( covered, Long.parseLong( received.substring( separator+ 1).trim()));
+        }
+        FileSplitter.split( missing, covered, headers.getLong( RESOURCE_LENGTH, covered), splitSize);
+        return missing;
+    }
+
+    /**
+     * 분할 전송이 완료된 session의 병합을 요청한다.
+     * @param splits 병합할 분할 파일, 위치(Offset) 별로 전송되어 staging 파일을 rename하는 경우 null
+     */
+    private boolean requestMerge( Channel channel, File resource, String path, List<OptionParameter> opts, String sessionId, 
+            List<String> splits) throws Exception
+    {
+        Channel writtable= lease( channel);
+        InetSocketAddress local= (InetSocketAddress)writtable.localAddress();
+        try
+        {
+            TransferMessage request= new TransferMessage( ACTION);
+            request.setUri( MERGE_);
+            String srcUri= TransferMessageUtil.encodedUri( local.getAddress().getHostAddress(), local.getPort(),
+                    FileUtil.stripPath( resource.getAbsolutePath()), new OptionParameter[] {});
+
+            String destUri= TransferMessageUtil.encodedUri( remote.getAddress().getHostAddress(), remote.getPort(),
+                    path, opts.toArray( new OptionParameter[opts.size()]));
+
+            request.headers()
+                .add( SESSION_ID, sessionId)
+                .add( TRANSFER_SOURCE_URI, srcUri)
+                .add( TRANSFER_DESTINATION_URI, destUri);
+            // 위치 별로 전송된 경우 수신 서버는 staging 파일을 확인한 후 rename한다.
+            if( splits!= null)
                 splits.forEach( split->{ request.headers().add( MERGE_RESOURCE, split); });
 
-                return request( channel, request, response->{ return true; });
+            return request( writtable, request, response->{ return true; });
+        }
+        finally
+        {
+            giveBack( channel, writtable);
+        }
+    }
+
+    /**
+     * 끊어진 공유 연결을 다시 생성한다.
+     */
+    private void reconnect( Channel[] shared) throws RequestHandlerException
+    {
+        for( int i= 0; i< shared.length; i++)
+        {
+            if( !shared[i].isActive())
+            {
+                shared[i].close();
+                shared[i]= connect();
+            }
+        }
+    }
+
+    /**
+     * Agent Server의 파일을 범위(Offset, Range) 별로 나누어 동시에 수신한다.
+     * 수신할 위치에 파일 크기만큼 미리 할당한 임시 파일을 생성하고 각 범위는 수신한 위치(Offset)에 바로 기록된다.
+     * 모든 범위를 수신한 후 파일 크기와 원본 파일의 크기, 수정 시간이 수신 중에 변경되지 않았는지 확인하고 저장 위치로 rename한다.
+     * 동시 수신 수는 분할 전송과 같이 getParallelConcurrency()의 범위에서 처리량에 따라 조정된다.
+     * @param target 수신한 파일을 저장할 위치, 이미 있는 경우 대체된다.
+     * @param path Agent Server의 파일 경로
+     * @param site 업무 그룹으로 Root Repository의 경우 null
+     * @param options Agent Server에 파라미터로 전달할 Options
+     * @return boolean 처리 결과
+     * @throws Exception
+     */
+    public boolean requestGetParallelResource( File target, String path, String site, OptionParameter... options)
+            throws Exception
+    {
+        ObjectUtil.checkNotNull( target, "target");
+        if( target.isDirectory())
+            throw new IllegalArgumentException( "target ["+ target.getAbsolutePath()+ "] is directory");
+
+        List<OptionParameter> opts= new ArrayList<OptionParameter>();
+        if( StringUtils.hasText( site))
+            opts.add( OptionParameter.param( SITE, site));
+        CollectionUtils.mergeArrayIntoCollection( options, opts);
+        final String sourceUri= TransferMessageUtil.encodedUri( remote.getAddress().getHostAddress(), remote.getPort(), path,
+                opts.toArray( new OptionParameter[opts.size()]));
+
+        // 원본 파일의 크기와 수정 시간, 모든 범위의 응답과 수신 완료 후 다시 확인한 값이 같아야 한다.
+        final long[] source= requestResourceStat( sourceUri);
+        final long length= source[0];
+
+        // binary framing이 협상된 경우 범위 요청은 연결을 새로 생성하지 않고 stream으로 구분하여 공유한다.
+        final Channel[] shared= binaryFraming ? connectMultiplexed( MAX_SHARED_CHANNELS) : null;
+
+        final AdaptiveConcurrency adaptive= this.concurrency;
+        TransferChannelPool pooled= pool;
+        final AdaptiveConcurrency.Permits controller= adaptive.begin( shared== null && pooled!= null ? pooled.maxSize() : adaptive.maxConcurrency());
+        int concurrent= controller.cap();
+        long rangeSize= adaptive.isAdaptive() ? length/ ( concurrent* PARALLEL_ROUNDS) : length/ concurrent;
+        FileSplitter splitter= new FileSplitter( length, Math.max( chunkSize, Math.min( MAX_PARALLEL_CHUNK, rangeSize)));
+        int tasks= Math.max( 1, splitter.splits());
+        CountDownLatch latch= new CountDownLatch( tasks);
+        logger.debug( "content:{}, concurrent: {}~{}, tasks: {}", new Object[] { length, controller.concurrency(), concurrent, tasks});
+
+        // 수신할 위치와 같은 directory에 파일 크기만큼 할당한 임시 파일을 생성하여 rename이 복사 없이 처리되도록 한다.
+        final File part= TempFileManager.create( target.getAbsoluteFile().getParentFile(), FileData.prefix, FileData.postfix, true);
+        final List<Exception> causes= Collections.synchronizedList( new LinkedList<Exception>());
+        ExecutorService service= Executors.newFixedThreadPool( Math.min( concurrent, tasks));
+        boolean completed= false;
+        try
+        {
+            try( RandomAccessFile raf= new RandomAccessFile( part, "rw"))
+            {
+                raf.setLength( length);
             }
-            finally
+
+            for( int i= tasks; i> 0 ; i--)
             {
-                if( chunked!= null) chunked.close();
-                if( channel!= null) channel.close();
+                final int index= i;
+                service.execute( ()->{
+                    Split range= null;
+                    Channel channel= null;
+                    boolean acquired= false;
+                    boolean succeeded= false;
+                    long started= 0;
+                    try
+                    {
+                        controller.acquire();
+                        acquired= true;
+                        started= System.nanoTime();
+                        range= splitter.nextSplit();
+                        if( range== null)
+                        {
+                            succeeded= true;
+                            return;
+                        }
+                        channel= shared!= null ? shared[index% shared.length] : lease( THROWAWAY);
+                        getRange( channel, sourceUri, part, range, source);
+                        succeeded= true;
+                    }
+                    catch( Exception e)
+                    {
+                        logger.error( "parallel get request[{}] range[{}] processing is failed", path, range!= null ? range.offset : -1, e);
+                        causes.add( e);
+                    }
+                    finally
+                    {
+                        if( shared== null) giveBack( THROWAWAY, channel);
+                        if( acquired)
+                            controller.release( succeeded && range!= null ? range.length : 0, System.nanoTime()- started, 0, succeeded);
+                        latch.countDown();
+                    }
+                });
             }
+
+            // 모든 범위의 수신이 완료될 때까지 대기
+            latch.await();
+            controller.end();
+            if( !causes.isEmpty())
+                throw causes.get( 0);
+
+            // 전체 파일 확인: 할당된 크기와 원본 파일의 크기, 수정 시간이 수신 중에 변경되지 않았는지 확인
+            long[] after= requestResourceStat( sourceUri);
+            if( part.length()!= length || after[0]!= source[0] || after[1]!= source[1])
+                throw new ResponseHandlerException( BAD_RESPONSE, "resource ["+ path+ "] is changed while receiving. length: "
+                        + source[0]+ " -> "+ after[0]+ ", modified: "+ source[1]+ " -> "+ after[1]+ ", received: "+ part.length());
+
+            Files.move( part.toPath(), target.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            FileSync.forceDirectory( target.getAbsoluteFile().getParentFile().toPath());
+            completed= true;
+            logger.debug( "resource [{}] is received to [{}]", path, target.getAbsolutePath());
+            return true;
         }
         catch( ResponseHandlerException re)
         {
@@ -885,18 +1595,259 @@ public class TransferClient
             logger.error( "response handler failed", e);
             throw new ResponseHandlerException( BAD_RESPONSE, e.getMessage(), e);
         }
-        catch( Throwable th)
+        finally
         {
-            logger.error( "response handler failed", th);
-            throw new ResponseHandlerException( BAD_RESPONSE, th.getMessage(), th);
+            service.shutdownNow();
+            if( !completed)
+                FileUtil.deleteFile( part);
+            TempFileManager.release( part);
+            if( shared!= null)
+            {
+                for( Channel channel: shared)
+                    channel.close();
+            }
+        }
+    }
+
+    /**
+     * Agent Server의 파일을 이어받기가 가능하도록 수신한다.
+     * 수신중인 파일은 baseDir의 PARTIAL_DIR에 원본 파일의 크기와 수정 시간(검증 값)을 포함한 이름으로 보관되며,
+     * 연결이 끊기거나 다시 요청한 경우 보관된 크기(Offset)부터 If-Match로 같은 원본 파일인지 확인하여 나머지만 수신한다.
+     * 원본 파일이 변경된 경우 보관된 파일을 삭제하고 처음부터 다시 수신하며, 이어받기는 PARALLEL_RETRIES 까지 시도한다.
+     * @param target 수신한 파일을 저장할 위치, 이미 있는 경우 대체된다.
+     * @param path Agent Server의 파일 경로
+     * @param site 업무 그룹으로 Root Repository의 경우 null
+     * @param options Agent Server에 파라미터로 전달할 Options
+     * @return boolean 처리 결과
+     * @throws Exception
+     */
+    public boolean requestGetResumableResource( File target, String path, String site, OptionParameter... options)
+            throws Exception
+    {
+        ObjectUtil.checkNotNull( target, "target");
+        if( target.isDirectory())
+            throw new IllegalArgumentException( "target ["+ target.getAbsolutePath()+ "] is directory");
+
+        List<OptionParameter> opts= new ArrayList<OptionParameter>();
+        if( StringUtils.hasText( site))
+            opts.add( OptionParameter.param( SITE, site));
+        CollectionUtils.mergeArrayIntoCollection( options, opts);
+        final String sourceUri= TransferMessageUtil.encodedUri( remote.getAddress().getHostAddress(), remote.getPort(), path,
+                opts.toArray( new OptionParameter[opts.size()]));
+
+        File dir= new File( baseDir, PARTIAL_DIR);
+        if( !DirectoryCache.ensure( dir))
+            throw new RequestHandlerException( FILE_PERMISSION_ERROR, "Can not create partial dir ["+ dir.getAbsolutePath()+ "]");
+        // 같은 Agent Server의 같은 파일은 같은 이름으로 보관하여 다음 요청에서 이어서 받는다.
+        String key= UUID.nameUUIDFromBytes( sourceUri.getBytes( StandardCharsets.UTF_8)).toString();
+
+        Exception cause= null;
+        for( int attempt= 0; attempt<= PARALLEL_RETRIES; attempt++)
+        {
+            if( attempt> 0)
+                Thread.sleep( PARALLEL_RETRY_DELAY_MILLIS* attempt);
+            File partial= null;
+            try
+            {
+                long[] source= requestResourceStat( sourceUri);
+                partial= partial( dir, key, source);
+                getPartial( sourceUri, partial, source);
+
+                try
+                {
+                    Files.move( partial.toPath(), target.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+                }
+                catch( AtomicMoveNotSupportedException e)
+                {
+                    // baseDir과 저장 위치가 다른 file system인 경우 복사한다.
+                    Files.move( partial.toPath(), target.toPath(), REPLACE_EXISTING);
+                }
+                FileSync.forceDirectory( target.getAbsoluteFile().getParentFile().toPath());
+                logger.debug( "resource [{}] is received to [{}]", path, target.getAbsolutePath());
+                return true;
+            }
+            catch( RequestHandlerException re)
+            {
+                // 원본 파일이 없거나 수신할 위치를 만들 수 없는 경우 다시 시도하지 않는다.
+                throw re;
+            }
+            catch( ResponseHandlerException re)
+            {
+                // 원본 파일이 변경된 경우 보관된 파일을 삭제하고 처음부터 다시 받는다.
+                if( PRECONDITION_FAILED.equals( re.getResponseCode()) && partial!= null)
+                    FileUtil.deleteFile( partial);
+                else if( SOURCE_FILE_NOT_FOUND.equals( re.getResponseCode()) || BAD_REQUEST.equals( re.getResponseCode()))
+                    throw re;
+                cause= re;
+            }
+            catch( Exception e)
+            {
+                cause= e;
+            }
+            logger.info( "get [{}] is interrupted. received: {}, resume: {}", 
+                    new Object[] { path, partial!= null ? partial.length() : 0, attempt+ 1, cause});
+        }
+        throw cause instanceof ResponseHandlerException ? (ResponseHandlerException)cause :
+            new ResponseHandlerException( BAD_RESPONSE, cause.getMessage(), cause);
+    }
+
+    /**
+     * 보관중인 파일을 리턴한다. 같은 파일을 받다가 원본 파일이 변경되어 남겨진 파일은 삭제한다.
+     * @param source 원본 파일의 크기와 수정 시간
+     */
+    private File partial( File dir, String key, long[] source) throws Exception
+    {
+        String name= key+ "-"+ TransferMessageUtil.validator( source[0], source[1])+ PARTIAL_POSTFIX;
+        File[] stales= dir.listFiles( ( d, n)-> n.startsWith( key+ "-") && !n.equals( name));
+        if( stales!= null)
+        {
+            for( File stale: stales)
+            {
+                logger.info( "partial file [{}] of changed resource will be deleted", stale);
+                FileUtil.deleteFile( stale);
+            }
+        }
+
+        File partial= new File( dir, name);
+        if( partial.length()> source[0])
+            FileUtil.deleteFile( partial);
+        if( !partial.exists())
+            Files.createFile( partial.toPath());
+        return partial;
+    }
+
+    /**
+     * 보관중인 파일의 크기(Offset)부터 나머지를 수신하여 보관중인 파일에 추가한다.
+     * 수신에 실패한 경우 받은 부분까지 disk에 반영하여 다음 요청에서 이어서 받을 수 있도록 한다.
+     * @param source 원본 파일의 크기와 수정 시간, If-Match로 전달하여 수신 중에 원본 파일이 변경되지 않았는지 확인한다.
+     */
+    private void getPartial( String sourceUri, File partial, long[] source) throws Exception
+    {
+        long offset= partial.length();
+        if( offset== source[0])
+            return;
+
+        TransferMessage request= new TransferMessage( GET);
+        request.headers()
+            .add( TRANSFER_SOURCE_URI, sourceUri)
+            .add( OFFSET, offset)
+            .add( IF_MATCH, TransferMessageUtil.validator( source[0], source[1]));
+        if( contentEncoding!= ContentEncoding.IDENTITY)
+            request.headers().add( ACCEPT_ENCODING, contentEncoding.value());
+
+        FileData receiver= new FileData( partial, offset, source[0]- offset);
+        Channel channel= lease( THROWAWAY);
+        TransferMessage response= null;
+        try
+        {
+            response= handler( channel).send( request, null, receiver).get();
+            TransferResponseCode rsCode= response.headers().getResponseCode();
+            if( SUCCESS!= ResponseCode.valueOf( rsCode.code()))
+                throw new ResponseHandlerException( rsCode, String.join( "\n", response.headers().getAll( REASON)));
+
+            if( !receiver.isCompleted())
+                receiver.addContent( null, true);
+            if( partial.length()!= source[0])
+                throw new ResponseHandlerException( BAD_RESPONSE, "resource is received "+ partial.length()+ " bytes, expected "+ source[0]);
+        }
+        catch( Exception e)
+        {
+            try
+            {
+                receiver.checkpoint().get();
+            }
+            catch( Exception ce)
+            {
+                logger.warn( "partial file [{}] can not be checkpointed", partial, ce);
+            }
+            throw e;
         }
         finally
         {
-            logger.debug( "service shutdown now");
-            if( service!= null) service.shutdownNow();
+            giveBack( THROWAWAY, channel);
+            if( response!= null && response.content()!= null && response.content()!= receiver)
+                response.content().release();
+            receiver.release();
         }
     }
 
+    /**
+     * 파일의 범위를 요청하여 미리 할당된 파일의 같은 위치에 기록한다.
+     * @param source 원본 파일의 크기와 수정 시간, 응답의 값과 다르면 원본 파일이 변경된 것으로 판단한다.
+     */
+    private void getRange( Channel channel, String sourceUri, File part, Split range, long[] source) throws Exception
+    {
+        TransferMessage request= new TransferMessage( GET);
+        request.headers()
+            .add( TRANSFER_SOURCE_URI, sourceUri)
+            .add( OFFSET, range.offset)
+            .add( RANGE, range.length)
+            .add( IF_MATCH, TransferMessageUtil.validator( source[0], source[1]));
+        if( contentEncoding!= ContentEncoding.IDENTITY)
+            request.headers().add( ACCEPT_ENCODING, contentEncoding.value());
+
+        FileData receiver= new FileData( part, range.offset, range.length);
+        TransferMessage response= null;
+        try
+        {
+            response= handler( channel).send( request, null, receiver).get();
+            TransferResponseCode rsCode= response.headers().getResponseCode();
+            if( SUCCESS!= ResponseCode.valueOf( rsCode.code()))
+                throw new ResponseHandlerException( rsCode, String.join( "\n", response.headers().getAll( REASON)));
+
+            if( response.headers().getLong( RESOURCE_LENGTH, -1L)!= source[0] 
+                    || response.headers().getLong( RESOURCE_MODIFIED, -1L)!= source[1])
+                throw new ResponseHandlerException( BAD_RESPONSE, "resource is changed while receiving range ["+ range.offset+ "]");
+
+            if( !receiver.isCompleted())
+                receiver.addContent( null, true);
+            if( receiver.length()!= range.length)
+                throw new ResponseHandlerException( BAD_RESPONSE, "range ["+ range.offset+ "] is received "+ receiver.length()
+                        + " bytes, expected "+ range.length);
+        }
+        finally
+        {
+            if( response!= null && response.content()!= null && response.content()!= receiver)
+                response.content().release();
+            receiver.release();
+        }
+    }
+
+    /**
+     * @return Agent Server 파일의 크기와 수정 시간
+     */
+    private long[] requestResourceStat( String sourceUri) throws Exception
+    {
+        TransferMessage request= new TransferMessage( INFO);
+        request.setUri( EXIST_);
+        request.headers().add( TRANSFER_SOURCE_URI, sourceUri);
+        return request( THROWAWAY, request, response->{
+            if( response.headers().getResponseCode().equals( TransferResponseCode.NOT_EXIST))
+                throw new RequestHandlerException( SOURCE_FILE_NOT_FOUND, sourceUri);
+            return new long[] { response.headers().getLong( RESOURCE_LENGTH, -1L), response.headers().getLong( RESOURCE_MODIFIED, -1L)};
+        });
+    }
+
+    /**
+     * 여러 요청이 공유할 binary framing 연결을 생성한다.
+     * @return Agent Server가 binary framing을 허용하지 않는 경우 null
+     */
+    private Channel[] connectMultiplexed( int count) throws RequestHandlerException
+    {
+        Channel[] channels= new Channel[count];
+        for( int i= 0; i< count; i++)
+        {
+            channels[i]= connect();
+            if( !( (TransferClientHandler)channels[i].pipeline().last()).isMultiplexed())
+            {
+                for( int j= 0; j<= i; j++)
+                    channels[j].close();
+                return null;
+            }
+        }
+        return channels;
+    }
+
     /**
      * Agent Server에 다른 Agent Server로의 파일 전송을 명령한다.
      * @param channel channel로 생성하여 전달하거나 TransferClient.THROWAWAY를 전달하여 생성하도록 요청할 수 있다.
@@ -986,10 +1937,16 @@ public class TransferClient
      */
     public void shutdown()
     {
+        if( pool!= null)
+            pool.close();
         File tempDir= new File( this.baseDir, "tmp");
         if( tempDir.exists())
             tempDir.delete();
-        if( workerGroup!= null)
+        if( !shutdown.compareAndSet( false, true))
+            return;
+        if( factory!= null)
+            factory.release();
+        else
             workerGroup.shutdownGracefully();
     }
 
@@ -1001,10 +1958,16 @@ public class TransferClient
      */
     public void shutdown( long quietPeriod, long timeout, TimeUnit unit)
     {
+        if( pool!= null)
+            pool.close();
         File tempDir= new File( this.baseDir, "tmp");
         if( tempDir.exists())
             tempDir.delete();
-        if( workerGroup!= null)
+        if( !shutdown.compareAndSet( false, true))
+            return;
+        if( factory!= null)
+            factory.release();
+        else
             workerGroup.shutdownGracefully( quietPeriod, timeout, unit);
     }
 
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.client;
+
+import static easymaster.transfer.file.client.TransferClient.MAX_WORKERS;
+import static easymaster.transfer.file.client.TransferClient.MIN_PARALLEL_CHUNK;
+
+import javax.net.ssl.SSLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 프로세스에서 생성되는 TransferClient가 EventLoopGroup, SslContext, ByteBufAllocator를 공유하도록 생성
+ * Agent Server 사이의 전송(TRANSFER)처럼 TransferClient를 자주 생성하는 경우 thread와 SSL 설정을 매번 생성하지 않는다.
+ * 공유 EventLoopGroup은 생성된 TransferClient 수를 참조 계수로 관리하여 모든 TransferClient가 shutdown되면 종료한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public final class TransferClientFactory
+{
+    private static Logger logger= LoggerFactory.getLogger( TransferClientFactory.class);
+
+    private static final TransferClientFactory INSTANCE= new TransferClientFactory( MAX_WORKERS);
+
+    private static volatile SslContext clientSslContext;
+
+    private final int threads;
+
+    private final ByteBufAllocator allocator= PooledByteBufAllocator.DEFAULT;
+
+    private EventLoopGroup group;
+
+    private int refCnt;
+
+    private TransferClientFactory( int threads)
+    {
+        this.threads= threads;
+    }
+
+    public static TransferClientFactory getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * 공유 자원을 사용하는 TransferClient를 생성한다.
+     * 생성된 TransferClient를 shutdown하면 공유 자원의 참조가 해제된다.
+     * @param basedir 클라이언트 파일 작업의 base directory
+     * @param workers 분할 전송에 사용할 동시 처리 수
+     * @param connectTimeoutMillis 연결 제한 시간
+     * @param supportSsl ssl 사용 여부
+     * @param host 연결할 원격 Agent Server hostname
+     * @param port 연결할 원격 Agent Server port
+     * @param chunkSize chunkSize
+     * @return TransferClient
+     */
+    public TransferClient create( String basedir, int workers, int connectTimeoutMillis, boolean supportSsl,
+            String host, int port, int chunkSize)
+    {
+        EventLoopGroup shared= retain();
+        try
+        {
+            return new TransferClient( basedir, workers, connectTimeoutMillis, supportSsl, host, port, chunkSize, shared, this);
+        }
+        catch( RuntimeException e)
+        {
+            release();
+            throw e;
+        }
+    }
+
+    public TransferClient create( String host, int port)
+    {
+        return create( ".", 2, 5000, true, host, port, MIN_PARALLEL_CHUNK);
+    }
+
+    /**
+     * @return 공유 EventLoopGroup을 사용중인 TransferClient 수
+     */
+    public synchronized int refCnt()
+    {
+        return refCnt;
+    }
+
+    ByteBufAllocator allocator()
+    {
+        return allocator;
+    }
+
+    private synchronized EventLoopGroup retain()
+    {
+        if( refCnt++== 0)
+        {
+            group= TransferClient.TRANSPORT.newEventLoopGroup( threads, new DefaultThreadFactory( "transfer-client", true));
+            logger.debug( "shared client event loop group is created. transport: {}, threads: {}", TransferClient.TRANSPORT, threads);
+        }
+        return group;
+    }
+
+    /**
+     * TransferClient shutdown시 호출되며 마지막 TransferClient가 shutdown되면 공유 EventLoopGroup을 종료한다.
+     */
+    synchronized void release()
+    {
+        if( refCnt<= 0)
+            throw new IllegalStateException( "shared client resources are already released");
+        if( --refCnt== 0)
+        {
+            group.shutdownGracefully();
+            group= null;
+            logger.debug( "shared client event loop group is released");
+        }
+    }
+
+    /**
+     * 모든 TransferClient가 공유하는 client SslContext
+     * self-signed certificates를 위한 InsecureTrustManager를 사용한다.
+     * ROOT CA signed certificates를 사용하는 경우 설정과
+     * easymaster.transfer.file.handler.TransferServerInitializer 부분을 함께 수정
+     */
+    static SslContext clientSslContext() throws SSLException
+    {
+        SslContext context= clientSslContext;
+        if( context== null)
+        {
+            synchronized( TransferClientFactory.class)
+            {
+                if( ( context= clientSslContext)== null)
+                {
+                    context= SslContextBuilder.forClient().trustManager( InsecureTrustManagerFactory.INSTANCE).build();
+                    clientSslContext= context;
+                }
+            }
+        }
+        return context;
+    }
+}
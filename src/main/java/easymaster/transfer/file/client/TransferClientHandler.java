@@ -14,6 +14,13 @@ import static io.netty.channel.ChannelFutureListener.CLOSE;
 import static io.netty.util.concurrent.GlobalEventExecutor.INSTANCE;
 
 import java.io.File;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,16 +31,27 @@ import easymaster.transfer.file.protocol.TransferContent;
 import easymaster.transfer.file.protocol.TransferHeaderValues;
 import easymaster.transfer.file.protocol.TransferHeaders;
 import easymaster.transfer.file.protocol.TransferMessage;
+import easymaster.transfer.file.protocol.TransferMessageClientCodec;
 import easymaster.transfer.file.protocol.TransferObject;
+import easymaster.transfer.file.protocol.TransferStreamChunkedInput;
 import easymaster.transfer.file.util.TransferMessageUtil;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.stream.ChunkedInput;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
 import io.netty.util.concurrent.DefaultPromise;
 import io.netty.util.concurrent.Future;
 
 /**
+ * Agent Server의 응답을 수신하여 요청한 thread에 전달
+ * 텍스트 프로토콜 연결은 요청 순서대로 응답되므로 응답을 대기하는 Future를 요청 순서대로 유지하여 여러 요청을 pipelining한다.
+ * binary framing 연결에서는 요청마다 stream을 할당하여 하나의 연결에서 여러 요청을 동시에 처리하며
+ * 응답과 대기중인 Future를 stream 별로 유지한다.
  * @author Jongoh Lee
  *
  */
@@ -43,17 +61,40 @@ public class TransferClientHandler extends SimpleChannelInboundHandler<TransferO
 
     private Logger logger= LoggerFactory.getLogger( TransferClientHandler.class);
 
-    private TransferMessage response;
+    // event loop에서만 접근한다.
+    private final IntObjectMap<TransferMessage> responses= new IntObjectHashMap<TransferMessage>();
 
-    private DefaultPromise<TransferMessage> responseFuture;
+    // 요청 thread와 event loop에서 함께 접근한다.
+    // stream 0(텍스트 프로토콜)은 요청 순서대로 응답을 대기한다.
+    private final Queue<CompletableFuture<TransferMessage>> pendingResponses= new ConcurrentLinkedQueue<CompletableFuture<TransferMessage>>();
+
+    private final Map<Integer, CompletableFuture<TransferMessage>> responseFutures= new ConcurrentHashMap<Integer, CompletableFuture<TransferMessage>>();
+
+    // 응답 본문을 임시 파일 대신 기록할 FileData, 응답 Future 별로 등록된다.
+    private final Map<CompletableFuture<TransferMessage>, FileData> receivers= new ConcurrentHashMap<CompletableFuture<TransferMessage>, FileData>();
+
+    // 클라이언트가 생성하는 stream은 홀수를 사용한다.
+    private final AtomicInteger nextStreamId= new AtomicInteger( 1);
 
     private final File baseDir;
 
+    private volatile ChannelHandlerContext context;
+
+    // Agent Server가 연결 종료를 요청한 경우 연결을 재사용하지 않는다.
+    private boolean closeRequested;
+
     public TransferClientHandler( File basedir)
     {
         this.baseDir= basedir;
     }
 
+    @Override
+    public void handlerAdded( ChannelHandlerContext ctx) throws Exception
+    {
+        this.context= ctx;
+        super.handlerAdded( ctx);
+    }
+
     @Override
     public void channelRead0( ChannelHandlerContext ctx, TransferObject message) throws Exception
     {
@@ -64,9 +105,11 @@ public class TransferClientHandler extends SimpleChannelInboundHandler<TransferO
 //            logger.debug( "readed message {}", message.getClass());
 //        }
 
+        int streamId= message.streamId();
         if( message instanceof LastTransferContent)
         {
-            logger.debug( "LastTransferContent detected....");
+            logger.debug( "LastTransferContent detected.... stream: {}", streamId);
+            TransferMessage response= responses.remove( streamId);
             if( response== null)
                 return;
 
@@ -75,53 +118,195 @@ public class TransferClientHandler extends SimpleChannelInboundHandler<TransferO
 
             logger.debug( "response commmand: {}", response.command());
 
-            if( !responseFuture.trySuccess( response) && response.content()!= null)
+            CompletableFuture<TransferMessage> responseFuture= streamId== 0 ? pendingResponses.poll() : responseFutures.remove( streamId);
+            if( ( responseFuture== null || !responseFuture.complete( response)) && response.content()!= null)
             {
                 logger.warn( "trySuccess failed. response content will be released");
                 ReferenceCountUtil.release( response.content().release());
             }
 
             if( closeRequired( response.headers()))
+            {
+                closeRequested= true;
                 ctx.writeAndFlush( EMPTY_BUFFER).addListener( CLOSE);
+            }
 
             return;
         }
 
         if( message instanceof TransferMessage)
         {
-            response= (TransferMessage)message;
-            logger.debug( "command: [{}], uri: [{}]", response.command(), response.uri());
+            TransferMessage response= (TransferMessage)message;
+            responses.put( streamId, response);
+            logger.debug( "command: [{}], uri: [{}], stream: [{}]", response.command(), response.uri(), streamId);
             logger.debug( "response message: [{}]", response.headers());
         }
         else if( message instanceof TransferContent)
         {
+            TransferMessage response= responses.get( streamId);
             if( response== null)
                 throw new ResponseHandlerException( BAD_RESPONSE, "response message not found before TransferContent");
 
             TransferContent content= (TransferContent)message;
             ByteBuf buf= content.retain().content();
-            
+
             if( response.content()== null)
-                response.setContent( new FileData( TransferMessageUtil.getContentLength( response, 0), baseDir));
+                response.setContent( receiver( streamId, response));
 
             response.content().addContent( buf, false);
         }
     }
 
+    /**
+     * 텍스트 프로토콜 연결에서 이미 전송한 요청의 응답을 대기한다.
+     * @return 응답 Future
+     * @throws InterruptedException
+     */
     public Future<TransferMessage> sync() throws InterruptedException
     {
-        return ( responseFuture= new DefaultPromise<TransferMessage>( INSTANCE));
+        DefaultPromise<TransferMessage> promise= new DefaultPromise<TransferMessage>( INSTANCE);
+        CompletableFuture<TransferMessage> responseFuture= new CompletableFuture<TransferMessage>();
+        responseFuture.whenComplete( ( response, cause)->{
+            if( cause!= null)
+                promise.tryFailure( cause);
+            else
+                promise.trySuccess( response);
+        });
+        pendingResponses.add( responseFuture);
+        return promise;
     }
 
+    /**
+     * 요청(본문)을 전송하고 응답 Future를 리턴한다. 응답을 기다리지 않으므로 여러 요청을 연속하여 전송할 수 있다.
+     * stream 할당, 응답 Future 등록, 요청 write는 event loop에서 함께 처리되어 요청 순서와 응답 대기 순서가 일치한다.
+     * @param request 전송할 요청
+     * @param content Chunk 단위로 전송할 본문, 본문이 없거나 요청에 포함된 경우 null
+     * @return 응답 Future
+     */
+    public CompletableFuture<TransferMessage> send( TransferMessage request, ChunkedInput<? extends TransferObject> content)
+    {
+        return send( request, content, null);
+    }
+
+    /**
+     * 요청(본문)을 전송하고 응답 Future를 리턴한다. 응답 본문은 임시 파일 대신 지정된 receiver에 기록된다.
+     * 응답에 본문이 없는 경우 receiver는 사용되지 않으므로 호출한 쪽에서 release해야 한다.
+     * @param request 전송할 요청
+     * @param content Chunk 단위로 전송할 본문, 본문이 없거나 요청에 포함된 경우 null
+     * @param receiver 응답 본문을 기록할 FileData, 임시 파일에 기록하는 경우 null
+     * @return 응답 Future
+     */
+    public CompletableFuture<TransferMessage> send( TransferMessage request, ChunkedInput<? extends TransferObject> content,
+            FileData receiver)
+    {
+        CompletableFuture<TransferMessage> responseFuture= new CompletableFuture<TransferMessage>();
+        if( receiver!= null)
+        {
+            receivers.put( responseFuture, receiver);
+            responseFuture.whenComplete( ( response, cause)->{ receivers.remove( responseFuture);});
+        }
+        ChannelHandlerContext ctx= context;
+        if( ctx== null)
+        {
+            responseFuture.completeExceptionally( new IllegalStateException( "handler is not added to channel"));
+            return responseFuture;
+        }
+
+        Channel channel= ctx.channel();
+        channel.eventLoop().execute( ()->{
+            int streamId= isMultiplexed() ? nextStreamId.getAndAdd( 2)& Integer.MAX_VALUE : 0;
+            request.setStreamId( streamId);
+            if( streamId== 0)
+                pendingResponses.add( responseFuture);
+            else
+                responseFutures.put( streamId, responseFuture);
+
+            ChannelFuture written;
+            if( content== null)
+                written= channel.writeAndFlush( request);
+            else
+            {
+                channel.write( request);
+                written= channel.writeAndFlush( TransferStreamChunkedInput.of( content, streamId));
+            }
+            written.addListener( future->{
+                if( !future.isSuccess())
+                    responseFuture.completeExceptionally( future.cause());
+            });
+        });
+        return responseFuture;
+    }
+
+    /**
+     * 응답 본문을 기록할 FileData를 리턴한다. 요청시 지정된 receiver가 없으면 임시 파일에 기록한다.
+     */
+    private FileData receiver( int streamId, TransferMessage response)
+    {
+        CompletableFuture<TransferMessage> responseFuture= streamId== 0 ? pendingResponses.peek() : responseFutures.get( streamId);
+        FileData receiver= responseFuture!= null && !receivers.isEmpty() ? receivers.remove( responseFuture) : null;
+        return receiver!= null ? receiver : new FileData( TransferMessageUtil.getContentLength( response, 0), baseDir);
+    }
+
+    /**
+     * @return 하나의 연결에서 여러 요청을 동시에 처리할 수 있는지 여부
+     */
+    public boolean isMultiplexed()
+    {
+        ChannelHandlerContext ctx= context;
+        if( ctx== null)
+            return false;
+        TransferMessageClientCodec codec= ctx.pipeline().get( TransferMessageClientCodec.class);
+        return codec!= null && codec.isBinaryFraming();
+    }
+
+    /**
+     * @return 응답을 대기중인 요청 수
+     */
+    public int activeStreams()
+    {
+        return pendingResponses.size()+ responseFutures.size();
+    }
+
+    /**
+     * 연결을 재사용하기 위해 응답 처리 상태를 초기화한다. event loop에서 호출되어야 한다.
+     * @return 응답을 대기중인 요청이 없어 연결을 재사용할 수 있는 경우 true
+     */
+    boolean reset()
+    {
+        for( TransferMessage response: responses.values())
+        {
+            if( response.content()!= null)
+                ReferenceCountUtil.release( response.content().release());
+        }
+        responses.clear();
+        return !closeRequested && pendingResponses.isEmpty() && responseFutures.isEmpty();
+    }
 
     @Override
     public void exceptionCaught( ChannelHandlerContext ctx, Throwable cause)
     {
         logger.error( "TransferClientHandler failed.", cause);
-        responseFuture.setFailure( cause);
+        failPendingResponses( cause);
         ctx.close();
     }
 
+    @Override
+    public void channelInactive( ChannelHandlerContext ctx) throws Exception
+    {
+        failPendingResponses( new ClosedChannelException());
+        super.channelInactive( ctx);
+    }
+
+    private void failPendingResponses( Throwable cause)
+    {
+        CompletableFuture<TransferMessage> responseFuture;
+        while( ( responseFuture= pendingResponses.poll())!= null)
+            responseFuture.completeExceptionally( cause);
+        for( CompletableFuture<TransferMessage> future: responseFutures.values())
+            future.completeExceptionally( cause);
+        responseFutures.clear();
+    }
+
 
     private boolean closeRequired( TransferHeaders headers)
     {
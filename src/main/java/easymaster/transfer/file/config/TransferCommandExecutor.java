@@ -5,41 +5,193 @@
 
 package easymaster.transfer.file.config;
 
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
  * 파일 전송을 비동기로 처리하기 위한 Executor
- *  
+ * 파일 rename, merge 등 blocking 작업이 포함된 요청이 Netty I/O thread를 점유하지 않도록 요청 처리 Executor를 함께 관리한다.
+ *
  * @author Jongoh Lee
  *
  */
 public class TransferCommandExecutor
 {
+    private static Logger logger= LoggerFactory.getLogger( TransferCommandExecutor.class);
+
     private static TransferCommandExecutor EXECUTOR;
-    
+
     private final ExecutorService executor;
-    
-    private TransferCommandExecutor( int count)
+
+    private final ExecutorService requestExecutor;
+
+    private final ExecutorService writerExecutor;
+
+    private TransferCommandExecutor( int count, ExecutorService requestExecutor, ExecutorService writerExecutor)
     {
         this.executor= Executors.newFixedThreadPool( count);
+        this.requestExecutor= requestExecutor;
+        this.writerExecutor= writerExecutor;
     }
-    
+
     static void start( int count)
     {
-        EXECUTOR= new TransferCommandExecutor( count);
+        EXECUTOR= new TransferCommandExecutor( count, null, null);
     }
-    
+
+    static void start( TransferEnvironment environment)
+    {
+        ExecutorService writerExecutor= environment.isWriteBehind() ?
+                Executors.newFixedThreadPool( Math.max( 1, environment.getWriterCount()), new DefaultThreadFactory( "transfer-writer")) : null;
+        EXECUTOR= new TransferCommandExecutor( environment.getWorkerCount(), newRequestExecutor( environment), writerExecutor);
+    }
+
     static void shutdown()
     {
         EXECUTOR.executor.shutdownNow();
+        if( EXECUTOR.requestExecutor!= null)
+            EXECUTOR.requestExecutor.shutdownNow();
+        if( EXECUTOR.writerExecutor!= null)
+            EXECUTOR.writerExecutor.shutdown();
         EXECUTOR= null;
     }
-    
+
     public static ExecutorService transferExecutor()
     {
         return EXECUTOR.executor;
     }
-    
-    
+
+    /**
+     * 요청 처리 Executor
+     * @return 시작되지 않은 경우 null로 요청은 I/O thread에서 처리된다.
+     */
+    public static Executor requestExecutor()
+    {
+        TransferCommandExecutor executor= EXECUTOR;
+        return executor!= null ? executor.requestExecutor : null;
+    }
+
+    /**
+     * 수신한 파일 본문을 기록하는 Executor
+     * @return 시작되지 않았거나 writeBehind가 지정되지 않은 경우 null로 본문은 수신한 thread에서 기록된다.
+     */
+    public static Executor writerExecutor()
+    {
+        TransferCommandExecutor executor= EXECUTOR;
+        return executor!= null ? executor.writerExecutor : null;
+    }
+
+    /**
+     * 크기가 제한된 요청 처리 Executor를 생성한다.
+     * handlerVirtualThreads가 지정되고 JDK가 지원하는 경우 요청마다 virtual thread를 사용한다.
+     * virtual thread를 사용하는 경우에도 처리중이거나 대기중인 요청 수는 handlerCount+ handlerQueueSize로 제한된다.
+     */
+    private static ExecutorService newRequestExecutor( TransferEnvironment environment)
+    {
+        if( environment.isHandlerVirtualThreads())
+        {
+            try
+            {
+                ExecutorService executor= (ExecutorService)Executors.class.getMethod( "newVirtualThreadPerTaskExecutor").invoke( null);
+                int limit= Math.max( 1, environment.getHandlerCount())+ Math.max( 1, environment.getHandlerQueueSize());
+                logger.info( "virtual thread request executor is created. limit: {}", limit);
+                return new BoundedExecutor( executor, limit);
+            }
+            catch( ReflectiveOperationException e)
+            {
+                logger.warn( "virtual thread is not supported. fallback to bounded request executor");
+            }
+        }
+
+        int count= Math.max( 1, environment.getHandlerCount());
+        ThreadPoolExecutor executor= new ThreadPoolExecutor( count, count, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>( Math.max( 1, environment.getHandlerQueueSize())),
+                new DefaultThreadFactory( "transfer-handler"));
+        executor.allowCoreThreadTimeOut( true);
+        return executor;
+    }
+
+    /**
+     * 처리중이거나 대기중인 작업 수를 제한하는 Executor, 제한을 넘는 경우 RejectedExecutionException이 발생한다.
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService
+    {
+        private final ExecutorService delegate;
+
+        private final Semaphore permits;
+
+        BoundedExecutor( ExecutorService delegate, int limit)
+        {
+            this.delegate= delegate;
+            this.permits= new Semaphore( limit);
+        }
+
+        @Override
+        public void execute( Runnable command)
+        {
+            if( !permits.tryAcquire())
+                throw new RejectedExecutionException( "too many requests");
+            try
+            {
+                delegate.execute( ()->{
+                    try
+                    {
+                        command.run();
+                    }
+                    finally
+                    {
+                        permits.release();
+                    }
+                });
+            }
+            catch( RejectedExecutionException e)
+            {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown()
+        {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination( long timeout, TimeUnit unit) throws InterruptedException
+        {
+            return delegate.awaitTermination( timeout, unit);
+        }
+    }
 }
@@ -18,6 +18,13 @@ import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.boot.convert.DurationUnit;
 import org.springframework.util.StringUtils;
 
+import easymaster.transfer.file.protocol.ContentEncoding;
+import easymaster.transfer.file.protocol.FileSync;
+import easymaster.transfer.file.util.TempFileManager;
+import easymaster.transfer.file.util.TransferDurability;
+import easymaster.transfer.file.util.TransferTransport;
+import io.netty.channel.WriteBufferWaterMark;
+
 /**
  * @author Jongoh Lee
  */
@@ -53,12 +60,85 @@ public class TransferEnvironment
     
     private int workerCount= 10;
 
+    // 파일 처리 등 blocking 작업이 포함된 요청을 처리하는 thread 수와 대기 요청 수
+    private int handlerCount= 32;
+
+    private int handlerQueueSize= 1024;
+
+    // 지원되는 JDK에서 요청 처리에 virtual thread를 사용한다. 처리중인 요청 수는 handlerCount+ handlerQueueSize로 제한된다.
+    private boolean handlerVirtualThreads= false;
+
+    // 수신한 파일 본문을 I/O thread가 아닌 별도 thread에서 모아서 기록한다.
+    private boolean writeBehind= true;
+
+    private int writerCount= 4;
+
+    // 분할 전송된 파일을 동시에 병합하는 최대 thread 수
+    private int mergeThreads= 4;
+
+    // write-behind로 기록을 대기중인 본문 크기가 연결 별 high watermark 또는 전체 limit을 넘으면 연결의 읽기(autoRead)를 중지한다.
+    private long uploadHighWaterMark= 32* 1024* 1024;
+
+    private long uploadLowWaterMark= 8* 1024* 1024;
+
+    private long uploadPendingLimit= 512* 1024* 1024;
+
+    // 수신한 파일의 fsync 방식(always, group, none), group인 경우 window 동안 완료된 파일의 fsync를 모아서 처리한다.
+    private TransferDurability durability= TransferDurability.ALWAYS;
+
+    @DurationUnit( ChronoUnit.MICROS)
+    private Duration groupCommitWindow= Duration.ofNanos( FileSync.DEFAULT_GROUP_COMMIT_WINDOW_MICROS* 1000);
+
+    // chunk-size보다 작은 GET 파일 내용을 보관하는 off-heap cache 크기, 0인 경우 사용하지 않는다.
+    private long contentCacheSize= 64* 1024* 1024;
+
+    // 관리중이 아니고 지정된 시간 동안 변경되지 않은 임시 파일은 sweeper가 삭제한다.
+    @DurationUnit( ChronoUnit.MILLIS)
+    private Duration tempFileTimeout= TempFileManager.DEFAULT_TIMEOUT;
+
+    // 다른 process와 repository를 공유하는 경우 PUT, MERGE에 OS 파일 잠금(lock 파일)을 함께 사용한다.
+    private boolean sharedRepository= false;
+
+    // Agent Server 사이의 분할 전송(TRANSFER)에서 처리량과 응답 지연에 따라 조정할 동시 전송 수의 범위
+    private int parallelMinStreams= 2;
+
+    private int parallelMaxStreams= 16;
+
     private boolean keepAlive= true;
     
     private int backlog= 100;
+
+    // netty transport(auto, epoll, nio), auto인 경우 Linux에서 native epoll을 사용한다.
+    private TransferTransport transport= TransferTransport.AUTO;
+
+    // SO_REUSEPORT로 bind할 acceptor channel 수, epoll transport에서만 2 이상 사용할 수 있다.
+    private int acceptorCount= 1;
+
+    private boolean tcpNoDelay= true;
+
+    // epoll transport에서만 적용된다.
+    private boolean tcpQuickAck= false;
+
+    // 0인 경우 OS 기본값을 사용한다.
+    private int sendBufferSize= 0;
+
+    private int receiveBufferSize= 0;
+
+    private int writeBufferLowWaterMark= WriteBufferWaterMark.DEFAULT.low();
+
+    private int writeBufferHighWaterMark= WriteBufferWaterMark.DEFAULT.high();
     
     private int chunkSize= 1024* 1024;
     
+    // gzip Content-Encoding 응답에 사용하는 압축 레벨
+    private int compressionLevel= ContentEncoding.DEFAULT_COMPRESSION_LEVEL;
+    
+    // INFO /upgrade 요청에 대한 binary framing 허용 여부
+    private boolean binaryFraming= true;
+    
+    // INFO /upgrade 요청에 대한 메시지 단위 본문 압축(Content-Encoding) 허용 여부, 허용되지 않으면 연결 전체 GZIP 압축을 유지한다.
+    private boolean messageEncoding= true;
+    
     private boolean validation;
     
     private Repository repository;
@@ -146,6 +226,96 @@ public class TransferEnvironment
         this.workerCount= workerCount;
     }
 
+    public int getHandlerCount()
+    {
+        return handlerCount;
+    }
+
+    public void setHandlerCount( int handlerCount)
+    {
+        this.handlerCount= handlerCount;
+    }
+
+    public int getHandlerQueueSize()
+    {
+        return handlerQueueSize;
+    }
+
+    public void setHandlerQueueSize( int handlerQueueSize)
+    {
+        this.handlerQueueSize= handlerQueueSize;
+    }
+
+    public boolean isHandlerVirtualThreads()
+    {
+        return handlerVirtualThreads;
+    }
+
+    public void setHandlerVirtualThreads( boolean handlerVirtualThreads)
+    {
+        this.handlerVirtualThreads= handlerVirtualThreads;
+    }
+
+    public boolean isWriteBehind()
+    {
+        return writeBehind;
+    }
+
+    public void setWriteBehind( boolean writeBehind)
+    {
+        this.writeBehind= writeBehind;
+    }
+
+    public int getWriterCount()
+    {
+        return writerCount;
+    }
+
+    public void setWriterCount( int writerCount)
+    {
+        this.writerCount= writerCount;
+    }
+
+    public int getMergeThreads()
+    {
+        return mergeThreads;
+    }
+
+    public void setMergeThreads( int mergeThreads)
+    {
+        this.mergeThreads= mergeThreads;
+    }
+
+    public long getUploadHighWaterMark()
+    {
+        return uploadHighWaterMark;
+    }
+
+    public void setUploadHighWaterMark( long uploadHighWaterMark)
+    {
+        this.uploadHighWaterMark= uploadHighWaterMark;
+    }
+
+    public long getUploadLowWaterMark()
+    {
+        return uploadLowWaterMark;
+    }
+
+    public void setUploadLowWaterMark( long uploadLowWaterMark)
+    {
+        this.uploadLowWaterMark= uploadLowWaterMark;
+    }
+
+    public long getUploadPendingLimit()
+    {
+        return uploadPendingLimit;
+    }
+
+    public void setUploadPendingLimit( long uploadPendingLimit)
+    {
+        this.uploadPendingLimit= uploadPendingLimit;
+    }
+
     public boolean isKeepAlive()
     {
         return keepAlive;
@@ -166,6 +336,156 @@ public class TransferEnvironment
         this.backlog= backlog;
     }
 
+    public TransferDurability getDurability()
+    {
+        return durability;
+    }
+
+    public void setDurability( TransferDurability durability)
+    {
+        this.durability= durability;
+    }
+
+    public Duration getGroupCommitWindow()
+    {
+        return groupCommitWindow;
+    }
+
+    public void setGroupCommitWindow( Duration groupCommitWindow)
+    {
+        this.groupCommitWindow= groupCommitWindow;
+    }
+
+    public long getContentCacheSize()
+    {
+        return contentCacheSize;
+    }
+
+    public void setContentCacheSize( long contentCacheSize)
+    {
+        this.contentCacheSize= contentCacheSize;
+    }
+
+    public Duration getTempFileTimeout()
+    {
+        return tempFileTimeout;
+    }
+
+    public void setTempFileTimeout( Duration tempFileTimeout)
+    {
+        this.tempFileTimeout= tempFileTimeout;
+    }
+
+    public boolean isSharedRepository()
+    {
+        return sharedRepository;
+    }
+
+    public void setSharedRepository( boolean sharedRepository)
+    {
+        this.sharedRepository= sharedRepository;
+    }
+
+    public int getParallelMinStreams()
+    {
+        return parallelMinStreams;
+    }
+
+    public void setParallelMinStreams( int parallelMinStreams)
+    {
+        this.parallelMinStreams= parallelMinStreams;
+    }
+
+    public int getParallelMaxStreams()
+    {
+        return parallelMaxStreams;
+    }
+
+    public void setParallelMaxStreams( int parallelMaxStreams)
+    {
+        this.parallelMaxStreams= parallelMaxStreams;
+    }
+
+    public TransferTransport getTransport()
+    {
+        return transport;
+    }
+
+    public void setTransport( TransferTransport transport)
+    {
+        this.transport= transport;
+    }
+
+    public int getAcceptorCount()
+    {
+        return acceptorCount;
+    }
+
+    public void setAcceptorCount( int acceptorCount)
+    {
+        this.acceptorCount= acceptorCount;
+    }
+
+    public boolean isTcpNoDelay()
+    {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay( boolean tcpNoDelay)
+    {
+        this.tcpNoDelay= tcpNoDelay;
+    }
+
+    public boolean isTcpQuickAck()
+    {
+        return tcpQuickAck;
+    }
+
+    public void setTcpQuickAck( boolean tcpQuickAck)
+    {
+        this.tcpQuickAck= tcpQuickAck;
+    }
+
+    public int getSendBufferSize()
+    {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize( int sendBufferSize)
+    {
+        this.sendBufferSize= sendBufferSize;
+    }
+
+    public int getReceiveBufferSize()
+    {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize( int receiveBufferSize)
+    {
+        this.receiveBufferSize= receiveBufferSize;
+    }
+
+    public int getWriteBufferLowWaterMark()
+    {
+        return writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferLowWaterMark( int writeBufferLowWaterMark)
+    {
+        this.writeBufferLowWaterMark= writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark()
+    {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark( int writeBufferHighWaterMark)
+    {
+        this.writeBufferHighWaterMark= writeBufferHighWaterMark;
+    }
+
     public int getChunkSize()
     {
         return chunkSize;
@@ -176,6 +496,36 @@ public class TransferEnvironment
         this.chunkSize= chunkSize;
     }
 
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel( int compressionLevel)
+    {
+        this.compressionLevel= compressionLevel;
+    }
+
+    public boolean isBinaryFraming()
+    {
+        return binaryFraming;
+    }
+
+    public void setBinaryFraming( boolean binaryFraming)
+    {
+        this.binaryFraming= binaryFraming;
+    }
+
+    public boolean isMessageEncoding()
+    {
+        return messageEncoding;
+    }
+
+    public void setMessageEncoding( boolean messageEncoding)
+    {
+        this.messageEncoding= messageEncoding;
+    }
+
     public boolean isValidation()
     {
         return validation;
@@ -250,9 +600,17 @@ public class TransferEnvironment
     {
         return "TransferEnvironment [bindAddress="+ bindAddress+ ", connectTimeout="+ connectTimeout
                 + ", sessionTimeout="+ sessionTimeout+ ", transferTimeout="+ transferTimeout+ ", ssl="+ ssl+ ", bind="
-                + bind+ ", tcpPort="+ tcpPort+ ", bossCount="+ bossCount+ ", workerCount="+ workerCount+ ", keepAlive="
-                + keepAlive+ ", backlog="+ backlog+ ", chunkSize="+ chunkSize+ ", validation="+ validation
-                + ", repository="+ repository+ ", custom="+ custom+ "]";
+                + bind+ ", tcpPort="+ tcpPort+ ", bossCount="+ bossCount+ ", workerCount="+ workerCount+ ", handlerCount="+ handlerCount
+                + ", handlerQueueSize="+ handlerQueueSize+ ", handlerVirtualThreads="+ handlerVirtualThreads+ ", writeBehind="+ writeBehind
+                + ", writerCount="+ writerCount+ ", mergeThreads="+ mergeThreads+ ", uploadWaterMark="+ uploadLowWaterMark+ "/"+ uploadHighWaterMark
+                + ", uploadPendingLimit="+ uploadPendingLimit+ ", durability="+ durability+ ", groupCommitWindow="+ groupCommitWindow
+                + ", contentCacheSize="+ contentCacheSize+ ", tempFileTimeout="+ tempFileTimeout+ ", sharedRepository="+ sharedRepository
+                + ", parallelStreams="+ parallelMinStreams+ "/"+ parallelMaxStreams+ ", keepAlive="+ keepAlive
+                + ", backlog="+ backlog+ ", transport="+ transport+ ", acceptorCount="+ acceptorCount
+                + ", tcpNoDelay="+ tcpNoDelay+ ", tcpQuickAck="+ tcpQuickAck+ ", sendBufferSize="+ sendBufferSize
+                + ", receiveBufferSize="+ receiveBufferSize+ ", writeBufferWaterMark="+ writeBufferLowWaterMark+ "/"+ writeBufferHighWaterMark
+                + ", chunkSize="+ chunkSize+ ", compressionLevel="+ compressionLevel
+                + ", binaryFraming="+ binaryFraming+ ", messageEncoding="+ messageEncoding+ ", validation="+ validation+ ", repository="+ repository+ ", custom="+ custom+ "]";
     }
 
 
@@ -5,10 +5,14 @@
 
 package easymaster.transfer.file.config;
 
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -31,15 +35,24 @@ import org.springframework.context.event.EventListener;
 
 import easymaster.transfer.file.TransferServer;
 import easymaster.transfer.file.TransferServerAgent;
+import easymaster.transfer.file.config.TransferEnvironment.Site;
+import easymaster.transfer.file.handler.ResourceContentCache;
 import easymaster.transfer.file.handler.TransferServerInitializer;
+import easymaster.transfer.file.protocol.FileData;
+import easymaster.transfer.file.protocol.FileSync;
 import easymaster.transfer.file.session.ResourceSessionManager;
+import easymaster.transfer.file.util.FileUtil;
+import easymaster.transfer.file.util.PathLocks;
+import easymaster.transfer.file.util.TempFileManager;
 import easymaster.transfer.file.util.TransferConstants;
+import easymaster.transfer.file.util.TransferTransport;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContext;
@@ -60,9 +73,9 @@ public class TransferServerConfiguration
     @Autowired
     private TransferEnvironment environment;
     
-    private NioEventLoopGroup bossGroup;
+    private EventLoopGroup bossGroup;
     
-    private NioEventLoopGroup workerGroup;
+    private EventLoopGroup workerGroup;
     
     @Bean
     public TransferServerAgent serverAgent( ApplicationContext applicationContext)
@@ -70,20 +83,39 @@ public class TransferServerConfiguration
         if( environment.isValidation())
             environment.validateRepository();
         
-        this.bossGroup= new NioEventLoopGroup( environment.getBossCount());
-        this.workerGroup= new NioEventLoopGroup( environment.getWorkerCount());
+        TransferTransport transport= environment.getTransport().resolve();
+        // SO_REUSEPORT를 사용할 수 있는 경우 acceptor channel 마다 boss thread를 할당하여 연결 수락을 분산한다.
+        int acceptors= transport.supportsReusePort() ? Math.max( 1, environment.getAcceptorCount()) : 1;
+        if( acceptors!= environment.getAcceptorCount())
+            logger.warn( "acceptor count is adjusted to {} for {} transport", acceptors, transport);
+
+        this.bossGroup= transport.newEventLoopGroup( Math.max( acceptors, environment.getBossCount()));
+        this.workerGroup= transport.newEventLoopGroup( environment.getWorkerCount());
         ServerBootstrap bootstrap= new ServerBootstrap();
         bootstrap.group( this.bossGroup, this.workerGroup)
-            .channel( NioServerSocketChannel.class)
+            .channel( transport.serverChannelClass())
             .handler( new LoggingHandler( LogLevel.INFO))
             .childHandler( applicationContext.getBean( ChannelInitializer.class))
             .option( ChannelOption.SO_BACKLOG, environment.getBacklog())
-            .childOption( ChannelOption.SO_KEEPALIVE, environment.isKeepAlive());
+            .childOption( ChannelOption.SO_KEEPALIVE, environment.isKeepAlive())
+            .childOption( ChannelOption.TCP_NODELAY, environment.isTcpNoDelay())
+            .childOption( ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                    environment.getWriteBufferLowWaterMark(), environment.getWriteBufferHighWaterMark()));
+        if( environment.getSendBufferSize()> 0)
+            bootstrap.childOption( ChannelOption.SO_SNDBUF, environment.getSendBufferSize());
+        if( environment.getReceiveBufferSize()> 0)
+            bootstrap.childOption( ChannelOption.SO_RCVBUF, environment.getReceiveBufferSize());
+        if( transport.isEpoll())
+        {
+            bootstrap.childOption( EpollChannelOption.TCP_QUICKACK, environment.isTcpQuickAck());
+            if( acceptors> 1)
+                bootstrap.option( EpollChannelOption.SO_REUSEPORT, true);
+        }
 
         InetSocketAddress address= new InetSocketAddress( environment.getBind(), environment.getTcpPort());
         environment.getCustom().put( TransferConstants.BIND_ADDRESS, address.getAddress().getHostAddress());
         
-        return new TransferServerAgent( bootstrap, new InetSocketAddress( environment.getBind(), environment.getTcpPort()));
+        return new TransferServerAgent( bootstrap, new InetSocketAddress( environment.getBind(), environment.getTcpPort()), acceptors);
     }
     
     @Bean
@@ -100,6 +132,25 @@ public class TransferServerConfiguration
         return new TransferServerInitializer( applicationContext, environment, sslContext);
     }
     
+    /**
+     * 비정상 종료된 이전 process가 남긴 수신중인 임시 파일을 Repository와 site의 임시 파일 전용 directory에서 삭제한다.
+     */
+    private void cleanupTemporaryFiles()
+    {
+        Set<String> baseDirs= new LinkedHashSet<String>();
+        baseDirs.add( environment.getRepository().getBaseDir());
+        for( Site site: environment.getRepository().getSites().values())
+            baseDirs.add( site.getBaseDir());
+
+        int deleted= 0;
+        for( String baseDir: baseDirs)
+        {
+            if( baseDir!= null)
+                deleted+= TempFileManager.cleanup( new File( baseDir, FileData.TEMP_DIR), FileData.prefix, environment.getTempFileTimeout());
+        }
+        logger.info( "leftover temporary files : {}", deleted);
+    }
+    
     @Bean( name= "agentControl")
     public SmartLifecycle agentServerContext( ApplicationContext applicationContext)
     {
@@ -118,7 +169,16 @@ public class TransferServerConfiguration
                 logger.info( "binding port : {}", environment.getTcpPort());
                 logger.info( "boss cound : {}", environment.getBossCount());
                 logger.info( "worker count : {}", environment.getWorkerCount());
+                logger.info( "handler count : {}, queue : {}", environment.getHandlerCount(), environment.getHandlerQueueSize());
+                logger.info( "write-behind : {}, writer count : {}", environment.isWriteBehind(), environment.getWriterCount());
+                logger.info( "upload watermark : {}/{}, pending limit : {}", environment.getUploadLowWaterMark(), environment.getUploadHighWaterMark(), environment.getUploadPendingLimit());
+                logger.info( "durability : {}, group commit window : {}", environment.getDurability(), environment.getGroupCommitWindow());
+                logger.info( "content cache size : {}", environment.getContentCacheSize());
+                logger.info( "temporary file timeout : {}", environment.getTempFileTimeout());
+                logger.info( "shared repository : {}", environment.isSharedRepository());
+                logger.info( "parallel streams : {}~{}", environment.getParallelMinStreams(), environment.getParallelMaxStreams());
                 logger.info( "backlog : {}", environment.getBacklog());
+                logger.info( "transport : {}, acceptors : {}", environment.getTransport().resolve(), environment.getAcceptorCount());
                 logger.info( "keep-alive : {}", environment.isKeepAlive());
                 
                 agent= applicationContext.getBean( TransferServerAgent.class);
@@ -126,7 +186,13 @@ public class TransferServerConfiguration
                 {
                     agent.start();
                     ResourceSessionManager.start( environment.getSessionTimeout().toMillis());
-                    TransferCommandExecutor.start( environment.getWorkerCount());
+                    TransferCommandExecutor.start( environment);
+                    FileSync.configure( environment.getDurability(), TimeUnit.NANOSECONDS.toMicros( environment.getGroupCommitWindow().toNanos()));
+                    ResourceContentCache.configure( environment.getContentCacheSize(), environment.getChunkSize());
+                    TempFileManager.start( environment.getTempFileTimeout());
+                    cleanupTemporaryFiles();
+                    PathLocks.configure( environment.isSharedRepository());
+                    FileUtil.configureMerge( environment.getMergeThreads());
                     started.getAndSet( true);
                     latch= new CountDownLatch( 2);
                     logger.debug( "File Transfer Server is started [{}].", started.get());
@@ -191,6 +257,7 @@ public class TransferServerConfiguration
                 workerGroup.shutdownGracefully();
                 ResourceSessionManager.shutdown();
                 TransferCommandExecutor.shutdown();
+                TempFileManager.stop();
                 started.getAndSet( false);
                 latch.countDown();
             }
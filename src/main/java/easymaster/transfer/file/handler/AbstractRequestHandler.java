@@ -43,6 +43,9 @@ public abstract class AbstractRequestHandler
 
     protected  final TransferEnvironment environment;
 
+    // 요청이 수신된 stream, 응답은 요청과 동일한 stream으로 전송한다.
+    protected int streamId;
+
     protected AbstractRequestHandler( ApplicationContext context, TransferEnvironment environment)
     {
         ObjectUtil.checkNotNull( context, "contxt");
@@ -53,6 +56,12 @@ public abstract class AbstractRequestHandler
 
     protected abstract void handleCommand( final TransferMessage request);
 
+    AbstractRequestHandler stream( int streamId)
+    {
+        this.streamId= streamId;
+        return this;
+    }
+
     protected void response( ChannelHandlerContext ctx, RequestHandler<HandlerResponse> handler, boolean closeRequired)
     {
         ObjectUtil.checkNotNull( handler, "handler");
@@ -61,7 +70,12 @@ public abstract class AbstractRequestHandler
         {
             answer= handler.handle();
             if( answer.response!= null)
-                requestCompletedResponse( ctx, answer.response, closeRequired).get();
+            {
+                ChannelFuture written= requestCompletedResponse( ctx, answer.response, closeRequired);
+                // 요청 처리 Executor에서 호출된 경우 응답 전송 완료 후 postProcess를 실행한다.
+                if( !ctx.executor().inEventLoop())
+                    written.get();
+            }
             if( answer.postProcess!= null)
                 answer.postProcess.accept( null);
         }
@@ -161,6 +175,7 @@ public abstract class AbstractRequestHandler
             response.headers().add( TransferHeaderNames.RESPONSE_CODE, TransferResponseCode.OK);
         if( closeRequired)
             response.headers().add( TransferHeaderNames.CONNECTION, TransferHeaderValues.CLOSE);
+        response.setStreamId( streamId);
 
         logger.debug( "requestCompletedResponse is sent: {}", response);
         return ctx.writeAndFlush( response);
@@ -178,8 +193,10 @@ public abstract class AbstractRequestHandler
         if( cause!= null && StringUtils.hasText( cause.getMessage()))
             response.headers().add( TransferHeaderNames.REASON, TransferMessageUtil.validateHeaderValue( cause.getMessage()));
 
-        if( closeRequired)
+        // 다중 stream 연결은 다른 stream의 요청이 처리 중일 수 있으므로 연결을 유지한다.
+        if( closeRequired && streamId== 0)
             response.headers().add( TransferHeaderNames.CONNECTION, TransferHeaderValues.CLOSE);
+        response.setStreamId( streamId);
 
         logger.debug( "requestFailedResponse is sent: {}", response);
         return ctx.writeAndFlush( response);
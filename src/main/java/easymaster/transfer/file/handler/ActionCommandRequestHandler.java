@@ -9,12 +9,15 @@ package easymaster.transfer.file.handler;
 import static easymaster.transfer.file.handler.TransferAction.MERGE_;
 import static easymaster.transfer.file.handler.TransferAction.NOOP_;
 import static easymaster.transfer.file.handler.TransferAction.SESSION_;
+import static easymaster.transfer.file.handler.TransferAction.SESSION_STATUS_;
 import static easymaster.transfer.file.handler.TransferAction.SHUTDOWN_;
 import static easymaster.transfer.file.protocol.TransferCommand.ACTION;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT_TYPE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.MERGE_RESOURCE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.REASON;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RECEIVED_RANGE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_LENGTH;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.SESSION_ID;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_DESTINATION_URI;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_SOURCE_URI;
@@ -33,6 +36,7 @@ import static easymaster.transfer.file.util.OptionParameterValues.OVERWRITE_ONEX
 import static easymaster.transfer.file.util.TransferConstants.BIND_ADDRESS;
 
 import java.io.File;
+import java.io.RandomAccessFile;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -46,16 +50,18 @@ import org.springframework.util.AntPathMatcher;
 import org.springframework.util.PathMatcher;
 import org.springframework.util.StringUtils;
 
-import easymaster.transfer.file.TransferServer;
 import easymaster.transfer.file.config.TransferEnvironment;
 import easymaster.transfer.file.config.TransferEnvironment.Site;
 import easymaster.transfer.file.interceptors.ReceiveInterceptor;
 import easymaster.transfer.file.interceptors.TransferContext;
+import easymaster.transfer.file.protocol.FileData;
 import easymaster.transfer.file.protocol.TransferMessage;
 import easymaster.transfer.file.protocol.TransferResponseCode;
 import easymaster.transfer.file.session.ResourceSession;
 import easymaster.transfer.file.session.ResourceSessionManager;
+import easymaster.transfer.file.util.DirectoryCache;
 import easymaster.transfer.file.util.FileUtil;
+import easymaster.transfer.file.util.TempFileManager;
 import easymaster.transfer.file.util.OptionParameter;
 import easymaster.transfer.file.util.TransferMessageUtil;
 import io.netty.channel.ChannelHandlerContext;
@@ -113,6 +119,40 @@ public class ActionCommandRequestHandler extends AbstractRequestHandler
                     response.setUri( request.uri());
                     ResourceSession session= ResourceSessionManager.createResourceSession();
                     response.headers().add( SESSION_ID, session.getSessionId());
+                    // 전체 크기와 저장 위치가 지정된 경우 분할 전송된 본문을 위치(Offset) 별로 기록할 staging 파일을 미리 할당한다.
+                    if( request.headers().contains( RESOURCE_LENGTH) && request.headers().contains( TRANSFER_DESTINATION_URI))
+                    {
+                        try
+                        {
+                            File staging= stage( session, request);
+                            response.headers().add( RESOURCE_LENGTH, session.stagingLength());
+                            logger.debug( "staging file [{}] is allocated. length: {}", staging, session.stagingLength());
+                        }
+                        catch( Exception e)
+                        {
+                            session.expire();
+                            throw e instanceof RequestHandlerException ? (RequestHandlerException)e :
+                                new RequestHandlerException( FILE_PERMISSION_ERROR, e.getMessage(), e);
+                        }
+                    }
+                    return new HandlerResponse( response);
+                }, false);
+                break;
+            case SESSION_STATUS_:
+                response( context, ()->{
+                    TransferMessage response= new TransferMessage( ACTION);
+                    response.setUri( request.uri());
+                    // 중단된 분할 전송을 이어서 전송할 수 있도록 staging 파일에 기록이 완료된 구간을 응답한다.
+                    String sessionId= request.headers().get( SESSION_ID);
+                    ResourceSession session= StringUtils.hasText( sessionId) ? ResourceSessionManager.getSession( sessionId) : null;
+                    if( session== null || session.stagingFile()== null)
+                        throw new RequestHandlerException( BAD_REQUEST, "staging session ["+ sessionId+ "] is not found");
+
+                    response.headers()
+                        .add( SESSION_ID, sessionId)
+                        .add( RESOURCE_LENGTH, session.stagingLength());
+                    for( long[] range: session.stagedRanges())
+                        response.headers().add( RECEIVED_RANGE, range[0]+ "-"+ range[1]);
                     return new HandlerResponse( response);
                 }, false);
                 break;
@@ -167,12 +207,8 @@ public class ActionCommandRequestHandler extends AbstractRequestHandler
                         if( pathMatcher.isPattern( target))
                             throw new RequestHandlerException( BAD_REQUEST, "pattern uri is not allowed");
 
-                        synchronized( TransferServer.class)
-                        {
-                            File dir= new File( FileUtil.onlyPath( target));
-                            if( !dir.mkdirs() && !dir.exists())
-                                throw new RequestHandlerException( FILE_PERMISSION_ERROR, "Can not create dest dir");
-                        }
+                        if( !DirectoryCache.ensure( new File( FileUtil.onlyPath( target))))
+                            throw new RequestHandlerException( FILE_PERMISSION_ERROR, "Can not create dest dir");
                         File dest= new File( target);
                         if( dest.exists())
                         {
@@ -185,8 +221,20 @@ public class ActionCommandRequestHandler extends AbstractRequestHandler
                         }
 
                         ResourceSession session= StringUtils.hasText( sessionId) ? ResourceSessionManager.getSession( sessionId) : null;
-                        FileUtil.mergeWithLock( resources, target, fs->{ if( session!= null) session.completed( fs);});
+                        File merged= null;
+                        if( session!= null && session.stagingFile()!= null)
+                            commitStaging( session, dest);
+                        else if( session!= null && ( merged= session.completeSplits( resources.stream().map( File::new).collect( Collectors.toList())))!= null)
+                        {
+                            // 수신중에 병합된 파일에 나머지 분할 파일을 추가한 병합 파일을 저장 위치로 반영한다.
+                            commit( merged, dest);
+                            session.completed( merged);
+                            session.splitsCommitted();
+                        }
+                        else
+                            FileUtil.mergeWithLock( resources, target, fs->{ if( session!= null) session.completed( fs);});
 
+                        ResourceContentCache.invalidate( dest);
                         if( session!= null)
                             session.expire();
 
@@ -261,4 +309,64 @@ public class ActionCommandRequestHandler extends AbstractRequestHandler
         }
     }
 
+    /**
+     * 위치 별 분할 전송에 사용할 staging 파일을 저장 위치의 directory에 생성하고 전체 크기로 할당한다.
+     * 저장 위치와 같은 directory에 생성하므로 merge는 복사 없이 rename으로 처리된다.
+     */
+    private File stage( ResourceSession session, TransferMessage request) throws Exception
+    {
+        long length= request.headers().getLong( RESOURCE_LENGTH, -1L);
+        if( length< 0)
+            throw new RequestHandlerException( BAD_REQUEST, RESOURCE_LENGTH+ " is invalid");
+
+        Map<String, List<String>> targetOpts= new LinkedHashMap<String, List<String>>();
+        String target= TransferMessageUtil.decodeUri( request.headers().get( TRANSFER_DESTINATION_URI), targetOpts);
+        Site site= null;
+        String siteOp= OptionParameter.first( targetOpts, SITE);
+        if( StringUtils.hasText( siteOp) && ( site= environment.getRepository().getSites().get( siteOp))!= null)
+            target= site.getBaseDir()+ target;
+        else
+            target= environment.getRepository().getBaseDir()+ target;
+
+        if( pathMatcher.isPattern( target))
+            throw new RequestHandlerException( BAD_REQUEST, "pattern uri is not allowed");
+
+        File dir= new File( FileUtil.onlyPath( target));
+        if( !DirectoryCache.ensure( dir))
+            throw new RequestHandlerException( FILE_PERMISSION_ERROR, "Can not create dest dir");
+
+        File staging= FileUtil.createTempFile( FileData.prefix, FileData.postfix, dir);
+        try( RandomAccessFile raFile= new RandomAccessFile( staging, "rw"))
+        {
+            raFile.setLength( length);
+        }
+        session.stage( staging, length);
+        return staging;
+    }
+
+    /**
+     * 모든 구간이 기록된 staging 파일을 저장 위치로 반영한다.
+     */
+    private void commitStaging( ResourceSession session, File dest) throws Exception
+    {
+        File staging= session.stagingFile();
+        if( !session.isStagingCompleted() || staging.length()!= session.stagingLength())
+            throw new RequestHandlerException( MERGE_FAILED, "staging file["+ staging+ "] is not completed");
+
+        commit( staging, dest);
+        session.completed( staging);
+    }
+
+    /**
+     * 병합이 완료된 파일을 저장 위치로 rename한다. 저장 위치에 파일이 있는 경우(APPEND) 뒤에 추가한다.
+     * 같은 저장 위치에 대한 반영은 FileUtil.moveOrMergeWithLock의 경로 lock으로 순서대로 처리된다.
+     */
+    private void commit( File from, File dest) throws Exception
+    {
+        if( FileUtil.moveOrMergeWithLock( from, dest))
+            TempFileManager.release( from);
+        else
+            FileUtil.deleteFile( from);
+        logger.debug( "file [{}] is committed to [{}]", from, dest);
+    }
 }
@@ -9,13 +9,23 @@ import static easymaster.transfer.file.handler.TransferInfo.EXIST_;
 import static easymaster.transfer.file.handler.TransferInfo.HEALTH_;
 import static easymaster.transfer.file.handler.TransferInfo.INFO_;
 import static easymaster.transfer.file.handler.TransferInfo.NOOP_;
+import static easymaster.transfer.file.handler.TransferInfo.UPGRADE_;
 import static easymaster.transfer.file.protocol.TransferCommand.INFO;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT_TYPE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_CACHE_BYTES;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_CACHE_HITS;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_CACHE_MISSES;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.REASON;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_LENGTH;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_MODIFIED;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.RESPONSE_CODE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_SOURCE_URI;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.UPGRADE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.UPLOAD_PAUSED_CHANNELS;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.UPLOAD_PENDING_BYTES;
+import static easymaster.transfer.file.protocol.TransferHeaderValues.BINARY_FRAMING;
+import static easymaster.transfer.file.protocol.TransferHeaderValues.MESSAGE_ENCODING;
 import static easymaster.transfer.file.protocol.TransferResponseCode.BAD_REQUEST;
 import static easymaster.transfer.file.protocol.TransferResponseCode.NOT_EXIST;
 import static easymaster.transfer.file.util.OptionParameter.SITE;
@@ -104,6 +114,11 @@ public class InfoCommandRequestHandler extends AbstractRequestHandler
                             }
                         }
                     });
+                    response.headers().add( UPLOAD_PENDING_BYTES, UploadBackpressure.totalPendingBytes());
+                    response.headers().add( UPLOAD_PAUSED_CHANNELS, UploadBackpressure.pausedChannels());
+                    response.headers().add( CONTENT_CACHE_HITS, ResourceContentCache.hits());
+                    response.headers().add( CONTENT_CACHE_MISSES, ResourceContentCache.misses());
+                    response.headers().add( CONTENT_CACHE_BYTES, ResourceContentCache.bytes());
                     return new HandlerResponse( response);
                 }, false);
                 break;
@@ -139,6 +154,7 @@ public class InfoCommandRequestHandler extends AbstractRequestHandler
                     {
                         response.headers().add( REASON, "EXIST");
                         response.headers().add( RESOURCE_LENGTH, dest.length());
+                        response.headers().add( RESOURCE_MODIFIED, dest.lastModified());
                     }
                     else
                     {
@@ -148,6 +164,20 @@ public class InfoCommandRequestHandler extends AbstractRequestHandler
                     return new HandlerResponse( response);
                 }, false);
                 break;
+            case UPGRADE_:
+                // 응답에 Upgrade 헤더가 포함되면 codec이 응답 전송 후 binary framing 또는 메시지 단위 압축으로 전환한다.
+                response( context, ()-> {
+                    TransferMessage response= new TransferMessage( INFO);
+                    response.setUri( request.uri());
+                    if( environment.isBinaryFraming() && request.headers().contains( UPGRADE, BINARY_FRAMING, true))
+                        response.headers().add( UPGRADE, BINARY_FRAMING);
+                    if( environment.isMessageEncoding() && request.headers().contains( UPGRADE, MESSAGE_ENCODING, true))
+                        response.headers().add( UPGRADE, MESSAGE_ENCODING);
+                    if( !response.headers().contains( UPGRADE))
+                        response.headers().add( REASON, "upgrade is not allowed");
+                    return new HandlerResponse( response);
+                }, false);
+                break;
             case NOOP_:
                 break;
             default:
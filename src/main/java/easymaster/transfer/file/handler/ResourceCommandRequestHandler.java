@@ -13,12 +13,19 @@ import static easymaster.transfer.file.protocol.TransferCommand.LIST;
 import static easymaster.transfer.file.protocol.TransferCommand.LIST_;
 import static easymaster.transfer.file.protocol.TransferCommand.PUT;
 import static easymaster.transfer.file.protocol.TransferCommand.PUT_;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.ACCEPT_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT_TYPE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_LENGTH;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.DELETED_COUNT;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.IF_MATCH;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.OFFSET;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RANGE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.REASON;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.REMOTE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_LENGTH;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_MODIFIED;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.RESPONSE_CODE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.SESSION_ID;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_DESTINATION_URI;
@@ -31,6 +38,7 @@ import static easymaster.transfer.file.protocol.TransferResponseCode.DELETE_FAIL
 import static easymaster.transfer.file.protocol.TransferResponseCode.FILE_PERMISSION_ERROR;
 import static easymaster.transfer.file.protocol.TransferResponseCode.INTERNAL_SERVER_ERROR;
 import static easymaster.transfer.file.protocol.TransferResponseCode.OK;
+import static easymaster.transfer.file.protocol.TransferResponseCode.PRECONDITION_FAILED;
 import static easymaster.transfer.file.protocol.TransferResponseCode.SOURCE_FILE_NOT_FOUND;
 import static easymaster.transfer.file.protocol.TransferResponseCode.TRANSFER_FAILED;
 import static easymaster.transfer.file.util.OptionParameter.CREATE_ACK;
@@ -60,21 +68,28 @@ import org.springframework.util.PathMatcher;
 import org.springframework.util.ResourceUtils;
 import org.springframework.util.StringUtils;
 
-import easymaster.transfer.file.TransferServer;
 import easymaster.transfer.file.config.TransferEnvironment;
 import easymaster.transfer.file.config.TransferEnvironment.Site;
 import easymaster.transfer.file.interceptors.ReceiveInterceptor;
 import easymaster.transfer.file.interceptors.TransferContext;
 import easymaster.transfer.file.interceptors.TransferInterceptor;
+import easymaster.transfer.file.protocol.ContentEncoding;
 import easymaster.transfer.file.protocol.FileData;
 import easymaster.transfer.file.protocol.TransferChunkedContentEncoder;
+import easymaster.transfer.file.protocol.TransferFileRegionEncoder;
 import easymaster.transfer.file.protocol.TransferMessage;
+import easymaster.transfer.file.protocol.TransferObject;
+import easymaster.transfer.file.protocol.TransferStreamChunkedInput;
 import easymaster.transfer.file.session.ResourceSession;
 import easymaster.transfer.file.session.ResourceSessionManager;
+import easymaster.transfer.file.util.CompressionUtil;
+import easymaster.transfer.file.util.DirectoryCache;
 import easymaster.transfer.file.util.FileUtil;
 import easymaster.transfer.file.util.OptionParameter;
+import easymaster.transfer.file.util.TempFileManager;
 import easymaster.transfer.file.util.TransferMessageUtil;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
 import io.netty.util.internal.ObjectUtil;
 
 /**
@@ -109,7 +124,10 @@ public class ResourceCommandRequestHandler extends AbstractRequestHandler
         switch( request.command().name())
         {
             case PUT_:
-                response( context, ()->{ return handlePutCommandRequest( request);}, false);
+                if( request.headers().contains( OFFSET))
+                    response( context, ()->{ return handlePositionalPutCommandRequest( request);}, false);
+                else
+                    response( context, ()->{ return handlePutCommandRequest( request);}, false);
                 break;
             case DELETE_:
                 response( context, ()->{ return handleDeleteCommandRequest( request);}, false);
@@ -165,12 +183,9 @@ public class ResourceCommandRequestHandler extends AbstractRequestHandler
             if( pathMatcher.isPattern( target))
                 throw new RequestHandlerException( BAD_REQUEST, "pattern uri is not allowed");
 
-            synchronized( TransferServer.class)
-            {
-                File dir= new File( FileUtil.onlyPath( target));
-                if( !dir.mkdirs() && !dir.exists())
-                    throw new RequestHandlerException( FILE_PERMISSION_ERROR, "Can not create dest dir ["+ dir+ "]");
-            }
+            File dir= new File( FileUtil.onlyPath( target));
+            if( !DirectoryCache.ensure( dir))
+                throw new RequestHandlerException( FILE_PERMISSION_ERROR, "Can not create dest dir ["+ dir+ "]");
 
             File dest= new File( target);
             String onExist= OptionParameter.first( targetOpts, ON_EXIST, FAIL_ONEXIST);
@@ -195,10 +210,16 @@ public class ResourceCommandRequestHandler extends AbstractRequestHandler
                 }
             }
             else
+            {
                 FileUtil.renameWithLock( request.content(), dest, fs->{ if( session!= null) session.processing( fs);});
+                // 분할 전송된 파일은 수신되는 대로 병합한다.
+                if( session!= null)
+                    session.splitArrived( dest);
+            }
+            ResourceContentCache.invalidate( dest);
             
             if( OptionParameter.contains( targetOpts, DELET_ON_EXIT, TRUE, true))
-                dest.deleteOnExit();
+                TempFileManager.deleteOnExit( dest);
             
             final TransferContext trCtx= transfer;
             final Site trSite= site;
@@ -250,6 +271,41 @@ public class ResourceCommandRequestHandler extends AbstractRequestHandler
         }
     }
 
+    /**
+     * 위치(Offset)가 지정된 분할 전송 요청을 처리한다.
+     * 본문은 수신 중에 session의 staging 파일의 지정된 위치에 직접 기록되었으므로 기록된 구간만 session에 반영한다.
+     * 저장 위치로의 반영과 Interceptor 실행은 MERGE 요청에서 처리된다.
+     */
+    private HandlerResponse handlePositionalPutCommandRequest( final TransferMessage request) throws RequestHandlerException
+    {
+        TransferMessage response= new TransferMessage( PUT);
+        response.setUri( request.uri());
+
+        FileData content= request.content();
+        try
+        {
+            String sessionId= request.headers().get( SESSION_ID);
+            long offset= request.headers().getLong( OFFSET, -1L);
+            long length= TransferMessageUtil.getContentLength( request, 0);
+            ResourceSession session= StringUtils.hasText( sessionId) ? ResourceSessionManager.getSession( sessionId) : null;
+            if( session== null || session.stagingFile()== null)
+                throw new RequestHandlerException( BAD_REQUEST, "staging session ["+ sessionId+ "] is not found");
+            if( content!= null && ( content.position()!= offset || content.length()!= length))
+                throw new RequestHandlerException( BAD_REQUEST, "offset ["+ offset+ "] length ["+ length+ "] is out of staging range");
+            if( !session.staged( offset, content!= null ? content.length() : 0))
+                throw new RequestHandlerException( BAD_REQUEST, "offset ["+ offset+ "] length ["+ length+ "] is out of staging range");
+
+            response.headers().add( REASON, "file content ["+ offset+ "-"+ ( offset+ length)+ "] is staged");
+            return new HandlerResponse( response);
+        }
+        finally
+        {
+            // staging 파일은 공유되므로 삭제되지 않으며, 범위를 벗어나 임시 파일에 기록된 본문은 삭제된다.
+            if( content!= null)
+                content.release();
+        }
+    }
+
     private HandlerResponse handleDeleteCommandRequest( final TransferMessage request) throws RequestHandlerException
     {
         TransferMessage response= new TransferMessage( DELETE);
@@ -284,7 +340,15 @@ public class ResourceCommandRequestHandler extends AbstractRequestHandler
                 for( int i= 0; i< resources.length; i++)
                 {
                     File toDelete= resources[i].getFile();
+                    boolean directory= toDelete.isDirectory();
                     FileUtil.deleteFile( toDelete);
+                    if( directory)
+                    {
+                        ResourceContentCache.invalidateTree( toDelete);
+                        DirectoryCache.invalidate( toDelete);
+                    }
+                    else
+                        ResourceContentCache.invalidate( toDelete);
                     deleted++;
                     response.headers().add( REASON, toDelete.getAbsolutePath());
                     logger.debug( "rsources: {} is deleted", toDelete);
@@ -411,15 +475,47 @@ public class ResourceCommandRequestHandler extends AbstractRequestHandler
             if( !fs.exists())
                 throw new RequestHandlerException( SOURCE_FILE_NOT_FOUND, fs.getAbsolutePath()+ " is not found");
 
+            // 이어받기 요청은 이미 받은 부분과 같은 원본 파일인 경우에만 응답한다.
+            String match= request.headers().get( IF_MATCH);
+            if( match!= null && !match.equals( TransferMessageUtil.validator( fs.length(), fs.lastModified())))
+                throw new RequestHandlerException( PRECONDITION_FAILED, fs.getAbsolutePath()+ " is changed. If-Match: "+ match);
+
             transfer= TransferContext.createTransferContext( applicationContext, request.headers(), new String[] {source});
 
             preProcess( transfer, options.get( INTERCEPTOR), request.headers(), site, TransferInterceptor.class);
 
-            long contentLength= fs.length();
+            // Offset 또는 Range가 지정된 경우 지정된 범위만 응답하며 전체 크기와 수정 시간을 함께 전달한다.
+            long resourceLength= fs.length();
+            long contentLength= resourceLength;
+            long offset= request.headers().getLong( OFFSET, request.headers().contains( RANGE) ? 0L : -1L);
+            if( offset>= 0)
+            {
+                long range= request.headers().getLong( RANGE, resourceLength- offset);
+                if( offset> resourceLength || range< 0 || offset+ range> resourceLength)
+                    throw new RequestHandlerException( BAD_REQUEST, "range ["+ offset+ "-"+ ( offset+ range)
+                            + "] is out of resource length ["+ resourceLength+ "]");
+                contentLength= range;
+                response.headers().add( OFFSET, offset);
+            }
             response.headers().add( CONTENT_LENGTH, contentLength);
+            response.headers().add( RESOURCE_LENGTH, resourceLength);
+            response.headers().add( RESOURCE_MODIFIED, fs.lastModified());
             response.headers().add( REASON, "file content ["+ source+ "] is transferred");
             FileData fdata= new FileData( contentLength, environment);
-            fdata.setContent( fs);
+            if( offset>= 0)
+                fdata.setContent( fs, offset, contentLength);
+            // 작은 파일은 cache에 보관된 내용으로 응답하여 요청 마다 파일을 읽지 않는다.
+            else if( contentLength< environment.getChunkSize())
+                fdata.setContent( fs, ResourceContentCache.get( fs, contentLength));
+            else
+                fdata.setContent( fs);
+
+            // 클라이언트가 요청한 압축 방식(Accept-Encoding) 중 압축 효과가 있는 파일만 본문을 압축하여 응답
+            // 메시지 단위 압축이 협상되지 않은 연결은 연결 전체가 압축되므로 본문을 압축하지 않는다.
+            ContentEncoding encoding= TransferMessageUtil.isConnectionCompressed( context.channel()) ? ContentEncoding.IDENTITY :
+                    CompressionUtil.select( ContentEncoding.of( request.headers().get( ACCEPT_ENCODING)), fs);
+            if( encoding!= ContentEncoding.IDENTITY)
+                response.headers().add( CONTENT_ENCODING, encoding.value());
 
             if( contentLength< environment.getChunkSize())
                 response.setContent( fdata);
@@ -427,10 +523,13 @@ public class ResourceCommandRequestHandler extends AbstractRequestHandler
             {
                 response.headers().add( RESPONSE_CODE, OK);
                 response.headers().add( TRANSFER_ENCODING, CHUNKED);
+                response.setStreamId( streamId);
                 context.writeAndFlush( response);
-                TransferChunkedContentEncoder chunk= new TransferChunkedContentEncoder( fdata, environment.getChunkSize());
+                ChunkedInput<? extends TransferObject> chunk= TransferMessageUtil.isZeroCopyAvailable( context.channel(), response) ?
+                        new TransferFileRegionEncoder( fdata, environment.getChunkSize()) :
+                        new TransferChunkedContentEncoder( fdata, environment.getChunkSize());
 //                context.writeAndFlush( chunk).get();
-                context.writeAndFlush( chunk);
+                context.writeAndFlush( TransferStreamChunkedInput.of( chunk, streamId));
                 response= null;
             }
 
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.handler;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * 자주 요청되는 작은 파일(GET) 내용을 pooled direct buffer에 보관하는 off-heap cache
+ * 파일의 실제 경로(toRealPath)로 조회하며 파일의 수정 시간과 크기가 보관된 내용과 같은 경우에만 사용한다.
+ * 보관된 내용은 retainedDuplicate()로 전달되므로 요청 마다 파일을 열거나 읽지 않는다.
+ * <ul>
+ * <li>동시에 요청되는 GET이 하나의 lock을 경쟁하지 않도록 경로의 hash로 나눈 segment 별로 lock을 사용한다.</li>
+ * <li>segment 별 보관 크기가 capacity/segment 수를 넘으면 segment에서 가장 오래 사용되지 않은(LRU) 내용부터 제거한다. 
+ * 전체로는 근사(approximate) LRU로 동작한다.</li>
+ * <li>PUT, DELETE, MERGE 등으로 변경된 파일은 invalidate로, 삭제된 directory의 하위 파일은 invalidateTree로 제거한다.</li>
+ * <li>제거된 내용은 전송중인 응답이 모두 release된 후 pool로 반환된다.</li>
+ * </ul>
+ * @author Jongoh Lee
+ *
+ */
+
+public final class ResourceContentCache
+{
+    private static Logger logger= LoggerFactory.getLogger( ResourceContentCache.class);
+
+    // 2의 거듭제곱이어야 한다.
+    static final int SEGMENT_COUNT= 16;
+
+    private static final Segment[] SEGMENTS= new Segment[SEGMENT_COUNT];
+
+    private static final AtomicLong HITS= new AtomicLong();
+
+    private static final AtomicLong MISSES= new AtomicLong();
+
+    private static final AtomicLong EVICTIONS= new AtomicLong();
+
+    private static final AtomicLong BYTES= new AtomicLong();
+
+    // 읽는 동안 변경된 파일 내용이 보관되지 않도록 invalidate 마다 증가한다.
+    private static final AtomicLong GENERATION= new AtomicLong();
+
+    private static volatile long capacity;
+
+    private static volatile long maxEntrySize;
+
+    static
+    {
+        for( int i= 0; i< SEGMENT_COUNT; i++)
+            SEGMENTS[i]= new Segment();
+    }
+
+    private ResourceContentCache() {}
+
+    /**
+     * cache 크기를 설정한다. 변경된 크기를 넘는 내용은 제거된다.
+     * @param capacity 보관할 최대 크기, 0 이하인 경우 사용하지 않는다.
+     * @param maxEntrySize 보관할 파일의 최대 크기, segment 별 보관 크기(capacity/segment 수)를 넘을 수 없다.
+     */
+    public static void configure( long capacity, long maxEntrySize)
+    {
+        ResourceContentCache.capacity= Math.max( 0, capacity);
+        ResourceContentCache.maxEntrySize= Math.min( ResourceContentCache.capacity/ SEGMENT_COUNT, maxEntrySize);
+        for( Segment segment: SEGMENTS)
+        {
+            synchronized( segment)
+            {
+                segment.evict();
+            }
+        }
+        logger.info( "content cache capacity: {}, max entry size: {}", capacity, ResourceContentCache.maxEntrySize);
+    }
+
+    /**
+     * 파일 내용을 조회한다. 보관되지 않았거나 변경된 경우 파일을 읽어서 보관한다.
+     * @param file 조회할 파일
+     * @param length 응답할 파일 크기, 현재 파일 크기와 다르면 사용하지 않는다.
+     * @return 파일 내용(retainedDuplicate), cache를 사용할 수 없는 경우 null. 호출한 쪽에서 release해야 한다.
+     */
+    public static ByteBuf get( File file, long length)
+    {
+        if( length<= 0 || length> maxEntrySize)
+            return null;
+
+        Path path= key( file);
+        try
+        {
+            BasicFileAttributes attrs= Files.readAttributes( path, BasicFileAttributes.class);
+            if( attrs.size()!= length)
+                return null;
+            long modified= attrs.lastModifiedTime().toMillis();
+
+            Segment segment= segment( path);
+            synchronized( segment)
+            {
+                Entry entry= segment.entries.get( path);
+                if( entry!= null && entry.modified== modified && entry.length== length)
+                {
+                    HITS.incrementAndGet();
+                    return entry.content.retainedDuplicate();
+                }
+                if( entry!= null)
+                    segment.remove( path);
+            }
+
+            MISSES.incrementAndGet();
+            return load( segment, path, modified, length);
+        }
+        catch( IOException e)
+        {
+            logger.debug( "content [{}] is not cached.", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * 변경 또는 삭제된 파일의 보관된 내용을 제거한다.
+     */
+    public static void invalidate( File file)
+    {
+        if( file== null)
+            return;
+        GENERATION.incrementAndGet();
+        if( capacity<= 0)
+            return;
+        Path path= key( file);
+        Segment segment= segment( path);
+        synchronized( segment)
+        {
+            segment.remove( path);
+        }
+    }
+
+    /**
+     * 삭제된 directory 하위 파일의 보관된 내용을 모두 제거한다.
+     * 하위 파일은 경로의 hash에 따라 여러 segment에 나뉘어 있으므로 모든 segment를 확인한다.
+     */
+    public static void invalidateTree( File dir)
+    {
+        if( dir== null)
+            return;
+        GENERATION.incrementAndGet();
+        if( capacity<= 0)
+            return;
+        Path prefix= key( dir);
+        for( Segment segment: SEGMENTS)
+        {
+            synchronized( segment)
+            {
+                segment.removeIf( prefix);
+            }
+        }
+    }
+
+    public static long hits()
+    {
+        return HITS.get();
+    }
+
+    public static long misses()
+    {
+        return MISSES.get();
+    }
+
+    /**
+     * @return capacity를 넘어서 제거된 내용 수
+     */
+    public static long evictions()
+    {
+        return EVICTIONS.get();
+    }
+
+    /**
+     * @return 보관중인 내용의 크기
+     */
+    public static long bytes()
+    {
+        return BYTES.get();
+    }
+
+    /**
+     * 같은 파일이 symbolic link 등 다른 경로로 요청되어도 하나로 보관되도록 실제 경로를 사용한다.
+     * 삭제되어 실제 경로를 구할 수 없는 경우 상위 directory의 실제 경로를 사용한다.
+     */
+    private static Path key( File file)
+    {
+        Path path= file.toPath().toAbsolutePath().normalize();
+        try
+        {
+            return path.toRealPath();
+        }
+        catch( IOException e)
+        {
+            Path parent= path.getParent();
+            try
+            {
+                return parent!= null ? parent.toRealPath().resolve( path.getFileName()) : path;
+            }
+            catch( IOException ie)
+            {
+                return path;
+            }
+        }
+    }
+
+    private static Segment segment( Path path)
+    {
+        int h= path.hashCode();
+        return SEGMENTS[( h^ ( h>>> 16))& ( SEGMENT_COUNT- 1)];
+    }
+
+    private static ByteBuf load( Segment segment, Path path, long modified, long length) throws IOException
+    {
+        long generation= GENERATION.get();
+        ByteBuf content= PooledByteBufAllocator.DEFAULT.directBuffer( (int)length);
+        try( FileChannel fch= FileChannel.open( path, READ))
+        {
+            while( content.writerIndex()< length)
+            {
+                if( content.writeBytes( fch, content.writerIndex(), (int)length- content.writerIndex())< 0)
+                    throw new IOException( "file ["+ path+ "] is truncated while caching");
+            }
+        }
+        catch( IOException | RuntimeException e)
+        {
+            content.release();
+            throw e;
+        }
+
+        synchronized( segment)
+        {
+            // 읽는 동안 다른 파일이 변경된 경우 보관하지 않고 이번 요청에만 사용한다.
+            if( generation!= GENERATION.get() || segment.entries.containsKey( path))
+                return content;
+            ByteBuf duplicated= content.retainedDuplicate();
+            segment.entries.put( path, new Entry( content, modified, length));
+            segment.bytes+= length;
+            BYTES.addAndGet( length);
+            segment.evict();
+            return duplicated;
+        }
+    }
+
+    /**
+     * 경로의 hash로 나눈 보관 영역, lock(synchronized)으로 보호된다.
+     */
+    private static final class Segment
+    {
+        final LinkedHashMap<Path, Entry> entries= new LinkedHashMap<Path, Entry>( 16, 0.75f, true);
+
+        long bytes;
+
+        void remove( Path path)
+        {
+            Entry entry= entries.remove( path);
+            if( entry!= null)
+                release( entry);
+        }
+
+        void removeIf( Path prefix)
+        {
+            Iterator<Map.Entry<Path, Entry>> it= entries.entrySet().iterator();
+            while( it.hasNext())
+            {
+                Map.Entry<Path, Entry> entry= it.next();
+                if( entry.getKey().startsWith( prefix))
+                {
+                    it.remove();
+                    release( entry.getValue());
+                }
+            }
+        }
+
+        void evict()
+        {
+            long limit= capacity/ SEGMENT_COUNT;
+            Iterator<Map.Entry<Path, Entry>> it= entries.entrySet().iterator();
+            while( bytes> limit && it.hasNext())
+            {
+                Entry entry= it.next().getValue();
+                it.remove();
+                release( entry);
+                EVICTIONS.incrementAndGet();
+            }
+        }
+
+        private void release( Entry entry)
+        {
+            bytes-= entry.length;
+            BYTES.addAndGet( -entry.length);
+            entry.content.release();
+        }
+    }
+
+    private static final class Entry
+    {
+        final ByteBuf content;
+
+        final long modified;
+
+        final long length;
+
+        Entry( ByteBuf content, long modified, long length)
+        {
+            this.content= content;
+            this.modified= modified;
+            this.length= length;
+        }
+    }
+}
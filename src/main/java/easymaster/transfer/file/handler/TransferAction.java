@@ -22,6 +22,8 @@ public class TransferAction implements Comparable<TransferAction>
 
     public static final String SESSION_= "/session";
 
+    public static final String SESSION_STATUS_= "/session/status";
+
     public static final String MERGE_= "/merge";
 
     public static final String SHUTDOWN_= "/shutdown";
@@ -32,6 +34,8 @@ public class TransferAction implements Comparable<TransferAction>
 
     public static final TransferAction SESSION= new TransferAction( SESSION_);
 
+    public static final TransferAction SESSION_STATUS= new TransferAction( SESSION_STATUS_);
+
     public static final TransferAction SHUTDOWN= new TransferAction( SHUTDOWN_);
 
     private static final Map<String, TransferAction> actionMap;
@@ -45,6 +49,7 @@ public class TransferAction implements Comparable<TransferAction>
             {
                 put( NOOP_, NOOP);
                 put( SESSION_, SESSION);
+                put( SESSION_STATUS_, SESSION_STATUS);
                 put( MERGE_, MERGE);
                 put( SHUTDOWN_, SHUTDOWN);
             }};
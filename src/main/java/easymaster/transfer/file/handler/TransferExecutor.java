@@ -38,12 +38,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import easymaster.transfer.file.client.TransferClient;
+import easymaster.transfer.file.client.TransferClientFactory;
 import easymaster.transfer.file.config.TransferEnvironment;
 import easymaster.transfer.file.config.TransferEnvironment.Site;
 import easymaster.transfer.file.util.FileUtil;
 import easymaster.transfer.file.util.OptionParameter;
 import easymaster.transfer.file.util.TransferMessageUtil;
-import io.netty.channel.Channel;
 
 /**
  * 파일 전송을 처리하는 Executor
@@ -84,11 +84,19 @@ public class TransferExecutor
                 throw new RequestHandlerException( TRANSFER_FAILED, "agent: "+ agents+ " are not responding");
             
             // 수신 Agent 서버에 파일이 이미 존재하고 FailOnExist Option인 경우 fast-fail 처리한다.
-            for( Task task: tasks)
+            // 확인 요청은 연결 Pool의 연결을 재사용한다.
+            try
+            {
+                for( Task task: tasks)
+                {
+                    if( OptionParameter.contains( task.destOptions, ON_EXIST, FAIL_ONEXIST, true)
+                            && client.requestResourceExist( THROWAWAY, task.destinationPath, OptionParameter.first( task.destOptions, SITE)))
+                        throw new RequestHandlerException( ALREADY_EXIST, "target file["+ task.destinationPath+ "] is already exist");
+                }
+            }
+            finally
             {
-                if( OptionParameter.contains( task.destOptions, ON_EXIST, FAIL_ONEXIST, true)
-                        && client.requestResourceExist( THROWAWAY, task.destinationPath, OptionParameter.first( task.destOptions, SITE)))
-                    throw new RequestHandlerException( ALREADY_EXIST, "target file["+ task.destinationPath+ "] is already exist");
+                client.shutdown();
             }
         }
         return true;
@@ -169,14 +177,17 @@ public class TransferExecutor
     {
         for( String agent: agents)
         {
-            Channel channel= null;
             String[] address= StringUtils.tokenizeToStringArray( agent, ":");
-            TransferClient client= TransferClient.create( agentEnv.getRepository().getBaseDir(), workers,
+            // 전송 요청마다 생성되는 TransferClient는 EventLoopGroup, SslContext를 공유한다.
+            TransferClient client= TransferClientFactory.getInstance().create( agentEnv.getRepository().getBaseDir(), workers,
                     (int)agentEnv.getConnectTimeout().toMillis(), agentEnv.isSsl(),
                     address[0], Integer.parseInt( address[1]), agentEnv.getChunkSize());
             try
             {
-                channel= client.connect();
+                // 분할 전송의 동시 전송 수는 처리량과 응답 지연에 따라 지정된 범위에서 조정된다.
+                client.setParallelConcurrency( agentEnv.getParallelMinStreams(), agentEnv.getParallelMaxStreams());
+                // 연결 확인에 사용한 연결은 Pool에 반환되어 전송 요청에 재사용된다.
+                client.probe();
                 return client;
             }
             catch( Exception e)
@@ -186,11 +197,6 @@ public class TransferExecutor
                 client.shutdown();
                 continue;
             }
-            finally
-            {
-                if( channel!= null)
-                    channel.close();
-            }
         }
         return null;
     }
@@ -247,6 +253,8 @@ public class TransferExecutor
 
                     File to= new File( backupDir+ File.separator+ resource.getName());
                     Files.move( resource.toPath(), to.toPath(), REPLACE_EXISTING);
+                    ResourceContentCache.invalidate( resource);
+                    ResourceContentCache.invalidate( to);
                     
                     logger.debug( "resource[{}] is moved to [{}]", resource.getAbsolutePath(), to.getAbsolutePath());
 
@@ -254,6 +262,7 @@ public class TransferExecutor
                 else if( DELETE.equals( after))
                 {
                     FileUtil.deleteFile( resource);
+                    ResourceContentCache.invalidate( resource);
                     logger.debug( "resource[{}] is deleted");
                 }
             }
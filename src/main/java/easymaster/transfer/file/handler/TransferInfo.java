@@ -27,6 +27,8 @@ public class TransferInfo implements Comparable<TransferInfo>
 
     public static final String EXIST_= "/exist";
 
+    public static final String UPGRADE_= "/upgrade";
+
     public static final TransferInfo NOOP= new TransferInfo( NOOP_);
 
     public static final TransferInfo HEALTH= new TransferInfo( HEALTH_);
@@ -35,6 +37,8 @@ public class TransferInfo implements Comparable<TransferInfo>
 
     public static final TransferInfo EXIST= new TransferInfo( EXIST_);
 
+    public static final TransferInfo UPGRADE= new TransferInfo( UPGRADE_);
+
     private static final Map<String, TransferInfo> infoMap;
 
     private final AsciiString uri;
@@ -48,6 +52,7 @@ public class TransferInfo implements Comparable<TransferInfo>
                 put( HEALTH_, HEALTH);
                 put( INFO_, INFO);
                 put( EXIST_, EXIST);
+                put( UPGRADE_, UPGRADE);
             }};
     }
 
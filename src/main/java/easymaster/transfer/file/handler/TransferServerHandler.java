@@ -12,26 +12,43 @@ import static easymaster.transfer.file.protocol.TransferCommand.INFO_;
 import static easymaster.transfer.file.protocol.TransferCommand.LIST_;
 import static easymaster.transfer.file.protocol.TransferCommand.PUT_;
 import static easymaster.transfer.file.protocol.TransferCommand.TRANSFER_;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.OFFSET;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.REASON;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.RESPONSE_CODE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.SESSION_ID;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_DESTINATION_URI;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.CHUNKED;
 import static easymaster.transfer.file.protocol.TransferResponseCode.BAD_REQUEST;
 import static easymaster.transfer.file.protocol.TransferResponseCode.INTERNAL_SERVER_ERROR;
+import static easymaster.transfer.file.util.OptionParameter.SITE;
 import static io.netty.buffer.Unpooled.EMPTY_BUFFER;
 import static io.netty.channel.ChannelFutureListener.CLOSE;
 
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.util.StringUtils;
 
+import easymaster.transfer.file.config.TransferCommandExecutor;
 import easymaster.transfer.file.config.TransferEnvironment;
+import easymaster.transfer.file.config.TransferEnvironment.Site;
 import easymaster.transfer.file.interceptors.AgentInterceptor;
 import easymaster.transfer.file.interceptors.TransferContext;
 import easymaster.transfer.file.protocol.FileData;
 import easymaster.transfer.file.protocol.LastTransferContent;
+import easymaster.transfer.file.protocol.TransferCommand;
 import easymaster.transfer.file.protocol.TransferContent;
 import easymaster.transfer.file.protocol.TransferHeaderNames;
 import easymaster.transfer.file.protocol.TransferHeaderValues;
@@ -39,6 +56,9 @@ import easymaster.transfer.file.protocol.TransferHeaders;
 import easymaster.transfer.file.protocol.TransferMessage;
 import easymaster.transfer.file.protocol.TransferObject;
 import easymaster.transfer.file.protocol.TransferResponseCode;
+import easymaster.transfer.file.session.ResourceSession;
+import easymaster.transfer.file.session.ResourceSessionManager;
+import easymaster.transfer.file.util.OptionParameter;
 import easymaster.transfer.file.util.TransferMessageUtil;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -46,9 +66,13 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.PrematureChannelClosureException;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
 import io.netty.util.internal.ObjectUtil;
 
 /**
+ * 수신된 요청을 Command 별 RequestHandler로 전달
+ * binary framing 연결에서는 여러 요청의 프레임이 섞여서 수신되므로 요청 상태를 stream 별로 유지한다.
  * @author Jongoh Lee
  *
  */
@@ -63,7 +87,17 @@ public class TransferServerHandler extends SimpleChannelInboundHandler<TransferO
     
     private final Map<String, AgentInterceptor> interceptors;
     
-    private TransferMessage request;
+    private final IntObjectMap<TransferMessage> requests= new IntObjectHashMap<TransferMessage>();
+    
+    // event loop에서만 접근한다. 처리를 대기중인 텍스트 프로토콜 요청
+    private final Queue<TransferMessage> pendings= new ArrayDeque<TransferMessage>();
+    
+    private boolean busy;
+    
+    // event loop에서만 접근한다. 오류로 실패 응답한 binary framing stream, 마지막 본문까지 수신되는 프레임은 무시한다.
+    private final Set<Integer> discards= new HashSet<Integer>();
+    
+    private UploadBackpressure backpressure;
     
     public TransferServerHandler( ApplicationContext applicationContext, TransferEnvironment environment)
     {
@@ -74,14 +108,66 @@ public class TransferServerHandler extends SimpleChannelInboundHandler<TransferO
         this.interceptors= applicationContext.getBeansOfType( AgentInterceptor.class);
     }
     
+    @Override
+    public void handlerAdded( ChannelHandlerContext ctx) throws Exception
+    {
+        this.backpressure= new UploadBackpressure( ctx.channel(), environment);
+        super.handlerAdded( ctx);
+    }
+    
+    @Override
+    public void channelInactive( ChannelHandlerContext ctx) throws Exception
+    {
+        backpressure.close();
+        abandon();
+        super.channelInactive( ctx);
+    }
+    
     @Override
     public void channelRead0( ChannelHandlerContext context, TransferObject message) throws Exception
+    {
+        int streamId= message.streamId();
+        if( streamId== 0)
+        {
+            read( context, message);
+            return;
+        }
+
+        // binary framing 연결은 오류가 발생한 stream만 실패로 응답하고 연결의 다른 stream은 계속 처리한다.
+        if( message instanceof TransferMessage)
+            discards.remove( streamId);
+        else if( discards.contains( streamId))
+        {
+            if( message instanceof LastTransferContent)
+                discards.remove( streamId);
+            return;
+        }
+
+        try
+        {
+            read( context, message);
+        }
+        catch( Exception e)
+        {
+            logger.error( "stream [{}] is failed.", streamId, e);
+            TransferMessage request= requests.remove( streamId);
+            if( request!= null)
+                abandon( request);
+            if( !( message instanceof LastTransferContent))
+                discards.add( streamId);
+            failStream( context, streamId, e);
+        }
+    }
+    
+    private void read( ChannelHandlerContext context, TransferObject message) throws Exception
     {
         // chunk단위로 수신되는 메시지를 모두 수신 또는 단일 프레임으로 전송된 요청 메시지 수산 완료
+        int streamId= message.streamId();
         if( message instanceof LastTransferContent)
         {
-            logger.debug( "LastTransferContent detected...");
+            logger.debug( "LastTransferContent detected... stream: {}", streamId);
             
+            TransferMessage request= requests.remove( streamId);
             if( request== null)
                 return;
 
@@ -89,74 +175,280 @@ public class TransferServerHandler extends SimpleChannelInboundHandler<TransferO
                 request.content().addContent( EMPTY_BUFFER, true);
             
             logger.debug( "request command: {}", request.command());
+            dispatch( context, request);
+            return;
+        }
+        
+        if( message instanceof TransferMessage) // 프레임의 헤더 부분 read
+            requests.put( streamId, (TransferMessage)message);
+        else if( message instanceof TransferContent)    // 프레임의 파일 컨텐트 부분 read
+        {
+            TransferMessage request= requests.get( streamId);
+            if( request== null)
+                throw new RequestHandlerException( BAD_REQUEST, "request message not found before AgentContent");
+
+            TransferContent content= (TransferContent)message;
+            ByteBuf buf= content.retain().content();
+
+            if( request.content()== null)
+                request.setContent( newContent( request).pendingListener( backpressure));
+            request.content().addContent( buf, false);
+        }
+    }
+    
+    @Override
+    public void exceptionCaught( ChannelHandlerContext ctx, Throwable cause)
+    {
+        if( !( cause instanceof PrematureChannelClosureException))
+            logger.error( "TransferServerHandler failed.", cause);
+
+        // 연결 오류(Connection reset 등)로 끊긴 경우에도 수신중인 본문을 checkpoint 또는 삭제한다.
+        abandon();
+        discardPendings();
+        ctx.close();
+    }
+    
+    /**
+     * binary framing stream의 요청 처리 실패를 해당 stream으로 응답한다. 연결은 유지된다.
+     */
+    private void failStream( ChannelHandlerContext context, int streamId, Throwable cause)
+    {
+        TransferResponseCode rsCode= cause instanceof RequestHandlerException && ( (RequestHandlerException)cause).getResponseCode()!= null ? 
+                ( (RequestHandlerException)cause).getResponseCode() : INTERNAL_SERVER_ERROR;
+        TransferMessage response= new TransferMessage( TransferCommand.INFO);
+        response.setStreamId( streamId);
+        response.headers().add( RESPONSE_CODE, rsCode);
+        if( StringUtils.hasText( cause.getMessage()))
+            response.headers().add( REASON, TransferMessageUtil.validateHeaderValue( cause.getMessage()));
+        context.writeAndFlush( response);
+        logger.debug( "requestFailedResponse is sent: {}", response);
+    }
+    
+    /**
+     * 처리를 대기중인 텍스트 프로토콜 요청의 본문을 삭제한다. 요청은 모두 수신된 상태이므로 본문의 임시 파일을 삭제하고 release한다.
+     */
+    private void discardPendings()
+    {
+        TransferMessage request;
+        while( ( request= pendings.poll())!= null)
+        {
+            FileData content= request.content();
+            if( content== null)
+                continue;
+            logger.info( "pending request [{} {}] is discarded", request.command(), request.uri());
+            content.delete();
+            content.release();
+        }
+    }
+    
+    /**
+     * 연결이 끊겨 본문을 모두 수신하지 못한 요청을 정리한다.
+     * session의 staging 파일에 위치(Offset) 별로 기록중인 본문은 disk에 반영된 구간까지 session에 기록하여 
+     * 나머지 구간만 다시 전송할 수 있도록 하고, 그 외에는 임시 파일을 삭제한다.
+     */
+    private void abandon()
+    {
+        for( TransferMessage request: requests.values())
+            abandon( request);
+        requests.clear();
+    }
+    
+    private void abandon( TransferMessage request)
+    {
+        FileData content= request.content();
+        if( content== null)
+            return;
+
+        String sessionId= request.headers().get( SESSION_ID);
+        ResourceSession session= content.position()>= 0 && sessionId!= null ? ResourceSessionManager.getSession( sessionId) : null;
+        if( session== null)
+        {
+            logger.info( "uncompleted resource[{}] will be deleted", content.getName());
+            content.delete();
+            return;
+        }
+
+        long offset= content.position();
+        content.checkpoint().whenComplete( ( written, cause)->{
+            if( cause!= null)
+                logger.warn( "uncompleted content [{}] of session [{}] can not be checkpointed", offset, sessionId, cause);
+            else if( written> 0 && session.staged( offset, written))
+                logger.info( "uncompleted content [{}-{}] of session [{}] is staged", new Object[] { offset, offset+ written, sessionId});
+            content.release();
+        });
+    }
+    
+    /**
+     * 요청 본문을 기록할 FileData를 생성한다.
+     * 위치(Offset)가 지정된 분할 전송 요청은 session의 staging 파일에 직접 기록하고, 그 외에는 임시 파일에 기록한다.
+     * staging 파일의 범위를 벗어나는 요청은 임시 파일에 기록되며 PUT 처리에서 거절된다.
+     */
+    private FileData newContent( TransferMessage request)
+    {
+        long length= TransferMessageUtil.getContentLength( request, 0);
+        String sessionId= request.headers().get( SESSION_ID);
+        long offset= request.headers().getLong( OFFSET, -1L);
+        if( offset>= 0 && sessionId!= null)
+        {
+            ResourceSession session= ResourceSessionManager.getSession( sessionId);
+            File staging= session!= null ? session.stagingFile() : null;
+            if( staging!= null && offset+ length<= session.stagingLength())
+                return new FileData( staging, offset, length, environment);
+        }
+        return new FileData( length, stagingBaseDir( request), environment);
+    }
+    
+    /**
+     * 임시 파일을 생성할 base directory, 저장 위치와 같은 file system에 생성되도록 저장할 site의 base directory를 사용한다.
+     */
+    private File stagingBaseDir( TransferMessage request)
+    {
+        String target= request.headers().get( TRANSFER_DESTINATION_URI);
+        if( target!= null)
+        {
+            try
+            {
+                Map<String, List<String>> options= new LinkedHashMap<String, List<String>>();
+                TransferMessageUtil.decodeUri( target, options);
+                String siteOp= OptionParameter.first( options, SITE);
+                Site site= siteOp!= null ? environment.getRepository().getSites().get( siteOp) : null;
+                if( site!= null)
+                    return new File( site.getBaseDir());
+            }
+            catch( Exception e) { /* 잘못된 URI는 요청 처리에서 거절된다. */}
+        }
+        return new File( environment.getRepository().getBaseDir());
+    }
+    
+    /**
+     * 요청 처리를 요청 처리 Executor로 전달한다.
+     * 텍스트 프로토콜(stream 0) 요청은 응답 순서가 요청 순서와 같아야 하므로 연결 별로 하나씩 차례대로 처리한다.
+     * binary framing 연결의 stream은 서로 독립적이므로 바로 전달한다.
+     */
+    private void dispatch( ChannelHandlerContext context, TransferMessage request)
+    {
+        Executor executor= TransferCommandExecutor.requestExecutor();
+        if( executor== null)
+        {
+            process( context, request);
+            return;
+        }
+
+        if( request.streamId()!= 0)
+        {
+            submit( context, executor, request);
+            return;
+        }
+
+        pendings.add( request);
+        if( !busy)
+            next( context, executor);
+    }
+
+    /**
+     * event loop에서 호출되며 대기중인 텍스트 프로토콜 요청 중 다음 요청을 처리한다.
+     */
+    private void next( ChannelHandlerContext context, Executor executor)
+    {
+        TransferMessage request= pendings.poll();
+        busy= request!= null;
+        if( request!= null && !submit( context, executor, request))
+            next( context, executor);
+    }
+
+    private boolean submit( ChannelHandlerContext context, Executor executor, TransferMessage request)
+    {
+        try
+        {
+            executor.execute( ()->{
+                try
+                {
+                    process( context, request);
+                }
+                finally
+                {
+                    if( request.streamId()== 0)
+                        context.executor().execute( ()-> next( context, executor));
+                }
+            });
+            return true;
+        }
+        catch( RejectedExecutionException e)
+        {
+            logger.warn( "request is rejected. command: {}, uri: {}", request.command(), request.uri());
+            if( request.content()!= null)
+                request.content().delete();
+
+            TransferMessage response= new TransferMessage( request.command());
+            response.setUri( request.uri());
+            response.setStreamId( request.streamId());
+            response.headers().add( RESPONSE_CODE, INTERNAL_SERVER_ERROR);
+            response.headers().add( REASON, "server is busy");
+            context.writeAndFlush( response);
+            return false;
+        }
+    }
+
+    /**
+     * 요청을 Command 별 RequestHandler로 처리한다.
+     * 파일 rename, merge 등 blocking 작업이 포함되므로 요청 처리 Executor에서 호출된다.
+     */
+    private void process( ChannelHandlerContext context, TransferMessage request)
+    {
+        int streamId= request.streamId();
+        try
+        {
+            // write-behind로 기록중인 본문이 disk에 반영된 후 처리한다.
+            if( request.content()!= null)
+                request.content().awaitCompleted();
             
-            if( !preProcesses( context))
+            if( !preProcesses( context, request))
                 return;
-            
+        
             switch( request.command().name())
             {
                 case ACTION_:
                     ActionCommandRequestHandler actHandler= new ActionCommandRequestHandler( context, applicationContext, environment);
-                    actHandler.handleCommand( request);
+                    actHandler.stream( streamId).handleCommand( request);
                     break;
                 case INFO_:
                     InfoCommandRequestHandler infHandle= new InfoCommandRequestHandler( context, applicationContext, environment);
-                    infHandle.handleCommand( request);
+                    infHandle.stream( streamId).handleCommand( request);
                     break;
                 case PUT_:
                 case DELETE_:
                 case GET_:
                 case LIST_:
                     ResourceCommandRequestHandler rsHandler= new ResourceCommandRequestHandler( context, applicationContext, environment);
-                    rsHandler.handleCommand( request);
+                    rsHandler.stream( streamId).handleCommand( request);
                     break;
                 case TRANSFER_:
                     TransferCommandRequestHandler trHandler= new TransferCommandRequestHandler( context, applicationContext, environment);
-                    trHandler.handleCommand( request);
+                    trHandler.stream( streamId).handleCommand( request);
                     break;
             }
-            
-            if( !postProcesses( context))
+        
+            if( !postProcesses( context, request))
                 return;
-            if( !afterCompletions( context))
+            if( !afterCompletions( context, request))
                 return;
 
             if( closeRequired( request.headers()))
                 context.writeAndFlush( EMPTY_BUFFER).addListener( CLOSE);
-            return;
         }
-        
-        if( message instanceof TransferMessage) // 프레임의 헤더 부분 read
-            request= (TransferMessage)message;
-        else if( message instanceof TransferContent)    // 프레임의 파일 컨텐트 부분 read
+        catch( Exception e)
         {
-            if( request== null)
-                throw new RequestHandlerException( BAD_REQUEST, "request message not found before AgentContent");
-
-            TransferContent content= (TransferContent)message;
-            ByteBuf buf= content.retain().content();
-
-            if( request.content()== null)
-                request.setContent( new FileData( TransferMessageUtil.getContentLength( request, 0), environment));
-            request.content().addContent( buf, false);
+            if( streamId!= 0)
+            {
+                logger.error( "stream [{}] is failed.", streamId, e);
+                failStream( context, streamId, e);
+            }
+            else
+                context.executor().execute( ()-> exceptionCaught( context, e));
         }
     }
-    
-    @Override
-    public void exceptionCaught( ChannelHandlerContext ctx, Throwable cause)
-    {
-        if( cause instanceof PrematureChannelClosureException && request!= null && request.content()!= null)
-        {
-            logger.info( "uncompleted resource[{}] will be deleted", request.content().getName());
-            request.content().delete();
-        }
-        else
-            logger.error( "TransferServerHandler failed.", cause);
 
-        ctx.close();
-    }
-    
-    private boolean preProcesses( ChannelHandlerContext ctx)
+    private boolean preProcesses( ChannelHandlerContext ctx, TransferMessage request)
     {
         boolean answer= false;
         TransferMessage response= null;
@@ -186,6 +478,7 @@ public class TransferServerHandler extends SimpleChannelInboundHandler<TransferO
 
         if( !answer && response!= null)
         {
+            response.setStreamId( request.streamId());
             ctx.writeAndFlush( response);
             logger.debug( "requestFailedResponse is sent: {}", response);
         }
@@ -196,7 +489,7 @@ public class TransferServerHandler extends SimpleChannelInboundHandler<TransferO
         return answer;
     }
 
-    private boolean postProcesses( ChannelHandlerContext ctx) throws Exception
+    private boolean postProcesses( ChannelHandlerContext ctx, TransferMessage request) throws Exception
     {
         boolean answer= false;
         TransferMessage response= null;
@@ -220,6 +513,7 @@ public class TransferServerHandler extends SimpleChannelInboundHandler<TransferO
 
         if( !answer && response!= null)
         {
+            response.setStreamId( request.streamId());
             ctx.writeAndFlush( response);
             logger.debug( "requestFailedResponse is sent: {}", response);
         }
@@ -230,7 +524,7 @@ public class TransferServerHandler extends SimpleChannelInboundHandler<TransferO
         return answer;
     }
 
-    private boolean afterCompletions( ChannelHandlerContext ctx) throws Exception
+    private boolean afterCompletions( ChannelHandlerContext ctx, TransferMessage request) throws Exception
     {
         boolean answer= false;
         TransferMessage response= null;
@@ -253,6 +547,7 @@ public class TransferServerHandler extends SimpleChannelInboundHandler<TransferO
 
         if( !answer && response!= null)
         {
+            response.setStreamId( request.streamId());
             ctx.writeAndFlush( response);
             logger.debug( "requestFailedResponse is sent: {}", response);
         }
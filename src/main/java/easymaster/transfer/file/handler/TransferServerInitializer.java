@@ -8,12 +8,13 @@ package easymaster.transfer.file.handler;
 import org.springframework.context.ApplicationContext;
 
 import easymaster.transfer.file.config.TransferEnvironment;
+import easymaster.transfer.file.protocol.TransferContentCompressor;
+import easymaster.transfer.file.protocol.TransferContentDecompressor;
 import easymaster.transfer.file.protocol.TransferMessageServerCodec;
+import easymaster.transfer.file.util.TransferMessageUtil;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.compression.ZlibCodecFactory;
-import io.netty.handler.codec.compression.ZlibWrapper;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.stream.ChunkedWriteHandler;
 
@@ -46,13 +47,14 @@ public class TransferServerInitializer extends ChannelInitializer<SocketChannel>
         
         // 네트워크 구간의 부하를 감소시키기 위해 압축 송수신을 사용
         // 빠른 응답을 위해 Chunk단위 전송
-        // 1. 압축 / 해제 : ZibDecoder, ZipEncoder
+        // 1. 연결 전체 압축 / 해제 : ZlibDecoder, ZlibEncoder, INFO /upgrade 요청으로 메시지 단위 압축이 협상되면 제거된다.
         // 2. 메시지를 해석하여 처리 가능한 타입으로 변환 : TransferMessageServerCodec
-        // 3. 해석된 메시지를 이용하여 사용자 명령을 처리 : TransferServerHandler
-        pipeLine
-            .addLast( ZlibCodecFactory.newZlibDecoder( ZlibWrapper.GZIP))
-            .addLast( ZlibCodecFactory.newZlibEncoder( ZlibWrapper.GZIP))
+        // 3. 메시지 단위로 지정된 방식(Content-Encoding)의 본문 압축 / 해제 : TransferContentDecompressor, TransferContentCompressor
+        // 4. 해석된 메시지를 이용하여 사용자 명령을 처리 : TransferServerHandler
+        TransferMessageUtil.addConnectionCompression( pipeLine)
             .addLast( new TransferMessageServerCodec())
+            .addLast( new TransferContentDecompressor())
+            .addLast( new TransferContentCompressor( this.environment.getCompressionLevel()))
             .addLast( new ChunkedWriteHandler())
             .addLast( new TransferServerHandler( this.applicationContext, this.environment));
     }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.handler;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import easymaster.transfer.file.config.TransferEnvironment;
+import io.netty.channel.Channel;
+
+/**
+ * 파일 수신(upload) backpressure
+ * write-behind로 기록을 대기중인 본문 크기를 연결 별, 서버 전체로 집계하여 disk 기록이 수신을 따라가지 못하면 연결의 읽기(autoRead)를 중지한다.
+ * 읽기가 중지되면 TCP flow control에 의해 송신측 전송이 지연되어 direct memory에 수신 버퍼가 쌓이지 않는다.
+ * <ul>
+ * <li>연결의 대기 크기가 high watermark 이상이거나 전체 대기 크기가 limit 이상이면 읽기를 중지한다.</li>
+ * <li>연결의 대기 크기가 low watermark 이하이고 전체 대기 크기가 limit의 절반 이하이면 읽기를 재개한다.</li>
+ * </ul>
+ * @author Jongoh Lee
+ *
+ */
+
+public final class UploadBackpressure implements LongConsumer
+{
+    private static Logger logger= LoggerFactory.getLogger( UploadBackpressure.class);
+
+    private static final AtomicLong TOTAL_PENDING= new AtomicLong();
+
+    private static final Set<UploadBackpressure> PAUSED= ConcurrentHashMap.newKeySet();
+
+    private final Channel channel;
+
+    private final long highWaterMark;
+
+    private final long lowWaterMark;
+
+    private final long limit;
+
+    private final AtomicLong pending= new AtomicLong();
+
+    private final AtomicBoolean paused= new AtomicBoolean();
+
+    UploadBackpressure( Channel channel, TransferEnvironment environment)
+    {
+        this.channel= channel;
+        this.highWaterMark= environment.getUploadHighWaterMark();
+        this.lowWaterMark= Math.min( environment.getUploadLowWaterMark(), highWaterMark);
+        this.limit= environment.getUploadPendingLimit();
+    }
+
+    /**
+     * @return 서버 전체에서 write-behind로 기록을 대기중인 본문 크기
+     */
+    public static long totalPendingBytes()
+    {
+        return TOTAL_PENDING.get();
+    }
+
+    /**
+     * @return 읽기가 중지된 연결 수
+     */
+    public static int pausedChannels()
+    {
+        return PAUSED.size();
+    }
+
+    /**
+     * @return 연결에서 write-behind로 기록을 대기중인 본문 크기
+     */
+    public long pendingBytes()
+    {
+        return pending.get();
+    }
+
+    public boolean isPaused()
+    {
+        return paused.get();
+    }
+
+    /**
+     * 기록 대기 크기의 변화량을 반영한다. 증가는 I/O thread에서, 감소는 writer thread에서 호출된다.
+     */
+    @Override
+    public void accept( long delta)
+    {
+        long now= pending.addAndGet( delta);
+        long total= TOTAL_PENDING.addAndGet( delta);
+        if( delta> 0)
+        {
+            if( now>= highWaterMark || total>= limit)
+                pause( now, total);
+            return;
+        }
+
+        if( total> limit/ 2)
+            return;
+        if( now<= lowWaterMark)
+            resume();
+        // 전체 limit에 의해 중지된 다른 연결의 읽기를 재개한다.
+        if( !PAUSED.isEmpty())
+        {
+            for( UploadBackpressure other: PAUSED)
+            {
+                if( other.pending.get()<= other.lowWaterMark)
+                    other.resume();
+            }
+        }
+    }
+
+    /**
+     * 연결 종료시 호출된다.
+     */
+    void close()
+    {
+        paused.set( false);
+        PAUSED.remove( this);
+    }
+
+    private void pause( long now, long total)
+    {
+        if( !paused.compareAndSet( false, true))
+            return;
+        PAUSED.add( this);
+        logger.debug( "upload is paused. channel: {}, pending: {}, total pending: {}", channel, now, total);
+        apply();
+    }
+
+    private void resume()
+    {
+        if( !paused.compareAndSet( true, false))
+            return;
+        PAUSED.remove( this);
+        logger.debug( "upload is resumed. channel: {}", channel);
+        apply();
+    }
+
+    /**
+     * 현재 상태를 연결의 autoRead에 반영한다. 중지와 재개가 서로 다른 thread에서 호출되어도 마지막 상태가 반영된다.
+     */
+    private void apply()
+    {
+        if( channel.eventLoop().inEventLoop())
+        {
+            channel.config().setAutoRead( !paused.get());
+            return;
+        }
+        try
+        {
+            channel.eventLoop().execute( ()-> channel.config().setAutoRead( !paused.get()));
+        }
+        catch( RejectedExecutionException e)
+        {
+            close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.compression.SnappyFrameDecoder;
+import io.netty.handler.codec.compression.SnappyFrameEncoder;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.util.AsciiString;
+
+/**
+ * 메시지 본문(Content)에 적용하는 압축 방식
+ * 요청/응답 단위로 Content-Encoding 헤더를 통해 결정되며 헤더 부분은 압축되지 않는다.
+ * @author Jongoh Lee
+ *
+ */
+
+public enum ContentEncoding
+{
+    IDENTITY( TransferHeaderValues.IDENTITY),
+
+    GZIP( TransferHeaderValues.GZIP)
+    {
+        @Override
+        public ChannelHandler newEncoder( int level)
+        {
+            return ZlibCodecFactory.newZlibEncoder( ZlibWrapper.GZIP, level);
+        }
+
+        @Override
+        public ChannelHandler newDecoder()
+        {
+            return ZlibCodecFactory.newZlibDecoder( ZlibWrapper.GZIP);
+        }
+    },
+
+    SNAPPY( TransferHeaderValues.SNAPPY)
+    {
+        @Override
+        public ChannelHandler newEncoder( int level)
+        {
+            return new SnappyFrameEncoder();
+        }
+
+        @Override
+        public ChannelHandler newDecoder()
+        {
+            return new SnappyFrameDecoder( true);
+        }
+    };
+
+    public static final int DEFAULT_COMPRESSION_LEVEL= 6;
+
+    private final AsciiString value;
+
+    ContentEncoding( AsciiString value)
+    {
+        this.value= value;
+    }
+
+    public AsciiString value()
+    {
+        return value;
+    }
+
+    /**
+     * 압축 handler 생성, IDENTITY의 경우 null
+     * @param level gzip 압축 레벨(1~9), 다른 방식에서는 무시된다.
+     * @return ChannelHandler
+     */
+    public ChannelHandler newEncoder( int level)
+    {
+        return null;
+    }
+
+    /**
+     * 압축 해제 handler 생성, IDENTITY의 경우 null
+     * @return ChannelHandler
+     */
+    public ChannelHandler newDecoder()
+    {
+        return null;
+    }
+
+    /**
+     * 헤더 값에 해당하는 압축 방식, 지정되지 않았거나 지원하지 않는 값인 경우 IDENTITY
+     * @param value Content-Encoding, Accept-Encoding 헤더 값
+     * @return ContentEncoding
+     */
+    public static ContentEncoding of( CharSequence value)
+    {
+        if( value== null)
+            return IDENTITY;
+        if( GZIP.value.contentEqualsIgnoreCase( value))
+            return GZIP;
+        if( SNAPPY.value.contentEqualsIgnoreCase( value))
+            return SNAPPY;
+        return IDENTITY;
+    }
+}
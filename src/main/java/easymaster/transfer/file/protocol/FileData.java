@@ -15,19 +15,29 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import easymaster.transfer.file.TransferServer;
+import easymaster.transfer.file.config.TransferCommandExecutor;
 import easymaster.transfer.file.config.TransferEnvironment;
+import easymaster.transfer.file.util.DirectoryCache;
+import easymaster.transfer.file.util.TempFileManager;
+import easymaster.transfer.file.util.TransferDurability;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufHolder;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelException;
@@ -49,6 +59,9 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
 
     public static final String postfix= ".tmp";
 
+    // 수신중인 본문을 기록하는 임시 파일 전용 directory 이름, 저장할 site의 base directory 아래에 생성된다.
+    public static final String TEMP_DIR= "tmp";
+
     private final File basedir;
 
     private final String name;
@@ -59,13 +72,29 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
 
     private FileChannel fileChannel;
 
+    // 파일 내용을 positional read로 읽는 읽기 전용 channel
+    private FileChannel readChannel;
+
+    // cache에 보관된 파일 내용, content() 호출시 한번만 사용된다.
+    private ByteBuf cachedContent;
+
     private boolean renamed;
 
     private long size;
 
-    private boolean completed;
+    private volatile boolean completed;
 
     private long maxSize= -1;
+
+    // 지정된 경우 addContent로 수신한 본문을 write-behind로 기록한다.
+    private final Executor writerExecutor;
+
+    private FileDataWriter writer;
+
+    private LongConsumer pendingListener;
+
+    // 0 이상인 경우 여러 요청이 공유하는 파일(file)의 지정된 위치에 본문을 기록한다.
+    private long position= -1;
     
     public FileData( long definedSize)
     {
@@ -79,7 +108,60 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
     
     public FileData( long definedSize, TransferEnvironment environment)
     {
-        this( UUID.randomUUID().toString(), definedSize, new File( environment.getRepository().getBaseDir()));
+        this( definedSize, new File( environment.getRepository().getBaseDir()), environment);
+    }
+    
+    /**
+     * @param definedSize 본문 크기
+     * @param basedir 임시 파일을 생성할 base directory, 저장 위치와 같은 file system이어야 rename이 복사 없이 처리된다.
+     * @param environment TransferEnvironment
+     */
+    public FileData( long definedSize, File basedir, TransferEnvironment environment)
+    {
+        this( UUID.randomUUID().toString(), definedSize, basedir,
+                environment.isWriteBehind() ? TransferCommandExecutor.writerExecutor() : null);
+    }
+    
+    /**
+     * 여러 요청이 공유하는 파일의 지정된 위치에 본문을 기록하는 FileData를 생성한다.
+     * 파일은 다른 요청과 공유되므로 rename, delete 되지 않는다.
+     * @param file 미리 생성된 공유 파일
+     * @param position 본문을 기록할 위치
+     * @param definedSize 본문 크기
+     * @param environment TransferEnvironment
+     */
+    public FileData( File file, long position, long definedSize, TransferEnvironment environment)
+    {
+        this( file, position, definedSize, environment.isWriteBehind() ? TransferCommandExecutor.writerExecutor() : null);
+    }
+    
+    /**
+     * 여러 요청이 공유하는 파일의 지정된 위치에 본문을 수신한 thread에서 기록하는 FileData를 생성한다.
+     * @param file 미리 생성된 공유 파일
+     * @param position 본문을 기록할 위치
+     * @param definedSize 본문 크기
+     */
+    public FileData( File file, long position, long definedSize)
+    {
+        this( file, position, definedSize, (Executor)null);
+    }
+    
+    private FileData( File file, long position, long definedSize, Executor writerExecutor)
+    {
+        this( UUID.randomUUID().toString(), definedSize, file.getParentFile(), writerExecutor);
+        if( position< 0)
+            throw new IllegalArgumentException( "position: "+ position);
+        this.file= file;
+        this.position= position;
+        this.renamed= true;
+    }
+    
+    /**
+     * @return 공유 파일에 기록하는 경우 기록 시작 위치, 그 외에는 -1
+     */
+    public long position()
+    {
+        return this.position;
     }
     
     private FileData( String name, long definedSize)
@@ -87,23 +169,27 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
         this.name= name;
         this.definedSize= definedSize;
         this.basedir= new File( "");
+        this.writerExecutor= null;
     }
     
     private FileData( String name, long definedSize, File basedir)
+    {
+        this( name, definedSize, basedir, null);
+    }
+    
+    private FileData( String name, long definedSize, File basedir, Executor writerExecutor)
     {
         ObjectUtil.checkNotNull( name, "name");
-        if( basedir.exists() && !basedir.isDirectory())
-            throw new IllegalArgumentException( "only directory is allowed");
-        
-        synchronized( TransferServer.class)
+        if( !DirectoryCache.ensure( basedir))
         {
-            if( !basedir.mkdirs() && !basedir.exists())
-                
-                throw new IllegalArgumentException( "can not create basedir");
+            if( basedir.exists() && !basedir.isDirectory())
+                throw new IllegalArgumentException( "only directory is allowed");
+            throw new IllegalArgumentException( "can not create basedir");
         }
         this.name= name;
         this.definedSize= definedSize;
         this.basedir= basedir;
+        this.writerExecutor= writerExecutor;
     }
     
     public String getName()
@@ -111,58 +197,48 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
         return this.name;
     }
     
+    /**
+     * 파일 내용을 pooled direct buffer에 읽어서 리턴한다. 요청 마다 heap 배열을 할당하지 않으며 리턴된 ByteBuf는 호출한 쪽에서 release해야 한다.
+     */
     @Override
     public ByteBuf content()
     {
-        try { return getByteBuf();}
+        ByteBuf cached= this.cachedContent;
+        if( cached!= null)
+        {
+            this.cachedContent= null;
+            return cached;
+        }
+        try { return readContent( ByteBufAllocator.DEFAULT);}
         catch( IOException e)
         {
             throw new ChannelException( e);
         }
     }
 
+    // content()는 호출할 때마다 새로 읽은 ByteBuf를 리턴하므로 복사하지 않고 그대로 사용한다.
     @Override
     public FileData copy()
     {
-        final ByteBuf content= content();
-        return replace( content!= null ? content.copy() : null);
+        return replace( content());
     }
     
     @Override
     public FileData duplicate()
     {
-        final ByteBuf content= content();
-        return replace( content!= null ? content.duplicate() : null);
+        return replace( content());
     }
     
     @Override
     public FileData retainedDuplicate()
     {
-        ByteBuf content= content();
-        if( content!= null)
-        {
-            content= content.retainedDuplicate();
-            boolean success= false;
-            try
-            {
-                FileData duplicated= replace( content);
-                success= true;
-                return duplicated;
-            }
-            finally
-            {
-                if( !success)
-                    content.release();
-            }
-        }
-        else
-            return replace( null);
+        return replace( content());
     }
 
     @Override
     public FileData replace( ByteBuf content)
     {
-        FileData data= new FileData( getName(), definedLength(), this.basedir);
+        FileData data= new FileData( getName(), definedLength(), this.basedir, this.writerExecutor);
         if( content!= null)
         {
             try{ data.setContent( content);}
@@ -256,6 +332,32 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
         logger.debug( "setContent file[{}] is completed", file);
     }
     
+    /**
+     * 파일과 cache에 보관된 파일 내용을 지정한다. 처음 호출된 content()는 파일을 읽지 않고 보관된 내용을 리턴한다.
+     * @param file 파일
+     * @param cached 보관된 파일 내용(retainedDuplicate), 없는 경우 null
+     */
+    public void setContent( File file, ByteBuf cached) throws IOException
+    {
+        setContent( file);
+        this.cachedContent= cached;
+    }
+    
+    /**
+     * 파일의 지정된 범위를 본문으로 지정한다. 범위 GET 응답에 사용되며 파일은 삭제되지 않는다.
+     * @param file 파일
+     * @param position 범위의 시작 위치
+     * @param length 범위의 크기
+     */
+    public void setContent( File file, long position, long length) throws IOException
+    {
+        if( position< 0 || length< 0)
+            throw new IllegalArgumentException( "position: "+ position+ ", length: "+ length);
+        setContent( file);
+        this.size= length;
+        this.position= position;
+    }
+    
     public void setContent( InputStream instream) throws IOException
     {
         ObjectUtil.checkNotNull( instream, "inputstream");
@@ -278,7 +380,7 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
                 written+= fch.write( byteBuffer);
                 read= instream.read( bytes);
             }
-            fch.force( false);
+            FileSync.force( fch);
         }
         
         this.size= written;
@@ -329,7 +431,7 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
                 while( written< this.size)
                    written+= fch.write( byteBuffer);
                 content.readerIndex( content.readerIndex()+ written);
-                fch.force( false);
+                FileSync.force( fch);
             }
             setCompleted();
             
@@ -344,6 +446,12 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
     
     public void addContent( ByteBuf content, boolean last) throws IOException
     {
+        if( this.writerExecutor!= null)
+        {
+            addContentBehind( content, last);
+            return;
+        }
+        
         if( content!= null)
         {
             try
@@ -352,15 +460,29 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
                 if( this.definedSize> 0 && this.definedSize< this.size+ localsize)
                     throw new IOException( "Out of size: "+ ( this.size+ localsize)+ "> "+ this.definedSize);
                 
-                ByteBuffer byteBuffer= content.nioBufferCount()== 1 ? content.nioBuffer() : content.copy().nioBuffer();
-                int written= 0;
                 if( this.file== null)
                     this.file= tempFile();
                 if( this.fileChannel== null)
+                {
                     this.fileChannel= FileChannel.open( Paths.get( this.file.toURI()), CREATE, READ, WRITE);
+                    if( this.position> 0)
+                        this.fileChannel.position( this.position);
+                }
                 
-                while( written< localsize)
-                    written+= this.fileChannel.write( byteBuffer);
+                // CompositeByteBuf는 복사하지 않고 구성 버퍼를 gathering write로 기록한다.
+                if( content.nioBufferCount()== 1)
+                {
+                    ByteBuffer byteBuffer= content.nioBuffer();
+                    while( byteBuffer.hasRemaining())
+                        this.fileChannel.write( byteBuffer);
+                }
+                else
+                {
+                    ByteBuffer[] byteBuffers= content.nioBuffers();
+                    long written= 0;
+                    while( written< localsize)
+                        written+= this.fileChannel.write( byteBuffers);
+                }
                 
                 this.size+= localsize;
             }
@@ -377,7 +499,7 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
             if( this.fileChannel== null)
                 this.fileChannel= FileChannel.open( Paths.get( this.file.toURI()), CREATE, READ, WRITE);
             
-            this.fileChannel.force( false);
+            FileSync.force( this.fileChannel);
             this.fileChannel.close();
             this.fileChannel= null;
             setCompleted();
@@ -386,8 +508,131 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
             ObjectUtil.checkNotNull( content, "content");
     }
     
+    /**
+     * 본문을 write-behind writer에 전달한다. 수신한 thread에서는 disk I/O를 하지 않는다.
+     * 마지막 본문을 수신하면 disk에 반영된 후 완료(setCompleted)된다.
+     */
+    private void addContentBehind( ByteBuf content, boolean last) throws IOException
+    {
+        if( content!= null)
+        {
+            int localsize= content.readableBytes();
+            if( this.definedSize> 0 && this.definedSize< this.size+ localsize)
+            {
+                content.release();
+                throw new IOException( "Out of size: "+ ( this.size+ localsize)+ "> "+ this.definedSize);
+            }
+            
+            writer().write( content);
+            this.size+= localsize;
+        }
+        
+        if( last)
+        {
+            FileDataWriter w= writer();
+            w.completion().thenRun( this::setCompleted);
+            w.finish();
+        }
+        else
+            ObjectUtil.checkNotNull( content, "content");
+    }
+    
+    private FileDataWriter writer() throws IOException
+    {
+        if( this.writer== null)
+        {
+            if( this.file== null)
+                this.file= tempFile();
+            this.writer= new FileDataWriter( this.file.toPath(), this.definedSize, this.position, this.writerExecutor, this.pendingListener);
+        }
+        return this.writer;
+    }
+    
+    /**
+     * write-behind로 기록중인 경우 모든 본문이 disk에 반영될 때까지 대기한다.
+     * 마지막 본문을 수신하기 전이거나 write-behind를 사용하지 않는 경우 바로 리턴한다.
+     * @throws IOException 본문 기록이 실패한 경우
+     */
+    public void awaitCompleted() throws IOException
+    {
+        FileDataWriter w= this.writer;
+        if( w== null || !w.isFinishing())
+            return;
+        try
+        {
+            w.completion().get();
+        }
+        catch( InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "interrupted while writing "+ this.file);
+        }
+        catch( ExecutionException e)
+        {
+            throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException( e.getCause());
+        }
+    }
+    
+    /**
+     * 마지막 본문을 수신하지 못하고 중단된 경우 수신된 본문까지 disk에 반영한다. 이후에는 본문을 추가할 수 없다.
+     * 공유 파일에 위치 별로 기록중인 본문을 반영된 크기 다음부터 이어서 전송할 수 있도록 하는 데 사용한다.
+     * @return 기록을 시작한 위치부터 disk에 반영된 크기로 완료되는 Future
+     */
+    public CompletableFuture<Long> checkpoint()
+    {
+        if( this.completed)
+            return CompletableFuture.completedFuture( this.size);
+
+        // write-behind인 경우 queue에 남은 본문을 writer thread에서 기록한 후 완료된다.
+        FileDataWriter w= this.writer;
+        if( w!= null)
+        {
+            w.finish();
+            return w.completion();
+        }
+
+        CompletableFuture<Long> checkpoint= new CompletableFuture<Long>();
+        try
+        {
+            if( this.fileChannel!= null)
+            {
+                FileSync.force( this.fileChannel);
+                this.fileChannel.close();
+                this.fileChannel= null;
+            }
+            checkpoint.complete( this.size);
+        }
+        catch( IOException e)
+        {
+            checkpoint.completeExceptionally( e);
+        }
+        return checkpoint;
+    }
+    
+    /**
+     * write-behind로 기록을 대기중인 본문 크기가 변경될 때 변화량을 전달받을 listener를 지정한다.
+     * 본문을 추가하기 전에 지정해야 한다.
+     * @param pendingListener 변화량을 전달받을 listener, writer thread에서 호출될 수 있다.
+     * @return this
+     */
+    public FileData pendingListener( LongConsumer pendingListener)
+    {
+        this.pendingListener= pendingListener;
+        return this;
+    }
+    
+    /**
+     * @return write-behind로 기록을 대기중인 본문 크기
+     */
+    public long pendingBytes()
+    {
+        FileDataWriter w= this.writer;
+        return w!= null ? w.pendingBytes() : 0;
+    }
+    
     public File getFile() throws IOException
     {
+        awaitCompleted();
         return this.file;
     }
     
@@ -413,6 +658,7 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
         
     public byte[] get() throws IOException
     {
+        awaitCompleted();
         if( this.file== null)
             return EmptyArrays.EMPTY_BYTES;
         
@@ -421,16 +667,58 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
     
     public ByteBuf getByteBuf() throws IOException
     {
+        awaitCompleted();
         if( this.file== null)
             return Unpooled.EMPTY_BUFFER;
         byte[] bytes= readFrom( this.file);
         return Unpooled.wrappedBuffer( bytes);
     }
     
+    /**
+     * 파일 전체를 allocator의 direct buffer에 positional read로 읽는다.
+     * @param allocator buffer를 할당할 allocator
+     * @return 파일 내용, 호출한 쪽에서 release해야 한다.
+     */
+    public ByteBuf readContent( ByteBufAllocator allocator) throws IOException
+    {
+        awaitCompleted();
+        if( this.file== null)
+            return Unpooled.EMPTY_BUFFER;
+        
+        try( FileChannel fch= FileChannel.open( this.file.toPath(), READ))
+        {
+            // 파일의 범위가 지정된 경우 범위만 읽는다.
+            long srcsize= this.position>= 0 ? this.size : fch.size();
+            if( srcsize> Integer.MAX_VALUE)
+                throw new IllegalArgumentException( "File is too big to be loaded in memory");
+            return readAt( allocator, fch, Math.max( 0, this.position), (int)srcsize);
+        }
+    }
+    
+    /**
+     * 파일의 지정된 위치부터 length 만큼을 allocator의 direct buffer에 positional read로 읽는다.
+     * 파일 위치를 공유하지 않으므로 읽는 순서와 관계없이 사용할 수 있다.
+     * @param allocator buffer를 할당할 allocator
+     * @param position 읽을 위치
+     * @param length 읽을 크기
+     * @return 읽은 내용, 파일 끝에 도달한 경우 length보다 작을 수 있으며 호출한 쪽에서 release해야 한다.
+     */
+    public ByteBuf getChunk( ByteBufAllocator allocator, long position, int length) throws IOException
+    {
+        if( this.file== null || length== 0)
+            return EMPTY_BUFFER;
+        awaitCompleted();
+        if( this.readChannel== null)
+            this.readChannel= FileChannel.open( this.file.toPath(), READ);
+        
+        return readAt( allocator, this.readChannel, position, length);
+    }
+    
     public ByteBuf getChunk( int length) throws IOException
     {
         if( this.file== null || length== 0)
             return EMPTY_BUFFER;
+        awaitCompleted();
         if( this.fileChannel== null)
             this.fileChannel= FileChannel.open( Paths.get( this.file.toURI()), CREATE, READ, WRITE);
         
@@ -464,12 +752,13 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
         ObjectUtil.checkNotNull( dest, "destination");
         if( this.file== null)
             throw new IOException( "No file defined so can not be renamed");
+        awaitCompleted();
         
         if( this.fileChannel!= null)
         {
             try
             {
-                this.fileChannel.force( false);
+                FileSync.force( this.fileChannel);
                 this.fileChannel.close();
                 this.fileChannel= null;
                 logger.debug( "file channel for [{}] is closed before renameTo", this.file);
@@ -480,7 +769,21 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
             }
         }
         
-        Files.move( this.file.toPath(), dest.toPath(),  StandardCopyOption.REPLACE_EXISTING);
+        try
+        {
+            Files.move( this.file.toPath(), dest.toPath(),  StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch( NoSuchFileException e)
+        {
+            // 저장 위치의 directory가 외부에서 삭제된 경우 다시 생성한다.
+            File dir= dest.getAbsoluteFile().getParentFile();
+            DirectoryCache.invalidate( dir);
+            if( !this.file.exists() || !DirectoryCache.ensure( dir))
+                throw e;
+            Files.move( this.file.toPath(), dest.toPath(),  StandardCopyOption.REPLACE_EXISTING);
+        }
+        FileSync.forceDirectory( dest.getAbsoluteFile().toPath().getParent());
+        TempFileManager.release( this.file);
         
         this.file= dest;
         renamed= true;
@@ -489,11 +792,16 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
     
     public void delete()
     {
+        if( this.writer!= null && !this.writer.completion().isDone())
+            this.writer.abort();
+        
         if( this.fileChannel!= null)
         {
             try
             {
-                this.fileChannel.force( false);
+                // 삭제할 파일이므로 ALWAYS인 경우만 기존과 같이 반영한다.
+                if( FileSync.durability()== TransferDurability.ALWAYS)
+                    this.fileChannel.force( false);
                 this.fileChannel.close();
                 logger.debug( "file channel for [{}] is closed before renameTo", this.file);
             }
@@ -503,17 +811,63 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
             }
         }
 
+        if( this.cachedContent!= null)
+        {
+            this.cachedContent.release();
+            this.cachedContent= null;
+        }
+
+        if( this.readChannel!= null)
+        {
+            try
+            {
+                this.readChannel.close();
+            }
+            catch( IOException e)
+            {
+                logger.warn( "Failed to close a filechannel.", e);
+            }
+            this.readChannel= null;
+        }
+
         if( !renamed)
         {
             if( this.file!= null && this.file.exists())
             {
                 if( !this.file.delete())
                     logger.warn( "Failed to delete: {}", this.file);
+                else
+                    TempFileManager.release( this.file);
             }
             this.file= null;
         }
     }
     
+    private static ByteBuf readAt( ByteBufAllocator allocator, FileChannel fch, long position, int length) throws IOException
+    {
+        if( length== 0)
+            return Unpooled.EMPTY_BUFFER;
+        
+        ByteBuf buf= allocator.directBuffer( length);
+        try
+        {
+            int read= 0;
+            while( read< length)
+            {
+                int now= buf.writeBytes( fch, position+ read, length- read);
+                if( now< 0)
+                    break;
+                read+= now;
+            }
+            return buf;
+        }
+        catch( IOException | RuntimeException e)
+        {
+            buf.release();
+            throw e;
+        }
+    }
+    
     private byte[] readFrom( File src) throws IOException
     {
         long srcsize= src.length();
@@ -535,16 +889,16 @@ public class FileData extends AbstractReferenceCounted implements Comparable<Fil
     
     private File tempFile() throws IOException
     {
-        File tempDir= new File( this.basedir, "tmp");
-        tempDir.mkdir();
-        File tempFile= tempDir.exists() && tempDir.isDirectory() ?
-                File.createTempFile( prefix, postfix, tempDir) : File.createTempFile( prefix, postfix);
-
-        if( deleteOnExitTemporaryFile)
-            tempFile.deleteOnExit();
-
-        logger.debug( "Temporary File[{}] is created.", tempFile);
-        return tempFile;
+        File tempDir= new File( this.basedir, TEMP_DIR);
+        try
+        {
+            return TempFileManager.create( tempDir, prefix, postfix, deleteOnExitTemporaryFile);
+        }
+        catch( IOException e)
+        {
+            logger.warn( "Can not create temporary file in [{}], system temporary directory is used.", tempDir, e);
+            return TempFileManager.create( new File( System.getProperty( "java.io.tmpdir")), prefix, postfix, deleteOnExitTemporaryFile);
+        }
     }
     
     @Override
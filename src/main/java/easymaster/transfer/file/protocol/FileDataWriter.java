@@ -0,0 +1,339 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 수신한 파일 본문을 별도 thread에서 기록하는 write-behind writer
+ * I/O thread는 수신한 ByteBuf를 queue에 넣기만 하고, writer는 queue에 쌓인 ByteBuf를 모아서
+ * 하나의 gathering write(FileChannel.write(ByteBuffer[]))로 기록한다. CompositeByteBuf도 복사하지 않고 구성 버퍼를 그대로 기록한다.
+ * 하나의 파일은 동시에 하나의 thread에서만 기록된다.
+ * @author Jongoh Lee
+ *
+ */
+
+final class FileDataWriter implements Runnable
+{
+    private static Logger logger= LoggerFactory.getLogger( FileDataWriter.class);
+
+    // 한번의 gathering write로 기록할 최대 버퍼 수(IOV_MAX)와 크기
+    static final int MAX_GATHERING_BUFFERS= 1024;
+
+    static final long MAX_GATHERING_BYTES= 4* 1024* 1024;
+
+    private final Path path;
+
+    // 0보다 큰 경우 처음 열 때 파일 크기를 수신할 크기로 지정한다.
+    private final long expectedSize;
+
+    // 0 이상인 경우 다른 요청과 공유하는 파일의 지정된 위치부터 기록한다.
+    private final long position;
+
+    private final Executor executor;
+
+    // 기록 대기중인 본문 크기의 변화량을 전달받는다.
+    private final LongConsumer pendingListener;
+
+    private final Queue<ByteBuf> queue= new ConcurrentLinkedQueue<ByteBuf>();
+
+    private final AtomicBoolean scheduled= new AtomicBoolean();
+
+    private final AtomicLong pendingBytes= new AtomicLong();
+
+    private final CompletableFuture<Long> completion= new CompletableFuture<Long>();
+
+    private volatile boolean finishing;
+
+    private volatile boolean aborted;
+
+    private volatile IOException failure;
+
+    // writer thread에서만 접근한다.
+    private FileChannel fileChannel;
+
+    private long written;
+
+    /**
+     * @param path 기록할 파일, 이미 생성되어 있어야 한다.
+     * @param expectedSize 수신할 본문 크기, 0 이하인 경우 파일 크기를 미리 지정하지 않는다.
+     * @param position 기록을 시작할 위치, 0보다 작은 경우 파일 처음부터 기록하고 완료시 기록된 크기로 조정한다.
+     * @param executor 파일을 기록할 Executor
+     * @param pendingListener 기록 대기중인 본문 크기가 변경될 때 변화량을 전달받을 listener, 없는 경우 null
+     */
+    FileDataWriter( Path path, long expectedSize, long position, Executor executor, LongConsumer pendingListener)
+    {
+        this.path= path;
+        this.expectedSize= position< 0 ? expectedSize : 0;
+        this.position= position;
+        this.executor= executor;
+        this.pendingListener= pendingListener;
+    }
+
+    /**
+     * 기록할 본문을 queue에 추가한다. 본문은 기록된 후 release된다.
+     * @param content 기록할 본문
+     * @throws IOException 이전 기록이 실패한 경우
+     */
+    void write( ByteBuf content) throws IOException
+    {
+        IOException cause= failure;
+        if( cause!= null || finishing || aborted)
+        {
+            content.release();
+            if( cause!= null)
+                throw new IOException( "write-behind is failed: "+ path, cause);
+            throw new IOException( "write-behind is already finished: "+ path);
+        }
+
+        pending( content.readableBytes());
+        queue.add( content);
+        schedule();
+    }
+
+    /**
+     * 모든 본문을 수신한 경우 호출되며 queue에 남은 본문을 기록한 후 파일을 disk에 반영(force)한다.
+     */
+    void finish()
+    {
+        finishing= true;
+        schedule();
+    }
+
+    /**
+     * 기록을 중단하고 queue에 남은 본문을 release한다. 삭제되는 파일의 정상적인 종료이므로 그때까지 기록된 크기로 완료된다.
+     */
+    void abort()
+    {
+        aborted= true;
+        schedule();
+    }
+
+    boolean isFinishing()
+    {
+        return finishing;
+    }
+
+    /**
+     * @return 기록을 대기중인 본문 크기
+     */
+    long pendingBytes()
+    {
+        return pendingBytes.get();
+    }
+
+    /**
+     * @return 모든 본문이 disk에 반영되면 기록된 크기로 완료되는 Future
+     */
+    CompletableFuture<Long> completion()
+    {
+        return completion;
+    }
+
+    private void schedule()
+    {
+        if( !scheduled.compareAndSet( false, true))
+            return;
+        try
+        {
+            executor.execute( this);
+        }
+        catch( RejectedExecutionException e)
+        {
+            scheduled.set( false);
+            fail( new IOException( "writer executor is not available", e));
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            drain();
+        }
+        finally
+        {
+            scheduled.set( false);
+            // drain이 끝나는 사이 추가된 요청을 처리한다.
+            if( !completion.isDone() && ( !queue.isEmpty() || finishing || aborted))
+                schedule();
+            else if( completion.isDone() && !queue.isEmpty())
+                releaseAll();
+        }
+    }
+
+    private void drain()
+    {
+        if( completion.isDone())
+        {
+            releaseAll();
+            return;
+        }
+
+        if( aborted)
+        {
+            aborted();
+            return;
+        }
+
+        // finishing을 먼저 확인해야 finish 이전에 추가된 본문이 모두 queue에 있음이 보장된다.
+        boolean last= finishing;
+        try
+        {
+            while( !queue.isEmpty() && !aborted)
+                gatheringWrite();
+
+            if( last && !aborted)
+            {
+                FileChannel fch= open();
+                if( position< 0 && fch.size()!= written)
+                    fch.truncate( written);
+                FileSync.force( fch);
+                close();
+                completion.complete( written);
+                logger.debug( "write-behind [{}] is completed. length: {}", path, written);
+            }
+        }
+        catch( IOException e)
+        {
+            fail( e);
+        }
+    }
+
+    private void gatheringWrite() throws IOException
+    {
+        List<ByteBuf> contents= new ArrayList<ByteBuf>();
+        List<ByteBuffer> buffers= new ArrayList<ByteBuffer>();
+        long bytes= 0;
+        try
+        {
+            ByteBuf content;
+            while( buffers.size()< MAX_GATHERING_BUFFERS && bytes< MAX_GATHERING_BYTES && ( content= queue.poll())!= null)
+            {
+                contents.add( content);
+                bytes+= content.readableBytes();
+                if( content.nioBufferCount()== 1)
+                    buffers.add( content.nioBuffer());
+                else
+                {
+                    for( ByteBuffer buffer: content.nioBuffers())
+                        buffers.add( buffer);
+                }
+            }
+
+            ByteBuffer[] array= buffers.toArray( new ByteBuffer[buffers.size()]);
+            FileChannel fch= open();
+            long remain= bytes;
+            int offset= 0;
+            while( remain> 0)
+            {
+                remain-= fch.write( array, offset, array.length- offset);
+                while( offset< array.length && !array[offset].hasRemaining())
+                    offset++;
+            }
+            written+= bytes;
+        }
+        finally
+        {
+            pending( -bytes);
+            for( ByteBuf content: contents)
+                content.release();
+        }
+    }
+
+    private FileChannel open() throws IOException
+    {
+        if( fileChannel== null)
+        {
+            fileChannel= FileChannel.open( path, WRITE);
+            if( position> 0)
+                fileChannel.position( position);
+            // 파일 크기를 수신할 크기로 먼저 지정하여 기록중 파일 크기 변경을 줄인다. 완료시 실제 기록된 크기로 조정된다.
+            // disk 공간을 할당하지 않는 sparse 파일이므로 공간 확보(preallocation)는 보장하지 않는다.
+            if( expectedSize> 0 && fileChannel.size()< expectedSize)
+                fileChannel.write( ByteBuffer.allocate( 1), expectedSize- 1);
+        }
+        return fileChannel;
+    }
+
+    private void close()
+    {
+        if( fileChannel== null)
+            return;
+        try
+        {
+            fileChannel.close();
+        }
+        catch( IOException e)
+        {
+            logger.warn( "Failed to close a filechannel.", e);
+        }
+        fileChannel= null;
+    }
+
+    private void aborted()
+    {
+        releaseAll();
+        close();
+        completion.complete( written);
+        logger.debug( "write-behind [{}] is aborted. length: {}", path, written);
+    }
+
+    private void fail( IOException cause)
+    {
+        // 중단된 후 삭제된 파일에 기록하다 실패한 경우는 오류가 아니다.
+        if( aborted)
+        {
+            aborted();
+            return;
+        }
+        failure= cause;
+        logger.error( "write-behind [{}] is failed.", path, cause);
+        releaseAll();
+        close();
+        completion.completeExceptionally( cause);
+    }
+
+    private void pending( long delta)
+    {
+        if( delta== 0)
+            return;
+        pendingBytes.addAndGet( delta);
+        if( pendingListener!= null)
+            pendingListener.accept( delta);
+    }
+
+    private void releaseAll()
+    {
+        ByteBuf content;
+        while( ( content= queue.poll())!= null)
+        {
+            pending( -content.readableBytes());
+            content.release();
+        }
+    }
+}
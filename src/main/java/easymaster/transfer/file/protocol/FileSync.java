@@ -0,0 +1,287 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import easymaster.transfer.file.util.FileUtil;
+import easymaster.transfer.file.util.TransferDurability;
+
+/**
+ * 수신한 파일을 durability 설정에 따라 disk에 반영(fsync)
+ * GROUP인 경우 commit thread가 window 동안 요청된 파일과 directory를 모아서 fsync하고 요청한 thread는 반영될 때까지 대기한다.
+ * 같은 directory에 동시에 완료된 파일이 많은 경우 directory fsync는 한번만 처리된다.
+ * @author Jongoh Lee
+ *
+ */
+
+public final class FileSync
+{
+    private static Logger logger= LoggerFactory.getLogger( FileSync.class);
+
+    public static final long DEFAULT_GROUP_COMMIT_WINDOW_MICROS= 2000;
+
+    private static volatile TransferDurability durability= TransferDurability.ALWAYS;
+
+    private static volatile GroupCommitter committer;
+
+    private FileSync() {}
+
+    /**
+     * durability 설정을 변경한다.
+     * @param mode durability
+     * @param windowMicros GROUP인 경우 fsync를 모으는 시간(us)
+     */
+    public static synchronized void configure( TransferDurability mode, long windowMicros)
+    {
+        if( committer!= null)
+        {
+            committer.stop();
+            committer= null;
+        }
+        if( mode== TransferDurability.GROUP)
+            committer= new GroupCommitter( Math.max( 0, windowMicros));
+        durability= mode;
+        logger.info( "durability: {}, group commit window: {}us", mode, windowMicros);
+    }
+
+    public static TransferDurability durability()
+    {
+        return durability;
+    }
+
+    /**
+     * 파일 내용을 disk에 반영한다. GROUP인 경우 commit될 때까지 대기하므로 channel은 리턴된 후 close해야 한다.
+     * @param channel 반영할 파일 channel
+     * @throws IOException fsync에 실패한 경우
+     */
+    public static void force( FileChannel channel) throws IOException
+    {
+        switch( durability)
+        {
+            case NONE:
+                return;
+            case GROUP:
+                GroupCommitter c= committer;
+                // committer가 중지된 경우 ALWAYS와 같이 직접 반영한다.
+                if( c== null)
+                {
+                    channel.force( false);
+                    return;
+                }
+                await( c.submit( new Commit( channel, null)));
+                return;
+            default:
+                channel.force( false);
+        }
+    }
+
+    /**
+     * rename 등으로 변경된 directory entry를 disk에 반영한다. ALWAYS는 기존 방식과 같이 directory는 반영하지 않는다.
+     * @param dir 반영할 directory
+     * @throws IOException fsync에 실패한 경우
+     */
+    public static void forceDirectory( Path dir) throws IOException
+    {
+        GroupCommitter c= committer;
+        if( durability== TransferDurability.GROUP && c!= null && dir!= null)
+            await( c.submit( new Commit( null, dir)));
+    }
+
+    private static void await( CompletableFuture<Void> future) throws IOException
+    {
+        try
+        {
+            future.get();
+        }
+        catch( InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "interrupted while waiting group commit");
+        }
+        catch( ExecutionException e)
+        {
+            throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException( e.getCause());
+        }
+    }
+
+    private static final class Commit
+    {
+        final FileChannel channel;
+
+        final Path dir;
+
+        final CompletableFuture<Void> future= new CompletableFuture<Void>();
+
+        Commit( FileChannel channel, Path dir)
+        {
+            this.channel= channel;
+            this.dir= dir;
+        }
+    }
+
+    private static final class GroupCommitter implements Runnable
+    {
+        private final BlockingQueue<Commit> queue= new LinkedBlockingQueue<Commit>();
+
+        private final long windowNanos;
+
+        private final Thread thread;
+
+        private volatile boolean running= true;
+
+        GroupCommitter( long windowMicros)
+        {
+            this.windowNanos= TimeUnit.MICROSECONDS.toNanos( windowMicros);
+            this.thread= new Thread( this, "transfer-commit");
+            this.thread.setDaemon( true);
+            this.thread.start();
+        }
+
+        CompletableFuture<Void> submit( Commit commit)
+        {
+            if( !running)
+                commit.future.completeExceptionally( new IOException( "group committer is stopped"));
+            else
+                queue.add( commit);
+            return commit.future;
+        }
+
+        void stop()
+        {
+            running= false;
+            thread.interrupt();
+        }
+
+        @Override
+        public void run()
+        {
+            List<Commit> batch= new ArrayList<Commit>();
+            while( running)
+            {
+                try
+                {
+                    batch.add( queue.take());
+                    long deadline= System.nanoTime()+ windowNanos;
+                    long remain;
+                    while( ( remain= deadline- System.nanoTime())> 0)
+                    {
+                        Commit next= queue.poll( remain, TimeUnit.NANOSECONDS);
+                        if( next== null)
+                            break;
+                        batch.add( next);
+                    }
+                    queue.drainTo( batch);
+                    commit( batch);
+                }
+                catch( InterruptedException e)
+                {
+                    break;
+                }
+                finally
+                {
+                    batch.clear();
+                }
+            }
+
+            // 중지된 경우 대기중인 요청은 직접 반영한다.
+            queue.drainTo( batch);
+            commit( batch);
+        }
+
+        private void commit( List<Commit> batch)
+        {
+            if( batch.isEmpty())
+                return;
+
+            Set<Path> dirs= new LinkedHashSet<Path>();
+            List<Commit> files= new ArrayList<Commit>();
+            for( Commit commit: batch)
+            {
+                if( commit.channel== null)
+                    dirs.add( commit.dir);
+                else
+                    files.add( commit);
+            }
+            // 동시에 요청된 fsync는 file system journal commit으로 합쳐지도록 함께 요청한다.
+            ( files.size()> 1 ? files.parallelStream() : files.stream()).forEach( commit->{
+                try
+                {
+                    commit.channel.force( false);
+                    commit.future.complete( null);
+                }
+                catch( Exception e)
+                {
+                    commit.future.completeExceptionally( e);
+                }
+            });
+
+            List<Exception> failures= new ArrayList<Exception>();
+            for( Path dir: dirs)
+                failures.add( forceDirectory0( dir));
+            int i= 0;
+            for( Path dir: dirs)
+            {
+                Exception cause= failures.get( i++);
+                for( Commit commit: batch)
+                {
+                    if( commit.channel!= null || !dir.equals( commit.dir))
+                        continue;
+                    if( cause== null)
+                        commit.future.complete( null);
+                    else
+                        commit.future.completeExceptionally( cause);
+                }
+            }
+            logger.debug( "group commit: {} requests, {} directories", batch.size(), dirs.size());
+        }
+
+        private Exception forceDirectory0( Path dir)
+        {
+            try( FileChannel channel= FileChannel.open( dir, READ))
+            {
+                channel.force( true);
+                return null;
+            }
+            catch( UnsupportedOperationException e)
+            {
+                // directory를 channel로 열 수 없는 file system은 무시한다.
+                logger.debug( "directory fsync is not supported: {}", dir, e);
+                return null;
+            }
+            catch( AccessDeniedException e)
+            {
+                // Windows는 directory를 열 수 없으므로 무시하고, 그 외의 경우는 반영 실패로 처리한다.
+                if( !FileUtil.isWindows())
+                    return e;
+                logger.debug( "directory fsync is not supported: {}", dir, e);
+                return null;
+            }
+            catch( Exception e)
+            {
+                return e;
+            }
+        }
+    }
+}
@@ -22,4 +22,28 @@ public class LastTransferContent extends TransferContent
         super( content);
     }
 
+    /**
+     * stream의 마지막 content, 공유되는 EMPTY_LAST_CONTENT의 stream은 변경할 수 없으므로 stream 0 이외에는 새로 생성한다.
+     * @param streamId stream id
+     * @return LastTransferContent
+     */
+    public static LastTransferContent of( int streamId)
+    {
+        if( streamId== 0)
+            return EMPTY_LAST_CONTENT;
+
+        LastTransferContent last= new LastTransferContent( Unpooled.EMPTY_BUFFER);
+        last.setStreamId( streamId);
+        return last;
+    }
+
+    @Override
+    public LastTransferContent setStreamId( int streamId)
+    {
+        if( this== EMPTY_LAST_CONTENT && streamId!= 0)
+            throw new UnsupportedOperationException( "stream of EMPTY_LAST_CONTENT cannot be changed");
+        super.setStreamId( streamId);
+        return this;
+    }
+
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.AsciiString;
+import io.netty.util.CharsetUtil;
+
+/**
+ * binary framing(v2) 프레임 형식과 정적 테이블
+ * <pre>
+ * frame   = type(1) stream(varint) length(varint) payload
+ * HEADERS = command uri count(varint) *( name value)
+ *           command = index(1) | 0 length(varint) ascii
+ *           name    = index(varint) | 0 length(varint) ascii
+ *           uri, value = length(varint) utf8
+ * DATA    = 본문 byte
+ * END     = 본문의 끝 (length 0)
+ * </pre>
+ * 프레임마다 stream 번호를 포함하므로 하나의 연결에서 여러 요청과 응답의 프레임이 섞여서 전송될 수 있다.
+ * 정적 테이블의 순서는 agent간 호환을 위해 변경하지 않으며 새 항목은 마지막에 추가한다.
+ * @author Jongoh Lee
+ *
+ */
+
+final class TransferBinaryFraming
+{
+    static final byte HEADERS= 0x01;
+
+    static final byte DATA= 0x02;
+
+    static final byte END= 0x03;
+
+    // type(1)+ stream, length varint 최대 길이(5+ 5)
+    static final int MAX_FRAME_HEADER_LENGTH= 11;
+
+    private static final TransferCommand[] COMMAND_TABLE= {
+            TransferCommand.TRANSFER, TransferCommand.PUT, TransferCommand.DELETE, TransferCommand.GET,
+            TransferCommand.LIST, TransferCommand.INFO, TransferCommand.ACTION
+    };
+
+    private static final AsciiString[] HEADER_TABLE= {
+            TransferHeaderNames.RESPONSE_CODE, TransferHeaderNames.REASON, TransferHeaderNames.AGENT,
+            TransferHeaderNames.REMOTE, TransferHeaderNames.AGENT_TYPE, TransferHeaderNames.CONNECTION,
+            TransferHeaderNames.CONTENT_LENGTH, TransferHeaderNames.CONTENT_ENCODING, TransferHeaderNames.ACCEPT_ENCODING,
+            TransferHeaderNames.DELETED_COUNT, TransferHeaderNames.TRANSFER_ENCODING, TransferHeaderNames.TRANSFER_SOURCE_URI,
+            TransferHeaderNames.TRANSFER_DESTINATION_URI, TransferHeaderNames.DESTINATION_AGENT, TransferHeaderNames.TRANSFER_VALIDATION,
+            TransferHeaderNames.TRANSFER_TIMEOUT_SECONDS, TransferHeaderNames.TRANSFER_INTERCEPTOR, TransferHeaderNames.MERGE_RESOURCE,
+            TransferHeaderNames.SESSION_ID, TransferHeaderNames.RESOURCE_LENGTH, TransferHeaderNames.TRANSFERRED_RESOURCE,
+            TransferHeaderNames.UPGRADE
+    };
+
+    private TransferBinaryFraming() {}
+
+    /**
+     * 메시지의 COMMAND, URI, 헤더를 HEADERS 프레임으로 변환한다.
+     * 프레임 길이의 varint 크기를 미리 알 수 없으므로 최대 크기만큼 앞 공간을 비워두고 payload를 작성한다.
+     */
+    static ByteBuf encodeHeaders( ByteBufAllocator alloc, TransferMessage message, int sizeHint)
+    {
+        ByteBuf buf= alloc.buffer( Math.max( sizeHint, 256));
+        buf.writerIndex( MAX_FRAME_HEADER_LENGTH);
+
+        int commandIndex= indexOf( COMMAND_TABLE, message.command());
+        buf.writeByte( commandIndex);
+        if( commandIndex== 0)
+            writeAscii( buf, message.command().asciiName());
+
+        String uri= message.uri();
+        writeUtf8( buf, uri== null || uri.isEmpty() ? "/" : uri);
+
+        TransferHeaders headers= message.headers();
+        writeVarint( buf, headers.size());
+        Iterator<Entry<CharSequence, CharSequence>> iter= headers.iteratorCharSequence();
+        while( iter.hasNext())
+        {
+            Entry<CharSequence, CharSequence> header= iter.next();
+            int nameIndex= headerIndexOf( header.getKey());
+            writeVarint( buf, nameIndex);
+            if( nameIndex== 0)
+                writeAscii( buf, header.getKey());
+            writeUtf8( buf, header.getValue());
+        }
+
+        int length= buf.writerIndex()- MAX_FRAME_HEADER_LENGTH;
+        int start= MAX_FRAME_HEADER_LENGTH- 1- varintSize( message.streamId())- varintSize( length);
+        buf.setByte( start, HEADERS);
+        setVarint( buf, setVarint( buf, start+ 1, message.streamId()), length);
+        buf.readerIndex( start);
+        return buf;
+    }
+
+    /**
+     * HEADERS 프레임의 payload를 TransferMessage로 변환한다.
+     */
+    static TransferMessage decodeHeaders( ByteBuf payload)
+    {
+        int commandIndex= payload.readUnsignedByte();
+        TransferCommand command;
+        if( commandIndex== 0)
+            command= TransferCommand.valueOf( payload.readCharSequence( readVarint( payload), CharsetUtil.US_ASCII).toString());
+        else if( commandIndex<= COMMAND_TABLE.length)
+            command= COMMAND_TABLE[commandIndex- 1];
+        else
+            throw new CorruptedFrameException( "unknown command index: "+ commandIndex);
+
+        TransferMessage message= new TransferMessage( command);
+        message.setUri( payload.readCharSequence( readVarint( payload), CharsetUtil.UTF_8).toString());
+
+        int count= readVarint( payload);
+        for( int i= 0; i< count; i++)
+        {
+            int nameIndex= readVarint( payload);
+            CharSequence name;
+            if( nameIndex== 0)
+                name= readAscii( payload, readVarint( payload));
+            else if( nameIndex<= HEADER_TABLE.length)
+                name= HEADER_TABLE[nameIndex- 1];
+            else
+                throw new CorruptedFrameException( "unknown header index: "+ nameIndex);
+
+            message.headers().add( name, readValue( payload, readVarint( payload)));
+        }
+
+        if( payload.isReadable())
+            throw new CorruptedFrameException( "unexpected bytes in headers frame: "+ payload.readableBytes());
+        return message;
+    }
+
+    static ByteBuf encodeFrameHeader( ByteBufAllocator alloc, byte type, int streamId, int length)
+    {
+        ByteBuf buf= alloc.buffer( MAX_FRAME_HEADER_LENGTH);
+        buf.writeByte( type);
+        writeVarint( buf, streamId);
+        writeVarint( buf, length);
+        return buf;
+    }
+
+    /**
+     * index 위치의 varint를 읽는다.
+     * @return varint 값, 완전히 수신되지 않은 경우 -1
+     */
+    static int peekVarint( ByteBuf buf, int index)
+    {
+        int value= 0;
+        int end= Math.min( buf.writerIndex(), index+ 5);
+        for( int i= index, shift= 0; i< end; i++, shift+= 7)
+        {
+            byte b= buf.getByte( i);
+            value|= ( b& 0x7F)<< shift;
+            if( b>= 0)
+            {
+                if( ( b== 0 && i> index) || value< 0)
+                    throw new CorruptedFrameException( "malformed varint");
+                return value;
+            }
+        }
+        if( end- index== 5)
+            throw new CorruptedFrameException( "varint is too long");
+        return -1;
+    }
+
+    static int readVarint( ByteBuf buf)
+    {
+        int value= peekVarint( buf, buf.readerIndex());
+        if( value< 0)
+            throw new CorruptedFrameException( "truncated varint");
+        buf.skipBytes( varintSize( value));
+        return value;
+    }
+
+    static void writeVarint( ByteBuf buf, int value)
+    {
+        buf.ensureWritable( 5);
+        buf.writerIndex( setVarint( buf, buf.writerIndex(), value));
+    }
+
+    static int varintSize( int value)
+    {
+        int size= 1;
+        while( ( value>>>= 7)!= 0)
+            size++;
+        return size;
+    }
+
+    private static int setVarint( ByteBuf buf, int index, int value)
+    {
+        while( ( value& ~0x7F)!= 0)
+        {
+            buf.setByte( index++, ( value& 0x7F)| 0x80);
+            value>>>= 7;
+        }
+        buf.setByte( index++, value);
+        return index;
+    }
+
+    private static void writeAscii( ByteBuf buf, CharSequence value)
+    {
+        writeVarint( buf, value.length());
+        buf.writeCharSequence( value, CharsetUtil.US_ASCII);
+    }
+
+    private static void writeUtf8( ByteBuf buf, CharSequence value)
+    {
+        writeVarint( buf, ByteBufUtil.utf8Bytes( value));
+        ByteBufUtil.writeUtf8( buf, value);
+    }
+
+    private static AsciiString readAscii( ByteBuf buf, int length)
+    {
+        byte[] bytes= new byte[length];
+        buf.readBytes( bytes);
+        return new AsciiString( bytes, false);
+    }
+
+    /**
+     * ASCII 값은 AsciiString으로, 그 외의 값은 UTF-8 String으로 변환한다.
+     */
+    private static CharSequence readValue( ByteBuf buf, int length)
+    {
+        int start= buf.readerIndex();
+        for( int i= start; i< start+ length; i++)
+        {
+            if( buf.getByte( i)< 0)
+                return buf.readCharSequence( length, CharsetUtil.UTF_8).toString();
+        }
+        return readAscii( buf, length);
+    }
+
+    private static int indexOf( TransferCommand[] table, TransferCommand command)
+    {
+        for( int i= 0; i< table.length; i++)
+        {
+            if( table[i].equals( command))
+                return i+ 1;
+        }
+        return 0;
+    }
+
+    private static int headerIndexOf( CharSequence name)
+    {
+        for( int i= 0; i< HEADER_TABLE.length; i++)
+        {
+            AsciiString entry= HEADER_TABLE[i];
+            if( entry== name || ( entry.length()== name.length() && entry.contentEqualsIgnoreCase( name)))
+                return i+ 1;
+        }
+        return 0;
+    }
+}
@@ -28,6 +28,9 @@ public class TransferChunkedContentEncoder implements ChunkedInput<TransferConte
 
     private final int chunkSize;
 
+    // 파일의 범위가 지정된 경우 범위의 시작 위치
+    private final long offset;
+
     private boolean lastChunkSent;
 
     private long progress;
@@ -36,6 +39,7 @@ public class TransferChunkedContentEncoder implements ChunkedInput<TransferConte
     {
         this.content= content;
         this.chunkSize= chunkSize;
+        this.offset= Math.max( 0, content.position());
     }
 
     @Override
@@ -59,7 +63,8 @@ public class TransferChunkedContentEncoder implements ChunkedInput<TransferConte
         }
 
         int bufSize= (int)Math.min( chunkSize, content.definedLength()- progress);
-        ByteBuf buffer= content.getChunk( bufSize);
+        // 요청 마다 heap 배열을 할당하지 않도록 pooled direct buffer에 positional read로 읽는다.
+        ByteBuf buffer= content.getChunk( allocator, offset+ progress, bufSize);
         progress+= bufSize;
 
 //        logger.debug( "readChunk current bufSize / progress: {} / {}", bufSize, progress);
@@ -23,12 +23,20 @@ public class TransferContent implements TransferObject, ByteBufHolder
 
     private final ByteBuf content;
 
+    private int streamId;
+
     public TransferContent( ByteBuf content)
     {
         ObjectUtil.checkNotNull( content, "content");
         this.content= content;
     }
 
+    public TransferContent( ByteBuf content, int streamId)
+    {
+        this( content);
+        setStreamId( streamId);
+    }
+
     @Override
     public ByteBuf content()
     {
@@ -56,7 +64,20 @@ public class TransferContent implements TransferObject, ByteBufHolder
     @Override
     public TransferContent replace( ByteBuf content)
     {
-        return new TransferContent( content);
+        return new TransferContent( content, streamId);
+    }
+
+    @Override
+    public int streamId()
+    {
+        return streamId;
+    }
+
+    public TransferContent setStreamId( int streamId)
+    {
+        ObjectUtil.checkPositiveOrZero( streamId, "streamId");
+        this.streamId= streamId;
+        return this;
     }
 
     @Override
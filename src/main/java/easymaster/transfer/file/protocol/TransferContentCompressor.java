@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_ENCODING;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_ENCODING;
+import static easymaster.transfer.file.protocol.TransferHeaderValues.CHUNKED;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import easymaster.transfer.file.util.TransferMessageUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+/**
+ * Content-Encoding 헤더에 지정된 방식으로 메시지 본문을 압축
+ * 메시지(stream) 단위로 압축 handler를 생성하고 LastTransferContent 전송 후 제거한다.
+ * 압축된 본문의 길이는 미리 알 수 없으므로 Chunk 단위로 전송하며 Content-Length는 원본 길이를 유지한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class TransferContentCompressor extends MessageToMessageEncoder<TransferObject>
+{
+    private Logger logger= LoggerFactory.getLogger( TransferContentCompressor.class);
+
+    private final int compressionLevel;
+
+    // binary framing 연결에서는 여러 stream의 본문이 섞여서 전송되므로 stream 별로 유지한다.
+    private final IntObjectMap<EmbeddedChannel> encoders= new IntObjectHashMap<EmbeddedChannel>();
+
+    public TransferContentCompressor()
+    {
+        this( ContentEncoding.DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    public TransferContentCompressor( int compressionLevel)
+    {
+        if( compressionLevel< 0 || compressionLevel> 9)
+            throw new IllegalArgumentException( "compressionLevel: "+ compressionLevel+ " (expected: 0-9)");
+        this.compressionLevel= compressionLevel;
+    }
+
+    @Override
+    public boolean acceptOutboundMessage( Object msg) throws Exception
+    {
+        return msg instanceof TransferObject;
+    }
+
+    @Override
+    protected void encode( ChannelHandlerContext ctx, TransferObject msg, List<Object> out) throws Exception
+    {
+        if( msg instanceof TransferMessage)
+        {
+            TransferMessage message= (TransferMessage)msg;
+            int streamId= message.streamId();
+            cleanup( streamId);
+
+            ContentEncoding encoding= ContentEncoding.of( message.headers().get( CONTENT_ENCODING));
+            if( encoding== ContentEncoding.IDENTITY || TransferMessageUtil.getContentLength( message, 0)<= 0)
+            {
+                out.add( message);
+                return;
+            }
+
+            EmbeddedChannel encoder= new EmbeddedChannel( ctx.channel().id(), ctx.channel().metadata().hasDisconnect(),
+                    ctx.channel().config(), encoding.newEncoder( compressionLevel));
+            encoders.put( streamId, encoder);
+            logger.debug( "content encoder[{}] is added for message: {}, stream: {}", encoding, message.command(), streamId);
+
+            if( message.content()== null)
+            {
+                out.add( message);
+                return;
+            }
+
+            // 고정 길이 본문은 압축 후 Chunk 단위로 변환하여 전송, 요청한 메시지의 헤더는 변경하지 않는다.
+            TransferMessage chunked= new TransferMessage( message.command(), new TransferHeaders().add( message.headers()));
+            chunked.setUri( message.uri());
+            chunked.setDecoderResult( message.decoderResult());
+            chunked.setStreamId( streamId);
+            chunked.headers().set( TRANSFER_ENCODING, CHUNKED);
+            out.add( chunked);
+
+            ByteBuf buf= message.content().content();
+            encodeContent( encoder, buf, streamId, out);
+            finishEncode( encoder, streamId, out);
+            return;
+        }
+
+        if( msg instanceof TransferFileRegion)
+        {
+            if( encoders.containsKey( msg.streamId()))
+                throw new EncoderException( "FileRegion cannot be compressed");
+            out.add( ((TransferFileRegion)msg).retain());
+            return;
+        }
+
+        if( msg instanceof TransferContent)
+        {
+            TransferContent content= (TransferContent)msg;
+            int streamId= content.streamId();
+            EmbeddedChannel encoder= encoders.get( streamId);
+            if( encoder== null)
+            {
+                out.add( content.retain());
+                return;
+            }
+
+            encodeContent( encoder, content.content().retain(), streamId, out);
+            if( content instanceof LastTransferContent)
+                finishEncode( encoder, streamId, out);
+        }
+    }
+
+    @Override
+    public void handlerRemoved( ChannelHandlerContext ctx) throws Exception
+    {
+        for( EmbeddedChannel encoder: encoders.values())
+            encoder.finishAndReleaseAll();
+        encoders.clear();
+        super.handlerRemoved( ctx);
+    }
+
+    private void encodeContent( EmbeddedChannel encoder, ByteBuf buf, int streamId, List<Object> out)
+    {
+        encoder.writeOutbound( buf);
+        fetchEncoderOutput( encoder, streamId, out);
+    }
+
+    private void finishEncode( EmbeddedChannel encoder, int streamId, List<Object> out)
+    {
+        if( encoder.finish())
+            fetchEncoderOutput( encoder, streamId, out);
+        encoders.remove( streamId);
+        out.add( LastTransferContent.of( streamId));
+    }
+
+    private void fetchEncoderOutput( EmbeddedChannel encoder, int streamId, List<Object> out)
+    {
+        ByteBuf buf= null;
+        while( ( buf= encoder.readOutbound())!= null)
+        {
+            if( !buf.isReadable())
+            {
+                buf.release();
+                continue;
+            }
+            out.add( new TransferContent( buf, streamId));
+        }
+    }
+
+    private void cleanup( int streamId)
+    {
+        EmbeddedChannel encoder= encoders.remove( streamId);
+        if( encoder!= null)
+            encoder.finishAndReleaseAll();
+    }
+}
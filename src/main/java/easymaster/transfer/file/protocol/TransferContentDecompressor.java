@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_ENCODING;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+/**
+ * Content-Encoding 헤더에 지정된 방식으로 압축된 메시지 본문을 해제
+ * 메시지(stream) 단위로 압축 해제 handler를 생성하고 LastTransferContent 수신 후 제거한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class TransferContentDecompressor extends MessageToMessageDecoder<TransferObject>
+{
+    private Logger logger= LoggerFactory.getLogger( TransferContentDecompressor.class);
+
+    // binary framing 연결에서는 여러 stream의 본문이 섞여서 수신되므로 stream 별로 유지한다.
+    private final IntObjectMap<EmbeddedChannel> decoders= new IntObjectHashMap<EmbeddedChannel>();
+
+    @Override
+    protected void decode( ChannelHandlerContext ctx, TransferObject msg, List<Object> out) throws Exception
+    {
+        if( msg instanceof TransferMessage)
+        {
+            TransferMessage message= (TransferMessage)msg;
+            int streamId= message.streamId();
+            cleanup( streamId);
+
+            ContentEncoding encoding= ContentEncoding.of( message.headers().get( CONTENT_ENCODING));
+            if( encoding!= ContentEncoding.IDENTITY)
+            {
+                decoders.put( streamId, new EmbeddedChannel( ctx.channel().id(), ctx.channel().metadata().hasDisconnect(),
+                        ctx.channel().config(), encoding.newDecoder()));
+                logger.debug( "content decoder[{}] is added for message: {}, stream: {}", encoding, message.command(), streamId);
+            }
+
+            out.add( message);
+            return;
+        }
+
+        if( msg instanceof TransferContent)
+        {
+            TransferContent content= (TransferContent)msg;
+            int streamId= content.streamId();
+            EmbeddedChannel decoder= decoders.get( streamId);
+            if( decoder== null)
+            {
+                out.add( content.retain());
+                return;
+            }
+
+            if( content.content().isReadable())
+                decodeContent( decoder, content.content().retain(), streamId, out);
+
+            if( content instanceof LastTransferContent)
+            {
+                if( decoder.finish())
+                    fetchDecoderOutput( decoder, streamId, out);
+                decoders.remove( streamId);
+                out.add( LastTransferContent.of( streamId));
+            }
+        }
+    }
+
+    @Override
+    public void handlerRemoved( ChannelHandlerContext ctx) throws Exception
+    {
+        cleanupAll();
+        super.handlerRemoved( ctx);
+    }
+
+    @Override
+    public void channelInactive( ChannelHandlerContext ctx) throws Exception
+    {
+        cleanupAll();
+        super.channelInactive( ctx);
+    }
+
+    private void decodeContent( EmbeddedChannel decoder, ByteBuf buf, int streamId, List<Object> out)
+    {
+        decoder.writeInbound( buf);
+        fetchDecoderOutput( decoder, streamId, out);
+    }
+
+    private void fetchDecoderOutput( EmbeddedChannel decoder, int streamId, List<Object> out)
+    {
+        ByteBuf buf= null;
+        while( ( buf= decoder.readInbound())!= null)
+        {
+            if( !buf.isReadable())
+            {
+                buf.release();
+                continue;
+            }
+            out.add( new TransferContent( buf, streamId));
+        }
+    }
+
+    private void cleanup( int streamId)
+    {
+        EmbeddedChannel decoder= decoders.remove( streamId);
+        if( decoder!= null)
+            decoder.finishAndReleaseAll();
+    }
+
+    private void cleanupAll()
+    {
+        for( EmbeddedChannel decoder: decoders.values())
+            decoder.finishAndReleaseAll();
+        decoders.clear();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import io.netty.channel.FileRegion;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.internal.ObjectUtil;
+
+/**
+ * Chunk 단위 전송에서 파일의 일부 영역을 복사없이 전송하기 위해 사용
+ * 본문은 FileRegion으로 전달되어 transport에서 sendfile로 처리된다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class TransferFileRegion implements TransferObject, ReferenceCounted
+{
+    private DecoderResult decoderResult= DecoderResult.SUCCESS;
+
+    private final FileRegion region;
+
+    private int streamId;
+
+    public TransferFileRegion( FileRegion region)
+    {
+        ObjectUtil.checkNotNull( region, "region");
+        this.region= region;
+    }
+
+    public FileRegion region()
+    {
+        return this.region;
+    }
+
+    public long count()
+    {
+        return this.region.count();
+    }
+
+    @Override
+    public int streamId()
+    {
+        return streamId;
+    }
+
+    public TransferFileRegion setStreamId( int streamId)
+    {
+        ObjectUtil.checkPositiveOrZero( streamId, "streamId");
+        this.streamId= streamId;
+        return this;
+    }
+
+    @Override
+    public int refCnt()
+    {
+        return region.refCnt();
+    }
+
+    @Override
+    public TransferFileRegion retain()
+    {
+        region.retain();
+        return this;
+    }
+
+    @Override
+    public TransferFileRegion retain( int increment)
+    {
+        region.retain( increment);
+        return this;
+    }
+
+    @Override
+    public TransferFileRegion touch()
+    {
+        region.touch();
+        return this;
+    }
+
+    @Override
+    public TransferFileRegion touch( Object hint)
+    {
+        region.touch( hint);
+        return this;
+    }
+
+    @Override
+    public boolean release()
+    {
+        return region.release();
+    }
+
+    @Override
+    public boolean release( int decrement)
+    {
+        return region.release( decrement);
+    }
+
+    @Override
+    public DecoderResult decoderResult()
+    {
+        return decoderResult;
+    }
+
+    @Override
+    public void setDecoderResult( DecoderResult decoderResult)
+    {
+        ObjectUtil.checkNotNull( decoderResult, "decoderResult");
+        this.decoderResult= decoderResult;
+    }
+}
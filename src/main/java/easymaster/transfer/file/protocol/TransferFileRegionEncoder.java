@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import static easymaster.transfer.file.protocol.LastTransferContent.EMPTY_LAST_CONTENT;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.stream.ChunkedInput;
+
+/**
+ * SSL, 압축이 적용되지 않은 연결에서 파일을 Chunk단위로 전송
+ * 각 Chunk는 파일 영역(DefaultFileRegion)으로 전달되므로 heap 할당과 user-space 복사가 발생하지 않는다.
+ * Chunk 프레임(길이, 구분자)은 TransferMessageEncoder에서 작성되므로 수신측 decoder는 기존과 동일하게 처리한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class TransferFileRegionEncoder implements ChunkedInput<TransferObject>
+{
+    private Logger logger= LoggerFactory.getLogger( TransferFileRegionEncoder.class);
+
+    private final FileData content;
+
+    private final File file;
+
+    private final int chunkSize;
+
+    // 파일의 범위가 지정된 경우 범위의 시작 위치
+    private final long offset;
+
+    private boolean lastChunkSent;
+
+    private long progress;
+
+    public TransferFileRegionEncoder( FileData content, int chunkSize) throws Exception
+    {
+        this.content= content;
+        this.file= content.getFile();
+        this.chunkSize= chunkSize;
+        this.offset= Math.max( 0, content.position());
+    }
+
+    @Override
+    @Deprecated
+    public TransferObject readChunk( ChannelHandlerContext ctx) throws Exception
+    {
+        return readChunk( ctx.alloc());
+    }
+
+    @Override
+    public TransferObject readChunk( ByteBufAllocator allocator) throws Exception
+    {
+        if( lastChunkSent)
+            return null;
+
+        if( file== null || progress>= content.definedLength())
+        {
+            lastChunkSent= true;
+            content.release();
+            return EMPTY_LAST_CONTENT;
+        }
+
+        long regionSize= Math.min( chunkSize, content.definedLength()- progress);
+        // 파일은 실제 전송 시점에 열리고 전송이 끝나면 닫힌다.
+        TransferFileRegion region= new TransferFileRegion( new DefaultFileRegion( file, offset+ progress, regionSize));
+        progress+= regionSize;
+
+        return region;
+    }
+
+    @Override
+    public long length()
+    {
+        return content.definedLength();
+    }
+
+    @Override
+    public long progress()
+    {
+        return progress;
+    }
+
+    @Override
+    public boolean isEndOfInput() throws Exception
+    {
+        return lastChunkSent;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        logger.debug( "TransferFileRegionEncoder closed");
+    }
+}
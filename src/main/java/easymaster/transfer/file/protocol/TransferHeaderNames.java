@@ -30,6 +30,10 @@ public final class TransferHeaderNames
 
     public static final AsciiString CONTENT_LENGTH= AsciiString.cached( "Content-Length");
 
+    public static final AsciiString CONTENT_ENCODING= AsciiString.cached( "Content-Encoding");
+
+    public static final AsciiString ACCEPT_ENCODING= AsciiString.cached( "Accept-Encoding");
+
     public static final AsciiString DELETED_COUNT= AsciiString.cached( "Deleted-Count");
 
     public static final AsciiString TRANSFER_ENCODING= AsciiString.cached( "Transfer-Encoding");
@@ -53,4 +57,30 @@ public final class TransferHeaderNames
     public static final AsciiString RESOURCE_LENGTH= AsciiString.cached( "Resource-Length");
 
     public static final AsciiString TRANSFERRED_RESOURCE= AsciiString.cached( "Transferred-Resource");
+
+    public static final AsciiString UPGRADE= AsciiString.cached( "Upgrade");
+
+    public static final AsciiString OFFSET= AsciiString.cached( "Offset");
+
+    // 범위 GET 요청의 크기(bytes), Offset과 함께 사용하며 없는 경우 파일 끝까지 응답한다.
+    public static final AsciiString RANGE= AsciiString.cached( "Range");
+
+    // 응답한 파일의 수정 시간(milliseconds), 범위 GET으로 나누어 받은 파일이 같은 원본인지 확인하는 데 사용한다.
+    public static final AsciiString RESOURCE_MODIFIED= AsciiString.cached( "Resource-Modified");
+
+    // session의 staging 파일에 disk까지 반영된 구간(offset-end, end는 포함하지 않음), 구간 별로 여러 값을 가진다.
+    public static final AsciiString RECEIVED_RANGE= AsciiString.cached( "Received-Range");
+
+    // 이어받기 GET 요청에서 이미 받은 부분의 원본 파일 검증 값(크기-수정 시간), 원본 파일이 변경된 경우 Precondition Failed로 응답한다.
+    public static final AsciiString IF_MATCH= AsciiString.cached( "If-Match");
+
+    public static final AsciiString UPLOAD_PENDING_BYTES= AsciiString.cached( "Upload-Pending-Bytes");
+
+    public static final AsciiString UPLOAD_PAUSED_CHANNELS= AsciiString.cached( "Upload-Paused-Channels");
+
+    public static final AsciiString CONTENT_CACHE_HITS= AsciiString.cached( "Content-Cache-Hits");
+
+    public static final AsciiString CONTENT_CACHE_MISSES= AsciiString.cached( "Content-Cache-Misses");
+
+    public static final AsciiString CONTENT_CACHE_BYTES= AsciiString.cached( "Content-Cache-Bytes");
 }
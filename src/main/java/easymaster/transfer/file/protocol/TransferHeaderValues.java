@@ -18,6 +18,13 @@ public final class TransferHeaderValues
 
     public static final AsciiString CHUNKED= AsciiString.cached( "chunked");
 
+    // Content-Encoding, Accept-Encoding으로 사용할 수 있는 압축 방식
+    public static final AsciiString IDENTITY= AsciiString.cached( "identity");
+
+    public static final AsciiString GZIP= AsciiString.cached( "gzip");
+
+    public static final AsciiString SNAPPY= AsciiString.cached( "snappy");
+
     // 파일 전송 처리시 비동기 전송 후 처리중 응답 또는 전송 완료 후 결과 응답 여부
     public static final AsciiString VALIDATION_ON= AsciiString.cached( "on");
 
@@ -30,4 +37,10 @@ public final class TransferHeaderValues
     public static final AsciiString KEEP_ALIVE= AsciiString.cached( "keep-alive");
 
     public static final AsciiString CLOSE= AsciiString.cached( "close");
+
+    // INFO /upgrade 요청으로 협상하는 binary framing
+    public static final AsciiString BINARY_FRAMING= AsciiString.cached( "binary-v2");
+
+    // INFO /upgrade 요청으로 협상하는 메시지 단위 본문 압축(Content-Encoding), 협상되지 않은 연결은 연결 전체를 GZIP으로 압축한다.
+    public static final AsciiString MESSAGE_ENCODING= AsciiString.cached( "message-encoding");
 }
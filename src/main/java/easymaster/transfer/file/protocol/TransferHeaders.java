@@ -289,6 +289,16 @@ public class TransferHeaders implements Iterable<Map.Entry<String, String>>
         return headers.getInt( name, defaultValue);
     }
 
+    public Long getLong( CharSequence name)
+    {
+        return headers.getLong( name);
+    }
+
+    public long getLong( CharSequence name, long defaultValue)
+    {
+        return headers.getLong( name, defaultValue);
+    }
+
     public Short getShort( CharSequence name)
     {
         return headers.getShort( name);
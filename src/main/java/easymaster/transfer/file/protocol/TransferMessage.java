@@ -28,6 +28,8 @@ public class TransferMessage implements TransferObject
 
     private DecoderResult decoderResult= DecoderResult.SUCCESS;
 
+    private int streamId;
+
     public TransferMessage( TransferCommand command)
     {
         this( command, new TransferHeaders());
@@ -75,6 +77,19 @@ public class TransferMessage implements TransferObject
         return this.content;
     }
 
+    @Override
+    public int streamId()
+    {
+        return this.streamId;
+    }
+
+    public TransferMessage setStreamId( int streamId)
+    {
+        ObjectUtil.checkPositiveOrZero( streamId, "streamId");
+        this.streamId= streamId;
+        return this;
+    }
+
     @Override
     public DecoderResult decoderResult()
     {
@@ -10,6 +10,8 @@ import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT_TYPE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.REMOTE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.RESPONSE_CODE;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_ENCODING;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.UPGRADE;
+import static easymaster.transfer.file.protocol.TransferHeaderValues.BINARY_FRAMING;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.CLIENT;
 
 import java.net.InetAddress;
@@ -46,9 +48,23 @@ public class TransferMessageClientCodec extends CombinedChannelDuplexHandler<Tra
     }
     
     public TransferMessageClientCodec( boolean failOnMissingResponse)
+    {
+        this( TransferMessageDecoder.DEFAULT_MAX_INITIAL_LINE_LENGTH, TransferMessageDecoder.DEFAULT_MAX_HEADER_SIZE,
+                failOnMissingResponse);
+    }
+
+    public TransferMessageClientCodec( int maxInitialLineLength, int maxHeaderSize, boolean failOnMissingResponse)
     {
         this.failOnMissingResponse= failOnMissingResponse;
-        init( new Decoder(), new Encoder());
+        init( new Decoder( maxInitialLineLength, maxHeaderSize), new Encoder());
+    }
+
+    /**
+     * @return INFO /upgrade 요청으로 binary framing이 협상되었는지 여부
+     */
+    public boolean isBinaryFraming()
+    {
+        return outboundHandler().isBinaryFraming();
     }
 
     private final class Encoder extends TransferMessageEncoder
@@ -91,20 +107,31 @@ public class TransferMessageClientCodec extends CombinedChannelDuplexHandler<Tra
 
     private final class Decoder extends TransferMessageDecoder
     {
+        Decoder( int maxInitialLineLength, int maxHeaderSize)
+        {
+            super( maxInitialLineLength, maxHeaderSize);
+        }
+
         @Override
         public void decode( ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
         {
             int before= out.size();
             super.decode( ctx, in, out);
-            if( failOnMissingResponse)
+            int after= out.size();
+            for( int i= before; i< after; i++)
             {
-                int after= out.size();
-                for( int i= before; i< after; i++)
+                Object msg= out.get( i);
+                // response for request accepted (finally)
+                if( failOnMissingResponse && msg instanceof LastTransferContent)
+                    requestResponseCounter.decrementAndGet();
+
+                // upgrade 응답 이후의 요청과 응답은 binary framing으로 처리한다.
+                if( !isBinaryFraming() && msg instanceof TransferMessage &&
+                        ( (TransferMessage)msg).headers().contains( UPGRADE, BINARY_FRAMING, true))
                 {
-                    Object msg= out.get( i);
-                    // response for request accepted (finally)
-                    if( msg!= null && msg instanceof LastTransferContent)
-                        requestResponseCounter.decrementAndGet();
+                    setBinaryFraming( true);
+                    outboundHandler().setBinaryFraming( true);
+                    logger.debug( "binary framing is upgraded. channel: {}", ctx.channel());
                 }
             }
         }
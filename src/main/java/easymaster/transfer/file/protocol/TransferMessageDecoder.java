@@ -5,25 +5,33 @@
 
 package easymaster.transfer.file.protocol;
 
-import java.io.ByteArrayOutputStream;
+import static easymaster.transfer.file.util.TransferConstants.CR;
+import static easymaster.transfer.file.util.TransferConstants.LF;
+
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
-import easymaster.transfer.file.util.TransferConstants;
 import easymaster.transfer.file.util.TransferMessageUtil;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.AsciiString;
 import io.netty.util.ByteProcessor;
 import io.netty.util.CharsetUtil;
-import io.netty.util.internal.AppendableCharSequence;
 import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.StringUtil;
 
 /**
+ * 수신 데이터를 TransferMessage, TransferContent, LastTransferContent로 변환
+ * 헤더 라인은 ByteBuf에서 직접 해석하며 헤더 이름과 ASCII 값은 라인 byte 배열을 공유하는 AsciiString으로 유지한다.
+ * 라인 해석에 사용하는 parser는 채널 단위로 재사용한다.
+ * binary framing이 협상된 연결에서는 TransferBinaryFraming 형식의 프레임을 해석한다.
  * @author Jongoh Lee
  *
  */
@@ -31,13 +39,39 @@ import io.netty.util.internal.ObjectUtil;
 public class TransferMessageDecoder extends ByteToMessageDecoder
 {
     private static Logger logger= LoggerFactory.getLogger( TransferMessageDecoder.class);
-    
-    private static final String EMPTY_VALUE = "";
+
+    public static final int DEFAULT_MAX_INITIAL_LINE_LENGTH= 4096;
+
+    // Merge 요청은 분할 파일 수 만큼 Merge-Resource 헤더를 포함하므로 충분한 크기를 허용한다.
+    public static final int DEFAULT_MAX_HEADER_SIZE= 64* 1024;
+
+    private static final TransferCommand[] KNOWN_COMMANDS= {
+            TransferCommand.TRANSFER, TransferCommand.PUT, TransferCommand.DELETE, TransferCommand.GET,
+            TransferCommand.LIST, TransferCommand.INFO, TransferCommand.ACTION
+    };
+
+    private final LineParser lineParser;
+
+    private final LineParser headerParser;
+
+    private final int maxHeaderSize;
 
     private TransferMessage message;
 
     private int chunkSize;
 
+    // 여러 번에 나누어 수신된 헤더 부분의 해석 상태
+    private int headerSize;
+
+    private CharSequence name;
+
+    private CharSequence value;
+
+    private boolean binaryFraming;
+
+    // 수신 중인 DATA 프레임의 stream
+    private int frameStreamId;
+
     private enum State
     {
         SKIP_CONTROL_CHARS,
@@ -47,16 +81,58 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
         READ_CHUNK_SIZE,
         READ_CHUNKED_CONTENT,
         READ_CHUNKED_DELIMITER,
+        READ_FRAME_HEADER,
+        READ_FRAME_DATA,
         BAD_MESSAGE
     }
 
     private State currentState= State.SKIP_CONTROL_CHARS;
 
+    public TransferMessageDecoder()
+    {
+        this( DEFAULT_MAX_INITIAL_LINE_LENGTH, DEFAULT_MAX_HEADER_SIZE);
+    }
+
+    /**
+     * @param maxInitialLineLength COMMAND, URI로 구성된 첫번째 라인과 chunk size 라인의 최대 길이
+     * @param maxHeaderSize 전체 헤더의 최대 크기
+     */
+    public TransferMessageDecoder( int maxInitialLineLength, int maxHeaderSize)
+    {
+        ObjectUtil.checkPositive( maxInitialLineLength, "maxInitialLineLength");
+        ObjectUtil.checkPositive( maxHeaderSize, "maxHeaderSize");
+        this.lineParser= new LineParser( maxInitialLineLength, "initial line");
+        this.headerParser= new LineParser( maxHeaderSize, "header");
+        this.maxHeaderSize= maxHeaderSize;
+    }
+
+    /**
+     * 이후 수신되는 메시지의 프레임 형식을 변경한다. 메시지 사이에서만 호출되어야 한다.
+     * @param binaryFraming binary framing(v2) 사용 여부
+     */
+    public void setBinaryFraming( boolean binaryFraming)
+    {
+        this.binaryFraming= binaryFraming;
+        if( currentState!= State.BAD_MESSAGE)
+            currentState= binaryFraming ? State.READ_FRAME_HEADER : State.SKIP_CONTROL_CHARS;
+    }
+
+    public boolean isBinaryFraming()
+    {
+        return binaryFraming;
+    }
+
     @Override
     public void decode( ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
     {
 //        logger.debug( "TransferMessageDecoder currentState: {}", currentState);
 
+        if( binaryFraming)
+        {
+            decodeFrame( in, out);
+            return;
+        }
+
         switch( currentState)
         {
             case BAD_MESSAGE:
@@ -70,17 +146,12 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
             case READ_INITIAL:
                 try
                 {
-                    HeaderLineParser parser= new HeaderLineParser( new AppendableCharSequence( 128));
-                    AppendableCharSequence line= parser.parse( in);
-                    if( line== null)
+                    int eol= lineParser.parse( in);
+                    if( eol< 0)
                         return;
-                    String[] initialLine= splitInitialLine( line);
-                    if( initialLine.length< 1)
-                    {
-                        currentState= State.SKIP_CONTROL_CHARS;
-                        return;
-                    }
-                    message= createMessage( initialLine);
+                    message= createMessage( in, in.readerIndex(), eol);
+                    in.readerIndex( eol+ 1);
+                    resetHeaders();
                     currentState= State.READ_HEADER;
                 }
                 catch( Exception e)
@@ -93,7 +164,10 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
             case READ_HEADER:
                 try
                 {
-                    currentState= readHeaders( in);
+                    State nextState= readHeaders( in);
+                    if( nextState== null)
+                        return;
+                    currentState= nextState;
                     chunkSize= (int)contentLength();
                     out.add( message);
 
@@ -142,11 +216,11 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
             case READ_CHUNK_SIZE:
                 try
                 {
-                    HeaderLineParser parser= new HeaderLineParser( new AppendableCharSequence( 128));
-                    AppendableCharSequence line= parser.parse( in);
-                    if( line== null)
+                    int eol= lineParser.parse( in);
+                    if( eol< 0)
                         return;
-                    chunkSize= getChunkSize( line.toString());
+                    chunkSize= getChunkSize( in, in.readerIndex(), eol);
+                    in.readerIndex( eol+ 1);
 //                    logger.debug( "READ_CHUNK_SIZE- chunksize:{}", chunkSize);
 
                     if( chunkSize== 0)
@@ -191,7 +265,7 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
                 while( wIdx> rIdx)
                 {
                     byte next= in.getByte( rIdx++);
-                    if( next== TransferConstants.LF)
+                    if( next== LF)
                     {
                         currentState= State.READ_CHUNK_SIZE;
                         break;
@@ -202,6 +276,78 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
         }
     }
 
+    private void decodeFrame( ByteBuf in, List<Object> out)
+    {
+        try
+        {
+            switch( currentState)
+            {
+                case BAD_MESSAGE:
+                    in.skipBytes( in.readableBytes());
+                    return;
+                case READ_FRAME_DATA:
+                    int readable= Math.min( in.readableBytes(), chunkSize);
+                    if( readable== 0)
+                        return;
+                    out.add( new TransferContent( in.readRetainedSlice( readable), frameStreamId));
+                    if( ( chunkSize-= readable)== 0)
+                        currentState= State.READ_FRAME_HEADER;
+                    return;
+                default:
+                    break;
+            }
+
+            int start= in.readerIndex();
+            if( !in.isReadable( 3))
+                return;
+            int streamId= TransferBinaryFraming.peekVarint( in, start+ 1);
+            if( streamId< 0)
+                return;
+            int lengthIndex= start+ 1+ TransferBinaryFraming.varintSize( streamId);
+            int length= lengthIndex< in.writerIndex() ? TransferBinaryFraming.peekVarint( in, lengthIndex) : -1;
+            if( length< 0)
+                return;
+            byte type= in.getByte( start);
+            int headerLength= lengthIndex- start+ TransferBinaryFraming.varintSize( length);
+
+            switch( type)
+            {
+                case TransferBinaryFraming.HEADERS:
+                    if( length> maxHeaderSize)
+                        throw new TooLongFrameException( "header is larger than "+ maxHeaderSize+ " bytes.");
+                    if( in.readableBytes()< headerLength+ length)
+                        return;
+                    in.skipBytes( headerLength);
+                    message= TransferBinaryFraming.decodeHeaders( in.readSlice( length));
+                    message.setStreamId( streamId);
+                    logger.debug( "decoded message headers frame. stream: {}, headers: {}", streamId, message.headers());
+
+                    out.add( message);
+                    if( contentLength()<= 0)
+                        out.add( LastTransferContent.of( streamId));
+                    return;
+                case TransferBinaryFraming.DATA:
+                    in.skipBytes( headerLength);
+                    frameStreamId= streamId;
+                    if( ( chunkSize= length)> 0)
+                        currentState= State.READ_FRAME_DATA;
+                    return;
+                case TransferBinaryFraming.END:
+                    in.skipBytes( headerLength+ length);
+                    out.add( LastTransferContent.of( streamId));
+                    return;
+                default:
+                    throw new CorruptedFrameException( "unknown frame type: "+ type);
+            }
+        }
+        catch( Exception e)
+        {
+            logger.error( "read frame failed.", e);
+            out.add( invalidMessage( in, message!= null ? message.command() : TransferCommand.INFO, e));
+            out.add( LastTransferContent.EMPTY_LAST_CONTENT);
+        }
+    }
+
     @Override
     public void decodeLast( ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
     {
@@ -227,69 +373,90 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
         return skiped;
     }
 
+    /**
+     * 완전히 수신된 헤더 라인만 해석한다.
+     * @return 헤더의 끝(빈 라인)을 수신하지 못한 경우 null
+     */
     private State readHeaders( ByteBuf buffer)
     {
-        HeaderElementParser parser= new HeaderElementParser();
-        AppendableCharSequence line= parser.parse( buffer);
-        
-        CharSequence name= null;
-        CharSequence value= null;
-        if( line== null)
-            return null;
-        if( line.length()> 0)
+        int eol;
+        while( ( eol= headerParser.parse( buffer))>= 0)
         {
-            do
+            int start= buffer.readerIndex();
+            int end= eol> start && buffer.getByte( eol- 1)== CR ? eol- 1 : eol;
+            buffer.readerIndex( eol+ 1);
+
+            if( ( headerSize+= eol- start+ 1)> maxHeaderSize)
+                throw new TooLongFrameException( "header is larger than "+ maxHeaderSize+ " bytes.");
+
+            if( end== start)
             {
-                char firstChar= line.charAt( 0);
-                if( name!= null && ( firstChar== ' ' || firstChar== '\t'))
-                {
-                  //please do not make one line from below code
-                    //as it breaks +XX:OptimizeStringConcat optimization
-                    String trimmmedLine= line.toString().trim();
-                    String valueStr= String.valueOf( value);
-                    value= valueStr+ ' '+ trimmmedLine;
-                }
-                else
-                {
-                    if( name!= null)
-                        message.headers().add( name, value);
-                    HeaderNameValue hnv= splitHeader( line);
-                    name= hnv.name();
-                    value= hnv.value();
-                }
+                if( name!= null)
+                    message.headers().add( name, value);
+                resetHeaders();
 
-                line= parser.parse( buffer);
-                
-                if( line== null)
-                    return null;
-            }
-            while( line.length()> 0);
-        }
+                logger.debug( "decoded message headers {}", message.headers());
 
-        if( name!= null)
-            message.headers().add( name, value);
+                return contentLength()<= 0 ? State.SKIP_CONTROL_CHARS :
+                    message.headers().contains( TransferHeaderNames.TRANSFER_ENCODING, TransferHeaderValues.CHUNKED, true) ?
+                            State.READ_CHUNK_SIZE : State.READ_FIXED_LENGTH_CONTENT;
+            }
 
-        logger.debug( "decoded message headers {}", message.headers());
+            byte[] line= new byte[end- start];
+            buffer.getBytes( start, line);
+            if( name!= null && ( line[0]== ' ' || line[0]== '\t'))
+            {
+                //please do not make one line from below code
+                //as it breaks +XX:OptimizeStringConcat optimization
+                String trimmmedLine= decodeValue( line, 0, line.length).toString().trim();
+                String valueStr= String.valueOf( value);
+                value= valueStr+ ' '+ trimmmedLine;
+            }
+            else
+            {
+                if( name!= null)
+                    message.headers().add( name, value);
+                splitHeader( line);
+            }
+        }
+        return null;
+    }
 
-        return contentLength()<= 0 ? State.SKIP_CONTROL_CHARS :
-            message.headers().contains( TransferHeaderNames.TRANSFER_ENCODING, TransferHeaderValues.CHUNKED, true) ?
-                    State.READ_CHUNK_SIZE : State.READ_FIXED_LENGTH_CONTENT;
+    private void resetHeaders()
+    {
+        headerSize= 0;
+        name= null;
+        value= null;
     }
 
-    private int getChunkSize( String hex)
+    /**
+     * chunk size 라인의 16진수 크기를 ByteBuf에서 직접 해석한다. ';' 이후의 chunk extension은 무시된다.
+     */
+    private static int getChunkSize( ByteBuf buffer, int start, int end)
     {
-        hex= hex.trim();
-        for( int i= 0; i< hex.length(); i++)
+        while( start< end && buffer.getUnsignedByte( start)<= ' ')
+            start++;
+
+        long size= 0;
+        int digits= 0;
+        for( int i= start; i< end; i++)
         {
-            char c= hex.charAt( i);
+            char c= (char)buffer.getUnsignedByte( i);
             if( c== ';' || Character.isWhitespace( c) || Character.isISOControl( c))
-            {
-                hex= hex.substring( 0, i);
                 break;
-            }
+
+            int digit= StringUtil.decodeHexNibble( c);
+            if( digit< 0)
+                throw new NumberFormatException( "invalid chunk size: "+ buffer.toString( start, end- start, CharsetUtil.US_ASCII));
+            if( ( size= ( size<< 4)| digit)> Integer.MAX_VALUE)
+                throw new NumberFormatException( "chunk size is out of range: "+ buffer.toString( start, end- start, CharsetUtil.US_ASCII));
+            digits++;
         }
 
-        return Integer.parseInt( hex, 16);
+        if( digits== 0)
+            throw new NumberFormatException( "chunk size not found");
+
+        return (int)size;
     }
 
     private long contentLength()
@@ -297,13 +464,37 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
         return TransferMessageUtil.getContentLength( message, -1);
     }
 
-    private TransferMessage createMessage( String[] initialLine)
+    private TransferMessage createMessage( ByteBuf buffer, int start, int end)
     {
-        TransferMessage message= new TransferMessage( TransferCommand.valueOf( initialLine[0]));
-        message.setUri( initialLine[1]);
+        int commandStart= findNotWhitespace( buffer, start, end);
+        int commandEnd= findWhitespace( buffer, commandStart, end);
+        int uriStart= findNotWhitespace( buffer, commandEnd, end);
+        int uriEnd= findEndOfString( buffer, uriStart, end);
+
+        TransferMessage message= new TransferMessage( commandOf( buffer, commandStart, commandEnd));
+        // URI는 encode되어 전송되므로 byte 값을 그대로 문자로 사용한다.
+        message.setUri( uriStart< uriEnd ? buffer.toString( uriStart, uriEnd- uriStart, CharsetUtil.ISO_8859_1) : "");
         return message;
     }
 
+    private static TransferCommand commandOf( ByteBuf buffer, int start, int end)
+    {
+        int length= end- start;
+        for( TransferCommand command: KNOWN_COMMANDS)
+        {
+            AsciiString name= command.asciiName();
+            if( name.length()!= length)
+                continue;
+
+            int i= 0;
+            while( i< length && name.byteAt( i)== buffer.getByte( start+ i))
+                i++;
+            if( i== length)
+                return command;
+        }
+        return TransferCommand.valueOf( buffer.toString( start, length, CharsetUtil.ISO_8859_1));
+    }
+
     private TransferMessage invalidMessage( ByteBuf in, TransferCommand command, Exception cause)
     {
         currentState= State.BAD_MESSAGE;
@@ -314,6 +505,7 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
 
         TransferMessage ret= message;
         message= null;
+        resetHeaders();
         return ret;
     }
 
@@ -329,193 +521,143 @@ public class TransferMessageDecoder extends ByteToMessageDecoder
         return response;
     }
 
-    private String[] splitInitialLine( AppendableCharSequence sb)
+    /**
+     * 헤더 라인을 이름과 값으로 분리한다.
+     * 이름과 ASCII 값은 라인 byte 배열을 공유하는 AsciiString으로 생성되며 ASCII가 아닌 값만 UTF-8로 변환한다.
+     */
+    private void splitHeader( byte[] line)
     {
-        int commandaStart, commandEnd, uriStart, uriEnd;
-
-        commandaStart= findNotWhitespace( sb, 0);
-        commandEnd= findWhitespace( sb, commandaStart);
-
-        uriStart= findNotWhitespace( sb, commandEnd);
-        uriEnd= findEndOfString( sb);
-
-        return new String[] {
-                sb.subStringUnsafe( commandaStart, commandEnd),
-                uriStart< uriEnd ? sb.subStringUnsafe( uriStart, uriEnd) : ""
-        };
-    }
-
-    private HeaderNameValue splitHeader( AppendableCharSequence sb)
-    {
-        CharSequence name= null;
-        CharSequence value= null;
-        final int length= sb.length();
+        final int length= line.length;
         int nameStart;
         int nameEnd;
         int colonEnd;
         int valueStart;
-        int valueEnd;
 
-        nameStart= findNotWhitespace( sb, 0);
+        nameStart= findNotWhitespace( line, 0);
         for( nameEnd= nameStart; nameEnd< length; nameEnd++)
         {
-            char ch= sb.charAt( nameEnd);
-            if( ch== ':' || Character.isWhitespace( ch))
+            byte b= line[nameEnd];
+            if( b== ':' || isWhitespace( b))
                 break;
         }
 
         for( colonEnd= nameEnd; colonEnd< length; colonEnd++)
         {
-            if( sb.charAt( colonEnd)== ':')
+            if( line[colonEnd]== ':')
             {
                 colonEnd++;
                 break;
             }
         }
 
-        name= sb.subStringUnsafe( nameStart, nameEnd);
-        valueStart= findNotWhitespace( sb, colonEnd);
+        name= new AsciiString( line, nameStart, nameEnd- nameStart, false);
+        valueStart= findNotWhitespace( line, colonEnd);
         if( valueStart== length)
-            value= EMPTY_VALUE;
+            value= AsciiString.EMPTY_STRING;
         else
-        {
-            valueEnd= findEndOfString( sb);
-            value= sb.subStringUnsafe( valueStart, valueEnd);
-        }
-
-        return new HeaderNameValue( name, value);
-
+            value= decodeValue( line, valueStart, findEndOfString( line, valueStart));
     }
 
-    private static int findNotWhitespace( AppendableCharSequence sb, int offset)
+    private static CharSequence decodeValue( byte[] line, int start, int end)
     {
-        for( int i= offset; i< sb.length(); ++i)
+        for( int i= start; i< end; i++)
         {
-            if( !Character.isWhitespace( sb.charAtUnsafe( i)))
-                return i;
+            if( line[i]< 0)
+                return new String( line, start, end- start, CharsetUtil.UTF_8);
         }
-        return sb.length();
+        return new AsciiString( line, start, end- start, false);
     }
 
-    private static int findWhitespace( AppendableCharSequence sb, int offset)
+    private static boolean isWhitespace( byte b)
     {
-        for( int i= offset; i< sb.length(); ++i)
+        return Character.isWhitespace( (char)( b& 0xFF));
+    }
+
+    private static int findNotWhitespace( byte[] line, int offset)
+    {
+        for( int i= offset; i< line.length; ++i)
         {
-            if( Character.isWhitespace( sb.charAtUnsafe( i)))
+            if( !isWhitespace( line[i]))
                 return i;
         }
-        return sb.length();
+        return line.length;
     }
 
-    private static int findEndOfString( AppendableCharSequence sb)
+    private static int findEndOfString( byte[] line, int offset)
     {
-        for( int i= sb.length()- 1; i> 0; --i)
+        for( int i= line.length- 1; i> offset; --i)
         {
-            if( !Character.isWhitespace( sb.charAtUnsafe( i)))
+            if( !isWhitespace( line[i]))
                 return i+ 1;
         }
-        return 0;
+        return offset+ 1;
     }
 
-    private class HeaderNameValue
+    private static int findNotWhitespace( ByteBuf buffer, int offset, int end)
     {
-        private CharSequence name;
-        private CharSequence value;
-
-        HeaderNameValue( CharSequence name, CharSequence value)
+        for( int i= offset; i< end; ++i)
         {
-            this.name= name;
-            this.value= value;
-        }
-
-        CharSequence name()
-        {
-            return this.name;
+            if( !isWhitespace( buffer.getByte( i)))
+                return i;
         }
+        return end;
+    }
 
-        CharSequence value()
+    private static int findWhitespace( ByteBuf buffer, int offset, int end)
+    {
+        for( int i= offset; i< end; ++i)
         {
-            return this.value;
+            if( isWhitespace( buffer.getByte( i)))
+                return i;
         }
+        return end;
+    }
 
-        @Override
-        public String toString()
+    private static int findEndOfString( ByteBuf buffer, int offset, int end)
+    {
+        for( int i= end- 1; i>= offset; --i)
         {
-            return "HeaderNameValue [name="+ name+ ", value="+ value+ "]";
+            if( !isWhitespace( buffer.getByte( i)))
+                return i+ 1;
         }
+        return offset;
     }
 
-    private static class HeaderLineParser implements ByteProcessor
+    /**
+     * LF의 위치를 찾아 한 라인을 구분한다. 최대 길이를 초과하면 TooLongFrameException을 발생시킨다.
+     * 라인을 복사하지 않으므로 채널 단위로 재사용된다.
+     */
+    private static final class LineParser implements ByteProcessor
     {
-        private final AppendableCharSequence seq;
-        
-        HeaderLineParser( AppendableCharSequence seq)
-        {
-            this.seq= seq;
-        }
+        private final int maxLength;
 
-        public AppendableCharSequence parse( ByteBuf buffer)
-        {
-            seq.reset();
-            int i= buffer.forEachByte( this);
-            if( i== -1)
-                return null;
-            buffer.readerIndex( i+ 1);
-            return seq;
-        }
+        private final String kind;
 
-        @Override
-        public boolean process( byte value) throws Exception
-        {
-            char nextByte= (char)( value & 0xFF);
-            if( nextByte== TransferConstants.CR)
-                return true;
-            if( nextByte== TransferConstants.LF)
-                return false;
-            
-            seq.append( nextByte);
-            return true;
-        }
-    }
+        private int size;
 
-    private static class HeaderElementParser implements ByteProcessor
-    {
-        private final ByteArrayOutputStream bout;
-        
-        private final AppendableCharSequence seq;
-        
-        HeaderElementParser()
+        LineParser( int maxLength, String kind)
         {
-            this.bout= new ByteArrayOutputStream();
-            this.seq= new AppendableCharSequence( 4096);
+            this.maxLength= maxLength;
+            this.kind= kind;
         }
 
-        public AppendableCharSequence parse( ByteBuf buffer)
+        /**
+         * @return LF의 위치, 라인이 완전히 수신되지 않은 경우 -1
+         */
+        public int parse( ByteBuf buffer)
         {
-            bout.reset();
-            seq.reset();
-            int i= buffer.forEachByte( this);
-            if( i== -1)
-                return null;
-            buffer.readerIndex( i+ 1);
-
-            String line= new String( bout.toByteArray(), CharsetUtil.UTF_8);
-            seq.append( line);
-            return seq;
+            size= 0;
+            return buffer.forEachByte( this);
         }
 
         @Override
         public boolean process( byte value) throws Exception
         {
-            char nextByte= (char)( value & 0xFF);
-            if( nextByte== TransferConstants.CR)
-                return true;
-            if( nextByte== TransferConstants.LF)
+            if( value== LF)
                 return false;
-            
-            bout.write( value);
+            if( ++size> maxLength)
+                throw new TooLongFrameException( kind+ " is larger than "+ maxLength+ " bytes.");
             return true;
         }
     }
-    
 }
@@ -29,6 +29,8 @@ import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.util.CharsetUtil;
 
 /**
+ * TransferMessage, TransferContent를 텍스트 프로토콜로 변환
+ * INFO /upgrade 요청으로 binary framing이 협상된 연결에서는 TransferBinaryFraming 형식의 프레임으로 변환한다.
  * @author Jongoh Lee
  *
  */
@@ -50,6 +52,22 @@ public class TransferMessageEncoder extends MessageToMessageEncoder<TransferObje
     private static final float HEADERS_WEIGHT_HISTORICAL= 1- HEADERS_WEIGHT_NEW;
     private static float headersEncodedSizeAccumulator= 4096;
 
+    private boolean binaryFraming;
+
+    /**
+     * 이후 전송되는 메시지의 프레임 형식을 변경한다. 메시지 사이에서만 호출되어야 한다.
+     * @param binaryFraming binary framing(v2) 사용 여부
+     */
+    public void setBinaryFraming( boolean binaryFraming)
+    {
+        this.binaryFraming= binaryFraming;
+    }
+
+    public boolean isBinaryFraming()
+    {
+        return binaryFraming;
+    }
+
     @Override
     public boolean acceptOutboundMessage( Object msg) throws Exception
     {
@@ -59,6 +77,12 @@ public class TransferMessageEncoder extends MessageToMessageEncoder<TransferObje
     @Override
     public void encode( ChannelHandlerContext ctx, TransferObject msg, List<Object> out) throws Exception
     {
+        if( binaryFraming)
+        {
+            encodeFrames( ctx, msg, out);
+            return;
+        }
+
         if( msg instanceof TransferMessage)
         {
             TransferMessage message= (TransferMessage)msg;
@@ -88,6 +112,57 @@ public class TransferMessageEncoder extends MessageToMessageEncoder<TransferObje
             encodeChunkedContent( ctx, content, out);
 //          logger.debug( "Chunked data encoded: [{}]", content.content().readableBytes());
         }
+
+        if( msg instanceof TransferFileRegion)
+        {
+            TransferFileRegion region= (TransferFileRegion)msg;
+            encodeFileRegion( region, out);
+        }
+    }
+
+    private void encodeFrames( ChannelHandlerContext ctx, TransferObject msg, List<Object> out)
+    {
+        int streamId= msg.streamId();
+        if( msg instanceof TransferMessage)
+        {
+            TransferMessage message= (TransferMessage)msg;
+            out.add( TransferBinaryFraming.encodeHeaders( ctx.alloc(), message, (int)headersEncodedSizeAccumulator/ 2));
+            logger.debug( "Agent Headers frame encoded. stream: {}, headers: [{}]", streamId, message.headers());
+
+            if( message.content()!= null && message.content().definedLength()> 0)
+            {
+                ByteBuf content= message.content().retain().content();
+                out.add( TransferBinaryFraming.encodeFrameHeader( ctx.alloc(), TransferBinaryFraming.DATA, streamId, content.readableBytes()));
+                out.add( content);
+                out.add( TransferBinaryFraming.encodeFrameHeader( ctx.alloc(), TransferBinaryFraming.END, streamId, 0));
+            }
+        }
+
+        if( msg instanceof TransferContent)
+        {
+            TransferContent content= (TransferContent)msg;
+            int contentLength= content.content().readableBytes();
+            if( contentLength> 0)
+            {
+                out.add( TransferBinaryFraming.encodeFrameHeader( ctx.alloc(), TransferBinaryFraming.DATA, streamId, contentLength));
+                out.add( content.retain().content());
+            }
+
+            if( content instanceof LastTransferContent)
+                out.add( TransferBinaryFraming.encodeFrameHeader( ctx.alloc(), TransferBinaryFraming.END, streamId, 0));
+            else if( contentLength== 0)
+                out.add( content.retain().content());
+        }
+
+        if( msg instanceof TransferFileRegion)
+        {
+            TransferFileRegion region= (TransferFileRegion)msg;
+            if( region.count()> 0)
+            {
+                out.add( TransferBinaryFraming.encodeFrameHeader( ctx.alloc(), TransferBinaryFraming.DATA, streamId, (int)region.count()));
+                out.add( region.retain().region());
+            }
+        }
     }
 
     private int padSizeForAccumulation( int readableBytes)
@@ -145,11 +220,7 @@ public class TransferMessageEncoder extends MessageToMessageEncoder<TransferObje
         long contentLength= content.content().readableBytes();
         if( contentLength> 0)
         {
-            String lengthHex= Long.toHexString( contentLength);
-            ByteBuf buf= Unpooled.buffer( lengthHex.length()+ 2);
-            buf.writeCharSequence( lengthHex, CharsetUtil.US_ASCII);
-            ByteBufUtil.writeShortBE( buf, CRLF_SHORT);
-            out.add( buf);
+            out.add( encodeChunkLength( contentLength));
             out.add( content.retain().content());
             out.add( CRLF_BUF.duplicate());
         }
@@ -160,4 +231,24 @@ public class TransferMessageEncoder extends MessageToMessageEncoder<TransferObje
             out.add( content.retain().content());
     }
 
+    private void encodeFileRegion( TransferFileRegion region, List<Object> out)
+    {
+        // FileRegion은 ChunkedWriteHandler 이후 transport까지 그대로 전달되어 복사없이 전송된다.
+        long contentLength= region.count();
+        if( contentLength> 0)
+        {
+            out.add( encodeChunkLength( contentLength));
+            out.add( region.retain().region());
+            out.add( CRLF_BUF.duplicate());
+        }
+    }
+
+    private ByteBuf encodeChunkLength( long contentLength)
+    {
+        String lengthHex= Long.toHexString( contentLength);
+        ByteBuf buf= Unpooled.buffer( lengthHex.length()+ 2);
+        buf.writeCharSequence( lengthHex, CharsetUtil.US_ASCII);
+        ByteBufUtil.writeShortBE( buf, CRLF_SHORT);
+        return buf;
+    }
 }
@@ -39,9 +39,15 @@ public class TransferMessageServerCodec extends CombinedChannelDuplexHandler<Tra
     }
     
     public TransferMessageServerCodec( boolean failOnMissingResponse)
+    {
+        this( TransferMessageDecoder.DEFAULT_MAX_INITIAL_LINE_LENGTH, TransferMessageDecoder.DEFAULT_MAX_HEADER_SIZE,
+                failOnMissingResponse);
+    }
+
+    public TransferMessageServerCodec( int maxInitialLineLength, int maxHeaderSize, boolean failOnMissingResponse)
     {
         this.failOnMissinResponse= failOnMissingResponse;
-        init( new Decoder(), new Encoder());
+        init( new Decoder( maxInitialLineLength, maxHeaderSize), new Encoder());
     }
 
     @Override
@@ -96,11 +102,34 @@ public class TransferMessageServerCodec extends CombinedChannelDuplexHandler<Tra
             super.encode( ctx, msg, out);
             if( failOnMissinResponse && msg instanceof TransferMessage)
                 requestResponseCounter.decrementAndGet();
+
+            // upgrade 응답 이후의 요청과 응답은 binary framing으로 처리한다.
+            if( !isBinaryFraming() && msg instanceof TransferMessage &&
+                    ( (TransferMessage)msg).headers().contains( TransferHeaderNames.UPGRADE, TransferHeaderValues.BINARY_FRAMING, true))
+            {
+                inboundHandler().setBinaryFraming( true);
+                setBinaryFraming( true);
+                logger.debug( "binary framing is upgraded. channel: {}", ctx.channel());
+            }
+
+            // 응답이 연결 전체 GZIP 압축을 거쳐 기록된 후 압축 handler를 제거하고 이후 메시지는 Content-Encoding으로 압축한다.
+            // 클라이언트는 응답을 수신한 후에 다음 요청을 전송하므로 제거되기 전에 수신되는 요청은 없다.
+            if( msg instanceof TransferMessage && TransferMessageUtil.isConnectionCompressed( ctx.channel()) &&
+                    ( (TransferMessage)msg).headers().contains( TransferHeaderNames.UPGRADE, TransferHeaderValues.MESSAGE_ENCODING, true))
+            {
+                ctx.channel().eventLoop().execute( ()-> TransferMessageUtil.removeConnectionCompression( ctx.pipeline()));
+                logger.debug( "message encoding is upgraded. channel: {}", ctx.channel());
+            }
         }
     }
     
     private final class Decoder extends TransferMessageDecoder
     {
+        Decoder( int maxInitialLineLength, int maxHeaderSize)
+        {
+            super( maxInitialLineLength, maxHeaderSize);
+        }
+
         @Override
         public void decode( ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
         {
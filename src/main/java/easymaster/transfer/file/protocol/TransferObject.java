@@ -17,4 +17,10 @@ public interface TransferObject extends DecoderResultProvider
 {
     @Override
     DecoderResult decoderResult();
+
+    /**
+     * binary framing 연결에서 요청과 응답을 구분하는 stream 번호, 텍스트 프로토콜에서는 항상 0
+     * @return stream id
+     */
+    int streamId();
 }
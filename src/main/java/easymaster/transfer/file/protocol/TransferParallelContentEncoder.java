@@ -6,6 +6,11 @@
 package easymaster.transfer.file.protocol;
 
 import static easymaster.transfer.file.protocol.LastTransferContent.EMPTY_LAST_CONTENT;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +21,9 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.stream.ChunkedInput;
 
 /**
+ * 분할 전송할 본문을 chunk 단위로 전달
+ * 파일의 (offset, length) 범위가 지정된 경우 분할 전체를 미리 읽지 않고 전송할 때마다 chunk 크기만큼 positional read로 읽는다.
+ * 분할 별로 FileChannel을 따로 사용하므로 분할 전송은 서로 대기하지 않고 동시에 읽으며, 메모리는 전송 대기중인 chunk로 제한된다.
  * @author Jongoh Lee
  *
  */
@@ -26,21 +34,47 @@ public class TransferParallelContentEncoder implements ChunkedInput<TransferCont
 
     private final ByteBuf content;
 
+    private final File file;
+
+    private final long offset;
+
     private final int chunkSize;
 
     private long definedLength;
 
+    private FileChannel fileChannel;
+
     private boolean lastChunkSent;
 
     private long progress;
 
+    // 마지막 chunk를 전달한 시간(System.nanoTime), 응답까지의 지연(ACK latency) 측정에 사용한다.
+    private volatile long completedNanos;
+
     public TransferParallelContentEncoder( ByteBuf content, int chunkSize)
     {
         this.content= content;
+        this.file= null;
+        this.offset= 0;
         this.definedLength= content.readableBytes();
         this.chunkSize= chunkSize;
     }
 
+    /**
+     * @param file 분할 전송할 파일
+     * @param offset 분할된 범위의 시작 위치
+     * @param length 분할된 범위의 크기
+     * @param chunkSize 한번에 읽어서 전송할 크기
+     */
+    public TransferParallelContentEncoder( File file, long offset, long length, int chunkSize)
+    {
+        this.content= null;
+        this.file= file;
+        this.offset= offset;
+        this.definedLength= length;
+        this.chunkSize= chunkSize;
+    }
+
     @Override
     @Deprecated
     public TransferContent readChunk( ChannelHandlerContext ctx) throws Exception
@@ -59,12 +93,15 @@ public class TransferParallelContentEncoder implements ChunkedInput<TransferCont
         if( progress>= definedLength)
         {
             lastChunkSent= true;
-            content.release();
+            completedNanos= System.nanoTime();
+            if( content!= null)
+                content.release();
+            closeFile();
             return EMPTY_LAST_CONTENT;
         }
 
         int bufSize= (int)Math.min( chunkSize, definedLength- progress);
-        ByteBuf buffer= content.readRetainedSlice( bufSize);
+        ByteBuf buffer= content!= null ? content.readRetainedSlice( bufSize) : read( allocator, bufSize);
         progress+= bufSize;
 
 //        logger.debug( "definedlength: {}", definedLength);
@@ -83,13 +120,14 @@ public class TransferParallelContentEncoder implements ChunkedInput<TransferCont
     @Override
     public void close() throws Exception
     {
+        closeFile();
         logger.debug( "TransferParallelContentEncoder closed");
     }
 
     @Override
     public long length()
     {
-        return this.content.readableBytes();
+        return this.definedLength;
     }
 
     @Override
@@ -97,4 +135,50 @@ public class TransferParallelContentEncoder implements ChunkedInput<TransferCont
     {
         return progress;
     }
+
+    /**
+     * @return 마지막 chunk를 전달한 시간(System.nanoTime), 전달하지 않은 경우 0
+     */
+    public long completedNanos()
+    {
+        return completedNanos;
+    }
+
+    private ByteBuf read( ByteBufAllocator allocator, int length) throws IOException
+    {
+        if( fileChannel== null)
+            fileChannel= FileChannel.open( file.toPath(), READ);
+
+        ByteBuf buffer= allocator.directBuffer( length);
+        try
+        {
+            long position= offset+ progress;
+            while( buffer.writerIndex()< length)
+            {
+                if( buffer.writeBytes( fileChannel, position+ buffer.writerIndex(), length- buffer.writerIndex())< 0)
+                    throw new IOException( "unexpected end of file ["+ file+ "] at "+ ( position+ buffer.writerIndex()));
+            }
+            return buffer;
+        }
+        catch( IOException | RuntimeException e)
+        {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    private void closeFile()
+    {
+        if( fileChannel== null)
+            return;
+        try
+        {
+            fileChannel.close();
+        }
+        catch( IOException e)
+        {
+            logger.warn( "Failed to close a filechannel.", e);
+        }
+        fileChannel= null;
+    }
 }
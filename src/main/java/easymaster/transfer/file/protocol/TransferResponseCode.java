@@ -29,6 +29,7 @@ public class TransferResponseCode implements Comparable<TransferResponseCode>
        402= Bad Response
        404= Source File Not Found
        405= Already Exist
+       412= Precondition Failed
        500= Internal Server Error
        510= Destination Not Responding
        520= Transfer Failed
@@ -49,6 +50,8 @@ public class TransferResponseCode implements Comparable<TransferResponseCode>
 
     public static final TransferResponseCode ALREADY_EXIST= newResponse( 405, "Already Exist");
 
+    public static final TransferResponseCode PRECONDITION_FAILED= newResponse( 412, "Precondition Failed");
+
     public static final TransferResponseCode INTERNAL_SERVER_ERROR= newResponse( 500, "Internal Server Error");
 
     public static final TransferResponseCode DESTINATION_FILE_NOT_FOUND= newResponse( 510, "Destination File Not Found");
@@ -108,6 +111,8 @@ public class TransferResponseCode implements Comparable<TransferResponseCode>
                 return SOURCE_FILE_NOT_FOUND;
             case 405:
                 return ALREADY_EXIST;
+            case 412:
+                return PRECONDITION_FAILED;
             case 500:
                 return INTERNAL_SERVER_ERROR;
             case 510:
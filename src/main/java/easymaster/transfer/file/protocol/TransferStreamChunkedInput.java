@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+
+/**
+ * Chunk 단위로 전송되는 본문을 요청(응답)의 stream으로 지정
+ * ChunkedWriteHandler는 stream 정보를 알 수 없으므로 생성되는 TransferContent, TransferFileRegion에 stream id를 설정한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class TransferStreamChunkedInput implements ChunkedInput<TransferObject>
+{
+    private final ChunkedInput<? extends TransferObject> input;
+
+    private final int streamId;
+
+    public TransferStreamChunkedInput( ChunkedInput<? extends TransferObject> input, int streamId)
+    {
+        this.input= input;
+        this.streamId= streamId;
+    }
+
+    /**
+     * stream 0(텍스트 프로토콜 또는 단일 stream)의 경우 input을 그대로 사용한다.
+     * @param input Chunk 단위 본문
+     * @param streamId stream id
+     * @return ChunkedInput
+     */
+    public static ChunkedInput<?> of( ChunkedInput<? extends TransferObject> input, int streamId)
+    {
+        return streamId== 0 ? input : new TransferStreamChunkedInput( input, streamId);
+    }
+
+    @Override
+    @Deprecated
+    public TransferObject readChunk( ChannelHandlerContext ctx) throws Exception
+    {
+        return readChunk( ctx.alloc());
+    }
+
+    @Override
+    public TransferObject readChunk( ByteBufAllocator allocator) throws Exception
+    {
+        TransferObject chunk= input.readChunk( allocator);
+        // 공유되는 EMPTY_LAST_CONTENT만 새로 생성하고 그 외에는 본문을 유지하도록 stream id만 변경한다.
+        if( chunk== LastTransferContent.EMPTY_LAST_CONTENT)
+            return LastTransferContent.of( streamId);
+        if( chunk instanceof TransferContent)
+            return ( (TransferContent)chunk).setStreamId( streamId);
+        if( chunk instanceof TransferFileRegion)
+            return ( (TransferFileRegion)chunk).setStreamId( streamId);
+        return chunk;
+    }
+
+    @Override
+    public boolean isEndOfInput() throws Exception
+    {
+        return input.isEndOfInput();
+    }
+
+    @Override
+    public long length()
+    {
+        return input.length();
+    }
+
+    @Override
+    public long progress()
+    {
+        return input.progress();
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        input.close();
+    }
+}
@@ -7,9 +7,13 @@ package easymaster.transfer.file.session;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -43,6 +47,16 @@ public class ResourceSession
 
     private boolean processing;
     
+    // 분할 전송된 본문을 위치 별로 기록하는 staging 파일과 기록된 구간(offset, length)
+    private File stagingFile;
+    
+    private long stagingLength= -1L;
+    
+    private final NavigableMap<Long, Long> stagedRanges= new TreeMap<Long, Long>();
+    
+    // 분할 전송(.split%d)된 파일을 수신되는 대로 병합한다.
+    private SplitMerger merger;
+    
     private ResourceSession()
     {
         this.sessionId= UUID.randomUUID().toString();
@@ -162,6 +176,117 @@ public class ResourceSession
         this.accessTime= System.currentTimeMillis();
     }
 
+    /**
+     * 분할 전송된 본문을 위치 별로 기록할 staging 파일을 지정한다. session이 만료되면 staging 파일은 삭제된다.
+     * @param file staging 파일
+     * @param length 전체 본문 크기
+     */
+    public synchronized void stage( File file, long length)
+    {
+        processing( file);
+        this.stagingFile= file;
+        this.stagingLength= length;
+        this.stagedRanges.clear();
+    }
+
+    public synchronized File stagingFile()
+    {
+        this.accessTime= System.currentTimeMillis();
+        return this.stagingFile;
+    }
+
+    public synchronized long stagingLength()
+    {
+        return this.stagingLength;
+    }
+
+    /**
+     * staging 파일에 기록이 완료된 구간을 추가한다. 같은 위치에 다시 전송된 경우 마지막 구간으로 대체된다.
+     * @return 구간이 staging 파일 범위 안에 있는 경우 true
+     */
+    public synchronized boolean staged( long offset, long length)
+    {
+        this.accessTime= System.currentTimeMillis();
+        if( this.stagingFile== null || offset< 0 || length< 0 || offset+ length> this.stagingLength)
+            return false;
+        this.stagedRanges.put( offset, length);
+        return true;
+    }
+
+    /**
+     * @return staging 파일의 전체 구간이 빠짐없이 기록된 경우 true
+     */
+    public synchronized boolean isStagingCompleted()
+    {
+        if( this.stagingFile== null)
+            return false;
+        long covered= 0;
+        for( Map.Entry<Long, Long> range: this.stagedRanges.entrySet())
+        {
+            if( range.getKey()> covered)
+                return false;
+            covered= Math.max( covered, range.getKey()+ range.getValue());
+        }
+        return covered== this.stagingLength;
+    }
+
+    /**
+     * 중단된 분할 전송을 이어서 전송할 수 있도록 staging 파일에 기록이 완료된 구간을 병합하여 리턴한다.
+     * @return 위치 순서로 정렬된 구간(offset, end)의 목록, staging 파일이 없는 경우 빈 목록
+     */
+    public synchronized List<long[]> stagedRanges()
+    {
+        this.accessTime= System.currentTimeMillis();
+        List<long[]> ranges= new ArrayList<long[]>();
+        long[] last= null;
+        for( Map.Entry<Long, Long> range: this.stagedRanges.entrySet())
+        {
+            long end= range.getKey()+ range.getValue();
+            if( last!= null && range.getKey()<= last[1])
+                last[1]= Math.max( last[1], end);
+            else if( range.getValue()> 0)
+                ranges.add( last= new long[] { range.getKey(), end});
+        }
+        return ranges;
+    }
+
+    /**
+     * 분할 전송된 파일이 수신되면 호출되며 순서대로 병합할 수 있는 파일을 병합한다.
+     * @param split 수신된 분할 파일, 이름이 .split%d로 끝나지 않는 경우 무시된다.
+     */
+    public void splitArrived( File split)
+    {
+        int index= FileUtil.splitIndex( split.getName());
+        if( index>= 0)
+            merger().arrived( index, split);
+    }
+
+    /**
+     * 수신중에 병합되지 않은 분할 파일을 병합한다.
+     * @param resources 순서대로 정렬된 분할 파일
+     * @return 모든 분할 파일이 병합된 파일, 수신중에 병합된 파일이 없는 경우 null
+     * @throws IOException 병합에 실패한 경우
+     */
+    public File completeSplits( List<File> resources) throws IOException
+    {
+        return merger().complete( resources);
+    }
+
+    /**
+     * 병합 파일이 저장 위치로 반영된 후 호출되며 수신중에 병합된 분할 파일을 삭제한다.
+     */
+    public void splitsCommitted()
+    {
+        merger().committed();
+    }
+
+    private synchronized SplitMerger merger()
+    {
+        if( this.merger== null)
+            this.merger= new SplitMerger( this);
+        return this.merger;
+    }
+
     public synchronized long accessTime()
     {
         return this.accessTime;
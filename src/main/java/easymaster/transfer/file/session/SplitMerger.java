@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.session;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import easymaster.transfer.file.protocol.FileData;
+import easymaster.transfer.file.protocol.FileSync;
+import easymaster.transfer.file.util.FileUtil;
+
+/**
+ * 분할 전송(.split%d)된 파일을 수신되는 대로 병합
+ * 0..N-1번째 파일이 병합된 상태에서 N번째 파일이 수신되면 바로 병합 파일 뒤에 추가한다.
+ * MERGE 요청시에는 아직 병합되지 않은 파일만 추가하면 되므로 MERGE는 병합 파일의 rename으로 처리된다.
+ * 분할 파일은 병합 파일이 저장 위치로 반영된 후 삭제되므로 MERGE에 실패한 경우 다시 요청할 수 있다.
+ * 병합 파일은 분할 파일과 같은 directory에 생성된다.
+ * @author Jongoh Lee
+ *
+ */
+
+final class SplitMerger
+{
+    private static Logger logger= LoggerFactory.getLogger( SplitMerger.class);
+
+    private final ResourceSession session;
+
+    // 병합을 대기중인 분할 파일
+    private final Map<Integer, File> arrived= new TreeMap<Integer, File>();
+
+    private final List<File> merged= new ArrayList<File>();
+
+    private final ReentrantLock lock= new ReentrantLock();
+
+    private File mergeFile;
+
+    private long length;
+
+    SplitMerger( ResourceSession session)
+    {
+        this.session= session;
+    }
+
+    /**
+     * 수신된 분할 파일을 등록하고 순서대로 병합할 수 있는 파일을 병합 파일에 추가한다.
+     * 다른 thread에서 병합중인 경우 등록만 하고 병합은 병합중인 thread에서 처리된다.
+     */
+    void arrived( int index, File split)
+    {
+        synchronized( arrived)
+        {
+            arrived.put( index, split);
+        }
+
+        do
+        {
+            if( !lock.tryLock())
+                return;
+            try
+            {
+                File next;
+                while( ( next= next())!= null)
+                    append( next);
+            }
+            catch( IOException e)
+            {
+                // 병합에 실패한 파일은 MERGE 요청시 다시 병합된다.
+                logger.warn( "incremental merge is failed. session: {}", session.getSessionId(), e);
+                return;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        while( hasNext());
+    }
+
+    /**
+     * 병합 요청된 분할 파일 중 아직 병합되지 않은 파일을 병합 파일에 추가한다.
+     * @param resources 순서대로 정렬된 분할 파일
+     * @return 모든 분할 파일이 병합된 파일, 수신중에 병합된 파일이 없는 경우 null
+     * @throws IOException 수신중에 병합된 파일이 요청된 파일과 다르거나 병합에 실패한 경우
+     */
+    File complete( List<File> resources) throws IOException
+    {
+        lock.lock();
+        try
+        {
+            if( merged.isEmpty())
+                return null;
+
+            for( int i= 0; i< merged.size(); i++)
+            {
+                if( i>= resources.size() || !merged.get( i).getAbsolutePath().equals( resources.get( i).getAbsolutePath()))
+                    throw new IOException( "merged resources are not matched. session: "+ session.getSessionId());
+            }
+
+            List<File> remains= new ArrayList<File>( resources.subList( merged.size(), resources.size()));
+            try( FileChannel target= FileChannel.open( mergeFile.toPath(), WRITE))
+            {
+                if( !remains.isEmpty())
+                    length+= transferAt( remains, target);
+                FileSync.force( target);
+            }
+            logger.debug( "incremental merge [{}] is completed. pre-merged: {}, remains: {}", mergeFile, merged.size(), remains.size());
+            // 병합 파일의 반영에 실패하여 다시 요청되는 경우 이미 추가된 파일을 다시 추가하지 않는다.
+            merged.addAll( remains);
+            return mergeFile;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 병합 파일이 저장 위치로 반영된 후 호출되며 병합된 분할 파일을 삭제한다.
+     */
+    void committed()
+    {
+        lock.lock();
+        try
+        {
+            for( File split: merged)
+            {
+                session.completed( split);
+                FileUtil.deleteFile( split);
+            }
+            logger.debug( "{} splits of [{}] are deleted", merged.size(), mergeFile);
+            merged.clear();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private File next()
+    {
+        synchronized( arrived)
+        {
+            return arrived.remove( merged.size());
+        }
+    }
+
+    private boolean hasNext()
+    {
+        synchronized( arrived)
+        {
+            return arrived.containsKey( merged.size());
+        }
+    }
+
+    private void append( File split) throws IOException
+    {
+        if( mergeFile== null)
+        {
+            mergeFile= FileUtil.createTempFile( FileData.prefix, ".merge", split.getParentFile());
+            session.processing( mergeFile);
+        }
+
+        try( FileChannel target= FileChannel.open( mergeFile.toPath(), WRITE))
+        {
+            length+= transferAt( Collections.singletonList( split), target);
+        }
+        merged.add( split);
+        logger.debug( "split [{}] is merged into [{}]. length: {}", split, mergeFile, length);
+    }
+
+    /**
+     * 병합 파일의 끝에 분할 파일을 추가한다. 실패한 경우 추가된 내용을 잘라내어 MERGE 요청시 다시 병합할 수 있도록 한다.
+     */
+    private long transferAt( List<File> splits, FileChannel target) throws IOException
+    {
+        try
+        {
+            return FileUtil.transferAt( splits, target, length, null);
+        }
+        catch( IOException e)
+        {
+            target.truncate( length);
+            throw e;
+        }
+    }
+}
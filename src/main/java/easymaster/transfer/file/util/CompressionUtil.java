@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import easymaster.transfer.file.protocol.ContentEncoding;
+
+/**
+ * 전송할 파일의 압축 여부를 판단
+ * 이미 압축된 파일은 확장자 또는 표본 데이터의 entropy로 판단하여 압축하지 않는다.
+ * @author Jongoh Lee
+ *
+ */
+
+public final class CompressionUtil
+{
+    private static Logger logger= LoggerFactory.getLogger( CompressionUtil.class);
+
+    // 압축 효과가 없는 파일 확장자
+    private static final Set<String> INCOMPRESSIBLE_EXTENSIONS= new HashSet<String>( Arrays.asList(
+            "zip", "gz", "gzip", "tgz", "bz2", "xz", "lz4", "lzma", "zst", "7z", "rar", "z", "sz",
+            "jar", "war", "ear", "apk",
+            "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "m4a", "mov", "avi", "mkv"));
+
+    // 표본 크기와 압축하지 않는 byte entropy 기준 (최대 8 bits/byte)
+    private static final int SAMPLE_SIZE= 64* 1024;
+    private static final double ENTROPY_THRESHOLD= 7.5;
+
+    private CompressionUtil() {}
+
+    /**
+     * 파일 전송에 사용할 압축 방식을 결정한다.
+     * @param preferred 사용자가 지정한 압축 방식
+     * @param file 전송할 파일
+     * @return 압축 효과가 없는 파일이면 IDENTITY, 그 외에는 preferred
+     */
+    public static ContentEncoding select( ContentEncoding preferred, File file)
+    {
+        if( preferred== null || preferred== ContentEncoding.IDENTITY)
+            return ContentEncoding.IDENTITY;
+        return isCompressible( file) ? preferred : ContentEncoding.IDENTITY;
+    }
+
+    public static boolean isCompressible( File file)
+    {
+        String extension= StringUtils.getFilenameExtension( file.getName());
+        if( extension!= null && INCOMPRESSIBLE_EXTENSIONS.contains( extension.toLowerCase( Locale.ROOT)))
+            return false;
+
+        try
+        {
+            double entropy= sampleEntropy( file);
+            logger.debug( "sampled entropy of [{}]: {}", file, entropy);
+            return entropy< ENTROPY_THRESHOLD;
+        }
+        catch( IOException e)
+        {
+            logger.warn( "entropy sampling failed. [{}]", file, e);
+            return true;
+        }
+    }
+
+    /**
+     * 파일의 앞부분과 가운데 부분을 표본으로 Shannon entropy(bits/byte)를 계산
+     */
+    static double sampleEntropy( File file) throws IOException
+    {
+        long[] counts= new long[256];
+        long total= 0;
+        byte[] buf= new byte[SAMPLE_SIZE/ 2];
+        try( RandomAccessFile raf= new RandomAccessFile( file, "r"))
+        {
+            long length= raf.length();
+            long[] positions= length> SAMPLE_SIZE ? new long[] { 0, length/ 2} : new long[] { 0};
+            for( long position: positions)
+            {
+                raf.seek( position);
+                int read= raf.read( buf);
+                for( int i= 0; i< read; i++)
+                    counts[buf[i]& 0xff]++;
+                total+= Math.max( 0, read);
+            }
+        }
+
+        if( total== 0)
+            return 0;
+
+        double entropy= 0;
+        for( long count: counts)
+        {
+            if( count== 0)
+                continue;
+            double p= (double)count/ total;
+            entropy-= p* ( Math.log( p)/ Math.log( 2));
+        }
+        return entropy;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 생성된 directory cache
+ * 저장 위치와 임시 파일의 directory를 처음 사용할 때 한번만 생성(Files.createDirectories)하고 이후에는 file system을 확인하지 않는다.
+ * 전역 잠금 없이 ConcurrentHashMap으로 관리하므로 서로 다른 directory의 요청은 서로 대기하지 않는다.
+ * 삭제된 directory는 invalidate로 제거되며, 외부에서 삭제되어 파일 생성에 실패한 경우에도 invalidate 후 다시 생성해야 한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public final class DirectoryCache
+{
+    private static Logger logger= LoggerFactory.getLogger( DirectoryCache.class);
+
+    // 관리할 최대 directory 수, 넘는 경우 관리하지 않고 매번 확인한다.
+    public static final int MAX_DIRECTORIES= 64* 1024;
+
+    private static final Map<Path, Boolean> DIRECTORIES= new ConcurrentHashMap<Path, Boolean>();
+
+    private DirectoryCache() {}
+
+    /**
+     * directory가 없는 경우 생성한다.
+     * @param dir directory
+     * @return directory가 있거나 생성된 경우 true, 생성할 수 없거나 같은 이름의 파일이 있는 경우 false
+     */
+    public static boolean ensure( File dir)
+    {
+        Path path= dir.toPath().toAbsolutePath().normalize();
+        if( DIRECTORIES.containsKey( path))
+            return true;
+
+        try
+        {
+            Files.createDirectories( path);
+        }
+        catch( IOException e)
+        {
+            logger.debug( "Can not create directory [{}]", path, e);
+            return false;
+        }
+
+        if( DIRECTORIES.size()< MAX_DIRECTORIES)
+            DIRECTORIES.put( path, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * 삭제된 directory와 하위 directory를 cache에서 제거한다.
+     */
+    public static void invalidate( File dir)
+    {
+        if( dir== null || DIRECTORIES.isEmpty())
+            return;
+        Path path= dir.toPath().toAbsolutePath().normalize();
+        DIRECTORIES.keySet().removeIf( known-> known.startsWith( path));
+    }
+
+    /**
+     * @return cache에 있는 directory 수
+     */
+    public static int size()
+    {
+        return DIRECTORIES.size();
+    }
+}
@@ -6,22 +6,37 @@
 package easymaster.transfer.file.util;
 
 import static java.io.File.separatorChar;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +44,8 @@ import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StringUtils;
 
 import easymaster.transfer.file.protocol.FileData;
+import easymaster.transfer.file.protocol.FileSync;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.ObjectUtil;
 
 /**
@@ -44,6 +61,8 @@ public class FileUtil
     
     public static final String PARALLEL_SPLIT_SUFFIX= "split";
 
+    private static final Pattern PARALLEL_SPLIT_PATTERN= Pattern.compile( "\\.split(\\d+)$");
+
     private static final Logger logger= LoggerFactory.getLogger( FileUtil.class);
 
     /**
@@ -53,8 +72,35 @@ public class FileUtil
     private static final File USER_DIR= new File( System.getProperty( USER_DIR_KEY));
     private static boolean windowsOs= initWindowsOs();
 
+    // 분할 파일 병합(transferFrom)은 blocking I/O이므로 common ForkJoinPool이 아닌 크기가 제한된 전용 thread에서 실행한다.
+    private static final ThreadPoolExecutor MERGE_EXECUTOR= new ThreadPoolExecutor( 4, 4, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DefaultThreadFactory( "transfer-merge", true));
+
+    static
+    {
+        MERGE_EXECUTOR.allowCoreThreadTimeOut( true);
+    }
+
     private FileUtil(){}
 
+    /**
+     * @param threads 분할 파일을 동시에 병합하는 최대 thread 수
+     */
+    public static void configureMerge( int threads)
+    {
+        int count= Math.max( 1, threads);
+        if( count> MERGE_EXECUTOR.getMaximumPoolSize())
+        {
+            MERGE_EXECUTOR.setMaximumPoolSize( count);
+            MERGE_EXECUTOR.setCorePoolSize( count);
+        }
+        else
+        {
+            MERGE_EXECUTOR.setCorePoolSize( count);
+            MERGE_EXECUTOR.setMaximumPoolSize( count);
+        }
+    }
+
     private static boolean initWindowsOs()
     {
         // initialize once as System.getProperty is not fast
@@ -111,10 +157,7 @@ public class FileUtil
         else if( prefix.length()< 3)
             prefix= prefix+ "agent";
 
-        // create parent folder
-        parentDir.mkdirs();
-
-        return File.createTempFile( prefix, suffix, parentDir);
+        return TempFileManager.create( parentDir, prefix, suffix, false);
     }
 
     public static String stripLeadingSeparator( String name)
@@ -424,6 +467,8 @@ public class FileUtil
             count++;
         }
 
+        if( deleted)
+            TempFileManager.release( file);
         if( logger.isDebugEnabled()&& count> 0)
             logger.debug( "Tried {} to delete file: {} with result: {}", new Object[]{ count, file, deleted });
         return deleted;
@@ -441,15 +486,25 @@ public class FileUtil
         return file.isAbsolute();
     }
     
+    /**
+     * 수신한 파일을 저장 위치로 rename한다. 같은 경로에 대한 rename, merge는 process 내부 lock으로 순서대로 처리되며
+     * 다른 process와 repository를 공유하는 경우 lock 파일로 process 간에도 잠금한다.
+     */
     public static boolean renameWithLock( FileData content, File dest, Consumer<File> completed) throws Exception
     {
+        ReentrantLock lock= PathLocks.lockOf( dest);
         FileLock flock= null;
         RandomAccessFile raFile=  null;
-        String lock= FileUtil.stripExt( dest.getAbsolutePath())+ ".lock";
+        File lockFile= null;
+        lock.lock();
         try
         {
-            raFile= new RandomAccessFile( lock, "rw");
-            flock= raFile.getChannel().lock( 0, Long.MAX_VALUE, false);
+            if( PathLocks.isOsLock())
+            {
+                lockFile= new File( FileUtil.stripExt( dest.getAbsolutePath())+ ".lock");
+                raFile= new RandomAccessFile( lockFile, "rw");
+                flock= raFile.getChannel().lock( 0, Long.MAX_VALUE, false);
+            }
             content.renameTo( dest);
             if( completed!= null)
                 completed.accept( dest);
@@ -461,53 +516,111 @@ public class FileUtil
         }
         finally
         {
-            if( flock!= null)
-                flock.release();
-            if( raFile!= null)
-                raFile.close();
-            content.release();
-            deleteFile( new File( lock));
+            try
+            {
+                if( flock!= null)
+                    flock.release();
+                if( raFile!= null)
+                    raFile.close();
+                content.release();
+                if( lockFile!= null)
+                    deleteFile( lockFile);
+            }
+            finally
+            {
+                lock.unlock();
+            }
         }
         
         return true;
     }
     
+    /**
+     * 분할된 파일을 순서대로 target 뒤에 추가한다.
+     * 분할된 파일의 크기로 위치를 미리 계산하여 동시에 복사하며 실패한 경우 target은 원래 크기로 복구된다.
+     */
     public static boolean mergeWithLock( List<String> resources, String target, Consumer<File> completed) throws Exception
     {
-        final Queue<Exception> causes= new ArrayDeque<Exception>();
+        ReentrantLock lock= PathLocks.lockOf( new File( target));
+        lock.lock();
+        try
+        {
+            return merge( resources, target, completed);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 병합이 완료된 파일을 저장 위치로 반영한다. 저장 위치에 파일이 없는 경우 rename하고, 있는 경우(APPEND) 뒤에 추가한다.
+     * 존재 여부 확인과 rename/추가는 renameWithLock과 같은 lock 안에서 처리된다.
+     * @return rename된 경우 true, 기존 파일 뒤에 추가된 경우 false
+     */
+    public static boolean moveOrMergeWithLock( File from, File dest) throws Exception
+    {
+        ReentrantLock lock= PathLocks.lockOf( dest);
+        FileLock flock= null;
+        RandomAccessFile raFile=  null;
+        File lockFile= null;
+        lock.lock();
+        try
+        {
+            if( PathLocks.isOsLock())
+            {
+                lockFile= new File( FileUtil.stripExt( dest.getAbsolutePath())+ ".lock");
+                raFile= new RandomAccessFile( lockFile, "rw");
+                flock= raFile.getChannel().lock( 0, Long.MAX_VALUE, false);
+            }
+            if( dest.exists())
+            {
+                merge( Collections.singletonList( from.getAbsolutePath()), dest.getAbsolutePath(), null);
+                return false;
+            }
+            Files.move( from.toPath(), dest.toPath(), ATOMIC_MOVE);
+            FileSync.forceDirectory( dest.getAbsoluteFile().toPath().getParent());
+            return true;
+        }
+        finally
+        {
+            try
+            {
+                if( flock!= null)
+                    flock.release();
+                if( raFile!= null)
+                    raFile.close();
+                if( lockFile!= null)
+                    deleteFile( lockFile);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static boolean merge( List<String> resources, String target, Consumer<File> completed) throws Exception
+    {
         final RandomAccessFile raFile= new RandomAccessFile( target, "rw");
         FileLock flock= null;
+        long position= -1;
         try
         {
-            flock= raFile.getChannel().lock( 0, Long.MAX_VALUE, false);
-            resources.stream().map( File::new).forEach( fs->{
-                try( FileInputStream fin= new FileInputStream( fs))
-                {
-                    raFile.seek( raFile.length());
-                    byte[] bytes= new byte[BUFFER_SIZE];
-                    ByteBuffer byteBuffer= ByteBuffer.wrap( bytes);
-                    int read= fin.read( bytes);
-                    while( read> 0)
-                    {
-                        byteBuffer.position( read).flip();
-                        raFile.getChannel().write( byteBuffer);
-                        read= fin.read( bytes);
-                    }
-                    if( completed!= null)
-                        completed.accept( fs);
-                    logger.debug( "file:{} is merged", fs);
-                }
-                catch( Exception e)
-                {
-                    logger.error( "file:{} merge failed", fs, e);
-                    causes.offer( e);
-                }
-            });
-            
-            if( !causes.isEmpty())
-                throw causes.poll();
+            if( PathLocks.isOsLock())
+                flock= raFile.getChannel().lock( 0, Long.MAX_VALUE, false);
+            List<File> sources= resources.stream().map( File::new).collect( Collectors.toList());
+            position= raFile.length();
+            transferAt( sources, raFile.getChannel(), position, completed);
+            FileSync.force( raFile.getChannel());
             return true;
         }
+        catch( Exception e)
+        {
+            if( position>= 0)
+                raFile.setLength( position);
+            throw e;
+        }
         finally
         {
             if( flock!= null)
@@ -517,6 +630,103 @@ public class FileUtil
         }
     }
 
+    /**
+     * 분할된 파일을 target의 지정된 위치부터 순서대로 복사한다.
+     * 각 파일의 위치는 파일 크기로 미리 계산되므로 파일 별로 병합 thread에서 동시에 복사하며 FileChannel.transferFrom을 사용하여 heap buffer를 거치지 않는다.
+     * @param sources 분할된 파일
+     * @param target 복사할 파일 channel
+     * @param position 복사를 시작할 target의 위치
+     * @param completed 파일 복사가 완료되면 호출된다. null인 경우 호출되지 않는다.
+     * @return 복사된 크기
+     * @throws IOException 복사에 실패한 경우
+     */
+    public static long transferAt( List<File> sources, FileChannel target, long position, Consumer<File> completed) throws IOException
+    {
+        final long[] offsets= new long[sources.size()];
+        long offset= position;
+        for( int i= 0; i< sources.size(); i++)
+        {
+            offsets[i]= offset;
+            offset+= sources.get( i).length();
+        }
+        final long total= offset- position;
+
+        // transferFrom은 파일 크기를 넘는 위치에 기록하지 않으므로 전체 크기를 먼저 할당한다.
+        if( target.size()< offset)
+            target.write( ByteBuffer.allocate( 1), offset- 1);
+
+        final Queue<Exception> causes= new ConcurrentLinkedQueue<Exception>();
+        if( sources.size()== 1)
+            transferAt( sources.get( 0), target, offsets[0], completed, causes);
+        else
+        {
+            List<Future<?>> futures= new ArrayList<Future<?>>( sources.size());
+            for( int i= 0; i< sources.size(); i++)
+            {
+                final File fs= sources.get( i);
+                final long at= offsets[i];
+                futures.add( MERGE_EXECUTOR.submit( ()-> transferAt( fs, target, at, completed, causes)));
+            }
+            try
+            {
+                for( Future<?> future: futures)
+                    future.get();
+            }
+            catch( InterruptedException e)
+            {
+                for( Future<?> future: futures)
+                    future.cancel( false);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "merge is interrupted");
+            }
+            catch( ExecutionException e)
+            {
+                causes.offer( e.getCause() instanceof Exception ? (Exception)e.getCause() : e);
+            }
+        }
+
+        if( !causes.isEmpty())
+        {
+            Exception cause= causes.poll();
+            throw cause instanceof IOException ? (IOException)cause : new IOException( cause);
+        }
+        return total;
+    }
+
+    private static void transferAt( File fs, FileChannel target, long offset, Consumer<File> completed, Queue<Exception> causes)
+    {
+        try( FileChannel src= FileChannel.open( fs.toPath(), READ))
+        {
+            long size= src.size();
+            long copied= 0;
+            while( copied< size)
+            {
+                long transferred= target.transferFrom( src, offset+ copied, size- copied);
+                if( transferred<= 0)
+                    throw new IOException( "file:"+ fs+ " is truncated while merging");
+                copied+= transferred;
+            }
+            if( completed!= null)
+                completed.accept( fs);
+            logger.debug( "file:{} is merged at {}", fs, offset);
+        }
+        catch( Exception e)
+        {
+            logger.error( "file:{} merge failed", fs, e);
+            causes.offer( e);
+        }
+    }
+
+    /**
+     * 분할 전송된 파일의 순번
+     * @return 분할 전송된 파일 이름(.split%d)이 아닌 경우 -1
+     */
+    public static int splitIndex( String name)
+    {
+        Matcher matcher= PARALLEL_SPLIT_PATTERN.matcher( name);
+        return matcher.find() ? Integer.parseInt( matcher.group( 1)) : -1;
+    }
+
     public static boolean createNewFile( File file) throws IOException
     {
         // need to check first
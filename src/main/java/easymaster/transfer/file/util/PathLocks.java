@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.util;
+
+import java.io.File;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 파일 경로 별 process 내부 잠금
+ * 경로의 hash로 고정된 수의 ReentrantLock 중 하나를 선택(striped lock)하므로 요청 마다 lock 파일을 생성, 삭제하지 않는다.
+ * 다른 process와 repository를 공유하는 경우에만 OS 파일 잠금(FileLock)을 함께 사용한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public final class PathLocks
+{
+    public static final int STRIPES= 256;
+
+    private static final ReentrantLock[] LOCKS= new ReentrantLock[STRIPES];
+
+    private static volatile boolean osLock= false;
+
+    static
+    {
+        for( int i= 0; i< STRIPES; i++)
+            LOCKS[i]= new ReentrantLock();
+    }
+
+    private PathLocks() {}
+
+    /**
+     * @param osLock 다른 process와 repository를 공유하여 OS 파일 잠금이 필요한 경우 true
+     */
+    public static void configure( boolean osLock)
+    {
+        PathLocks.osLock= osLock;
+    }
+
+    public static boolean isOsLock()
+    {
+        return osLock;
+    }
+
+    /**
+     * @return 경로에 해당하는 lock, 서로 다른 경로가 같은 lock을 공유할 수 있다.
+     */
+    public static ReentrantLock lockOf( File file)
+    {
+        int hash= file.toPath().toAbsolutePath().normalize().hashCode();
+        return LOCKS[( hash^ ( hash>>> 16)) & ( STRIPES- 1)];
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 수신중인 임시 파일(staging area) 관리
+ * File.deleteOnExit()는 JVM이 종료될 때까지 모든 경로를 보관하므로 오래 실행되는 서버에서 heap이 계속 증가한다.
+ * 대신 사용중인 임시 파일을 크기가 제한된 map으로 관리하고, 남겨진 임시 파일은 background sweeper가 삭제한다.
+ * <ul>
+ * <li>임시 파일 이름은 process 별 식별자와 일련번호로 생성하고 directory는 처음 사용될 때 한번만 생성한다.</li>
+ * <li>rename, delete된 임시 파일은 release로 관리 대상에서 제외된다.</li>
+ * <li>sweeper는 임시 파일이 생성된 directory에서 이 process가 생성한(이름에 process 식별자가 포함된) 임시 파일 중 
+ * 관리중이 아니고 timeout 동안 변경되지 않은 파일만 삭제한다. 저장 위치 또는 다른 Agent와 공유하는 directory의 파일은 삭제하지 않는다.</li>
+ * <li>비정상 종료된 이전 process가 남긴 임시 파일은 서버 시작시 cleanup으로 임시 파일 전용 directory에서만 삭제한다.</li>
+ * <li>종료시 삭제하도록 등록된 파일은 JVM 종료시 shutdown hook에서 삭제된다.</li>
+ * </ul>
+ * @author Jongoh Lee
+ *
+ */
+
+public final class TempFileManager
+{
+    private static Logger logger= LoggerFactory.getLogger( TempFileManager.class);
+
+    // 관리할 최대 파일 수와 directory 수, 넘는 경우 관리하지 않으며 sweeper의 timeout으로 정리된다.
+    public static final int MAX_TRACKED_FILES= 64* 1024;
+
+    public static final int MAX_TRACKED_DIRECTORIES= 1024;
+
+    public static final Duration DEFAULT_TIMEOUT= Duration.ofHours( 1);
+
+    // 사용중인 임시 파일과 종료시 삭제 여부
+    private static final Map<File, Boolean> LIVES= new ConcurrentHashMap<File, Boolean>();
+
+    // 임시 파일이 생성된 directory와 임시 파일 이름 prefix
+    private static final Map<File, Set<String>> DIRECTORIES= new ConcurrentHashMap<File, Set<String>>();
+
+    private static final String NONCE= Long.toString( ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    private static final AtomicLong SEQUENCE= new AtomicLong();
+
+    private static volatile ScheduledExecutorService sweeper;
+
+    private static volatile long timeoutMillis= DEFAULT_TIMEOUT.toMillis();
+
+    static
+    {
+        Runtime.getRuntime().addShutdownHook( new Thread( TempFileManager::deleteOnExit, "transfer-tempfile-cleaner"));
+    }
+
+    private TempFileManager() {}
+
+    /**
+     * 남겨진 임시 파일을 삭제하는 sweeper를 시작한다.
+     * @param timeout 변경되지 않은 임시 파일을 삭제할 시간
+     */
+    public static synchronized void start( Duration timeout)
+    {
+        stop();
+        timeoutMillis= timeout.toMillis();
+        long interval= Math.max( 1000, Math.min( TimeUnit.MINUTES.toMillis( 5), timeoutMillis/ 2));
+        sweeper= Executors.newSingleThreadScheduledExecutor( r->{
+            Thread thread= new Thread( r, "transfer-tempfile-sweeper");
+            thread.setDaemon( true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay( TempFileManager::sweep, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info( "temporary file sweeper is started. timeout: {}ms, interval: {}ms", timeoutMillis, interval);
+    }
+
+    public static synchronized void stop()
+    {
+        if( sweeper!= null)
+        {
+            sweeper.shutdownNow();
+            sweeper= null;
+        }
+    }
+
+    /**
+     * 임시 파일을 생성하고 사용중인 파일로 관리한다.
+     * @param dir 임시 파일을 생성할 directory, 없는 경우 생성된다.
+     * @param prefix 파일 이름 prefix
+     * @param suffix 파일 이름 suffix
+     * @param deleteOnExit JVM 종료시 삭제 여부
+     * @return 생성된 임시 파일
+     */
+    public static File create( File dir, String prefix, String suffix, boolean deleteOnExit) throws IOException
+    {
+        File parent= dir.getAbsoluteFile();
+        Set<String> prefixes= DIRECTORIES.get( parent);
+        if( prefixes== null)
+        {
+            if( !DirectoryCache.ensure( parent))
+                throw new IOException( "Can not create temporary directory ["+ parent+ "]");
+            prefixes= ConcurrentHashMap.newKeySet();
+            if( DIRECTORIES.size()< MAX_TRACKED_DIRECTORIES)
+                DIRECTORIES.putIfAbsent( parent, prefixes);
+        }
+        prefixes.add( prefix);
+
+        while( true)
+        {
+            File file= new File( parent, prefix+ NONCE+ Long.toString( SEQUENCE.incrementAndGet(), 36)+ suffix);
+            try
+            {
+                Files.createFile( file.toPath());
+            }
+            catch( FileAlreadyExistsException e)
+            {
+                continue;
+            }
+            catch( IOException e)
+            {
+                // directory가 삭제된 경우 다음 요청에서 다시 생성한다.
+                DIRECTORIES.remove( parent);
+                DirectoryCache.invalidate( parent);
+                throw e;
+            }
+            track( file, deleteOnExit);
+            logger.debug( "Temporary File[{}] is created.", file);
+            return file;
+        }
+    }
+
+    /**
+     * JVM 종료시 삭제할 파일로 등록한다. 이미 관리중인 경우 종료시 삭제 여부만 변경된다.
+     */
+    public static void deleteOnExit( File file)
+    {
+        track( file.getAbsoluteFile(), true);
+    }
+
+    /**
+     * rename 또는 삭제된 파일을 관리 대상에서 제외한다.
+     */
+    public static void release( File file)
+    {
+        if( file!= null && !LIVES.isEmpty())
+            LIVES.remove( file.getAbsoluteFile());
+    }
+
+    /**
+     * @return 관리중인 임시 파일 수
+     */
+    public static int liveCount()
+    {
+        return LIVES.size();
+    }
+
+    private static void track( File file, boolean deleteOnExit)
+    {
+        if( LIVES.size()< MAX_TRACKED_FILES || LIVES.containsKey( file))
+            LIVES.put( file, deleteOnExit);
+        else
+            logger.debug( "too many temporary files. [{}] is not tracked", file);
+    }
+
+    /**
+     * 비정상 종료된 이전 process가 남긴 임시 파일을 삭제한다. 서버 시작시 임시 파일 전용 directory에 대해서만 호출되어야 한다.
+     * 다른 Agent와 공유하는 directory일 수 있으므로 timeout 동안 변경되지 않은 파일만 삭제한다.
+     * @param dir 임시 파일 전용 directory
+     * @param prefix 임시 파일 이름 prefix
+     * @param timeout 변경되지 않은 임시 파일을 삭제할 시간
+     * @return 삭제된 파일 수
+     */
+    public static int cleanup( File dir, String prefix, Duration timeout)
+    {
+        long expired= System.currentTimeMillis()- timeout.toMillis();
+        File[] files= dir.getAbsoluteFile().listFiles( ( parent, name)-> name.startsWith( prefix));
+        if( files== null)
+            return 0;
+
+        int deleted= 0;
+        for( File file: files)
+        {
+            if( !file.isFile() || LIVES.containsKey( file) || file.lastModified()> expired)
+                continue;
+            if( file.delete())
+            {
+                deleted++;
+                logger.info( "leftover temporary file [{}] is deleted", file);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 이 process가 생성한 임시 파일 중 관리중이 아니고 timeout 동안 변경되지 않은 파일을 삭제한다.
+     */
+    static void sweep()
+    {
+        long expired= System.currentTimeMillis()- timeoutMillis;
+        try
+        {
+            // 이미 삭제된 파일은 관리 대상에서 제외한다.
+            LIVES.keySet().removeIf( file-> !file.exists());
+
+            Iterator<Map.Entry<File, Set<String>>> it= DIRECTORIES.entrySet().iterator();
+            while( it.hasNext())
+            {
+                Map.Entry<File, Set<String>> entry= it.next();
+                File[] files= entry.getKey().listFiles( ( dir, name)-> entry.getValue().stream().anyMatch( 
+                        prefix-> name.startsWith( prefix+ NONCE)));
+                if( files== null)
+                {
+                    it.remove();
+                    DirectoryCache.invalidate( entry.getKey());
+                    continue;
+                }
+                for( File file: files)
+                {
+                    if( LIVES.containsKey( file) || file.lastModified()> expired)
+                        continue;
+                    if( file.delete())
+                        logger.info( "expired temporary file [{}] is deleted", file);
+                }
+            }
+        }
+        catch( Exception e)
+        {
+            logger.warn( "temporary file sweep is failed.", e);
+        }
+    }
+
+    private static void deleteOnExit()
+    {
+        for( Map.Entry<File, Boolean> entry: LIVES.entrySet())
+        {
+            if( entry.getValue())
+                entry.getKey().delete();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.util;
+
+import java.util.Locale;
+
+/**
+ * 수신한 파일을 disk에 반영(fsync)하는 방식
+ * <ul>
+ * <li>ALWAYS: 파일 마다 완료 즉시 fsync한다.</li>
+ * <li>GROUP: 동시에 완료된 파일의 fsync와 directory fsync를 commit thread에서 모아서 처리하고, 반영된 후 응답한다.</li>
+ * <li>NONE: fsync하지 않고 OS에 맡긴다. 장애시 최근 수신한 파일이 유실될 수 있다.</li>
+ * </ul>
+ * @author Jongoh Lee
+ *
+ */
+
+public enum TransferDurability
+{
+    ALWAYS,
+    GROUP,
+    NONE;
+
+    /**
+     * 설정값을 durability로 변환한다. 지정하지 않은 경우 ALWAYS
+     */
+    public static TransferDurability of( String value)
+    {
+        if( value== null || value.trim().isEmpty())
+            return ALWAYS;
+        return valueOf( value.trim().toUpperCase( Locale.ROOT));
+    }
+}
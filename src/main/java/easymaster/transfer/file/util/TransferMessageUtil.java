@@ -5,6 +5,7 @@
 
 package easymaster.transfer.file.util;
 
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_LENGTH;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.CHUNKED;
@@ -37,10 +38,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
+import easymaster.transfer.file.protocol.ContentEncoding;
 import easymaster.transfer.file.protocol.TransferHeaders;
 import easymaster.transfer.file.protocol.TransferMessage;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.AsciiString;
 import io.netty.util.CharsetUtil;
 import io.netty.util.internal.ObjectUtil;
@@ -54,6 +61,11 @@ import io.netty.util.internal.StringUtil;
 public final class TransferMessageUtil
 {
     private static Logger logger= LoggerFactory.getLogger( TransferMessageUtil.class);
+
+    // 메시지 단위 압축이 협상되지 않은 연결에서 사용하는 연결 전체 GZIP 압축 handler
+    public static final String CONNECTION_DECOMPRESSOR= "connectionDecompressor";
+
+    public static final String CONNECTION_COMPRESSOR= "connectionCompressor";
     
     public static final String PATH_SEPARATOR= "/";
     
@@ -186,6 +198,62 @@ public final class TransferMessageUtil
         return defaultValue;
     }
 
+    /**
+     * 이어받기에서 같은 원본 파일인지 확인하는 데 사용할 검증 값(If-Match)을 생성한다.
+     * @param length 파일 크기
+     * @param modified 파일 수정 시간(milliseconds)
+     * @return 검증 값
+     */
+    public static String validator( long length, long modified)
+    {
+        return length+ "-"+ modified;
+    }
+
+    /**
+     * 파일 영역(FileRegion)을 복사없이 전송할 수 있는지 확인
+     * SSL handler가 있거나 연결 또는 메시지 본문을 압축하는 경우 ByteBuf로 변환되어야 하므로 사용할 수 없다.
+     */
+    public static boolean isZeroCopyAvailable( Channel channel, TransferMessage message)
+    {
+        return channel.pipeline().get( SslHandler.class)== null && !isConnectionCompressed( channel)
+                && getContentEncoding( message)== ContentEncoding.IDENTITY;
+    }
+
+    /**
+     * 이전 버전의 Agent와 호환되도록 연결 전체를 GZIP으로 압축하는 handler를 추가한다.
+     * INFO /upgrade 요청으로 메시지 단위 압축(Content-Encoding)이 협상되면 제거된다.
+     */
+    public static ChannelPipeline addConnectionCompression( ChannelPipeline pipeline)
+    {
+        return pipeline
+            .addLast( CONNECTION_DECOMPRESSOR, ZlibCodecFactory.newZlibDecoder( ZlibWrapper.GZIP))
+            .addLast( CONNECTION_COMPRESSOR, ZlibCodecFactory.newZlibEncoder( ZlibWrapper.GZIP));
+    }
+
+    /**
+     * 메시지 단위 압축이 협상되어 연결 전체 GZIP 압축 handler를 제거한다. Event loop에서 호출되어야 한다.
+     */
+    public static void removeConnectionCompression( ChannelPipeline pipeline)
+    {
+        if( pipeline.get( CONNECTION_DECOMPRESSOR)!= null)
+            pipeline.remove( CONNECTION_DECOMPRESSOR);
+        if( pipeline.get( CONNECTION_COMPRESSOR)!= null)
+            pipeline.remove( CONNECTION_COMPRESSOR);
+    }
+
+    /**
+     * @return 메시지 단위 압축이 협상되지 않아 연결 전체를 GZIP으로 압축하는 경우 true, 이 경우 Content-Encoding을 사용할 수 없다.
+     */
+    public static boolean isConnectionCompressed( Channel channel)
+    {
+        return channel.pipeline().get( CONNECTION_COMPRESSOR)!= null;
+    }
+
+    public static ContentEncoding getContentEncoding( TransferMessage message)
+    {
+        return ContentEncoding.of( message.headers().get( CONTENT_ENCODING));
+    }
+
     public static StringBuilder appendMessage( StringBuilder buf, TransferMessage message)
     {
         appendCommon( buf, message);
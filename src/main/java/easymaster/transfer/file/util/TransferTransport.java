@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.util;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * Netty transport 선택
+ * Linux에서 native epoll(edge-triggered)을 사용할 수 있으면 EPOLL을, 그 외에는 NIO를 사용한다.
+ * EPOLL은 SO_REUSEPORT로 여러 acceptor channel을 같은 port에 bind하여 연결 수락을 여러 thread에 분산할 수 있다.
+ * @author Jongoh Lee
+ *
+ */
+
+public enum TransferTransport
+{
+    AUTO,
+    EPOLL,
+    NIO;
+
+    private static Logger logger= LoggerFactory.getLogger( TransferTransport.class);
+
+    /**
+     * 설정값을 transport로 변환한다. 지정하지 않은 경우 AUTO
+     */
+    public static TransferTransport of( String value)
+    {
+        if( value== null || value.trim().isEmpty())
+            return AUTO;
+        return valueOf( value.trim().toUpperCase( Locale.ROOT));
+    }
+
+    /**
+     * 실제 사용할 transport를 결정한다. EPOLL을 사용할 수 없는 경우 NIO를 사용한다.
+     * @return EPOLL 또는 NIO
+     */
+    public TransferTransport resolve()
+    {
+        if( this== NIO)
+            return NIO;
+        if( Epoll.isAvailable())
+            return EPOLL;
+        if( this== EPOLL)
+            logger.warn( "native epoll transport is not available. fallback to nio. cause: {}", String.valueOf( Epoll.unavailabilityCause()));
+        return NIO;
+    }
+
+    public boolean isEpoll()
+    {
+        return resolve()== EPOLL;
+    }
+
+    /**
+     * SO_REUSEPORT로 여러 acceptor channel을 bind할 수 있는지 여부
+     */
+    public boolean supportsReusePort()
+    {
+        return isEpoll();
+    }
+
+    public EventLoopGroup newEventLoopGroup( int threads)
+    {
+        return isEpoll() ? new EpollEventLoopGroup( threads) : new NioEventLoopGroup( threads);
+    }
+
+    public EventLoopGroup newEventLoopGroup( int threads, ThreadFactory threadFactory)
+    {
+        return isEpoll() ? new EpollEventLoopGroup( threads, threadFactory) : new NioEventLoopGroup( threads, threadFactory);
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass()
+    {
+        return isEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends SocketChannel> socketChannelClass()
+    {
+        return isEpoll() ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+}
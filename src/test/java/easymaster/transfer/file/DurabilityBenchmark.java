@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file;
+
+import easymaster.transfer.file.protocol.FileSync;
+import easymaster.transfer.file.util.TransferDurability;
+
+/**
+ * durability 설정(always, group, none) 별로 작은 파일을 동시에 수신(기록, fsync, rename)할 때의 초당 처리 파일 수를 측정한다.
+ * 서버 없이 수신 경로(FileData)만 측정한다.
+ * <pre>
+ * DurabilityBenchmark [directory] [threads] [files per thread] [file size] [group commit window(us)]
+ * </pre>
+ * @author Jongoh Lee
+ *
+ */
+
+public class DurabilityBenchmark
+{
+    public static void main( String[] args) throws Exception
+    {
+        long window= args.length> 4 ? Long.parseLong( args[4]) : FileSync.DEFAULT_GROUP_COMMIT_WINDOW_MICROS;
+        SmallFileBenchmark benchmark= new SmallFileBenchmark( args, "./build/durability-benchmark", 200, 4* 1024);
+        try
+        {
+            for( TransferDurability durability: TransferDurability.values())
+            {
+                FileSync.configure( durability, window);
+                benchmark.measure( "durability: "+ durability, ( data, dest)->{
+                    data.renameTo( dest);
+                    data.release();
+                });
+            }
+        }
+        finally
+        {
+            FileSync.configure( TransferDurability.ALWAYS, window);
+            benchmark.shutdown();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file;
+
+import static easymaster.transfer.file.util.OptionParameter.ON_EXIST;
+import static easymaster.transfer.file.util.OptionParameterValues.OVERWRITE_ONEXIST;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import easymaster.transfer.file.client.TransferClient;
+import easymaster.transfer.file.util.OptionParameter;
+import io.netty.channel.Channel;
+
+/**
+ * 대용량 파일의 분할 전송(merge 포함)이 처리되는 동안 INFO 요청의 응답 시간을 측정한다.
+ * 요청 처리가 Netty I/O thread를 점유하지 않으면 merge 중에도 INFO 응답 시간이 기준값과 비슷하게 유지된다.
+ * 실행중인 Agent Server가 필요하다.
+ * <pre>
+ * InfoLatencyBenchmark [host] [port] [large file] [site] [count]
+ * </pre>
+ * @author Jongoh Lee
+ *
+ */
+
+public class InfoLatencyBenchmark
+{
+    private static Logger logger= LoggerFactory.getLogger( InfoLatencyBenchmark.class);
+
+    public static void main( String[] args) throws Exception
+    {
+        String host= args.length> 0 ? args[0] : "localhost";
+        int port= args.length> 1 ? Integer.parseInt( args[1]) : 8024;
+        File resource= new File( args.length> 2 ? args[2] : "./src/test/resources/parallel-content.zip");
+        String site= args.length> 3 ? args[3] : "biz1";
+        int count= args.length> 4 ? Integer.parseInt( args[4]) : 2000;
+
+        TransferClient client= TransferClient.create( host, port);
+        Channel channel= null;
+        try
+        {
+            channel= client.connect();
+            measure( client, channel, count/ 10);   // warm up
+            report( "baseline", measure( client, channel, count));
+
+            CompletableFuture<Boolean> upload= CompletableFuture.supplyAsync( ()->{
+                try
+                {
+                    return client.requestPutParallelResource( resource, "/benchmark/"+ resource.getName(), site,
+                            OptionParameter.param( ON_EXIST, OVERWRITE_ONEXIST));
+                }
+                catch( Exception e)
+                {
+                    throw new CompletionException( e);
+                }
+            });
+
+            long[] loaded= measure( client, channel, count);
+            report( "during parallel put and merge", loaded);
+            logger.info( "parallel put result: {}", upload.get());
+        }
+        finally
+        {
+            if( channel!= null)
+                channel.close();
+            client.shutdown();
+        }
+    }
+
+    private static long[] measure( TransferClient client, Channel channel, int count) throws Exception
+    {
+        long[] latencies= new long[count];
+        for( int i= 0; i< count; i++)
+        {
+            long start= System.nanoTime();
+            client.requestServerInfo( channel);
+            latencies[i]= System.nanoTime()- start;
+        }
+        return latencies;
+    }
+
+    private static void report( String name, long[] latencies)
+    {
+        long[] sorted= latencies.clone();
+        Arrays.sort( sorted);
+        logger.info( "[{}] count: {}, p50: {}us, p99: {}us, max: {}us", name, sorted.length,
+                TimeUnit.NANOSECONDS.toMicros( sorted[sorted.length/ 2]),
+                TimeUnit.NANOSECONDS.toMicros( sorted[(int)( sorted.length* 0.99)]),
+                TimeUnit.NANOSECONDS.toMicros( sorted[sorted.length- 1]));
+    }
+}
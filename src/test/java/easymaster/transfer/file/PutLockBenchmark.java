@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file;
+
+import easymaster.transfer.file.protocol.FileSync;
+import easymaster.transfer.file.util.FileUtil;
+import easymaster.transfer.file.util.PathLocks;
+import easymaster.transfer.file.util.TransferDurability;
+
+/**
+ * 작은 파일 PUT(임시 파일 기록 후 renameWithLock)의 초당 처리 파일 수를 lock 파일(OS 잠금) 사용 여부 별로 측정한다.
+ * 잠금 비용만 비교하도록 fsync는 하지 않으며(durability none), 서버 없이 수신 경로만 측정한다.
+ * <pre>
+ * PutLockBenchmark [directory] [threads] [files per thread] [file size]
+ * </pre>
+ * @author Jongoh Lee
+ *
+ */
+
+public class PutLockBenchmark
+{
+    public static void main( String[] args) throws Exception
+    {
+        SmallFileBenchmark benchmark= new SmallFileBenchmark( args, "./build/put-lock-benchmark", 500, 1024);
+        FileSync.configure( TransferDurability.NONE, 0);
+        try
+        {
+            for( boolean osLock: new boolean[] { true, false})
+            {
+                PathLocks.configure( osLock);
+                benchmark.measure( osLock ? "lock file" : "striped lock", ( data, dest)-> FileUtil.renameWithLock( data, dest, null));
+            }
+        }
+        finally
+        {
+            FileSync.configure( TransferDurability.ALWAYS, FileSync.DEFAULT_GROUP_COMMIT_WINDOW_MICROS);
+            PathLocks.configure( false);
+            benchmark.shutdown();
+        }
+    }
+}
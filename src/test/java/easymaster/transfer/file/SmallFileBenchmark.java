@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import easymaster.transfer.file.protocol.FileData;
+import easymaster.transfer.file.util.FileUtil;
+import io.netty.buffer.Unpooled;
+
+/**
+ * 작은 파일을 동시에 수신(임시 파일 기록 후 저장 위치로 rename)할 때의 초당 처리 파일 수를 측정하는 benchmark 공통 부분
+ * 서버 없이 수신 경로(FileData)만 측정하며, 측정할 설정과 저장 방법은 각 benchmark에서 지정한다.
+ * <pre>
+ * [directory] [threads] [files per thread] [file size] ...
+ * </pre>
+ * @author Jongoh Lee
+ *
+ */
+
+final class SmallFileBenchmark
+{
+    private static Logger logger= LoggerFactory.getLogger( SmallFileBenchmark.class);
+
+    /**
+     * 수신한 임시 파일을 저장 위치에 반영한다.
+     */
+    @FunctionalInterface
+    interface Committer
+    {
+        void commit( FileData data, File dest) throws Exception;
+    }
+
+    private final File dir;
+
+    private final int threads;
+
+    private final int files;
+
+    private final byte[] content;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param args [directory] [threads] [files per thread] [file size]
+     * @param defaultDir directory가 지정되지 않은 경우 사용할 directory
+     * @param defaultFiles thread 별 파일 수가 지정되지 않은 경우 사용할 파일 수
+     * @param defaultSize 파일 크기가 지정되지 않은 경우 사용할 크기
+     */
+    SmallFileBenchmark( String[] args, String defaultDir, int defaultFiles, int defaultSize)
+    {
+        this.dir= new File( args.length> 0 ? args[0] : defaultDir);
+        this.threads= args.length> 1 ? Integer.parseInt( args[1]) : 32;
+        this.files= args.length> 2 ? Integer.parseInt( args[2]) : defaultFiles;
+        this.content= new byte[args.length> 3 ? Integer.parseInt( args[3]) : defaultSize];
+        this.dir.mkdirs();
+        this.executor= Executors.newFixedThreadPool( threads);
+    }
+
+    /**
+     * warm up 후 측정하고 결과를 기록한다.
+     * @param label 측정한 설정
+     * @param committer 수신한 임시 파일을 저장 위치에 반영하는 방법
+     */
+    void measure( String label, Committer committer) throws Exception
+    {
+        run( files/ 10, committer);
+        long elapsed= run( files, committer);
+        logger.info( "{}, files: {}, elapsed: {}ms, files/s: {}", new Object[] { label, threads* files,
+                TimeUnit.NANOSECONDS.toMillis( elapsed), String.format( "%.1f", threads* files* 1e9/ elapsed)});
+    }
+
+    void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    private long run( int count, Committer committer) throws Exception
+    {
+        AtomicInteger sequence= new AtomicInteger();
+        List<Future<?>> futures= new ArrayList<Future<?>>();
+        long start= System.nanoTime();
+        for( int i= 0; i< threads; i++)
+        {
+            futures.add( executor.submit( ()->{
+                for( int n= 0; n< count; n++)
+                {
+                    FileData data= new FileData( content.length, dir);
+                    data.addContent( Unpooled.wrappedBuffer( content), true);
+                    committer.commit( data, new File( dir, "file-"+ sequence.incrementAndGet()+ ".dat"));
+                }
+                return null;
+            }));
+        }
+        for( Future<?> future: futures)
+            future.get();
+        long elapsed= System.nanoTime()- start;
+
+        File[] created= dir.listFiles();
+        if( created!= null)
+        {
+            for( File file: created)
+            {
+                if( file.isFile())
+                    FileUtil.deleteFile( file);
+            }
+        }
+        return elapsed;
+    }
+}
@@ -6,6 +6,18 @@
 package easymaster.transfer.file;
 
 import static easymaster.transfer.file.client.TransferClient.THROWAWAY;
+import static easymaster.transfer.file.handler.TransferAction.SESSION_;
+import static easymaster.transfer.file.handler.TransferAction.SESSION_STATUS_;
+import static easymaster.transfer.file.protocol.TransferCommand.ACTION;
+import static easymaster.transfer.file.protocol.TransferCommand.GET;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.IF_MATCH;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.OFFSET;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RECEIVED_RANGE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_LENGTH;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.SESSION_ID;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_DESTINATION_URI;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_SOURCE_URI;
+import static easymaster.transfer.file.protocol.TransferResponseCode.PRECONDITION_FAILED;
 import static easymaster.transfer.file.util.OptionParameter.CREATE_ACK;
 import static easymaster.transfer.file.util.OptionParameter.INTERCEPTOR;
 import static easymaster.transfer.file.util.OptionParameter.ON_EXIST;
@@ -18,10 +30,15 @@ import static org.springframework.boot.actuate.health.Status.UP;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,11 +52,17 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.util.ResourceUtils;
 
+import easymaster.transfer.file.client.ResponseHandlerException;
 import easymaster.transfer.file.client.TransferClient;
 import easymaster.transfer.file.config.TransferEnvironment;
 import easymaster.transfer.file.config.TransferServerConfiguration;
+import easymaster.transfer.file.protocol.TransferHeaders;
+import easymaster.transfer.file.protocol.TransferMessage;
+import easymaster.transfer.file.session.ResourceSession;
+import easymaster.transfer.file.session.ResourceSessionManager;
 import easymaster.transfer.file.util.FileUtil;
 import easymaster.transfer.file.util.OptionParameter;
+import easymaster.transfer.file.util.TransferMessageUtil;
 import io.netty.channel.Channel;
 
 /**
@@ -74,7 +97,7 @@ public class TransferClientTest
         TransferClient client= TransferClient.create(
                 environment.getRepository().getBaseDir(),
                 1,
-                (int)environment.getConnectTimeout().toSeconds(),
+                (int)environment.getConnectTimeout().toMillis(),
                 environment.isSsl(),
                 environment.getBind(),
                 environment.getTcpPort(),
@@ -111,7 +134,7 @@ public class TransferClientTest
         TransferClient client= TransferClient.create(
                 environment.getRepository().getBaseDir(),
                 1,
-                (int)environment.getConnectTimeout().toSeconds(),
+                (int)environment.getConnectTimeout().toMillis(),
                 environment.isSsl(),
                 environment.getBind(),
                 environment.getTcpPort(),
@@ -155,7 +178,7 @@ public class TransferClientTest
         TransferClient client= TransferClient.create(
                 environment.getRepository().getBaseDir(),
                 2,
-                (int)environment.getConnectTimeout().toSeconds(),
+                (int)environment.getConnectTimeout().toMillis(),
                 environment.isSsl(),
                 environment.getBind(),
                 environment.getTcpPort(),
@@ -190,7 +213,7 @@ public class TransferClientTest
         TransferClient client= TransferClient.create(
                 environment.getRepository().getBaseDir(),
                 1,
-                (int)environment.getConnectTimeout().toSeconds(),
+                (int)environment.getConnectTimeout().toMillis(),
                 environment.isSsl(),
                 environment.getBind(),
                 environment.getTcpPort(),
@@ -232,6 +255,205 @@ public class TransferClientTest
         logger.info( "clientResourceGetTest test... passed");
     }
 
+    @Test
+    @DirtiesContext
+    public void clientResourceGetParallelTest() throws Exception
+    {
+        TransferClient client= TransferClient.create(
+                environment.getRepository().getBaseDir(),
+                5,
+                (int)environment.getConnectTimeout().toMillis(),
+                environment.isSsl(),
+                environment.getBind(),
+                environment.getTcpPort(),
+                environment.getChunkSize());
+        try
+        {
+            File source= new File( environment.getRepository().getBaseDir()+ File.separator+ "chunked-content.jar");
+            File valid= new File( environment.getRepository().getBaseDir()+ File.separator+ "received-content.dat");
+            boolean result= client.requestGetParallelResource( valid, "chunked-content.jar", null);
+
+            assertThat( result, is( true));
+            assertThat( valid.length(), equalTo( source.length()));
+            assertThat( Arrays.equals( Files.readAllBytes( valid.toPath()), Files.readAllBytes( source.toPath())), is( true));
+
+            FileUtil.deleteFile( valid);
+        }
+        catch( Exception e)
+        {
+            logger.error( e.getMessage(), e);
+            fail();
+        }
+        finally
+        {
+            client.shutdown();
+            FileUtil.removeDir( new File( "./src/test/resources/tmp"));
+        }
+        
+        logger.info( "clientResourceGetParallelTest test... passed");
+    }
+
+    @Test
+    @DirtiesContext
+    public void clientResourceGetResumableTest() throws Exception
+    {
+        TransferClient client= TransferClient.create(
+                environment.getRepository().getBaseDir(),
+                5,
+                (int)environment.getConnectTimeout().toMillis(),
+                environment.isSsl(),
+                environment.getBind(),
+                environment.getTcpPort(),
+                environment.getChunkSize());
+        File partials= new File( environment.getRepository().getBaseDir(), TransferClient.PARTIAL_DIR);
+        try
+        {
+            File source= new File( environment.getRepository().getBaseDir()+ File.separator+ "chunked-content.jar");
+            File valid= new File( environment.getRepository().getBaseDir()+ File.separator+ "resumed-content.dat");
+            boolean result= client.requestGetResumableResource( valid, "chunked-content.jar", null);
+
+            assertThat( result, is( true));
+            assertThat( valid.length(), equalTo( source.length()));
+            assertThat( Arrays.equals( Files.readAllBytes( valid.toPath()), Files.readAllBytes( source.toPath())), is( true));
+            assertThat( partials.list().length, is( 0));
+
+            FileUtil.deleteFile( valid);
+        }
+        catch( Exception e)
+        {
+            logger.error( e.getMessage(), e);
+            fail();
+        }
+        finally
+        {
+            client.shutdown();
+            FileUtil.removeDir( partials);
+            FileUtil.removeDir( new File( "./src/test/resources/tmp"));
+        }
+        
+        logger.info( "clientResourceGetResumableTest test... passed");
+    }
+
+    @Test
+    @DirtiesContext
+    public void clientResourceGetResumePartialTest() throws Exception
+    {
+        TransferClient client= TransferClient.create(
+                environment.getRepository().getBaseDir(),
+                5,
+                (int)environment.getConnectTimeout().toMillis(),
+                environment.isSsl(),
+                environment.getBind(),
+                environment.getTcpPort(),
+                environment.getChunkSize());
+        File partials= new File( environment.getRepository().getBaseDir(), TransferClient.PARTIAL_DIR);
+        try
+        {
+            File source= new File( environment.getRepository().getBaseDir()+ File.separator+ "chunked-content.jar");
+            File valid= new File( environment.getRepository().getBaseDir()+ File.separator+ "resumed-content.dat");
+            
+            // 이전 요청에서 앞부분을 받다가 중단된 것처럼 원본과 다른 내용으로 앞부분을 보관한다.
+            int received= (int)( source.length()/ 2);
+            String sourceUri= TransferMessageUtil.encodedUri( environment.getBind(), environment.getTcpPort(), "chunked-content.jar");
+            String key= UUID.nameUUIDFromBytes( sourceUri.getBytes( StandardCharsets.UTF_8)).toString();
+            File partial= new File( partials, key+ "-"+ TransferMessageUtil.validator( source.length(), source.lastModified())+ ".part");
+            partials.mkdirs();
+            Files.write( partial.toPath(), new byte[received]);
+            
+            boolean result= client.requestGetResumableResource( valid, "chunked-content.jar", null);
+
+            // 보관된 앞부분은 그대로 두고 나머지만 받았는지 확인한다.
+            byte[] expected= Files.readAllBytes( source.toPath());
+            byte[] actual= Files.readAllBytes( valid.toPath());
+            assertThat( result, is( true));
+            assertThat( actual.length, is( expected.length));
+            assertThat( Arrays.equals( Arrays.copyOf( actual, received), new byte[received]), is( true));
+            assertThat( Arrays.equals( Arrays.copyOfRange( actual, received, actual.length), 
+                    Arrays.copyOfRange( expected, received, expected.length)), is( true));
+            assertThat( partials.list().length, is( 0));
+
+            FileUtil.deleteFile( valid);
+        }
+        catch( Exception e)
+        {
+            logger.error( e.getMessage(), e);
+            fail();
+        }
+        finally
+        {
+            client.shutdown();
+            FileUtil.removeDir( partials);
+            FileUtil.removeDir( new File( "./src/test/resources/tmp"));
+        }
+        
+        logger.info( "clientResourceGetResumePartialTest test... passed");
+    }
+
+    @Test
+    @DirtiesContext
+    public void clientResourceGetStaleValidatorTest() throws Exception
+    {
+        TransferClient client= TransferClient.create(
+                environment.getRepository().getBaseDir(),
+                5,
+                (int)environment.getConnectTimeout().toMillis(),
+                environment.isSsl(),
+                environment.getBind(),
+                environment.getTcpPort(),
+                environment.getChunkSize());
+        File partials= new File( environment.getRepository().getBaseDir(), TransferClient.PARTIAL_DIR);
+        try
+        {
+            File source= new File( environment.getRepository().getBaseDir()+ File.separator+ "chunked-content.jar");
+            String sourceUri= TransferMessageUtil.encodedUri( environment.getBind(), environment.getTcpPort(), "chunked-content.jar");
+            String stale= TransferMessageUtil.validator( source.length(), source.lastModified()- 1000);
+
+            // 변경 전 원본의 검증 값으로 이어받기를 요청하면 412로 거절된다.
+            TransferMessage request= new TransferMessage( GET);
+            request.headers()
+                .add( TRANSFER_SOURCE_URI, sourceUri)
+                .add( OFFSET, 1)
+                .add( IF_MATCH, stale);
+            try
+            {
+                client.request( THROWAWAY, request, response-> response);
+                fail();
+            }
+            catch( ResponseHandlerException re)
+            {
+                assertThat( re.getResponseCode(), is( PRECONDITION_FAILED));
+            }
+
+            // 변경 전 원본을 받다가 남겨진 파일은 삭제하고 처음부터 다시 받는다.
+            String key= UUID.nameUUIDFromBytes( sourceUri.getBytes( StandardCharsets.UTF_8)).toString();
+            File partial= new File( partials, key+ "-"+ stale+ ".part");
+            partials.mkdirs();
+            Files.write( partial.toPath(), new byte[(int)( source.length()/ 2)]);
+
+            File valid= new File( environment.getRepository().getBaseDir()+ File.separator+ "resumed-content.dat");
+            boolean result= client.requestGetResumableResource( valid, "chunked-content.jar", null);
+
+            assertThat( result, is( true));
+            assertThat( partial.exists(), is( false));
+            assertThat( Arrays.equals( Files.readAllBytes( valid.toPath()), Files.readAllBytes( source.toPath())), is( true));
+
+            FileUtil.deleteFile( valid);
+        }
+        catch( Exception e)
+        {
+            logger.error( e.getMessage(), e);
+            fail();
+        }
+        finally
+        {
+            client.shutdown();
+            FileUtil.removeDir( partials);
+            FileUtil.removeDir( new File( "./src/test/resources/tmp"));
+        }
+        
+        logger.info( "clientResourceGetStaleValidatorTest test... passed");
+    }
+
     @Test
     @DirtiesContext
     public void clientResourceDeleteTest() throws Exception
@@ -239,7 +461,7 @@ public class TransferClientTest
         TransferClient client= TransferClient.create(
                 environment.getRepository().getBaseDir(),
                 1,
-                (int)environment.getConnectTimeout().toSeconds(),
+                (int)environment.getConnectTimeout().toMillis(),
                 environment.isSsl(),
                 environment.getBind(),
                 environment.getTcpPort(),
@@ -288,7 +510,7 @@ public class TransferClientTest
         TransferClient client= TransferClient.create(
                 environment.getRepository().getBaseDir(),
                 1,
-                (int)environment.getConnectTimeout().toSeconds(),
+                (int)environment.getConnectTimeout().toMillis(),
                 environment.isSsl(),
                 environment.getBind(),
                 environment.getTcpPort(),
@@ -337,7 +559,7 @@ public class TransferClientTest
         TransferClient client= TransferClient.create(
                 environment.getRepository().getBaseDir(),
                 1,
-                (int)environment.getConnectTimeout().toSeconds(),
+                (int)environment.getConnectTimeout().toMillis(),
                 environment.isSsl(),
                 environment.getBind(),
                 environment.getTcpPort(),
@@ -383,7 +605,7 @@ public class TransferClientTest
         TransferClient client= TransferClient.create(
                 environment.getRepository().getBaseDir(),
                 5,
-                (int)environment.getConnectTimeout().toSeconds(),
+                (int)environment.getConnectTimeout().toMillis(),
                 environment.isSsl(),
                 environment.getBind(),
                 environment.getTcpPort(),
@@ -423,4 +645,116 @@ public class TransferClientTest
         logger.info( "clientResourcePutParallelTest test... passed");
     }
 
+    @Test
+    @DirtiesContext
+    public void clientResourcePutResumableTest() throws Exception
+    {
+        TransferClient client= TransferClient.create(
+                environment.getRepository().getBaseDir(),
+                5,
+                (int)environment.getConnectTimeout().toMillis(),
+                environment.isSsl(),
+                environment.getBind(),
+                environment.getTcpPort(),
+                environment.getChunkSize());
+        try
+        {
+            File resource= ResourceUtils.getFile(
+                    environment.getRepository().getBaseDir()+ File.separator+ "chunked-content.jar");
+
+            boolean answer= client.requestPutResumableResource( resource,
+                    "/backup/"+ new SimpleDateFormat( "yyyyMMdd").format( new Date())+ "/resumable-content.bak", "biz1",
+                    OptionParameter.param( ON_EXIST, OVERWRITE_ONEXIST));
+
+            File valid= new File( environment.getRepository().getBaseDir()+ "/backup/"+
+                    new SimpleDateFormat( "yyyyMMdd").format( new Date())+ "/resumable-content.bak");
+
+            assertThat( answer, is( true));
+            assertThat( valid.exists(), is( true));
+            assertThat( valid.length(), is( resource.length()));
+        }
+        catch( Exception e)
+        {
+            logger.error( e.getMessage(), e);
+            fail();
+        }
+        finally
+        {
+            client.shutdown();
+            FileUtil.removeDir( new File( "./src/test/resources/backup"));
+            FileUtil.removeDir( new File( "./src/test/resources/tmp"));
+        }
+        
+        logger.info( "clientResourcePutResumableTest test... passed");
+    }
+
+    @Test
+    @DirtiesContext
+    public void clientSessionStatusTest() throws Exception
+    {
+        TransferClient client= TransferClient.create(
+                environment.getRepository().getBaseDir(),
+                5,
+                (int)environment.getConnectTimeout().toMillis(),
+                environment.isSsl(),
+                environment.getBind(),
+                environment.getTcpPort(),
+                environment.getChunkSize());
+        ResourceSession session= null;
+        try
+        {
+            File resource= ResourceUtils.getFile(
+                    environment.getRepository().getBaseDir()+ File.separator+ "chunked-content.jar");
+            String targetUri= TransferMessageUtil.encodedUri( environment.getBind(), environment.getTcpPort(),
+                    "/backup/staged-content.bak", OptionParameter.param( OptionParameter.SITE, "biz1"));
+
+            TransferMessage create= new TransferMessage( ACTION);
+            create.setUri( SESSION_);
+            create.headers()
+                .add( RESOURCE_LENGTH, resource.length())
+                .add( TRANSFER_DESTINATION_URI, targetUri);
+            String sessionId= client.request( THROWAWAY, create, response-> response.headers().get( SESSION_ID));
+            session= ResourceSessionManager.getSession( sessionId);
+            assertThat( session.stagingFile()!= null, is( true));
+
+            // 중단된 전송에서 앞부분과 뒷부분이 기록된 것처럼 staging 파일에 미리 기록한다.
+            long length= resource.length();
+            long gap= length/ 3;
+            byte[] bytes= Files.readAllBytes( resource.toPath());
+            try( RandomAccessFile staging= new RandomAccessFile( session.stagingFile(), "rw"))
+            {
+                staging.write( bytes, 0, (int)gap);
+                staging.seek( gap* 2);
+                staging.write( bytes, (int)( gap* 2), (int)( length- gap* 2));
+            }
+            assertThat( session.staged( 0, gap), is( true));
+            assertThat( session.staged( gap* 2, length- gap* 2), is( true));
+
+            TransferMessage status= new TransferMessage( ACTION);
+            status.setUri( SESSION_STATUS_);
+            status.headers().add( SESSION_ID, sessionId);
+            TransferHeaders headers= client.request( THROWAWAY, status, response-> response.headers());
+
+            // 기록된 구간만 응답되므로 이어서 전송할 때는 가운데 구간만 다시 전송된다.
+            assertThat( headers.getLong( RESOURCE_LENGTH, -1L), is( length));
+            assertThat( headers.getAll( RECEIVED_RANGE), is( Arrays.asList( "0-"+ gap, ( gap* 2)+ "-"+ length)));
+            assertThat( session.isStagingCompleted(), is( false));
+        }
+        catch( Exception e)
+        {
+            logger.error( e.getMessage(), e);
+            fail();
+        }
+        finally
+        {
+            if( session!= null)
+                session.expire();
+            client.shutdown();
+            FileUtil.removeDir( new File( "./src/test/resources/backup"));
+            FileUtil.removeDir( new File( "./src/test/resources/tmp"));
+        }
+        
+        logger.info( "clientSessionStatusTest test... passed");
+    }
+
 }
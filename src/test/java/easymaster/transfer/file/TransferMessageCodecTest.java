@@ -5,27 +5,37 @@
 
 package easymaster.transfer.file;
 
+import static easymaster.transfer.file.protocol.TransferCommand.INFO;
 import static easymaster.transfer.file.protocol.TransferCommand.PUT;
 import static easymaster.transfer.file.protocol.TransferCommand.TRANSFER;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.AGENT_TYPE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.CONTENT_LENGTH;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_DESTINATION_URI;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_SOURCE_URI;
 import static easymaster.transfer.file.protocol.TransferHeaderNames.TRANSFER_VALIDATION;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.UPGRADE;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.CHUNKED;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.CLIENT;
+import static easymaster.transfer.file.protocol.TransferHeaderValues.MESSAGE_ENCODING;
 import static easymaster.transfer.file.protocol.TransferHeaderValues.VALIDATION_ON;
 import static easymaster.transfer.file.util.TransferConstants.CR;
 import static easymaster.transfer.file.util.TransferConstants.LF;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.After;
 import org.junit.Before;
@@ -33,17 +43,32 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import easymaster.transfer.file.client.TransferClientHandler;
+import easymaster.transfer.file.handler.TransferInfo;
+import easymaster.transfer.file.protocol.ContentEncoding;
 import easymaster.transfer.file.protocol.FileData;
+import easymaster.transfer.file.protocol.LastTransferContent;
 import easymaster.transfer.file.protocol.TransferChunkedContentEncoder;
 import easymaster.transfer.file.protocol.TransferContent;
+import easymaster.transfer.file.protocol.TransferContentCompressor;
+import easymaster.transfer.file.protocol.TransferContentDecompressor;
+import easymaster.transfer.file.protocol.TransferFileRegionEncoder;
 import easymaster.transfer.file.protocol.TransferHeaderValues;
 import easymaster.transfer.file.protocol.TransferMessage;
+import easymaster.transfer.file.protocol.TransferMessageClientCodec;
 import easymaster.transfer.file.protocol.TransferMessageDecoder;
 import easymaster.transfer.file.protocol.TransferMessageEncoder;
+import easymaster.transfer.file.protocol.TransferMessageServerCodec;
 import easymaster.transfer.file.protocol.TransferObject;
+import easymaster.transfer.file.util.TransferMessageUtil;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
 
 /**
  * @author Jongoh Lee
@@ -220,4 +245,483 @@ public class TransferMessageCodecTest
         logger.info( "shouldChunkedContentRequest test... passed");
     }
 
+    @Test
+    public void shouldFileRegionContentRequest() throws Exception
+    {
+        TransferMessage message= new TransferMessage( PUT);
+        message.headers()
+            .add( AGENT, "127.0.0.1")
+            .add( AGENT_TYPE, TransferHeaderValues.AGENT)
+            .add( TRANSFER_SOURCE_URI, "file://127.0.0.1:8024/account1.gzip")
+            .add( TRANSFER_DESTINATION_URI, "file://127.0.0.2:8024/account1.gzip")
+            .add( TRANSFER_ENCODING, CHUNKED)
+            .add( "Request-AgentUser", "easymaster");
+
+        String res= getClass().getClassLoader().getResource( "chunked-content.jar").getFile();
+        File fs= new File( res);
+
+        message.headers().add( CONTENT_LENGTH, fs.length());
+
+        boolean answer= encChannel.writeOutbound( message);
+        assertThat( answer, is( true));
+
+        FileData fdata= new FileData( fs.length());
+        fdata.setContent( fs);
+        TransferFileRegionEncoder chunk= new TransferFileRegionEncoder( fdata, 8* 1024);
+        encChannel.writeOutbound( chunk);
+        chunk.close();
+
+        ByteBuf written= encChannel.readOutbound();
+        decChannel.writeInbound( written);
+
+        int regions= 0;
+        Object out= null;
+        while( ( out= encChannel.readOutbound())!= null)
+        {
+            if( out instanceof FileRegion)
+            {
+                // transport에서 처리될 영역을 동일한 byte 배열로 변환하여 decoder에 전달
+                FileRegion region= (FileRegion)out;
+                ByteArrayOutputStream bytes= new ByteArrayOutputStream( (int)region.count());
+                WritableByteChannel target= Channels.newChannel( bytes);
+                while( region.transferred()< region.count())
+                    region.transferTo( target, region.transferred());
+                region.release();
+                decChannel.writeInbound( Unpooled.wrappedBuffer( bytes.toByteArray()));
+                regions++;
+            }
+            else
+                decChannel.writeInbound( out);
+        }
+        assertThat( regions, greaterThan( 1));
+
+        TransferObject request= null;
+        int readable= 0;
+        boolean last= false;
+        while( ( request= decChannel.readInbound())!= null)
+        {
+            if( request instanceof TransferMessage)
+                assertThat( request, equalTo( message));
+            else if( request instanceof TransferContent)
+            {
+                TransferContent content= (TransferContent)request;
+                assertThat( content.decoderResult().isSuccess(), is( true));
+                readable+= content.content().readableBytes();
+                last= content instanceof LastTransferContent;
+                content.release();
+            }
+        }
+        assertThat( readable, equalTo( (int)fs.length()));
+        assertThat( last, is( true));
+        encChannel.finishAndReleaseAll();
+        decChannel.finishAndReleaseAll();
+
+        logger.info( "shouldFileRegionContentRequest test... passed");
+    }
+
+    @Test
+    public void shouldCompressedContentRequest() throws Exception
+    {
+        encChannel= new EmbeddedChannel( new TransferMessageEncoder(), new TransferContentCompressor(), new ChunkedWriteHandler());
+        decChannel= new EmbeddedChannel( new TransferMessageDecoder(), new TransferContentDecompressor());
+
+        // 고정 길이 본문은 압축 후 chunked로 변환하며 요청한 메시지의 헤더는 변경하지 않는다.
+        String res= getClass().getClassLoader().getResource( "fixed-content.txt").getFile();
+        File fs= new File( res);
+        TransferMessage message= fixedCompressedMessage( fs);
+        EmbeddedChannel compressor= new EmbeddedChannel( new TransferContentCompressor());
+        compressor.writeOutbound( message);
+        TransferMessage emitted= compressor.readOutbound();
+        assertThat( emitted.headers().contains( TRANSFER_ENCODING, CHUNKED, true), is( true));
+        assertThat( emitted.headers().get( CONTENT_LENGTH), is( String.valueOf( fs.length())));
+        assertThat( message.headers().contains( TRANSFER_ENCODING), is( false));
+        compressor.finishAndReleaseAll();
+
+        encChannel.writeOutbound( fixedCompressedMessage( fs));
+        assertThat( transferAndRead( emitted), equalTo( (int)fs.length()));
+
+        // chunk 단위 본문 압축
+        res= getClass().getClassLoader().getResource( "chunked-content.jar").getFile();
+        fs= new File( res);
+        message= new TransferMessage( PUT);
+        message.headers()
+            .add( AGENT, "127.0.0.1")
+            .add( CONTENT_LENGTH, fs.length())
+            .add( TRANSFER_ENCODING, CHUNKED)
+            .add( CONTENT_ENCODING, ContentEncoding.SNAPPY.value());
+        FileData fdata= new FileData( fs.length());
+        fdata.setContent( fs);
+        encChannel.writeOutbound( message);
+        TransferChunkedContentEncoder chunk= new TransferChunkedContentEncoder( fdata, 8* 1024);
+        encChannel.writeOutbound( chunk);
+        chunk.close();
+        assertThat( transferAndRead( message), equalTo( (int)fs.length()));
+
+        logger.info( "shouldCompressedContentRequest test... passed");
+    }
+
+    private static TransferMessage fixedCompressedMessage( File fs) throws IOException
+    {
+        TransferMessage message= new TransferMessage( PUT);
+        message.headers()
+            .add( AGENT, "127.0.0.1")
+            .add( CONTENT_LENGTH, fs.length())
+            .add( CONTENT_ENCODING, ContentEncoding.GZIP.value());
+        FileData fdata= new FileData( fs.length());
+        fdata.setContent( fs);
+        message.setContent( fdata);
+        return message;
+    }
+
+    private int transferAndRead( TransferMessage message)
+    {
+        ByteBuf written= null;
+        while( ( written= encChannel.readOutbound())!= null)
+            decChannel.writeInbound( written);
+
+        TransferObject request= null;
+        int readable= 0;
+        boolean last= false;
+        while( ( request= decChannel.readInbound())!= null)
+        {
+            if( request instanceof TransferMessage)
+                assertThat( request, equalTo( message));
+            else if( request instanceof TransferContent)
+            {
+                TransferContent content= (TransferContent)request;
+                assertThat( content.decoderResult().isSuccess(), is( true));
+                readable+= content.content().readableBytes();
+                last= content instanceof LastTransferContent;
+                content.release();
+            }
+        }
+        assertThat( last, is( true));
+        return readable;
+    }
+
+    @Test
+    public void shouldSplittedHeaderRequest() throws Exception
+    {
+        TransferMessage message= new TransferMessage( PUT);
+        message.headers()
+            .add( AGENT, "127.0.0.1")
+            .add( TRANSFER_SOURCE_URI, "file://127.0.0.1:8024/account테스트1.gzip")
+            .add( CONTENT_LENGTH, 0);
+        encChannel.writeOutbound( message);
+        ByteBuf written= encChannel.readOutbound();
+
+        // 헤더가 1 byte씩 나누어 수신되는 경우
+        while( written.isReadable())
+        {
+            decChannel.writeInbound( written.readRetainedSlice( 1));
+            if( written.isReadable())
+                assertThat( decChannel.inboundMessages().isEmpty(), is( true));
+        }
+        written.release();
+
+        TransferMessage request= decChannel.readInbound();
+        assertThat( request.decoderResult().isSuccess(), is( true));
+        assertThat( request, equalTo( message));
+        assertThat( decChannel.readInbound() instanceof LastTransferContent, is( true));
+
+        logger.info( "shouldSplittedHeaderRequest test... passed");
+    }
+
+    @Test
+    public void shouldBinaryFramingRequest() throws Exception
+    {
+        TransferMessage message= new TransferMessage( PUT);
+        message.headers()
+            .add( AGENT, "127.0.0.1")
+            .add( AGENT_TYPE, TransferHeaderValues.AGENT)
+            .add( TRANSFER_SOURCE_URI, "file://127.0.0.1:8024/account테스트1.gzip")
+            .add( TRANSFER_DESTINATION_URI, "file://127.0.0.2:8024/account1.gzip")
+            .add( TRANSFER_ENCODING, CHUNKED)
+            .add( "Request-AgentUser", "easymaster");
+
+        String res= getClass().getClassLoader().getResource( "chunked-content.jar").getFile();
+        File fs= new File( res);
+        message.headers().add( CONTENT_LENGTH, fs.length());
+
+        encChannel.writeOutbound( message);
+        ByteBuf written= encChannel.readOutbound();
+        int textLength= written.readableBytes();
+        written.release();
+
+        encChannel.pipeline().get( TransferMessageEncoder.class).setBinaryFraming( true);
+        decChannel.pipeline().get( TransferMessageDecoder.class).setBinaryFraming( true);
+
+        encChannel.writeOutbound( message);
+        written= encChannel.readOutbound();
+        assertThat( written.readableBytes(), lessThan( textLength));
+        decChannel.writeInbound( written);
+
+        FileData fdata= new FileData( fs.length());
+        fdata.setContent( fs);
+        TransferChunkedContentEncoder chunk= new TransferChunkedContentEncoder( fdata, 8* 1024);
+        encChannel.writeOutbound( chunk);
+        chunk.close();
+
+        // 프레임 헤더가 나누어 수신되는 경우
+        while( ( written= encChannel.readOutbound())!= null)
+        {
+            while( written.isReadable())
+                decChannel.writeInbound( written.readRetainedSlice( Math.min( 7, written.readableBytes())));
+            written.release();
+        }
+
+        TransferObject request= null;
+        int readable= 0;
+        boolean last= false;
+        while( ( request= decChannel.readInbound())!= null)
+        {
+            if( request instanceof TransferMessage)
+                assertThat( request, equalTo( message));
+            else if( request instanceof TransferContent)
+            {
+                TransferContent content= (TransferContent)request;
+                assertThat( content.decoderResult().isSuccess(), is( true));
+                readable+= content.content().readableBytes();
+                last= content instanceof LastTransferContent;
+                content.release();
+            }
+        }
+        assertThat( readable, equalTo( (int)fs.length()));
+        assertThat( last, is( true));
+
+        logger.info( "shouldBinaryFramingRequest test... passed");
+    }
+
+    @Test
+    public void shouldMultiplexedStreamRequest() throws Exception
+    {
+        encChannel.pipeline().get( TransferMessageEncoder.class).setBinaryFraming( true);
+        decChannel.pipeline().get( TransferMessageDecoder.class).setBinaryFraming( true);
+
+        TransferMessage first= new TransferMessage( PUT);
+        first.headers()
+            .add( TRANSFER_DESTINATION_URI, "file://127.0.0.2:8024/account1.gzip")
+            .add( TRANSFER_ENCODING, CHUNKED)
+            .add( CONTENT_LENGTH, 6);
+        first.setStreamId( 1);
+
+        TransferMessage second= new TransferMessage( PUT);
+        second.headers()
+            .add( TRANSFER_DESTINATION_URI, "file://127.0.0.2:8024/account2.gzip")
+            .add( TRANSFER_ENCODING, CHUNKED)
+            .add( CONTENT_LENGTH, 6);
+        second.setStreamId( 3);
+
+        // 두 요청의 프레임이 섞여서 전송되는 경우
+        encChannel.writeOutbound( first, second,
+                new TransferContent( Unpooled.copiedBuffer( "abc", CharsetUtil.US_ASCII), 1),
+                new TransferContent( Unpooled.copiedBuffer( "uvw", CharsetUtil.US_ASCII), 3),
+                new TransferContent( Unpooled.copiedBuffer( "xyz", CharsetUtil.US_ASCII), 3),
+                LastTransferContent.of( 3),
+                new TransferContent( Unpooled.copiedBuffer( "def", CharsetUtil.US_ASCII), 1),
+                LastTransferContent.of( 1));
+
+        ByteBuf written= null;
+        while( ( written= encChannel.readOutbound())!= null)
+            decChannel.writeInbound( written);
+
+        StringBuilder[] contents= { new StringBuilder(), new StringBuilder() };
+        int[] lasts= new int[2];
+        TransferObject request= null;
+        while( ( request= decChannel.readInbound())!= null)
+        {
+            int index= request.streamId()/ 2;
+            if( request instanceof TransferMessage)
+                assertThat( request, equalTo( index== 0 ? first : second));
+            else if( request instanceof LastTransferContent)
+                lasts[index]++;
+            else if( request instanceof TransferContent)
+            {
+                TransferContent content= (TransferContent)request;
+                contents[index].append( content.content().toString( CharsetUtil.US_ASCII));
+                content.release();
+            }
+        }
+
+        assertThat( contents[0].toString(), equalTo( "abcdef"));
+        assertThat( contents[1].toString(), equalTo( "uvwxyz"));
+        assertThat( lasts[0], is( 1));
+        assertThat( lasts[1], is( 1));
+
+        logger.info( "shouldMultiplexedStreamRequest test... passed");
+    }
+
+    @Test
+    public void shouldPipelineResponsesInOrder() throws Exception
+    {
+        TransferClientHandler handler= new TransferClientHandler( new File( System.getProperty( "java.io.tmpdir")));
+        EmbeddedChannel clientChannel= new EmbeddedChannel( new TransferMessageClientCodec(), handler);
+
+        TransferMessage first= new TransferMessage( INFO);
+        first.setUri( "/info");
+        TransferMessage second= new TransferMessage( INFO);
+        second.setUri( "/health");
+
+        // 응답을 기다리지 않고 연속하여 요청
+        CompletableFuture<TransferMessage> firstFuture= handler.send( first, null);
+        CompletableFuture<TransferMessage> secondFuture= handler.send( second, null);
+        clientChannel.runPendingTasks();
+        assertThat( handler.activeStreams(), is( 2));
+
+        ByteBuf written= null;
+        while( ( written= clientChannel.readOutbound())!= null)
+            written.release();
+
+        TransferMessage firstResponse= new TransferMessage( INFO);
+        firstResponse.setUri( "/info");
+        firstResponse.headers().add( AGENT, "127.0.0.1");
+        TransferMessage secondResponse= new TransferMessage( INFO);
+        secondResponse.setUri( "/health");
+        secondResponse.headers().add( AGENT, "127.0.0.2");
+
+        encChannel.writeOutbound( firstResponse, secondResponse);
+        clientChannel.writeInbound( (ByteBuf)encChannel.readOutbound());
+        assertThat( firstFuture.isDone(), is( true));
+        assertThat( secondFuture.isDone(), is( false));
+
+        clientChannel.writeInbound( (ByteBuf)encChannel.readOutbound());
+        assertThat( firstFuture.get().headers().get( AGENT), equalTo( "127.0.0.1"));
+        assertThat( secondFuture.get().headers().get( AGENT), equalTo( "127.0.0.2"));
+        assertThat( handler.activeStreams(), is( 0));
+
+        // 연결이 종료되면 대기중인 요청은 실패한다.
+        CompletableFuture<TransferMessage> closed= handler.send( new TransferMessage( INFO), null);
+        clientChannel.runPendingTasks();
+        clientChannel.finishAndReleaseAll();
+        assertThat( closed.isCompletedExceptionally(), is( true));
+
+        logger.info( "shouldPipelineResponsesInOrder test... passed");
+    }
+
+    @Test
+    public void shouldRejectTooLongHeader() throws Exception
+    {
+        decChannel= new EmbeddedChannel( new TransferMessageDecoder( 64, 256));
+
+        TransferMessage message= new TransferMessage( PUT);
+        for( int i= 0; i< 16; i++)
+            message.headers().add( TRANSFER_SOURCE_URI, "file://127.0.0.1:8024/account"+ i+ ".gzip");
+        encChannel.writeOutbound( message);
+        decChannel.writeInbound( (ByteBuf)encChannel.readOutbound());
+
+        TransferMessage request= decChannel.readInbound();
+        assertThat( request.decoderResult().isFailure(), is( true));
+        assertThat( request.decoderResult().cause() instanceof TooLongFrameException, is( true));
+
+        logger.info( "shouldRejectTooLongHeader test... passed");
+    }
+
+    @Test
+    public void shouldDecodeHeaderWithLimitedAllocation() throws Exception
+    {
+        java.lang.management.ThreadMXBean bean= ManagementFactory.getThreadMXBean();
+        if( !( bean instanceof com.sun.management.ThreadMXBean)
+                || !( (com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported())
+            return;
+        com.sun.management.ThreadMXBean threadBean= (com.sun.management.ThreadMXBean)bean;
+        // 같은 JVM에서 먼저 실행된 Spring test가 DEBUG logging을 설정한 경우 메시지 마다 헤더 로그가 할당된다.
+        if( LoggerFactory.getLogger( TransferMessageDecoder.class).isDebugEnabled())
+            return;
+
+        TransferMessage message= new TransferMessage( PUT);
+        message.headers()
+            .add( AGENT, "127.0.0.1")
+            .add( AGENT_TYPE, TransferHeaderValues.AGENT)
+            .add( TRANSFER_SOURCE_URI, "file://127.0.0.1:8024/account1.gzip")
+            .add( TRANSFER_DESTINATION_URI, "file://127.0.0.2:8024/account1.gzip")
+            .add( CONTENT_LENGTH, 0);
+        encChannel.writeOutbound( message);
+        ByteBuf written= encChannel.readOutbound();
+
+        int count= 20000;
+        long allocated= 0;
+        for( int round= 0; round< 2; round++)
+        {
+            long before= threadBean.getThreadAllocatedBytes( Thread.currentThread().getId());
+            for( int i= 0; i< count; i++)
+            {
+                decChannel.writeInbound( written.retainedDuplicate());
+                Object decoded= null;
+                while( ( decoded= decChannel.readInbound())!= null)
+                    ReferenceCountUtil.release( decoded);
+            }
+            allocated= threadBean.getThreadAllocatedBytes( Thread.currentThread().getId())- before;
+        }
+        written.release();
+
+        // 메시지, 헤더 객체와 헤더 라인 이외의 라인 버퍼는 할당되지 않아야 한다.
+        logger.info( "decoder allocation: {} bytes/message", allocated/ count);
+        assertThat( allocated/ count, lessThan( 4096L));
+
+        logger.info( "shouldDecodeHeaderWithLimitedAllocation test... passed");
+    }
+
+    @Test
+    public void shouldUpgradeConnectionCompression() throws Exception
+    {
+        EmbeddedChannel client= new EmbeddedChannel();
+        TransferMessageUtil.addConnectionCompression( client.pipeline()).addLast( new TransferMessageClientCodec());
+        EmbeddedChannel server= new EmbeddedChannel();
+        TransferMessageUtil.addConnectionCompression( server.pipeline()).addLast( new TransferMessageServerCodec());
+
+        // 협상 전에는 연결 전체가 GZIP으로 압축된다.
+        TransferMessage upgrade= new TransferMessage( INFO);
+        upgrade.setUri( TransferInfo.UPGRADE_);
+        upgrade.headers().add( UPGRADE, MESSAGE_ENCODING);
+        client.writeOutbound( upgrade);
+        transfer( client, server);
+        TransferMessage request= server.readInbound();
+        assertThat( request.headers().contains( UPGRADE, MESSAGE_ENCODING, true), is( true));
+        ReferenceCountUtil.release( server.readInbound());
+
+        // 지원하지 않는 Agent의 응답에는 Upgrade 헤더가 없으므로 압축을 유지한다.
+        server.writeOutbound( new TransferMessage( INFO));
+        server.runPendingTasks();
+        assertThat( TransferMessageUtil.isConnectionCompressed( server), is( true));
+        transfer( server, client);
+        assertThat( client.readInbound() instanceof TransferMessage, is( true));
+        ReferenceCountUtil.release( client.readInbound());
+
+        TransferMessage response= new TransferMessage( INFO);
+        response.headers().add( UPGRADE, MESSAGE_ENCODING);
+        server.writeOutbound( response);
+        server.runPendingTasks();
+        assertThat( TransferMessageUtil.isConnectionCompressed( server), is( false));
+        transfer( server, client);
+        response= client.readInbound();
+        assertThat( response.headers().contains( UPGRADE, MESSAGE_ENCODING, true), is( true));
+        ReferenceCountUtil.release( client.readInbound());
+        TransferMessageUtil.removeConnectionCompression( client.pipeline());
+
+        // 협상 후에는 압축되지 않은 메시지를 송수신한다.
+        TransferMessage put= new TransferMessage( PUT);
+        put.headers()
+            .add( TRANSFER_SOURCE_URI, "file://127.0.0.1:8024/account1.gzip")
+            .add( TRANSFER_DESTINATION_URI, "file://127.0.0.2:8024/account1.gzip")
+            .add( CONTENT_LENGTH, 0);
+        client.writeOutbound( put);
+        ByteBuf written= client.readOutbound();
+        assertThat( written.toString( CharsetUtil.US_ASCII).startsWith( PUT.name()), is( true));
+        server.writeInbound( written);
+        request= server.readInbound();
+        assertThat( request.command(), is( PUT));
+        assertThat( request.headers().get( TRANSFER_DESTINATION_URI), is( "file://127.0.0.2:8024/account1.gzip"));
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+        logger.info( "shouldUpgradeConnectionCompression test... passed");
+    }
+
+    private static void transfer( EmbeddedChannel from, EmbeddedChannel to)
+    {
+        ByteBuf written= null;
+        while( ( written= from.readOutbound())!= null)
+            to.writeInbound( written);
+    }
+
 }
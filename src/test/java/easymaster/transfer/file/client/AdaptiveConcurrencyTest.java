@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.client;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * AdaptiveConcurrency의 구간 별 동시 전송 수 조정을 고정된 시간과 측정 값으로 확인한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class AdaptiveConcurrencyTest
+{
+    private static final long MB= 1024* 1024;
+
+    private static final long SECOND= TimeUnit.SECONDS.toNanos( 1);
+
+    private static final long ACK= TimeUnit.MILLISECONDS.toNanos( 1);
+
+    private final AtomicLong clock= new AtomicLong();
+
+    @Before
+    public void setUp()
+    {
+        clock.set( SECOND);
+    }
+
+    @Test
+    public void shouldIncreaseOnThroughputGain() throws Exception
+    {
+        AdaptiveConcurrency adaptive= new AdaptiveConcurrency( 1, 8, 2, clock::get);
+        AdaptiveConcurrency.Permits permits= adaptive.begin( 8);
+
+        round( permits, 2, MB, ACK, 0);     // 첫 구간은 비교할 처리량이 없으므로 증가
+        assertThat( permits.concurrency(), is( 3));
+        round( permits, 3, MB, ACK, 0);     // 2MB/s -> 3MB/s
+        assertThat( permits.concurrency(), is( 4));
+
+        permits.end();
+        assertThat( adaptive.concurrency(), is( 4));
+        assertThat( adaptive.begin( 8).concurrency(), is( 4));
+    }
+
+    @Test
+    public void shouldHalveOnFailure() throws Exception
+    {
+        AdaptiveConcurrency.Permits permits= new AdaptiveConcurrency( 1, 16, 8, clock::get).begin( 16);
+
+        round( permits, 8, MB, ACK, 1);
+        assertThat( permits.concurrency(), is( 4));
+    }
+
+    @Test
+    public void shouldDecreaseOnAckLatency() throws Exception
+    {
+        AdaptiveConcurrency.Permits permits= new AdaptiveConcurrency( 1, 16, 4, clock::get).begin( 16);
+
+        round( permits, 4, MB, ACK, 0);
+        assertThat( permits.concurrency(), is( 5));
+        // 처리량이 증가해도 응답 지연이 최소 지연의 2배와 10ms를 넘으면 줄인다.
+        round( permits, 5, 2* MB, 50* ACK, 0);
+        assertThat( permits.concurrency(), is( 3));
+    }
+
+    @Test
+    public void shouldDecreaseOnThroughputDrop() throws Exception
+    {
+        AdaptiveConcurrency.Permits permits= new AdaptiveConcurrency( 1, 16, 2, clock::get).begin( 16);
+
+        round( permits, 2, MB, ACK, 0);
+        round( permits, 3, MB, ACK, 0);
+        assertThat( permits.concurrency(), is( 4));
+        round( permits, 4, MB/ 4, ACK, 0);     // 3MB/s -> 1MB/s
+        assertThat( permits.concurrency(), is( 3));
+    }
+
+    @Test
+    public void shouldKeepThroughputWithinThresholds() throws Exception
+    {
+        AdaptiveConcurrency.Permits permits= new AdaptiveConcurrency( 1, 16, 2, clock::get).begin( 16);
+
+        round( permits, 2, 3* MB/ 2, ACK, 0);
+        assertThat( permits.concurrency(), is( 3));
+        round( permits, 3, MB, ACK, 0);        // 3MB/s -> 3MB/s
+        assertThat( permits.concurrency(), is( 3));
+    }
+
+    @Test
+    public void shouldClampToMinAndCap() throws Exception
+    {
+        AdaptiveConcurrency adaptive= new AdaptiveConcurrency( 2, 4, 4, clock::get);
+        AdaptiveConcurrency.Permits permits= adaptive.begin( 3);
+        assertThat( permits.cap(), is( 3));
+        assertThat( permits.concurrency(), is( 3));
+
+        round( permits, 3, MB, ACK, 0);
+        assertThat( permits.concurrency(), is( 3));
+        round( permits, 3, MB, ACK, 3);
+        assertThat( permits.concurrency(), is( 2));
+
+        // 연결 Pool 크기가 최소 값보다 작아도 최소 값은 보장한다.
+        assertThat( adaptive.begin( 1).cap(), is( 2));
+    }
+
+    @Test
+    public void shouldIsolateConcurrentTransfers() throws Exception
+    {
+        AdaptiveConcurrency adaptive= new AdaptiveConcurrency( 1, 8, 4, clock::get);
+        AdaptiveConcurrency.Permits first= adaptive.begin( 8);
+        AdaptiveConcurrency.Permits second= adaptive.begin( 8);
+
+        for( int i= 0; i< 4; i++)
+            first.acquire();
+        // 다른 분할 전송의 전송 수와 관계없이 대기하지 않는다.
+        second.acquire();
+        second.release( MB, SECOND, ACK, false);
+        assertThat( first.inFlight(), is( 4));
+        assertThat( second.inFlight(), is( 0));
+        assertThat( first.concurrency(), is( 4));
+
+        clock.addAndGet( SECOND);
+        for( int i= 0; i< 4; i++)
+            first.release( MB, SECOND, ACK, true);
+        assertThat( first.concurrency(), is( 5));
+        assertThat( first.inFlight(), is( 0));
+
+        first.end();
+        assertThat( adaptive.concurrency(), is( 5));
+        assertThat( adaptive.throughput()> 0, is( true));
+    }
+
+    /**
+     * 동시 전송 수만큼 분할 전송을 시작하고 1초 후 모두 완료하여 하나의 구간을 측정한다.
+     */
+    private void round( AdaptiveConcurrency.Permits permits, int samples, long bytes, long ackNanos, int failures) 
+            throws InterruptedException
+    {
+        for( int i= 0; i< samples; i++)
+            permits.acquire();
+        clock.addAndGet( SECOND);
+        for( int i= 0; i< samples; i++)
+            permits.release( bytes, SECOND, ackNanos, i>= failures);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.client;
+
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RECEIVED_RANGE;
+import static easymaster.transfer.file.protocol.TransferHeaderNames.RESOURCE_LENGTH;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import easymaster.transfer.file.client.FileSplitter.Split;
+import easymaster.transfer.file.protocol.TransferHeaders;
+
+/**
+ * 이어서 전송할 때 session 조회 응답으로 기록되지 않은 구간만 다시 전송하도록 계산하는지 확인한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class MissingRangesTest
+{
+    @Test
+    public void shouldResendOnlyGap()
+    {
+        TransferHeaders headers= new TransferHeaders()
+                .add( RESOURCE_LENGTH, 1000)
+                .add( RECEIVED_RANGE, "0-400")
+                .add( RECEIVED_RANGE, "600-1000");
+
+        List<Split> missing= TransferClient.missingRanges( headers, 1000);
+
+        assertThat( missing.size(), is( 1));
+        assertRange( missing.get( 0), 400, 200);
+    }
+
+    @Test
+    public void shouldResendHeadAndTail()
+    {
+        TransferHeaders headers= new TransferHeaders()
+                .add( RESOURCE_LENGTH, 1000)
+                .add( RECEIVED_RANGE, "100-700");
+
+        List<Split> missing= TransferClient.missingRanges( headers, 1000);
+
+        assertThat( missing.size(), is( 2));
+        assertRange( missing.get( 0), 0, 100);
+        assertRange( missing.get( 1), 700, 300);
+    }
+
+    @Test
+    public void shouldSplitGapBySplitSize()
+    {
+        TransferHeaders headers= new TransferHeaders()
+                .add( RESOURCE_LENGTH, 1000)
+                .add( RECEIVED_RANGE, "0-250");
+
+        List<Split> missing= TransferClient.missingRanges( headers, 300);
+
+        assertThat( missing.size(), is( 3));
+        assertRange( missing.get( 0), 250, 300);
+        assertRange( missing.get( 1), 550, 300);
+        assertRange( missing.get( 2), 850, 150);
+    }
+
+    @Test
+    public void shouldMergeOverlappedRanges()
+    {
+        TransferHeaders headers= new TransferHeaders()
+                .add( RESOURCE_LENGTH, 1000)
+                .add( RECEIVED_RANGE, "0-500")
+                .add( RECEIVED_RANGE, "300-800");
+
+        List<Split> missing= TransferClient.missingRanges( headers, 1000);
+
+        assertThat( missing.size(), is( 1));
+        assertRange( missing.get( 0), 800, 200);
+    }
+
+    @Test
+    public void shouldBeEmptyWhenAllReceived()
+    {
+        TransferHeaders headers= new TransferHeaders()
+                .add( RESOURCE_LENGTH, 1000)
+                .add( RECEIVED_RANGE, "0-1000");
+
+        assertThat( TransferClient.missingRanges( headers, 1000).isEmpty(), is( true));
+    }
+
+    private static void assertRange( Split split, long offset, long length)
+    {
+        assertThat( split.offset, is( offset));
+        assertThat( split.length, is( length));
+    }
+}
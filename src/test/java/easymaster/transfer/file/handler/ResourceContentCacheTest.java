@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.handler;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * ResourceContentCache의 조회(hit), capacity를 넘는 경우 제거(evict), 변경된 파일과 삭제된 directory의 제거(invalidate)를 확인한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class ResourceContentCacheTest
+{
+    private static final int ENTRY_SIZE= 1024;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir= Files.createTempDirectory( "content-cache").toFile();
+        // 먼저 실행된 test가 보관한 내용을 제거한다.
+        ResourceContentCache.configure( 0, 0);
+        ResourceContentCache.configure( ResourceContentCache.SEGMENT_COUNT* 4* ENTRY_SIZE, ENTRY_SIZE);
+    }
+
+    @After
+    public void tearDown()
+    {
+        // 보관된 내용을 모두 release한다.
+        ResourceContentCache.configure( 0, 0);
+        FileSystemUtils.deleteRecursively( dir);
+    }
+
+    @Test
+    public void shouldHitCachedContent() throws IOException
+    {
+        File file= write( "hit.txt", 'a');
+        long hits= ResourceContentCache.hits();
+        long misses= ResourceContentCache.misses();
+
+        ByteBuf first= ResourceContentCache.get( file, ENTRY_SIZE);
+        ByteBuf second= ResourceContentCache.get( file, ENTRY_SIZE);
+        try
+        {
+            assertThat( ResourceContentCache.misses()- misses, is( 1L));
+            assertThat( ResourceContentCache.hits()- hits, is( 1L));
+            assertThat( second.toString( StandardCharsets.US_ASCII), is( first.toString( StandardCharsets.US_ASCII)));
+            assertThat( ResourceContentCache.bytes(), is( (long)ENTRY_SIZE));
+        }
+        finally
+        {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void shouldNotCacheLargeOrMismatchedContent() throws IOException
+    {
+        File file= write( "large.txt", 'b');
+
+        assertThat( ResourceContentCache.get( file, ENTRY_SIZE+ 1)== null, is( true));
+        assertThat( ResourceContentCache.get( file, ENTRY_SIZE- 1)== null, is( true));
+        assertThat( ResourceContentCache.bytes(), is( 0L));
+    }
+
+    @Test
+    public void shouldInvalidateChangedContent() throws IOException
+    {
+        File file= write( "changed.txt", 'c');
+        ResourceContentCache.get( file, ENTRY_SIZE).release();
+
+        ResourceContentCache.invalidate( file);
+        assertThat( ResourceContentCache.bytes(), is( 0L));
+
+        write( "changed.txt", 'd');
+        ByteBuf content= ResourceContentCache.get( file, ENTRY_SIZE);
+        try
+        {
+            assertThat( content.getByte( 0), is( (byte)'d'));
+        }
+        finally
+        {
+            content.release();
+        }
+    }
+
+    @Test
+    public void shouldInvalidateDeletedDirectory() throws IOException
+    {
+        File sub= new File( dir, "sub");
+        assertThat( sub.mkdir(), is( true));
+        File other= write( "other.txt", 'o');
+        // 보관된 내용이 capacity로 제거되지 않도록 크기를 늘린다.
+        ResourceContentCache.configure( ResourceContentCache.SEGMENT_COUNT* 64* ENTRY_SIZE, ENTRY_SIZE);
+        // 하위 파일이 여러 segment에 나뉘어 보관되도록 segment 수 만큼 요청한다.
+        for( int i= 0; i< ResourceContentCache.SEGMENT_COUNT; i++)
+            ResourceContentCache.get( write( "sub/deleted-"+ i+ ".txt", 'f'), ENTRY_SIZE).release();
+        ResourceContentCache.get( other, ENTRY_SIZE).release();
+
+        FileSystemUtils.deleteRecursively( sub);
+        ResourceContentCache.invalidateTree( sub);
+
+        // 삭제된 directory 하위의 내용만 제거된다.
+        assertThat( ResourceContentCache.bytes(), is( (long)ENTRY_SIZE));
+    }
+
+    @Test
+    public void shouldEvictOverCapacity() throws IOException
+    {
+        long evictions= ResourceContentCache.evictions();
+        List<ByteBuf> contents= new ArrayList<ByteBuf>();
+        try
+        {
+            // 모든 segment의 보관 크기를 넘도록 요청한다.
+            for( int i= 0; i< ResourceContentCache.SEGMENT_COUNT* 8; i++)
+            {
+                ByteBuf content= ResourceContentCache.get( write( "evict-"+ i+ ".txt", 'e'), ENTRY_SIZE);
+                assertThat( content!= null, is( true));
+                contents.add( content);
+            }
+
+            assertThat( ResourceContentCache.bytes()<= ResourceContentCache.SEGMENT_COUNT* 4* ENTRY_SIZE, is( true));
+            assertThat( ResourceContentCache.evictions()> evictions, is( true));
+            // 제거된 내용도 전송중인 응답은 계속 사용할 수 있다.
+            for( ByteBuf content: contents)
+                assertThat( content.getByte( ENTRY_SIZE- 1), is( (byte)'e'));
+        }
+        finally
+        {
+            for( ByteBuf content: contents)
+                content.release();
+        }
+    }
+
+    private File write( String name, char c) throws IOException
+    {
+        byte[] bytes= new byte[ENTRY_SIZE];
+        Arrays.fill( bytes, (byte)c);
+        File file= new File( dir, name);
+        Files.write( file.toPath(), bytes);
+        return file;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.handler;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import easymaster.transfer.file.config.TransferEnvironment;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * UploadBackpressure의 기록 대기 크기에 따른 연결 읽기 중지, 재개를 확인한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class UploadBackpressureTest
+{
+    private TransferEnvironment environment;
+
+    private EmbeddedChannel first;
+
+    private EmbeddedChannel second;
+
+    @Before
+    public void setUp()
+    {
+        environment= new TransferEnvironment();
+        environment.setUploadHighWaterMark( 100);
+        environment.setUploadLowWaterMark( 20);
+        environment.setUploadPendingLimit( 150);
+        first= new EmbeddedChannel();
+        second= new EmbeddedChannel();
+    }
+
+    @After
+    public void tearDown()
+    {
+        first.finishAndReleaseAll();
+        second.finishAndReleaseAll();
+    }
+
+    @Test
+    public void shouldPauseAtHighWaterMarkAndResumeAtLowWaterMark()
+    {
+        UploadBackpressure backpressure= new UploadBackpressure( first, environment);
+
+        backpressure.accept( 60);
+        assertThat( backpressure.isPaused(), is( false));
+        assertThat( first.config().isAutoRead(), is( true));
+
+        backpressure.accept( 40);
+        assertThat( backpressure.isPaused(), is( true));
+        assertThat( first.config().isAutoRead(), is( false));
+        assertThat( UploadBackpressure.pausedChannels(), is( 1));
+
+        // low watermark 보다 크면 재개하지 않는다.
+        backpressure.accept( -50);
+        assertThat( backpressure.isPaused(), is( true));
+
+        backpressure.accept( -30);
+        assertThat( backpressure.isPaused(), is( false));
+        assertThat( first.config().isAutoRead(), is( true));
+        assertThat( UploadBackpressure.pausedChannels(), is( 0));
+
+        backpressure.accept( -20);
+        assertThat( backpressure.pendingBytes(), is( 0L));
+        assertThat( UploadBackpressure.totalPendingBytes(), is( 0L));
+    }
+
+    @Test
+    public void shouldPauseOnTotalLimitAndResumeOtherChannels()
+    {
+        UploadBackpressure slow= new UploadBackpressure( first, environment);
+        UploadBackpressure fast= new UploadBackpressure( second, environment);
+
+        slow.accept( 90);
+        // 연결의 대기 크기는 high watermark 미만이지만 전체 대기 크기가 limit 이상
+        fast.accept( 60);
+        assertThat( slow.isPaused(), is( false));
+        assertThat( fast.isPaused(), is( true));
+        assertThat( second.config().isAutoRead(), is( false));
+
+        // 다른 연결의 기록이 진행되어 전체 대기 크기가 limit의 절반 이하가 되면 중지된 연결을 재개한다.
+        fast.accept( -50);
+        assertThat( fast.isPaused(), is( true));
+        slow.accept( -90);
+        assertThat( fast.isPaused(), is( false));
+        assertThat( second.config().isAutoRead(), is( true));
+
+        fast.accept( -10);
+        assertThat( UploadBackpressure.totalPendingBytes(), is( 0L));
+    }
+
+    @Test
+    public void shouldForgetPausedChannelOnClose()
+    {
+        UploadBackpressure backpressure= new UploadBackpressure( first, environment);
+
+        backpressure.accept( 100);
+        assertThat( UploadBackpressure.pausedChannels(), is( 1));
+        backpressure.close();
+        assertThat( backpressure.isPaused(), is( false));
+        assertThat( UploadBackpressure.pausedChannels(), is( 0));
+
+        backpressure.accept( -100);
+        assertThat( UploadBackpressure.totalPendingBytes(), is( 0L));
+    }
+}
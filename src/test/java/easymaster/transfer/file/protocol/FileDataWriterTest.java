@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.protocol;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * FileDataWriter의 기록과 완료(finish), 중단(abort), Executor를 사용할 수 없는 경우의 실패와 버퍼 release를 확인한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class FileDataWriterTest
+{
+    private File file;
+
+    // 기록 대기 크기의 변화량 합계
+    private final AtomicLong pending= new AtomicLong();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file= File.createTempFile( "file-data-writer", ".tmp");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void shouldWriteCompositeContentAndTruncateOnFinish() throws Exception
+    {
+        // 이전 내용이 남은 파일은 완료시 기록된 크기로 조정된다.
+        Files.write( file.toPath(), new byte[64]);
+        FileDataWriter writer= new FileDataWriter( file.toPath(), 10, -1, Runnable::run, pending::addAndGet);
+
+        ByteBuf head= content( "hello");
+        CompositeByteBuf tail= Unpooled.compositeBuffer();
+        tail.addComponents( true, content( "wor"), content( "ld"));
+        writer.write( head);
+        writer.write( tail);
+        writer.finish();
+
+        assertThat( writer.completion().get(), is( 10L));
+        assertThat( new String( Files.readAllBytes( file.toPath()), StandardCharsets.US_ASCII), is( "helloworld"));
+        assertThat( head.refCnt(), is( 0));
+        assertThat( tail.refCnt(), is( 0));
+        assertThat( writer.pendingBytes(), is( 0L));
+        assertThat( pending.get(), is( 0L));
+    }
+
+    @Test
+    public void shouldWriteAtPosition() throws Exception
+    {
+        Files.write( file.toPath(), "0123456789".getBytes( StandardCharsets.US_ASCII));
+        FileDataWriter writer= new FileDataWriter( file.toPath(), 0, 4, Runnable::run, null);
+
+        writer.write( content( "abc"));
+        writer.finish();
+
+        // 다른 요청과 공유하는 파일은 크기를 조정하지 않는다.
+        assertThat( writer.completion().get(), is( 3L));
+        assertThat( new String( Files.readAllBytes( file.toPath()), StandardCharsets.US_ASCII), is( "0123abc789"));
+    }
+
+    @Test
+    public void shouldReleasePendingContentOnAbort() throws Exception
+    {
+        List<Runnable> tasks= new ArrayList<Runnable>();
+        FileDataWriter writer= new FileDataWriter( file.toPath(), 0, -1, tasks::add, pending::addAndGet);
+
+        ByteBuf first= content( "first");
+        ByteBuf second= content( "second");
+        writer.write( first);
+        writer.write( second);
+        assertThat( writer.pendingBytes(), is( 11L));
+
+        writer.abort();
+        for( int i= 0; i< tasks.size(); i++)
+            tasks.get( i).run();
+
+        // 중단은 정상 종료이며 그때까지 기록된 크기로 완료된다.
+        assertThat( writer.completion().get(), is( 0L));
+        assertThat( first.refCnt(), is( 0));
+        assertThat( second.refCnt(), is( 0));
+        assertThat( pending.get(), is( 0L));
+
+        ByteBuf late= content( "late");
+        try
+        {
+            writer.write( late);
+            fail();
+        }
+        catch( IOException e)
+        {
+            assertThat( late.refCnt(), is( 0));
+        }
+    }
+
+    @Test
+    public void shouldFailWhenExecutorRejects() throws Exception
+    {
+        FileDataWriter writer= new FileDataWriter( file.toPath(), 0, -1, task-> { throw new RejectedExecutionException();},
+                pending::addAndGet);
+
+        ByteBuf content= content( "rejected");
+        writer.write( content);
+
+        assertThat( content.refCnt(), is( 0));
+        assertThat( pending.get(), is( 0L));
+        try
+        {
+            writer.completion().get();
+            fail();
+        }
+        catch( ExecutionException e)
+        {
+            assertThat( e.getCause() instanceof IOException, is( true));
+        }
+
+        // 실패한 후 추가된 본문은 바로 release된다.
+        ByteBuf late= content( "late");
+        try
+        {
+            writer.write( late);
+            fail();
+        }
+        catch( IOException e)
+        {
+            assertThat( late.refCnt(), is( 0));
+        }
+    }
+
+    private static ByteBuf content( String text)
+    {
+        return Unpooled.copiedBuffer( text, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.session;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ResourceSession의 staging 구간 기록과 완료 여부 판단을 확인한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class ResourceSessionTest
+{
+    private ResourceSession session;
+
+    @Before
+    public void setUp()
+    {
+        session= ResourceSession.createSession();
+        session.stage( new File( "staging.tmp"), 100);
+    }
+
+    @Test
+    public void shouldCompleteWhenRangesCoverStaging()
+    {
+        assertThat( session.staged( 50, 50), is( true));
+        assertThat( session.isStagingCompleted(), is( false));
+        assertThat( session.staged( 0, 50), is( true));
+        assertThat( session.isStagingCompleted(), is( true));
+    }
+
+    @Test
+    public void shouldNotCompleteWithGap()
+    {
+        session.staged( 0, 40);
+        session.staged( 60, 40);
+        assertThat( session.isStagingCompleted(), is( false));
+
+        List<long[]> ranges= session.stagedRanges();
+        assertThat( ranges.size(), is( 2));
+        assertRange( ranges.get( 0), 0, 40);
+        assertRange( ranges.get( 1), 60, 100);
+    }
+
+    @Test
+    public void shouldMergeOverlappingRanges()
+    {
+        session.staged( 0, 30);
+        session.staged( 20, 30);
+        session.staged( 50, 10);
+        session.staged( 80, 0);     // 빈 구간은 기록 구간으로 보지 않는다.
+
+        List<long[]> ranges= session.stagedRanges();
+        assertThat( ranges.size(), is( 1));
+        assertRange( ranges.get( 0), 0, 60);
+        assertThat( session.isStagingCompleted(), is( false));
+    }
+
+    @Test
+    public void shouldReplaceRangeResentAtSameOffset()
+    {
+        session.staged( 0, 100);
+        // 같은 위치에 다시 전송된 구간은 마지막 구간으로 대체된다.
+        session.staged( 0, 10);
+        assertThat( session.isStagingCompleted(), is( false));
+        assertRange( session.stagedRanges().get( 0), 0, 10);
+    }
+
+    @Test
+    public void shouldRejectRangeOutOfStaging()
+    {
+        assertThat( session.staged( -1, 10), is( false));
+        assertThat( session.staged( 0, -1), is( false));
+        assertThat( session.staged( 90, 20), is( false));
+        assertThat( session.stagedRanges().isEmpty(), is( true));
+    }
+
+    @Test
+    public void shouldResetRangesOnStage()
+    {
+        session.staged( 0, 100);
+        assertThat( session.isStagingCompleted(), is( true));
+
+        session.stage( new File( "staging.tmp"), 200);
+        assertThat( session.isStagingCompleted(), is( false));
+        assertThat( session.stagedRanges().isEmpty(), is( true));
+    }
+
+    @Test
+    public void shouldNotCompleteWithoutStaging()
+    {
+        ResourceSession unstaged= ResourceSession.createSession();
+        assertThat( unstaged.staged( 0, 0), is( false));
+        assertThat( unstaged.isStagingCompleted(), is( false));
+        assertThat( unstaged.stagedRanges().isEmpty(), is( true));
+    }
+
+    @Test
+    public void shouldCompleteEmptyStaging()
+    {
+        ResourceSession empty= ResourceSession.createSession();
+        empty.stage( new File( "empty.tmp"), 0);
+        assertThat( empty.isStagingCompleted(), is( true));
+    }
+
+    private static void assertRange( long[] range, long offset, long end)
+    {
+        assertThat( range[0], is( offset));
+        assertThat( range[1], is( end));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.session;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import easymaster.transfer.file.util.FileUtil;
+
+/**
+ * SplitMerger의 수신 순서와 관계없는 순서대로의 병합과 MERGE 반영 후 분할 파일 삭제를 확인한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class SplitMergerTest
+{
+    private static final String[] CONTENTS= { "first-", "second-", "third-", "fourth"};
+
+    private File dir;
+
+    private List<File> splits;
+
+    private ResourceSession session;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir= Files.createTempDirectory( "split-merger").toFile();
+        splits= new ArrayList<File>();
+        for( int i= 0; i< CONTENTS.length; i++)
+        {
+            File split= new File( dir, "resource.txt"+ String.format( FileUtil.PARALLEL_SPLIT_SUFFIX_FORMAT, i));
+            Files.write( split.toPath(), CONTENTS[i].getBytes( StandardCharsets.UTF_8));
+            splits.add( split);
+        }
+        session= ResourceSession.createSession();
+    }
+
+    @After
+    public void tearDown()
+    {
+        FileSystemUtils.deleteRecursively( dir);
+    }
+
+    @Test
+    public void shouldMergeOutOfOrderArrivalsInOrder() throws IOException
+    {
+        SplitMerger merger= new SplitMerger( session);
+        merger.arrived( 2, splits.get( 2));
+        merger.arrived( 1, splits.get( 1));
+        merger.arrived( 3, splits.get( 3));
+        merger.arrived( 0, splits.get( 0));
+
+        File merged= merger.complete( splits);
+        assertThat( read( merged), is( String.join( "", CONTENTS)));
+    }
+
+    @Test
+    public void shouldAppendRemainsOnComplete() throws IOException
+    {
+        SplitMerger merger= new SplitMerger( session);
+        merger.arrived( 0, splits.get( 0));
+        // 1번째 파일이 수신되지 않았으므로 2번째 파일은 MERGE 요청시 병합된다.
+        merger.arrived( 2, splits.get( 2));
+
+        File merged= merger.complete( splits);
+        assertThat( read( merged), is( String.join( "", CONTENTS)));
+    }
+
+    @Test
+    public void shouldReturnNullWithoutIncrementalMerge() throws IOException
+    {
+        SplitMerger merger= new SplitMerger( session);
+        merger.arrived( 1, splits.get( 1));
+
+        assertThat( merger.complete( splits)== null, is( true));
+    }
+
+    @Test
+    public void shouldKeepSplitsUntilCommitted() throws IOException
+    {
+        SplitMerger merger= new SplitMerger( session);
+        merger.arrived( 0, splits.get( 0));
+        merger.arrived( 1, splits.get( 1));
+        File merged= merger.complete( splits);
+        for( File split: splits)
+            assertThat( split.exists(), is( true));
+
+        // 병합 파일의 반영에 실패하여 다시 요청되어도 분할 파일이 중복 추가되지 않는다.
+        assertThat( merger.complete( splits), is( merged));
+        assertThat( read( merged), is( String.join( "", CONTENTS)));
+
+        merger.committed();
+        for( File split: splits)
+            assertThat( split.exists(), is( false));
+        assertThat( merged.exists(), is( true));
+    }
+
+    @Test
+    public void shouldRejectUnmatchedResources() throws IOException
+    {
+        SplitMerger merger= new SplitMerger( session);
+        merger.arrived( 0, splits.get( 0));
+        merger.arrived( 1, splits.get( 1));
+
+        try
+        {
+            merger.complete( Arrays.asList( splits.get( 1), splits.get( 0), splits.get( 2), splits.get( 3)));
+            fail( "unmatched resources are merged");
+        }
+        catch( IOException e)
+        {
+            assertThat( splits.get( 0).exists(), is( true));
+        }
+    }
+
+    private static String read( File file) throws IOException
+    {
+        return new String( Files.readAllBytes( file.toPath()), StandardCharsets.UTF_8);
+    }
+}
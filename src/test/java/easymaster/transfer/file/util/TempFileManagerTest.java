@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ */
+
+package easymaster.transfer.file.util;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * TempFileManager의 sweep이 이 process가 생성한 임시 파일만 삭제하고, cleanup이 이전 process가 남긴 임시 파일을 삭제하는지 확인한다.
+ * @author Jongoh Lee
+ *
+ */
+
+public class TempFileManagerTest
+{
+    private static final String PREFIX= "tmf-";
+
+    private static final long OLD= System.currentTimeMillis()- Duration.ofDays( 1).toMillis();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir= Files.createTempDirectory( "temp-file-manager").toFile();
+        TempFileManager.start( Duration.ofHours( 1));
+    }
+
+    @After
+    public void tearDown()
+    {
+        TempFileManager.stop();
+        FileSystemUtils.deleteRecursively( dir);
+    }
+
+    @Test
+    public void shouldSweepOnlyOwnReleasedFiles() throws IOException
+    {
+        File live= TempFileManager.create( dir, PREFIX, ".tmp", false);
+        File released= TempFileManager.create( dir, PREFIX, ".tmp", false);
+        TempFileManager.release( released);
+        // 같은 prefix를 사용하는 다른 process 또는 사용자의 파일
+        File foreign= new File( dir, PREFIX+ "foreign.tmp");
+        Files.createFile( foreign.toPath());
+
+        for( File file: new File[] { live, released, foreign})
+            file.setLastModified( OLD);
+        TempFileManager.sweep();
+
+        assertThat( live.exists(), is( true));
+        assertThat( released.exists(), is( false));
+        assertThat( foreign.exists(), is( true));
+        TempFileManager.release( live);
+    }
+
+    @Test
+    public void shouldKeepRecentlyModifiedFiles() throws IOException
+    {
+        File released= TempFileManager.create( dir, PREFIX, ".tmp", false);
+        TempFileManager.release( released);
+        TempFileManager.sweep();
+
+        assertThat( released.exists(), is( true));
+    }
+
+    @Test
+    public void shouldCleanupLeftoverFiles() throws IOException
+    {
+        File leftover= new File( dir, PREFIX+ "leftover.tmp");
+        File recent= new File( dir, PREFIX+ "recent.tmp");
+        File other= new File( dir, "other.tmp");
+        File live= TempFileManager.create( dir, PREFIX, ".tmp", false);
+        Files.createFile( leftover.toPath());
+        Files.createFile( recent.toPath());
+        Files.createFile( other.toPath());
+        leftover.setLastModified( OLD);
+        other.setLastModified( OLD);
+        live.setLastModified( OLD);
+
+        assertThat( TempFileManager.cleanup( dir, PREFIX, Duration.ofHours( 1)), is( 1));
+        assertThat( leftover.exists(), is( false));
+        assertThat( recent.exists(), is( true));
+        assertThat( other.exists(), is( true));
+        assertThat( live.exists(), is( true));
+        TempFileManager.release( live);
+    }
+
+    @Test
+    public void shouldIgnoreMissingDirectory()
+    {
+        assertThat( TempFileManager.cleanup( new File( dir, "missing"), PREFIX, Duration.ZERO), is( 0));
+    }
+}